@@ -0,0 +1,90 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Scanner;
+
+/**
+ * The webhook request path as it was before requests were streamed with a
+ * fixed length and responses read into a bounded buffer: the body is copied
+ * through a DataOutputStream, the response is read with a Scanner and the
+ * connection is disconnected after every request. Kept as the baseline the
+ * WebhookClient is measured against.
+ */
+final class BaselineWebhookClient
+{
+    // Made private to prevent instantiation.
+    private BaselineWebhookClient() { }
+
+    static boolean publish(String message, String webhookUrl)
+            throws IOException
+    {
+        HttpURLConnection connection;
+        connection = (HttpURLConnection) new URL(webhookUrl).openConnection();
+
+        try
+        {
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type",
+                    "application/json");
+            connection.setRequestProperty("charset", "utf-8");
+
+            connection.setDoInput(true);
+            connection.setDoOutput(true);
+
+            DataOutputStream request;
+            request = new DataOutputStream(connection.getOutputStream());
+
+            request.write(message.getBytes("UTF-8"));
+            request.flush();
+            request.close();
+
+            InputStream responseStream;
+            try
+            {
+                responseStream = connection.getInputStream();
+            }
+            catch (IOException e)
+            {
+                responseStream = connection.getErrorStream();
+            }
+
+            try
+            {
+                Scanner scanner;
+                scanner = new Scanner(responseStream, "UTF-8");
+                scanner.useDelimiter("\\A");
+
+                return "ok".equals(scanner.next());
+            }
+            finally
+            {
+                responseStream.close();
+            }
+        }
+        finally
+        {
+            connection.disconnect();
+        }
+    }
+}
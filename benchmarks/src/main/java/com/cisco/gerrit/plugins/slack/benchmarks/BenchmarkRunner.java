@@ -0,0 +1,68 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.ChainedOptionsBuilder;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks, taking the usual JMH command line options. Unless
+ * another format is asked for, results are written as JSON to
+ * jmh-result.json for tools to compare runs.
+ */
+public final class BenchmarkRunner
+{
+    // Made private to prevent instantiation.
+    private BenchmarkRunner() { }
+
+    public static void main(String[] args) throws Exception
+    {
+        CommandLineOptions commandLine;
+        commandLine = new CommandLineOptions(args);
+
+        if (commandLine.shouldHelp())
+        {
+            commandLine.showHelp();
+            return;
+        }
+
+        if (commandLine.shouldList())
+        {
+            new Runner(commandLine).list();
+            return;
+        }
+
+        ChainedOptionsBuilder options;
+        options = new OptionsBuilder().parent(commandLine);
+
+        if (!commandLine.getResultFormat().hasValue())
+        {
+            options.resultFormat(ResultFormatType.JSON);
+        }
+
+        if (!commandLine.getResult().hasValue())
+        {
+            options.result("jmh-result.json");
+        }
+
+        new Runner(options.build()).run();
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures escaping texts from 100 B to 1 MB with a varying share of
+ * characters to escape.
+ */
+@State(Scope.Benchmark)
+public class EscapeBenchmark
+{
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"0.0", "0.01", "0.2"})
+    public double escapeDensity;
+
+    private String text;
+    private Escaper escaper;
+
+    @Setup
+    public void setup()
+    {
+        text = Fixtures.text(size, escapeDensity);
+        escaper = new Escaper();
+    }
+
+    @Benchmark
+    public String escape()
+    {
+        return escaper.escape(text);
+    }
+
+    // Exposes the escaping of the message generators
+    private static class Escaper extends MessageGenerator
+    {
+        @Override
+        public boolean shouldPublish()
+        {
+            return false;
+        }
+
+        @Override
+        public String generate()
+        {
+            return null;
+        }
+
+        @Override
+        public String generateText()
+        {
+            return null;
+        }
+
+        @Override
+        protected String escape(String message)
+        {
+            return super.escape(message);
+        }
+    }
+}
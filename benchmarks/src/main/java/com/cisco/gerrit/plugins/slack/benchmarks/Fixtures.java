@@ -0,0 +1,289 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gwtorm.client.KeyUtil;
+import com.google.gwtorm.server.StandardKeyEncoder;
+import org.eclipse.jgit.lib.Config;
+
+import java.sql.Timestamp;
+import java.util.Random;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Builds the configurations, events and texts the benchmarks run against.
+ */
+final class Fixtures
+{
+    static final String PROJECT = "benchmark-project";
+
+    static
+    {
+        // Gerrit installs the key encoder used to parse project names on
+        // start up
+        KeyUtil.setEncoderImpl(new StandardKeyEncoder());
+    }
+
+    // Made private to prevent instantiation.
+    private Fixtures() { }
+
+    /**
+     * Creates a PluginConfigFactory whose project configuration is inherited
+     * through the given number of levels. Values are set at the root, as in
+     * All-Projects, and the channel is overridden at the leaf; every lookup
+     * of an unset option walks the whole chain.
+     *
+     * @param depth The number of configuration levels, at least 1.
+     * @return The fake PluginConfigFactory.
+     */
+    static PluginConfigFactory configFactory(int depth) throws Exception
+    {
+        return configFactory(depth,
+                "https://hooks.slack.com/services/T0/B0/benchmark",
+                new Config());
+    }
+
+    /**
+     * Creates a PluginConfigFactory as above, publishing to the given
+     * webhook, that also serves the given gerrit.config.
+     *
+     * @param depth The number of configuration levels, at least 1.
+     * @param webhookUrl The webhook URL of the project.
+     * @param gerritConfig The gerrit.config holding the global settings.
+     * @return The fake PluginConfigFactory.
+     */
+    static PluginConfigFactory configFactory(int depth, String webhookUrl,
+            Config gerritConfig) throws Exception
+    {
+        Config config;
+        config = new Config();
+
+        String section;
+        section = "plugin";
+
+        config.setBoolean(section, ProjectConfig.CONFIG_NAME, "enabled",
+                true);
+        config.setString(section, ProjectConfig.CONFIG_NAME, "webhookurl",
+                webhookUrl);
+        config.setString(section, ProjectConfig.CONFIG_NAME, "channel",
+                "general");
+        config.setString(section, ProjectConfig.CONFIG_NAME, "username",
+                "gerrit");
+        config.setString(section, ProjectConfig.CONFIG_NAME, "ignore",
+                "^WIP.*");
+
+        for (int level = 1; level < depth; level++)
+        {
+            config = new Config(config);
+        }
+
+        if (depth > 1)
+        {
+            config.setString(section, ProjectConfig.CONFIG_NAME, "channel",
+                    PROJECT);
+        }
+
+        PluginConfigFactory configFactory;
+        // Stub only, as a mock would remember every lookup
+        configFactory = mock(PluginConfigFactory.class,
+                withSettings().stubOnly());
+
+        when(configFactory.getFromProjectConfigWithInheritance(
+                any(Project.NameKey.class), anyString()))
+                .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME,
+                        config));
+        when(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME))
+                .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME,
+                        gerritConfig));
+
+        return configFactory;
+    }
+
+    /**
+     * Creates a text of the given size in which the given share of
+     * characters are double quotes, the character escaped in messages.
+     *
+     * @param size The length of the text.
+     * @param escapeDensity The share of double quotes, from 0 to 1.
+     * @return The text.
+     */
+    static String text(int size, double escapeDensity)
+    {
+        Random random;
+        random = new Random(size);
+
+        String words;
+        words = "Fix the race in the event listener when changes merge ";
+
+        StringBuilder text;
+        text = new StringBuilder(size);
+
+        for (int i = 0; i < size; i++)
+        {
+            if (random.nextDouble() < escapeDensity)
+            {
+                text.append('"');
+            }
+            else
+            {
+                text.append(words.charAt(i % words.length()));
+            }
+        }
+
+        return text.toString();
+    }
+
+    /**
+     * Creates a commit message of the given size, a subject line followed
+     * by a body.
+     *
+     * @param size The length of the commit message.
+     * @param escapeDensity The share of double quotes, from 0 to 1.
+     * @return The commit message.
+     */
+    static String commitMessage(int size, double escapeDensity)
+    {
+        StringBuilder message;
+        message = new StringBuilder(text(size, escapeDensity));
+
+        // Break a subject line off the body
+        message.setCharAt(Math.min(size - 1, 72), '\n');
+
+        return message.toString();
+    }
+
+    /**
+     * Creates an event of the given type for a change with the given commit
+     * message.
+     *
+     * @param type The Gerrit event type.
+     * @param commitMessage The commit message, also used as comment.
+     * @return The event.
+     */
+    static PatchSetEvent event(String type, String commitMessage)
+    {
+        return event(type, 1, 1, commitMessage);
+    }
+
+    /**
+     * Creates an event of the given type for a patch set of a change.
+     *
+     * @param type The Gerrit event type.
+     * @param number The change number.
+     * @param patchSetNumber The patch set number.
+     * @param commitMessage The commit message, also used as comment.
+     * @return The event.
+     */
+    static PatchSetEvent event(String type, int number, int patchSetNumber,
+            String commitMessage)
+    {
+        Change change;
+        change = new Change(new Change.Key("I0123456789abcdef"),
+                new Change.Id(number), new Account.Id(1),
+                new Branch.NameKey(PROJECT, "refs/heads/master"),
+                new Timestamp(0));
+
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.name = "Jane \"JD\" Doe";
+        account.username = "jdoe";
+        account.email = "jdoe@example.com";
+
+        ChangeAttribute changeAttribute;
+        changeAttribute = new ChangeAttribute();
+        changeAttribute.project = PROJECT;
+        changeAttribute.branch = "master";
+        changeAttribute.number = number;
+        changeAttribute.owner = account;
+        changeAttribute.url = "https://gerrit.example.com/" + number;
+        changeAttribute.commitMessage = commitMessage;
+
+        PatchSetAttribute patchSet;
+        patchSet = new PatchSetAttribute();
+        patchSet.number = patchSetNumber;
+
+        PatchSetEvent event;
+
+        switch (type)
+        {
+            case "patchset-created":
+                PatchSetCreatedEvent patchSetCreatedEvent;
+                patchSetCreatedEvent = new PatchSetCreatedEvent(change);
+                patchSetCreatedEvent.uploader = Suppliers.ofInstance(account);
+                event = patchSetCreatedEvent;
+                break;
+            case "change-merged":
+                ChangeMergedEvent changeMergedEvent;
+                changeMergedEvent = new ChangeMergedEvent(change);
+                changeMergedEvent.submitter = Suppliers.ofInstance(account);
+                event = changeMergedEvent;
+                break;
+            case "comment-added":
+                ApprovalAttribute approval;
+                approval = new ApprovalAttribute();
+                approval.type = "Code-Review";
+                approval.value = "2";
+                approval.oldValue = "0";
+
+                CommentAddedEvent commentAddedEvent;
+                commentAddedEvent = new CommentAddedEvent(change);
+                commentAddedEvent.author = Suppliers.ofInstance(account);
+                commentAddedEvent.comment = commitMessage;
+                commentAddedEvent.approvals = Suppliers.ofInstance(
+                        new ApprovalAttribute[] {approval});
+                event = commentAddedEvent;
+                break;
+            case "reviewer-added":
+                ReviewerAddedEvent reviewerAddedEvent;
+                reviewerAddedEvent = new ReviewerAddedEvent(change);
+                reviewerAddedEvent.reviewer = Suppliers.ofInstance(account);
+                event = reviewerAddedEvent;
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown event type " +
+                        type);
+        }
+
+        event.change = Suppliers.ofInstance(changeAttribute);
+        event.patchSet = Suppliers.ofInstance(patchSet);
+
+        return event;
+    }
+}
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import java.util.Random;
+
+/**
+ * A distribution of response latencies for the stub Slack server.
+ */
+public abstract class LatencyDistribution
+{
+    /**
+     * Draws a latency.
+     *
+     * @param random The source of randomness.
+     * @return The latency, in milliseconds.
+     */
+    public abstract long sample(Random random);
+
+    /**
+     * Parses a distribution, one of "50" for a constant latency, "10-200"
+     * for a uniform one, "exp:50" for an exponential one with the given
+     * mean, or "lognormal:50:1.0" for a log-normal one with the given median
+     * and shape, whose long tail resembles real network latency.
+     *
+     * @param spec The distribution, latencies in milliseconds.
+     * @return The distribution.
+     */
+    public static LatencyDistribution parse(String spec)
+    {
+        String[] parts;
+        parts = spec.split(":");
+
+        if (parts[0].equals("exp") && parts.length == 2)
+        {
+            final double mean;
+            mean = Double.parseDouble(parts[1]);
+
+            return new LatencyDistribution()
+            {
+                @Override
+                public long sample(Random random)
+                {
+                    return Math.round(-mean *
+                            Math.log(1 - random.nextDouble()));
+                }
+            };
+        }
+
+        if (parts[0].equals("lognormal") && parts.length == 3)
+        {
+            final double mu;
+            mu = Math.log(Double.parseDouble(parts[1]));
+
+            final double sigma;
+            sigma = Double.parseDouble(parts[2]);
+
+            return new LatencyDistribution()
+            {
+                @Override
+                public long sample(Random random)
+                {
+                    return Math.round(Math.exp(mu +
+                            sigma * random.nextGaussian()));
+                }
+            };
+        }
+
+        if (parts.length == 1 && spec.contains("-"))
+        {
+            final long min;
+            min = Long.parseLong(spec.substring(0, spec.indexOf('-')));
+
+            final long max;
+            max = Long.parseLong(spec.substring(spec.indexOf('-') + 1));
+
+            return new LatencyDistribution()
+            {
+                @Override
+                public long sample(Random random)
+                {
+                    return min + (long) (random.nextDouble() * (max - min));
+                }
+            };
+        }
+
+        if (parts.length == 1)
+        {
+            final long latency;
+            latency = Long.parseLong(spec);
+
+            return new LatencyDistribution()
+            {
+                @Override
+                public long sample(Random random)
+                {
+                    return latency;
+                }
+            };
+        }
+
+        throw new IllegalArgumentException("Unknown latency distribution " +
+                spec);
+    }
+}
@@ -0,0 +1,429 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.ChangeDebouncer;
+import com.cisco.gerrit.plugins.slack.ChannelDigester;
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.NodeCoordinator;
+import com.cisco.gerrit.plugins.slack.PublishEventListener;
+import com.cisco.gerrit.plugins.slack.StormDetector;
+import com.cisco.gerrit.plugins.slack.client.ChangeThreads;
+import com.cisco.gerrit.plugins.slack.client.ConnectionWarmer;
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gerrit.server.util.IdGenerator;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import com.google.inject.Injector;
+import com.google.inject.Provides;
+import com.google.inject.Singleton;
+import org.eclipse.jgit.lib.Config;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fires synthetic Gerrit events through the plugin's event listener at a
+ * target rate, against the stub Slack server, and reports the sustained
+ * throughput, the latency from event to Slack, lost messages and messages
+ * delivered out of order per change. Runs entirely in process.
+ * <p>
+ * Options are given as key=value arguments:
+ * <pre>
+ *   rate          events per second (100)
+ *   duration      seconds to fire events for (30)
+ *   changes       changes the events are spread over (20)
+ *   types         comma separated event types
+ *                 (patchset-created,change-merged,comment-added)
+ *   latency       stub latency distribution, see LatencyDistribution
+ *                 (lognormal:40:0.5)
+ *   rate-limit    share of requests answered 429 (0)
+ *   retry-after   Retry-After of 429 responses, in seconds (1)
+ *   server-errors share of requests answered 500 or 503 (0)
+ *   resets        share of requests whose connection is reset (0)
+ *   hangs         share of requests left unanswered (0)
+ *   hang-time     milliseconds hung requests are left unanswered (60000)
+ *   drain-timeout seconds to wait for delivery to finish (60)
+ * </pre>
+ * Any other key is set as a plugin option in gerrit.config, for instance
+ * delivery-threads=4.
+ */
+public final class LoadDriver
+{
+    private static final Pattern SEQUENCE =
+            Pattern.compile("change (\\d+) event #(\\d+)");
+
+    private static final Map<String, String> DEFAULTS;
+
+    static
+    {
+        DEFAULTS = new LinkedHashMap<>();
+        DEFAULTS.put("rate", "100");
+        DEFAULTS.put("duration", "30");
+        DEFAULTS.put("changes", "20");
+        DEFAULTS.put("types",
+                "patchset-created,change-merged,comment-added");
+        DEFAULTS.put("latency", "lognormal:40:0.5");
+        DEFAULTS.put("rate-limit", "0");
+        DEFAULTS.put("retry-after", "1");
+        DEFAULTS.put("server-errors", "0");
+        DEFAULTS.put("resets", "0");
+        DEFAULTS.put("hangs", "0");
+        DEFAULTS.put("hang-time", "60000");
+        DEFAULTS.put("drain-timeout", "60");
+    }
+
+    private final long[] firedAt;
+    private final long[] receivedAt;
+    private final Map<Integer, Integer> lastSequence;
+    private long outOfOrder;
+    private long duplicates;
+
+    private LoadDriver(int events)
+    {
+        firedAt = new long[events];
+        receivedAt = new long[events];
+        lastSequence = new HashMap<>();
+    }
+
+    public static void main(String[] args) throws Exception
+    {
+        Map<String, String> options;
+        options = new LinkedHashMap<>(DEFAULTS);
+
+        Config gerritConfig;
+        gerritConfig = new Config();
+
+        for (String arg : args)
+        {
+            int split;
+            split = arg.indexOf('=');
+
+            if (split < 0)
+            {
+                throw new IllegalArgumentException("Expected key=value: " +
+                        arg);
+            }
+
+            String key;
+            key = arg.substring(0, split);
+
+            String value;
+            value = arg.substring(split + 1);
+
+            if (DEFAULTS.containsKey(key))
+            {
+                options.put(key, value);
+            }
+            else
+            {
+                gerritConfig.setString("plugin", ProjectConfig.CONFIG_NAME,
+                        key, value);
+            }
+        }
+
+        int events;
+        events = Integer.parseInt(options.get("rate")) *
+                Integer.parseInt(options.get("duration"));
+
+        new LoadDriver(events).run(options, gerritConfig);
+    }
+
+    private void run(Map<String, String> options, Config gerritConfig)
+            throws Exception
+    {
+        StubSlackServer server;
+        server = new StubSlackServer(new StubSlackServer.Listener()
+        {
+            @Override
+            public void onMessage(String body, long at)
+            {
+                received(body, at);
+            }
+        });
+
+        server.setLatency(LatencyDistribution.parse(options.get("latency")));
+        server.setRateLimitRate(Double.parseDouble(options.get("rate-limit")));
+        server.setRetryAfter(Integer.parseInt(options.get("retry-after")));
+        server.setServerErrorRate(Double.parseDouble(
+                options.get("server-errors")));
+        server.setResetRate(Double.parseDouble(options.get("resets")));
+        server.setHangRate(Double.parseDouble(options.get("hangs")));
+        server.setHangTime(Long.parseLong(options.get("hang-time")));
+        server.start();
+
+        final PluginConfigFactory configFactory;
+        configFactory = Fixtures.configFactory(1, server.getUrl(),
+                gerritConfig);
+
+        // Holds the thread timestamps of the run
+        final Path dataDir;
+        dataDir = Files.createTempDirectory("slack-load-driver");
+
+        Injector injector;
+        injector = Guice.createInjector(new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind(PluginConfigFactory.class).toInstance(configFactory);
+                bind(MetricMaker.class).to(DisabledMetricMaker.class);
+                bind(Path.class).annotatedWith(PluginData.class)
+                        .toInstance(dataDir);
+            }
+
+            @Provides
+            @Singleton
+            WorkQueue provideWorkQueue(IdGenerator idGenerator)
+            {
+                return new WorkQueue(idGenerator, 1);
+            }
+        });
+
+        // Started and stopped in the order the plugin's module binds them
+        List<LifecycleListener> services;
+        services = new ArrayList<>();
+        services.add(injector.getInstance(NodeCoordinator.class));
+        services.add(injector.getInstance(ConnectionWarmer.class));
+        services.add(injector.getInstance(ChangeThreads.class));
+        services.add(injector.getInstance(MessageDispatcher.class));
+        services.add(injector.getInstance(LoadShedder.class));
+        services.add(injector.getInstance(StormDetector.class));
+        services.add(injector.getInstance(ChangeDebouncer.class));
+        services.add(injector.getInstance(ChannelDigester.class));
+
+        for (LifecycleListener service : services)
+        {
+            service.start();
+        }
+
+        PublishEventListener listener;
+        listener = injector.getInstance(PublishEventListener.class);
+
+        MessageDispatcher dispatcher;
+        dispatcher = injector.getInstance(MessageDispatcher.class);
+
+        String[] types;
+        types = options.get("types").split(",");
+
+        int changes;
+        changes = Integer.parseInt(options.get("changes"));
+
+        long interval;
+        interval = TimeUnit.SECONDS.toNanos(1) /
+                Integer.parseInt(options.get("rate"));
+
+        System.out.println("Firing " + firedAt.length + " events at " +
+                options.get("rate") + "/s against " + server.getUrl());
+
+        long start;
+        start = System.nanoTime();
+
+        for (int sequence = 0; sequence < firedAt.length; sequence++)
+        {
+            long wait;
+            while ((wait = start + sequence * interval - System.nanoTime())
+                    > 0)
+            {
+                LockSupport.parkNanos(wait);
+            }
+
+            int change;
+            change = sequence % changes + 1;
+
+            firedAt[sequence] = System.nanoTime();
+            listener.onEvent(Fixtures.event(types[sequence % types.length],
+                    change, sequence / changes + 1,
+                    "Load change " + change + " event #" + sequence +
+                            "\n\nSynthetic event of the load driver."));
+        }
+
+        long fired;
+        fired = System.nanoTime();
+
+        long drainDeadline;
+        drainDeadline = fired + TimeUnit.SECONDS.toNanos(
+                Long.parseLong(options.get("drain-timeout")));
+
+        long accepted;
+        accepted = -1;
+
+        // Done once the queue is empty and no message arrived for a second
+        while (System.nanoTime() < drainDeadline &&
+                (dispatcher.getQueued() > 0 ||
+                        accepted != server.getAccepted()))
+        {
+            accepted = server.getAccepted();
+            Thread.sleep(1000);
+        }
+
+        List<LifecycleListener> stopping;
+        stopping = new ArrayList<>(services);
+        Collections.reverse(stopping);
+
+        for (LifecycleListener service : stopping)
+        {
+            service.stop();
+        }
+
+        server.close();
+
+        report(start, fired, server, dispatcher,
+                injector.getInstance(LoadShedder.class),
+                injector.getInstance(StormDetector.class));
+    }
+
+    private synchronized void received(String body, long at)
+    {
+        Matcher matcher;
+        matcher = SEQUENCE.matcher(body);
+
+        while (matcher.find())
+        {
+            int change;
+            change = Integer.parseInt(matcher.group(1));
+
+            int sequence;
+            sequence = Integer.parseInt(matcher.group(2));
+
+            if (sequence >= receivedAt.length)
+            {
+                continue;
+            }
+
+            if (receivedAt[sequence] != 0)
+            {
+                duplicates++;
+                continue;
+            }
+
+            receivedAt[sequence] = at;
+
+            Integer last;
+            last = lastSequence.get(change);
+
+            if (last != null && sequence < last)
+            {
+                outOfOrder++;
+            }
+            else
+            {
+                lastSequence.put(change, sequence);
+            }
+        }
+    }
+
+    private synchronized void report(long start, long fired,
+            StubSlackServer server, MessageDispatcher dispatcher,
+            LoadShedder loadShedder, StormDetector stormDetector)
+    {
+        long[] latencies;
+        latencies = new long[receivedAt.length];
+
+        int received;
+        received = 0;
+
+        long lastReceived;
+        lastReceived = start;
+
+        for (int sequence = 0; sequence < receivedAt.length; sequence++)
+        {
+            if (receivedAt[sequence] != 0)
+            {
+                latencies[received++] = receivedAt[sequence] -
+                        firedAt[sequence];
+                lastReceived = Math.max(lastReceived, receivedAt[sequence]);
+            }
+        }
+
+        latencies = Arrays.copyOf(latencies, received);
+        Arrays.sort(latencies);
+
+        int lost;
+        lost = receivedAt.length - received;
+
+        System.out.println();
+        print("Events fired", "%d in %.1f s (%.1f/s)", receivedAt.length,
+                seconds(fired - start),
+                receivedAt.length / seconds(fired - start));
+        print("Messages received", "%d in %.1f s", received,
+                seconds(lastReceived - start));
+        print("Sustained throughput", "%.1f messages/s",
+                received / seconds(lastReceived - start));
+        print("Latency", "p50 %d ms, p95 %d ms, p99 %d ms, max %d ms",
+                percentile(latencies, 0.50), percentile(latencies, 0.95),
+                percentile(latencies, 0.99), percentile(latencies, 1.0));
+        print("Lost", "%d (%.2f%%): shed %d, summarized %d, dropped %d, " +
+                "failed %d",
+                lost, 100.0 * lost / Math.max(1, receivedAt.length),
+                loadShedder.getShed(), stormDetector.getSummarized(),
+                dispatcher.getDropped(),
+                Math.max(0, lost - loadShedder.getShed() -
+                        stormDetector.getSummarized() -
+                        dispatcher.getDropped()));
+        print("Out of order", "%d", outOfOrder);
+        print("Duplicates", "%d", duplicates);
+        print("Stub faults", "429 %d, 5xx %d, resets %d, hangs %d",
+                server.getRateLimited(), server.getServerErrors(),
+                server.getResets(), server.getHangs());
+    }
+
+    private static void print(String name, String format, Object... args)
+    {
+        System.out.println(String.format(Locale.ROOT, "%-22s", name) +
+                String.format(Locale.ROOT, format, args));
+    }
+
+    private static double seconds(long nanos)
+    {
+        return Math.max(1, nanos) / (double) TimeUnit.SECONDS.toNanos(1);
+    }
+
+    private static long percentile(long[] sorted, double quantile)
+    {
+        if (sorted.length == 0)
+        {
+            return 0;
+        }
+
+        int index;
+        index = (int) Math.ceil(quantile * sorted.length) - 1;
+
+        return TimeUnit.NANOSECONDS.toMillis(
+                sorted[Math.max(0, Math.min(sorted.length - 1, index))]);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures deciding whether to publish, and generating, the message of
+ * each event type for commit messages from 100 B to 1 MB.
+ */
+@State(Scope.Benchmark)
+public class MessageGeneratorBenchmark
+{
+    @Param({"patchset-created", "change-merged", "comment-added",
+            "reviewer-added"})
+    public String type;
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    @Param({"0.0", "0.01", "0.2"})
+    public double escapeDensity;
+
+    private MessageGenerator generator;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        ProjectConfig config;
+        config = new ProjectConfig(Fixtures.configFactory(1),
+                Fixtures.PROJECT);
+
+        PatchSetEvent event;
+        event = Fixtures.event(type,
+                Fixtures.commitMessage(size, escapeDensity));
+
+        if (event instanceof PatchSetCreatedEvent)
+        {
+            generator = MessageGeneratorFactory.newInstance(
+                    (PatchSetCreatedEvent) event, config);
+        }
+        else if (event instanceof ChangeMergedEvent)
+        {
+            generator = MessageGeneratorFactory.newInstance(
+                    (ChangeMergedEvent) event, config);
+        }
+        else if (event instanceof CommentAddedEvent)
+        {
+            generator = MessageGeneratorFactory.newInstance(
+                    (CommentAddedEvent) event, config);
+        }
+        else
+        {
+            generator = MessageGeneratorFactory.newInstance(
+                    (ReviewerAddedEvent) event, config);
+        }
+    }
+
+    @Benchmark
+    public boolean shouldPublish()
+    {
+        return generator.shouldPublish();
+    }
+
+    @Benchmark
+    public String generate()
+    {
+        return generator.generate();
+    }
+}
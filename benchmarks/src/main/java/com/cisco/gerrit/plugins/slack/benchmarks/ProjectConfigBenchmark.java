@@ -0,0 +1,51 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Measures looking up a project's configuration through 1 to 10 levels of
+ * inheritance, as done for every event.
+ */
+@State(Scope.Benchmark)
+public class ProjectConfigBenchmark
+{
+    @Param({"1", "2", "4", "6", "8", "10"})
+    public int depth;
+
+    private PluginConfigFactory configFactory;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        configFactory = Fixtures.configFactory(depth);
+    }
+
+    @Benchmark
+    public ProjectConfig construct()
+    {
+        return new ProjectConfig(configFactory, Fixtures.PROJECT);
+    }
+}
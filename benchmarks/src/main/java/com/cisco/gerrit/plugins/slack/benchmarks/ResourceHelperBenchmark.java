@@ -0,0 +1,36 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import org.openjdk.jmh.annotations.Benchmark;
+
+import java.io.IOException;
+
+/**
+ * Measures loading the message template, as done for every message.
+ */
+public class ResourceHelperBenchmark
+{
+    @Benchmark
+    public String loadTemplate() throws IOException
+    {
+        return ResourceHelper.loadNamedResourceAsString(
+                "basic-message-template.json");
+    }
+}
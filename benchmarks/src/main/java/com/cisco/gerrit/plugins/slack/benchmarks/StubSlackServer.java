@@ -0,0 +1,492 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A stand in for a Slack incoming webhook that runs in process, so delivery
+ * can be exercised without network access. Besides answering "ok" after a
+ * latency drawn from a distribution, it injects faults at configurable
+ * rates: 429 responses with a Retry-After header, 5xx responses, connection
+ * resets and hung requests. It speaks just enough HTTP/1.1, keep-alive
+ * included, for the plugin's webhook client.
+ */
+public class StubSlackServer implements Closeable
+{
+    /**
+     * Receives the messages the stub accepted.
+     */
+    public interface Listener
+    {
+        /**
+         * Called for every message answered with "ok".
+         *
+         * @param body The message payload.
+         * @param receivedAt When the response was sent, in System.nanoTime()
+         *                   terms.
+         */
+        void onMessage(String body, long receivedAt);
+    }
+
+    private final Listener listener;
+    private final Random random;
+
+    private volatile LatencyDistribution latency;
+    private volatile double rateLimitRate;
+    private volatile int retryAfter;
+    private volatile double serverErrorRate;
+    private volatile double resetRate;
+    private volatile double hangRate;
+    private volatile long hangTime;
+
+    private final AtomicLong accepted;
+    private final AtomicLong rateLimited;
+    private final AtomicLong serverErrors;
+    private final AtomicLong resets;
+    private final AtomicLong hangs;
+
+    private final Set<Socket> connections;
+    private ServerSocket serverSocket;
+    private ExecutorService executor;
+
+    /**
+     * Creates a new StubSlackServer instance, answering without delay and
+     * without faults until configured otherwise.
+     *
+     * @param listener The listener for accepted messages.
+     */
+    public StubSlackServer(Listener listener)
+    {
+        this.listener = listener;
+
+        random = new Random();
+
+        latency = LatencyDistribution.parse("0");
+        retryAfter = 1;
+        hangTime = 60000;
+
+        accepted = new AtomicLong();
+        rateLimited = new AtomicLong();
+        serverErrors = new AtomicLong();
+        resets = new AtomicLong();
+        hangs = new AtomicLong();
+
+        connections = Collections.synchronizedSet(new HashSet<Socket>());
+    }
+
+    /**
+     * Starts listening on an ephemeral loopback port.
+     *
+     * @throws IOException In the event the port cannot be bound
+     */
+    public void start() throws IOException
+    {
+        serverSocket = new ServerSocket(0, 50,
+                InetAddress.getLoopbackAddress());
+
+        executor = Executors.newCachedThreadPool(new ThreadFactory()
+        {
+            @Override
+            public Thread newThread(Runnable runnable)
+            {
+                Thread thread;
+                thread = new Thread(runnable, "Stub-Slack-Server");
+                thread.setDaemon(true);
+
+                return thread;
+            }
+        });
+
+        executor.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                accept();
+            }
+        });
+    }
+
+    /**
+     * Stops listening and closes all connections, releasing hung requests.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        serverSocket.close();
+
+        synchronized (connections)
+        {
+            for (Socket connection : connections)
+            {
+                connection.close();
+            }
+        }
+
+        executor.shutdownNow();
+    }
+
+    /**
+     * Gets the webhook URL of the stub.
+     *
+     * @return The webhook URL.
+     */
+    public String getUrl()
+    {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() +
+                "/services/T0/B0/stub";
+    }
+
+    /**
+     * Sets the distribution of the time taken to answer a request.
+     *
+     * @param latency The latency distribution.
+     */
+    public void setLatency(LatencyDistribution latency)
+    {
+        this.latency = latency;
+    }
+
+    /**
+     * Sets the share of requests answered 429 Too Many Requests.
+     *
+     * @param rateLimitRate The share, from 0 to 1.
+     */
+    public void setRateLimitRate(double rateLimitRate)
+    {
+        this.rateLimitRate = rateLimitRate;
+    }
+
+    /**
+     * Sets the Retry-After of 429 responses.
+     *
+     * @param retryAfter The time to wait, in seconds.
+     */
+    public void setRetryAfter(int retryAfter)
+    {
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * Sets the share of requests answered 500 or 503.
+     *
+     * @param serverErrorRate The share, from 0 to 1.
+     */
+    public void setServerErrorRate(double serverErrorRate)
+    {
+        this.serverErrorRate = serverErrorRate;
+    }
+
+    /**
+     * Sets the share of requests whose connection is reset.
+     *
+     * @param resetRate The share, from 0 to 1.
+     */
+    public void setResetRate(double resetRate)
+    {
+        this.resetRate = resetRate;
+    }
+
+    /**
+     * Sets the share of requests that hang, left unanswered until the hang
+     * time has passed and the connection is closed.
+     *
+     * @param hangRate The share, from 0 to 1.
+     */
+    public void setHangRate(double hangRate)
+    {
+        this.hangRate = hangRate;
+    }
+
+    /**
+     * Sets how long hung requests are left unanswered.
+     *
+     * @param hangTime The time, in milliseconds.
+     */
+    public void setHangTime(long hangTime)
+    {
+        this.hangTime = hangTime;
+    }
+
+    public long getAccepted()
+    {
+        return accepted.get();
+    }
+
+    public long getRateLimited()
+    {
+        return rateLimited.get();
+    }
+
+    public long getServerErrors()
+    {
+        return serverErrors.get();
+    }
+
+    public long getResets()
+    {
+        return resets.get();
+    }
+
+    public long getHangs()
+    {
+        return hangs.get();
+    }
+
+    private void accept()
+    {
+        while (!serverSocket.isClosed())
+        {
+            final Socket connection;
+            try
+            {
+                connection = serverSocket.accept();
+            }
+            catch (IOException e)
+            {
+                return;
+            }
+
+            connections.add(connection);
+
+            executor.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        serve(connection);
+                    }
+                    catch (IOException e)
+                    {
+                        // The client went away
+                    }
+                    finally
+                    {
+                        connections.remove(connection);
+                        close(connection);
+                    }
+                }
+            });
+        }
+    }
+
+    private void serve(Socket connection) throws IOException
+    {
+        connection.setTcpNoDelay(true);
+
+        InputStream input;
+        input = connection.getInputStream();
+
+        OutputStream output;
+        output = connection.getOutputStream();
+
+        while (true)
+        {
+            String body;
+            body = readRequest(input);
+
+            if (body == null)
+            {
+                return;
+            }
+
+            double roll;
+            synchronized (random)
+            {
+                roll = random.nextDouble();
+            }
+
+            if ((roll -= hangRate) < 0)
+            {
+                hangs.incrementAndGet();
+                sleep(hangTime);
+                return;
+            }
+
+            if ((roll -= resetRate) < 0)
+            {
+                resets.incrementAndGet();
+
+                // Closing with a zero linger time sends a TCP reset
+                connection.setSoLinger(true, 0);
+                return;
+            }
+
+            long delay;
+            synchronized (random)
+            {
+                delay = latency.sample(random);
+            }
+            sleep(delay);
+
+            if ((roll -= rateLimitRate) < 0)
+            {
+                rateLimited.incrementAndGet();
+                respond(output, "429 Too Many Requests",
+                        "Retry-After: " + retryAfter + "\r\n",
+                        "rate_limited");
+            }
+            else if ((roll -= serverErrorRate) < 0)
+            {
+                serverErrors.incrementAndGet();
+                respond(output, roll < -serverErrorRate / 2
+                        ? "500 Internal Server Error"
+                        : "503 Service Unavailable", "", "internal_error");
+            }
+            else
+            {
+                accepted.incrementAndGet();
+                listener.onMessage(body, System.nanoTime());
+                respond(output, "200 OK", "", "ok");
+            }
+        }
+    }
+
+    /**
+     * Reads one request, returning its body, or null once the client has
+     * closed the connection.
+     */
+    private static String readRequest(InputStream input) throws IOException
+    {
+        String line;
+        line = readLine(input);
+
+        if (line == null)
+        {
+            return null;
+        }
+
+        int contentLength;
+        contentLength = 0;
+
+        while ((line = readLine(input)) != null && !line.isEmpty())
+        {
+            if (line.toLowerCase(Locale.ROOT).startsWith("content-length:"))
+            {
+                contentLength = Integer.parseInt(line.substring(
+                        "content-length:".length()).trim());
+            }
+        }
+
+        byte[] body;
+        body = new byte[contentLength];
+
+        int read;
+        read = 0;
+
+        while (read < contentLength)
+        {
+            int n;
+            n = input.read(body, read, contentLength - read);
+
+            if (n < 0)
+            {
+                return null;
+            }
+
+            read += n;
+        }
+
+        return new String(body, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream input) throws IOException
+    {
+        ByteArrayOutputStream line;
+        line = new ByteArrayOutputStream();
+
+        int b;
+        while ((b = input.read()) != '\n')
+        {
+            if (b < 0)
+            {
+                return null;
+            }
+
+            if (b != '\r')
+            {
+                line.write(b);
+            }
+        }
+
+        return line.toString("ISO-8859-1");
+    }
+
+    private static void respond(OutputStream output, String status,
+            String headers, String body) throws IOException
+    {
+        byte[] content;
+        content = body.getBytes(StandardCharsets.UTF_8);
+
+        output.write(("HTTP/1.1 " + status + "\r\n" +
+                "Content-Type: text/plain\r\n" +
+                "Content-Length: " + content.length + "\r\n" +
+                headers + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+        output.write(content);
+        output.flush();
+    }
+
+    private static void sleep(long millis)
+    {
+        if (millis <= 0)
+        {
+            return;
+        }
+
+        try
+        {
+            Thread.sleep(millis);
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void close(Socket connection)
+    {
+        try
+        {
+            connection.close();
+        }
+        catch (IOException e)
+        {
+            // Nothing left to release
+        }
+    }
+}
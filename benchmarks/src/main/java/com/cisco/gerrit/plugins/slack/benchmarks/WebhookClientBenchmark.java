@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.benchmarks;
+
+import com.cisco.gerrit.plugins.slack.client.WebhookClient;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures publishing a message to an in-process stub of the Slack webhook
+ * over a loopback connection, isolating the client's own cost. The baseline
+ * publishes through the request path the client replaced; run with -prof gc
+ * to compare the allocation per request as well.
+ */
+@State(Scope.Benchmark)
+public class WebhookClientBenchmark
+{
+    private static final byte[] OK = "ok".getBytes(StandardCharsets.UTF_8);
+
+    @Param({"1000", "40000"})
+    public int size;
+
+    private HttpServer server;
+    private ExecutorService executor;
+    private String webhookUrl;
+    private String message;
+
+    @Setup
+    public void setup() throws IOException
+    {
+        server = HttpServer.create(new InetSocketAddress(
+                InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                byte[] buffer;
+                buffer = new byte[8192];
+
+                try (InputStream input = exchange.getRequestBody())
+                {
+                    while (input.read(buffer) != -1)
+                    {
+                        // Discard the message
+                    }
+                }
+
+                exchange.sendResponseHeaders(200, OK.length);
+
+                try (OutputStream output = exchange.getResponseBody())
+                {
+                    output.write(OK);
+                }
+            }
+        });
+
+        executor = Executors.newFixedThreadPool(4);
+        server.setExecutor(executor);
+        server.start();
+
+        webhookUrl = "http://127.0.0.1:" + server.getAddress().getPort() +
+                "/services/T0/B0/benchmark";
+        message = "{\"text\": \"" + Fixtures.text(size, 0) +
+                "\",\"channel\": \"#general\",\"username\": \"gerrit\"}";
+    }
+
+    @TearDown
+    public void teardown()
+    {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public boolean publish()
+    {
+        return new WebhookClient().publish(message, webhookUrl);
+    }
+
+    @Benchmark
+    public boolean publishBaseline() throws IOException
+    {
+        return BaselineWebhookClient.publish(message, webhookUrl);
+    }
+}
@@ -0,0 +1,316 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.ChangeCard;
+import com.cisco.gerrit.plugins.slack.message.HeaderCache;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps a status card for every change of projects with status cards. Each
+ * event of a change is applied to its card, and the card is published with
+ * the Slack Web API: first as a new message, after that by editing that
+ * message in place. Cards are delivered by the MessageDispatcher like any
+ * other message of their project. Updates are coalesced: while an update of
+ * a card is queued or being published, further events only change the
+ * card, and once the update completes the card is published once more if
+ * it changed in the meantime. A change thereby costs one post plus at most
+ * one update per round trip to Slack, however many events it receives.
+ */
+@Singleton
+public class ChangeCards
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ChangeCards.class);
+
+    /**
+     * The maximum number of cards kept. The card of a change that has been
+     * evicted starts afresh and is posted as a new message, so that it does
+     * not overwrite the complete card with the few events it has seen.
+     */
+    private static final int MAX_CARDS = 10000;
+
+    private final GlobalConfig globalConfig;
+    private final MessageDispatcher dispatcher;
+    private final HeaderCache headerCache;
+
+    // Channel and change number to card
+    private final Cache<String, Card> cards;
+
+    private final AtomicLong received;
+    private final AtomicLong published;
+    private final AtomicLong coalesced;
+
+    /**
+     * Creates a new ChangeCards instance.
+     *
+     * @param globalConfig The GlobalConfig holding the Web API settings.
+     * @param dispatcher The dispatcher used to deliver cards.
+     * @param headerCache The cache the headers of changes are read through.
+     */
+    @Inject
+    public ChangeCards(GlobalConfig globalConfig,
+            MessageDispatcher dispatcher, HeaderCache headerCache)
+    {
+        this.globalConfig = globalConfig;
+        this.dispatcher = dispatcher;
+        this.headerCache = headerCache;
+
+        cards = CacheBuilder.newBuilder()
+                .maximumSize(MAX_CARDS)
+                .expireAfterAccess(globalConfig.getThreadTtl(),
+                        TimeUnit.MILLISECONDS)
+                .build();
+
+        received = new AtomicLong();
+        published = new AtomicLong();
+        coalesced = new AtomicLong();
+    }
+
+    /**
+     * Offers an event whose message is about to be published. For projects
+     * with status cards the event is applied to the card of its change
+     * instead, and the card is published.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param messageGenerator The generator of the event's message,
+     *                         providing the delivery priority.
+     * @param config The ProjectConfig instance for the event's project.
+     * @param trace The trace of the event, completed with the card update
+     *              the event is applied in.
+     * @return true, if the event was applied to a card; false if the caller
+     * should publish its message.
+     */
+    public boolean offer(ChangeEvent event, EventMemo memo,
+            MessageGenerator messageGenerator, ProjectConfig config,
+            DeliveryTrace trace)
+    {
+        if (!config.isStatusCard() || globalConfig.getApiToken().isEmpty())
+        {
+            return false;
+        }
+
+        int change;
+        change = memo.get(event.change).number;
+
+        String key;
+        key = config.getChannel() + "\n" + change;
+
+        Card card;
+        card = cards.getIfPresent(key);
+
+        if (card == null)
+        {
+            Card created;
+            created = new Card(change,
+                    MessageGeneratorFactory.newCardInstance(config,
+                            headerCache));
+
+            card = cards.asMap().putIfAbsent(key, created);
+
+            if (card == null)
+            {
+                card = created;
+            }
+        }
+
+        received.incrementAndGet();
+        card.update(event, memo, messageGenerator.getPriority(), config,
+                trace);
+
+        return true;
+    }
+
+    /**
+     * Gets the number of events applied to cards.
+     *
+     * @return The number of events received.
+     */
+    public long getReceived()
+    {
+        return received.get();
+    }
+
+    /**
+     * Gets the number of times a card was published.
+     *
+     * @return The number of cards published.
+     */
+    public long getPublished()
+    {
+        return published.get();
+    }
+
+    /**
+     * Gets the number of events that were merged into a pending update.
+     *
+     * @return The number of events coalesced.
+     */
+    public long getCoalesced()
+    {
+        return coalesced.get();
+    }
+
+    private class Card implements MessageDispatcher.Callback
+    {
+        private final int change;
+        private final ChangeCard state;
+
+        // The latest event's delivery settings, used by the next update
+        private Priority priority;
+        private ProjectConfig config;
+        private DeliveryTrace trace;
+
+        private int version;
+        private int rendered;
+        private boolean scheduled;
+
+        // Whether this card has been posted, so that updates replace it
+        private boolean posted;
+
+        Card(int change, ChangeCard state)
+        {
+            this.change = change;
+            this.state = state;
+        }
+
+        void update(ChangeEvent event, EventMemo memo, Priority priority,
+                ProjectConfig config, DeliveryTrace trace)
+        {
+            Update next;
+
+            synchronized (this)
+            {
+                state.apply(event, memo);
+                version++;
+
+                this.priority = priority;
+                this.config = config;
+                this.trace = trace;
+
+                // The pending update will pick up the change
+                if (scheduled)
+                {
+                    coalesced.incrementAndGet();
+                    return;
+                }
+
+                next = schedule();
+            }
+
+            next.dispatch();
+        }
+
+        @Override
+        public void delivered(boolean success)
+        {
+            Update next;
+
+            synchronized (this)
+            {
+                scheduled = false;
+
+                if (success)
+                {
+                    posted = true;
+                }
+                else
+                {
+                    LOGGER.warn("Publishing card of change " + change +
+                            " failed");
+                }
+
+                if (version == rendered)
+                {
+                    return;
+                }
+
+                next = schedule();
+            }
+
+            next.dispatch();
+        }
+
+        // Renders the update under the lock. It is dispatched once the lock
+        // is released, as a full dispatcher calls back into the card whose
+        // delivery it drops, which may be held by another thread that is
+        // dispatching in turn.
+        private Update schedule()
+        {
+            // Set first, as a stopped dispatcher delivers on this thread
+            scheduled = true;
+            rendered = version;
+
+            return new Update(state.generate(), config, priority, posted,
+                    trace);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Slack status card of change " + change;
+        }
+
+        private final class Update
+        {
+            private final String message;
+            private final ProjectConfig config;
+            private final Priority priority;
+            private final boolean replace;
+            private final DeliveryTrace trace;
+
+            Update(String message, ProjectConfig config, Priority priority,
+                    boolean replace, DeliveryTrace trace)
+            {
+                this.message = message;
+                this.config = config;
+                this.priority = priority;
+                this.replace = replace;
+                this.trace = trace;
+            }
+
+            void dispatch()
+            {
+                published.incrementAndGet();
+                dispatcher.dispatchCard(message, config, priority, change,
+                        replace, trace, Card.this);
+            }
+        }
+    }
+}
@@ -0,0 +1,343 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.DebouncedMessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.HeaderCache;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Holds back patch set created and comment added messages for a change for
+ * the project's debounce window, so that a burst of events for the same
+ * change, such as a rebased stack or CI votes, is published as a single
+ * message. Any other event for the change publishes the held message first.
+ */
+@Singleton
+public class ChangeDebouncer implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ChangeDebouncer.class);
+
+    private final GlobalConfig globalConfig;
+    private final WorkQueue workQueue;
+    private final ChannelDigester digester;
+    private final HeaderCache headerCache;
+
+    // Change number to pending message, in order of the first event
+    private final LinkedHashMap<Integer, Pending> pending;
+
+    private final AtomicLong received;
+    private final AtomicLong delivered;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new ChangeDebouncer instance.
+     *
+     * @param globalConfig The GlobalConfig holding the pending limit.
+     * @param workQueue The Gerrit WorkQueue to schedule deliveries on.
+     * @param digester The digester used to deliver messages.
+     * @param headerCache The cache the headers of changes are read through.
+     */
+    @Inject
+    public ChangeDebouncer(GlobalConfig globalConfig, WorkQueue workQueue,
+            ChannelDigester digester, HeaderCache headerCache)
+    {
+        this.globalConfig = globalConfig;
+        this.workQueue = workQueue;
+        this.digester = digester;
+        this.headerCache = headerCache;
+
+        pending = new LinkedHashMap<>();
+        received = new AtomicLong();
+        delivered = new AtomicLong();
+    }
+
+    @Override
+    public void start()
+    {
+        start(workQueue.createQueue(1, "Slack-Integration-Debounce"));
+    }
+
+    synchronized void start(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public void stop()
+    {
+        ScheduledExecutorService stopped;
+        List<Pending> remaining;
+
+        synchronized (this)
+        {
+            stopped = executor;
+            executor = null;
+
+            remaining = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+
+        // Publish whatever is still held rather than losing it
+        for (Pending entry : remaining)
+        {
+            entry.future.cancel(false);
+            deliver(entry);
+        }
+
+        if (stopped != null)
+        {
+            stopped.shutdownNow();
+
+            if (stopped instanceof WorkQueue.Executor)
+            {
+                ((WorkQueue.Executor) stopped).unregisterWorkQueue();
+            }
+        }
+    }
+
+    /**
+     * Offers an event whose message is about to be published. Patch set
+     * created and comment added events are held back when the project has a
+     * debounce window; for any other event of a change the held message is
+     * published first, so the order of messages is preserved.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param generator The MessageGenerator for the event.
+     * @param config The ProjectConfig instance for the event's project.
+     * @param trace The trace of the event. A held message carries the trace
+     *              of the first event it holds.
+     * @return true, if the message is held back; false if the caller should
+     * publish it.
+     */
+    public boolean offer(Event event, EventMemo memo,
+            MessageGenerator generator, ProjectConfig config,
+            DeliveryTrace trace)
+    {
+        // Without a window nothing of the project is ever held, so there
+        // is nothing to flush either
+        if (config.getDebounceWindow() <= 0 ||
+                !(event instanceof ChangeEvent))
+        {
+            return false;
+        }
+
+        int change;
+        change = memo.get(((ChangeEvent) event).change).number;
+
+        boolean debounced;
+        debounced = event instanceof PatchSetCreatedEvent ||
+                event instanceof CommentAddedEvent;
+
+        if (!debounced)
+        {
+            flush(change);
+            return false;
+        }
+
+        Pending evicted;
+        evicted = null;
+
+        synchronized (this)
+        {
+            if (executor == null)
+            {
+                return false;
+            }
+
+            Pending entry;
+            entry = pending.get(change);
+
+            if (entry == null)
+            {
+                if (pending.size() >= globalConfig.getDebounceMaxPending())
+                {
+                    evicted = removeEldest();
+                }
+
+                entry = new Pending(change,
+                        MessageGeneratorFactory.newDebouncedInstance(config,
+                                headerCache),
+                        config, trace);
+                entry.future = executor.schedule(entry,
+                        config.getDebounceWindow(), TimeUnit.MILLISECONDS);
+
+                pending.put(change, entry);
+            }
+
+            if (event instanceof PatchSetCreatedEvent)
+            {
+                entry.generator.add((PatchSetCreatedEvent) event, memo,
+                        generator);
+            }
+            else
+            {
+                entry.generator.add((CommentAddedEvent) event, memo,
+                        generator);
+            }
+        }
+
+        received.incrementAndGet();
+
+        if (evicted != null)
+        {
+            deliver(evicted);
+        }
+
+        return true;
+    }
+
+    /**
+     * Publishes the held message for a change, if any, right away.
+     *
+     * @param change The change number.
+     */
+    public void flush(int change)
+    {
+        Pending entry;
+        synchronized (this)
+        {
+            entry = pending.remove(change);
+        }
+
+        if (entry != null)
+        {
+            entry.future.cancel(false);
+            deliver(entry);
+        }
+    }
+
+    private Pending removeEldest()
+    {
+        Iterator<Pending> iterator;
+        iterator = pending.values().iterator();
+
+        Pending eldest;
+        eldest = iterator.next();
+        iterator.remove();
+
+        eldest.future.cancel(false);
+
+        return eldest;
+    }
+
+    private void deliver(Pending entry)
+    {
+        try
+        {
+            delivered.incrementAndGet();
+
+            digester.deliver(entry.generator, entry.config, entry.trace);
+        }
+        catch (Throwable e)
+        {
+            LOGGER.error("Publishing debounced message for change " +
+                    entry.change + " failed", e);
+        }
+    }
+
+    /**
+     * Gets the number of events that were held back.
+     *
+     * @return The number of events received.
+     */
+    public long getReceived()
+    {
+        return received.get();
+    }
+
+    /**
+     * Gets the number of messages published for the held back events.
+     *
+     * @return The number of messages delivered.
+     */
+    public long getDelivered()
+    {
+        return delivered.get();
+    }
+
+    private class Pending implements Runnable
+    {
+        private final int change;
+        private final DebouncedMessageGenerator generator;
+        private final ProjectConfig config;
+        private final DeliveryTrace trace;
+        private ScheduledFuture<?> future;
+
+        Pending(int change, DebouncedMessageGenerator generator,
+                ProjectConfig config, DeliveryTrace trace)
+        {
+            this.change = change;
+            this.generator = generator;
+            this.config = config;
+            this.trace = trace;
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (ChangeDebouncer.this)
+            {
+                // A later entry for the same change keeps its own timer
+                if (pending.get(change) != this)
+                {
+                    return;
+                }
+
+                pending.remove(change);
+            }
+
+            deliver(this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Slack debounce of change " + change;
+        }
+    }
+}
@@ -0,0 +1,366 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.DigestMessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Delivers messages to Slack. For projects with a digest interval the texts
+ * of the messages are buffered per webhook and channel, and published as one
+ * combined message once the interval has elapsed or the maximum number of
+ * events has been buffered, whichever comes first.
+ */
+@Singleton
+public class ChannelDigester implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ChannelDigester.class);
+
+    private final GlobalConfig globalConfig;
+    private final WorkQueue workQueue;
+    private final MessageDispatcher dispatcher;
+    private final Timer0 renderLatency;
+
+    // Webhook, channel and username to the texts buffered for them
+    private final Map<String, Digest> digests;
+
+    private final AtomicLong received;
+    private final AtomicLong published;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new ChannelDigester instance.
+     *
+     * @param globalConfig The GlobalConfig holding the message size limit.
+     * @param workQueue The Gerrit WorkQueue to schedule digests on.
+     * @param dispatcher The dispatcher used to deliver messages.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public ChannelDigester(GlobalConfig globalConfig, WorkQueue workQueue,
+            MessageDispatcher dispatcher, MetricMaker metricMaker)
+    {
+        this.globalConfig = globalConfig;
+        this.workQueue = workQueue;
+        this.dispatcher = dispatcher;
+
+        renderLatency = metricMaker.newTimer("latency/render",
+                new Description("Time to render a message")
+                        .setCumulative()
+                        .setUnit(Description.Units.MILLISECONDS));
+
+        digests = new HashMap<>();
+        received = new AtomicLong();
+        published = new AtomicLong();
+    }
+
+    @Override
+    public void start()
+    {
+        start(workQueue.createQueue(1, "Slack-Integration-Digest"));
+    }
+
+    synchronized void start(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+    }
+
+    @Override
+    public void stop()
+    {
+        ScheduledExecutorService stopped;
+        List<Digest> remaining;
+
+        synchronized (this)
+        {
+            stopped = executor;
+            executor = null;
+
+            remaining = new ArrayList<>(digests.values());
+            digests.clear();
+        }
+
+        // Publish whatever is still buffered rather than losing it
+        for (Digest digest : remaining)
+        {
+            digest.future.cancel(false);
+            publish(digest);
+        }
+
+        if (stopped != null)
+        {
+            stopped.shutdownNow();
+
+            if (stopped instanceof WorkQueue.Executor)
+            {
+                ((WorkQueue.Executor) stopped).unregisterWorkQueue();
+            }
+        }
+    }
+
+    /**
+     * Delivers the message of the generator, either straight away or, when
+     * the project has a digest interval, as part of the channel's digest.
+     *
+     * @param generator The MessageGenerator of the message to deliver.
+     * @param config The ProjectConfig instance for the message's project.
+     * @param trace The trace of the message. Buffered messages are traced
+     *              as part of their digest instead.
+     */
+    public void deliver(MessageGenerator generator, ProjectConfig config,
+            DeliveryTrace trace)
+    {
+        long start;
+        start = System.nanoTime();
+
+        if (config.getDigestInterval() <= 0)
+        {
+            String message;
+            message = generator.generate();
+
+            long elapsed;
+            elapsed = System.nanoTime() - start;
+
+            renderLatency.record(elapsed, TimeUnit.NANOSECONDS);
+            trace.record(DeliveryTrace.Stage.RENDER, elapsed);
+
+            dispatcher.dispatch(message, config, generator.getPriority(),
+                    generator.getChangeNumber(), trace);
+            return;
+        }
+
+        String text;
+        text = generator.generateText();
+
+        renderLatency.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+
+        String key;
+        key = config.getWebhookUrl() + "\n" + config.getChannel() + "\n" +
+                config.getUsername();
+
+        Digest full;
+        full = null;
+
+        synchronized (this)
+        {
+            if (executor == null)
+            {
+                full = new Digest(key, config);
+                full.add(text, generator.getPriority());
+            }
+            else
+            {
+                Digest digest;
+                digest = digests.get(key);
+
+                if (digest == null)
+                {
+                    digest = new Digest(key, config);
+                    digest.future = executor.schedule(digest,
+                            config.getDigestInterval(),
+                            TimeUnit.MILLISECONDS);
+
+                    digests.put(key, digest);
+                }
+
+                digest.add(text, generator.getPriority());
+
+                if (digest.texts.size() >= config.getDigestMaxEvents())
+                {
+                    digests.remove(key);
+                    digest.future.cancel(false);
+
+                    full = digest;
+                }
+            }
+        }
+
+        received.incrementAndGet();
+
+        if (full != null)
+        {
+            publish(full);
+        }
+    }
+
+    /**
+     * Publishes the buffered texts as few messages as the maximum message
+     * size allows, splitting between entries. An entry that does not fit
+     * even on its own is truncated.
+     *
+     * @param digest The digest to publish.
+     */
+    private void publish(Digest digest)
+    {
+        int maxSize;
+        maxSize = globalConfig.getDigestMaxMessageSize();
+
+        DigestMessageGenerator generator;
+        generator = MessageGeneratorFactory.newDigestInstance(digest.config);
+
+        for (String entry : digest.texts)
+        {
+            String text;
+            text = DigestMessageGenerator.truncate(entry, maxSize);
+
+            if (generator.getEntryCount() > 0 &&
+                    generator.lengthWith(text) > maxSize)
+            {
+                publish(generator, digest);
+
+                generator = MessageGeneratorFactory.newDigestInstance(
+                        digest.config);
+            }
+
+            generator.add(text);
+        }
+
+        if (generator.shouldPublish())
+        {
+            publish(generator, digest);
+        }
+    }
+
+    private void publish(DigestMessageGenerator generator, Digest digest)
+    {
+        try
+        {
+            published.incrementAndGet();
+
+            DeliveryTrace trace;
+            trace = new DeliveryTrace("digest");
+
+            long start;
+            start = System.nanoTime();
+
+            String message;
+            message = generator.generate();
+
+            trace.record(DeliveryTrace.Stage.RENDER,
+                    System.nanoTime() - start);
+
+            dispatcher.dispatch(message, digest.config, digest.priority,
+                    trace);
+        }
+        catch (Throwable e)
+        {
+            LOGGER.error("Publishing digest of " + generator.getEntryCount() +
+                    " messages failed", e);
+        }
+    }
+
+    /**
+     * Gets the number of messages that were buffered into digests.
+     *
+     * @return The number of messages received.
+     */
+    public long getReceived()
+    {
+        return received.get();
+    }
+
+    /**
+     * Gets the number of digest messages published.
+     *
+     * @return The number of digests published.
+     */
+    public long getPublished()
+    {
+        return published.get();
+    }
+
+    private class Digest implements Runnable
+    {
+        private final String key;
+        private final ProjectConfig config;
+        private final List<String> texts;
+        private Priority priority;
+        private ScheduledFuture<?> future;
+
+        Digest(String key, ProjectConfig config)
+        {
+            this.key = key;
+            this.config = config;
+
+            texts = new ArrayList<>();
+        }
+
+        // A digest is as urgent as its most urgent message
+        void add(String text, Priority textPriority)
+        {
+            texts.add(text);
+
+            if (textPriority != null)
+            {
+                priority = textPriority.max(priority);
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            synchronized (ChannelDigester.this)
+            {
+                // A later digest for the same channel keeps its own timer
+                if (digests.get(key) != this)
+                {
+                    return;
+                }
+
+                digests.remove(key);
+            }
+
+            publish(this);
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Slack digest of " + texts.size() + " messages";
+        }
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.cisco.gerrit.plugins.slack.util.RecentEventIndex;
+import com.google.common.base.Ticker;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recognizes events that have already been received, as happens across
+ * plugin reloads, with replication or with multi-primary Gerrit. An event is
+ * identified by its type, change number, patch set, account and creation
+ * time; the identities of recent events are kept in a fixed memory index.
+ */
+@Singleton
+public class EventDeduplicator
+{
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final RecentEventIndex index;
+    private final Ticker ticker;
+    private final AtomicLong duplicates;
+
+    /**
+     * Creates a new EventDeduplicator instance.
+     *
+     * @param config The GlobalConfig holding the deduplication settings.
+     */
+    @Inject
+    public EventDeduplicator(GlobalConfig config)
+    {
+        this(config, Ticker.systemTicker());
+    }
+
+    EventDeduplicator(GlobalConfig config, Ticker ticker)
+    {
+        this.ticker = ticker;
+
+        long window;
+        window = TimeUnit.MILLISECONDS.toNanos(config.getDedupWindow());
+
+        index = window > 0
+                ? new RecentEventIndex(config.getDedupMaxEvents(), window)
+                : null;
+        duplicates = new AtomicLong();
+    }
+
+    /**
+     * Whether the event has already been received within the deduplication
+     * window. The event is remembered if it has not.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @return true, if the event is a duplicate; otherwise false
+     */
+    public boolean isDuplicate(Event event, EventMemo memo)
+    {
+        if (index == null || !(event instanceof ChangeEvent))
+        {
+            return false;
+        }
+
+        long fingerprint;
+        fingerprint = fingerprint((ChangeEvent) event, memo);
+
+        boolean added;
+        synchronized (index)
+        {
+            added = index.add(fingerprint, ticker.read());
+        }
+
+        if (!added)
+        {
+            duplicates.incrementAndGet();
+        }
+
+        return !added;
+    }
+
+    /**
+     * Gets the number of duplicate events recognized.
+     *
+     * @return The number of duplicates.
+     */
+    public long getDuplicates()
+    {
+        return duplicates.get();
+    }
+
+    private static long fingerprint(ChangeEvent event, EventMemo memo)
+    {
+        Hasher hasher;
+        hasher = HASH_FUNCTION.newHasher();
+
+        hasher.putUnencodedChars(String.valueOf(event.getType()));
+        hasher.putLong(event.eventCreatedOn);
+
+        ChangeAttribute change;
+        change = memo.get(event.change);
+        hasher.putInt(change == null ? 0 : change.number);
+
+        PatchSetAttribute patchSet;
+        patchSet = event instanceof PatchSetEvent
+                ? memo.get(((PatchSetEvent) event).patchSet)
+                : null;
+        hasher.putInt(patchSet == null ? 0 : patchSet.number);
+
+        // Two comments by one author can share a creation second
+        if (event instanceof CommentAddedEvent &&
+                ((CommentAddedEvent) event).comment != null)
+        {
+            hasher.putString(((CommentAddedEvent) event).comment,
+                    StandardCharsets.UTF_8);
+        }
+
+        AccountAttribute account;
+        account = MessageGeneratorFactory.getActor(event, memo);
+
+        if (account != null)
+        {
+            hasher.putUnencodedChars(String.valueOf(account.username));
+            hasher.putUnencodedChars(String.valueOf(account.email));
+        }
+
+        return hasher.hash().asLong();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.google.gerrit.metrics.Counter0;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The metrics of event processing, from receiving an event to handing its
+ * message over for delivery, registered with the Gerrit metrics system.
+ */
+@Singleton
+public class EventMetrics
+{
+    /**
+     * The reasons an event's message is not published.
+     */
+    public enum Rejection
+    {
+        DUPLICATE,
+        UNSUPPORTED,
+        DISABLED,
+        FILTERED,
+        SHED,
+        OTHER_NODE,
+        STORM
+    }
+
+    /**
+     * The ways an event supplier materialization is avoided.
+     */
+    public enum Avoidance
+    {
+        REUSED,
+        SKIPPED
+    }
+
+    private final Counter1<String> received;
+    private final Counter1<String> published;
+    private final Counter1<Rejection> rejected;
+    private final Counter0 suppliersMaterialized;
+    private final Counter1<Avoidance> suppliersAvoided;
+    private final Timer0 configLatency;
+
+    /**
+     * Creates a new EventMetrics instance.
+     *
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public EventMetrics(MetricMaker metricMaker)
+    {
+        received = metricMaker.newCounter("events/received",
+                new Description("Events received from Gerrit")
+                        .setRate()
+                        .setUnit("events"),
+                Field.ofString("type"));
+
+        published = metricMaker.newCounter("events/published",
+                new Description("Events whose message was handed over for " +
+                        "delivery")
+                        .setRate()
+                        .setUnit("events"),
+                Field.ofString("type"));
+
+        rejected = metricMaker.newCounter("events/rejected",
+                new Description("Events whose message was not published")
+                        .setRate()
+                        .setUnit("events"),
+                Field.ofEnum(Rejection.class, "reason"));
+
+        suppliersMaterialized = metricMaker.newCounter(
+                "suppliers/materialized",
+                new Description("Event suppliers materialized, which may " +
+                        "load a change or account")
+                        .setRate()
+                        .setUnit("suppliers"));
+
+        suppliersAvoided = metricMaker.newCounter("suppliers/avoided",
+                new Description("Event supplier materializations avoided")
+                        .setRate()
+                        .setUnit("suppliers"),
+                Field.ofEnum(Avoidance.class, "reason"));
+
+        configLatency = metricMaker.newTimer("latency/config",
+                new Description("Time to resolve the project configuration " +
+                        "of an event")
+                        .setCumulative()
+                        .setUnit(Description.Units.MILLISECONDS));
+    }
+
+    public void recordReceived(String type)
+    {
+        received.increment(type);
+    }
+
+    public void recordPublished(String type)
+    {
+        published.increment(type);
+    }
+
+    public void recordRejected(Rejection reason)
+    {
+        rejected.increment(reason);
+    }
+
+    public void recordSupplierMaterialized()
+    {
+        suppliersMaterialized.increment();
+    }
+
+    public void recordSupplierAvoided(Avoidance reason)
+    {
+        suppliersAvoided.increment(reason);
+    }
+
+    public void recordConfigLatency(long nanos)
+    {
+        configLatency.record(nanos, TimeUnit.NANOSECONDS);
+    }
+}
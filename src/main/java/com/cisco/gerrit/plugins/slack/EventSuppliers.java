@@ -0,0 +1,157 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.Event;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.lang.reflect.Field;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Makes sure the suppliers of an event, which in Gerrit may build the
+ * change, patch set and account attributes from the index and database,
+ * are materialized at most once and only when needed. The event is left as
+ * Gerrit handed it out; its suppliers are read through an {@link EventMemo}
+ * that is passed along the pipeline with the event and counts
+ * materializations, as well as those avoided: repeated calls served from
+ * memory and suppliers of rejected events that were never called.
+ */
+@Singleton
+public class EventSuppliers
+{
+    private final EventMetrics metrics;
+
+    // The public supplier fields of each event class, found once per class
+    private final ConcurrentMap<Class<?>, Field[]> supplierFields;
+
+    private final AtomicLong materialized;
+    private final AtomicLong reused;
+    private final AtomicLong skipped;
+
+    /**
+     * Creates a new EventSuppliers instance.
+     *
+     * @param metrics The EventMetrics to count materializations with.
+     */
+    @Inject
+    public EventSuppliers(EventMetrics metrics)
+    {
+        this.metrics = metrics;
+
+        supplierFields = new ConcurrentHashMap<>();
+
+        materialized = new AtomicLong();
+        reused = new AtomicLong();
+        skipped = new AtomicLong();
+    }
+
+    /**
+     * Creates the memo the suppliers of the event are read through.
+     *
+     * @param event The event.
+     * @return The memo of the event.
+     */
+    public EventMemo memoize(Event event)
+    {
+        Field[] fields;
+        fields = supplierFields.get(event.getClass());
+
+        if (fields == null)
+        {
+            fields = EventMemo.supplierFields(event.getClass());
+            supplierFields.put(event.getClass(), fields);
+        }
+
+        return new CountingMemo(event, fields);
+    }
+
+    /**
+     * Counts the suppliers of a rejected event that were never
+     * materialized.
+     *
+     * @param memo The memo of the event.
+     */
+    public void recordRejected(EventMemo memo)
+    {
+        int unmaterialized;
+        unmaterialized = memo.getUnmaterialized();
+
+        for (int i = 0; i < unmaterialized; i++)
+        {
+            skipped.incrementAndGet();
+            metrics.recordSupplierAvoided(EventMetrics.Avoidance.SKIPPED);
+        }
+    }
+
+    /**
+     * Gets the number of suppliers materialized.
+     *
+     * @return The number of materializations.
+     */
+    public long getMaterialized()
+    {
+        return materialized.get();
+    }
+
+    /**
+     * Gets the number of supplier calls served from memory.
+     *
+     * @return The number of repeated calls.
+     */
+    public long getReused()
+    {
+        return reused.get();
+    }
+
+    /**
+     * Gets the number of suppliers of rejected events never materialized.
+     *
+     * @return The number of skipped suppliers.
+     */
+    public long getSkipped()
+    {
+        return skipped.get();
+    }
+
+    private final class CountingMemo extends EventMemo
+    {
+        CountingMemo(Event event, Field[] fields)
+        {
+            super(event, fields);
+        }
+
+        @Override
+        protected void onMaterialized()
+        {
+            materialized.incrementAndGet();
+            metrics.recordSupplierMaterialized();
+        }
+
+        @Override
+        protected void onReused()
+        {
+            reused.incrementAndGet();
+            metrics.recordSupplierAvoided(EventMetrics.Avoidance.REUSED);
+        }
+    }
+}
@@ -0,0 +1,386 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.DigestMessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Skips low value messages, such as comments without votes, while delivery
+ * is falling behind. Shedding starts once the delivery queue depth or lag
+ * reaches its threshold and stops once both have fallen below half of their
+ * thresholds, so it does not flap. Skipped messages are counted per project
+ * and event type and, optionally, summarized in one message per channel once
+ * delivery has recovered. The thresholds can be changed while the plugin is
+ * running; such changes last until the plugin is reloaded.
+ */
+@Singleton
+public class LoadShedder implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(LoadShedder.class);
+
+    /**
+     * The interval, in milliseconds, at which recovery is checked for while
+     * no events arrive.
+     */
+    private static final long CHECK_INTERVAL = 1000L;
+
+    private final GlobalConfig globalConfig;
+    private final WorkQueue workQueue;
+    private final MessageDispatcher dispatcher;
+
+    // Project and event type to the number of messages skipped
+    private final ConcurrentMap<String, AtomicLong> shedCounts;
+
+    // Webhook, channel and username to the messages skipped since shedding
+    // started, for the summary
+    private final Map<String, Skipped> skipped;
+
+    private final AtomicLong shed;
+
+    private boolean shedding;
+
+    // The thresholds, 0 where turned off
+    private int queueDepth;
+    private long lag;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new LoadShedder instance.
+     *
+     * @param globalConfig The GlobalConfig holding the shedding thresholds.
+     * @param workQueue The Gerrit WorkQueue to check for recovery on.
+     * @param dispatcher The dispatcher whose backlog is watched.
+     */
+    @Inject
+    public LoadShedder(GlobalConfig globalConfig, WorkQueue workQueue,
+            MessageDispatcher dispatcher)
+    {
+        this.globalConfig = globalConfig;
+        this.workQueue = workQueue;
+        this.dispatcher = dispatcher;
+
+        shedCounts = new ConcurrentHashMap<>();
+        skipped = new HashMap<>();
+        shed = new AtomicLong();
+
+        queueDepth = globalConfig.getShedQueueDepth();
+        lag = globalConfig.getShedLag();
+    }
+
+    @Override
+    public void start()
+    {
+        start(workQueue.createQueue(1, "Slack-Integration-Load-Shedding"));
+    }
+
+    void start(ScheduledExecutorService executor)
+    {
+        this.executor = executor;
+        this.executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                isOverloaded();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Slack load shedding check";
+            }
+        }, CHECK_INTERVAL, CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+
+            if (executor instanceof WorkQueue.Executor)
+            {
+                ((WorkQueue.Executor) executor).unregisterWorkQueue();
+            }
+
+            executor = null;
+        }
+
+        publishSummaries();
+    }
+
+    /**
+     * Decides whether the message of the generator is skipped, because it is
+     * of low value and delivery is falling behind.
+     *
+     * @param event The event the message was generated for.
+     * @param generator The MessageGenerator of the message.
+     * @param config The ProjectConfig instance for the event's project.
+     * @return true, if the message is skipped; otherwise false
+     */
+    public boolean shed(Event event, MessageGenerator generator,
+            ProjectConfig config)
+    {
+        // Whether a message is sheddable may depend on the event's
+        // suppliers, so the queue is checked first
+        if (!isOverloaded() || !generator.isSheddable())
+        {
+            return false;
+        }
+
+        shed.incrementAndGet();
+
+        String key;
+        key = config.getProject() + "\n" + event.getType();
+
+        AtomicLong count;
+        count = shedCounts.get(key);
+
+        if (count == null)
+        {
+            shedCounts.putIfAbsent(key, new AtomicLong());
+            count = shedCounts.get(key);
+        }
+
+        count.incrementAndGet();
+
+        if (globalConfig.isShedSummaryEnabled())
+        {
+            String channel;
+            channel = config.getWebhookUrl() + "\n" + config.getChannel() +
+                    "\n" + config.getUsername();
+
+            synchronized (this)
+            {
+                Skipped channelSkipped;
+                channelSkipped = skipped.get(channel);
+
+                if (channelSkipped == null)
+                {
+                    channelSkipped = new Skipped(config);
+                    skipped.put(channel, channelSkipped);
+                }
+
+                channelSkipped.count++;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Checks the delivery backlog against the thresholds, starting or
+     * stopping shedding as needed.
+     *
+     * @return true, if low value messages are being shed; otherwise false
+     */
+    boolean isOverloaded()
+    {
+        int depth;
+        long lag;
+
+        synchronized (this)
+        {
+            depth = queueDepth;
+            lag = this.lag;
+        }
+
+        int queued;
+        queued = dispatcher.getQueued();
+
+        long currentLag;
+        currentLag = dispatcher.getLag();
+
+        boolean recovered;
+
+        synchronized (this)
+        {
+            if (!shedding)
+            {
+                shedding = (depth > 0 && queued >= depth) ||
+                        (lag > 0 && currentLag >= lag);
+
+                if (shedding)
+                {
+                    LOGGER.warn("Delivery is falling behind with " + queued +
+                            " queued messages and " + currentLag +
+                            " ms lag, skipping low value messages");
+                }
+
+                return shedding;
+            }
+
+            shedding = (depth > 0 && queued >= depth / 2) ||
+                    (lag > 0 && currentLag >= lag / 2);
+
+            recovered = !shedding;
+        }
+
+        if (recovered)
+        {
+            LOGGER.info("Delivery has recovered, no longer skipping low " +
+                    "value messages");
+
+            publishSummaries();
+        }
+
+        return !recovered;
+    }
+
+    private void publishSummaries()
+    {
+        List<Skipped> summaries;
+
+        synchronized (this)
+        {
+            summaries = new ArrayList<>(skipped.values());
+            skipped.clear();
+        }
+
+        for (Skipped summary : summaries)
+        {
+            DigestMessageGenerator generator;
+            generator = MessageGeneratorFactory.newDigestInstance(
+                    summary.config);
+            generator.add(summary.count + (summary.count == 1
+                    ? " notification" : " notifications") +
+                    " skipped due to load");
+
+            dispatcher.dispatch(generator.generate(), summary.config,
+                    Priority.NORMAL, new DeliveryTrace("load-summary"));
+        }
+    }
+
+    public synchronized int getQueueDepth()
+    {
+        return queueDepth;
+    }
+
+    /**
+     * Changes the queue depth at which shedding starts.
+     *
+     * @param queueDepth The number of queued messages, 0 to not shed on
+     *                   queue depth.
+     */
+    public synchronized void setQueueDepth(int queueDepth)
+    {
+        this.queueDepth = queueDepth;
+    }
+
+    public synchronized long getLag()
+    {
+        return lag;
+    }
+
+    /**
+     * Changes the delivery lag at which shedding starts.
+     *
+     * @param lag The lag in milliseconds, 0 to not shed on lag.
+     */
+    public synchronized void setLag(long lag)
+    {
+        this.lag = lag;
+    }
+
+    /**
+     * Gets the number of messages skipped.
+     *
+     * @return The number of messages shed.
+     */
+    public long getShed()
+    {
+        return shed.get();
+    }
+
+    /**
+     * Gets the number of messages skipped per project and event type.
+     *
+     * @return The counts, ordered by project and event type.
+     */
+    public List<ShedSnapshot> getSnapshots()
+    {
+        Map<String, Long> counts;
+        counts = new TreeMap<>();
+
+        for (Map.Entry<String, AtomicLong> entry : shedCounts.entrySet())
+        {
+            counts.put(entry.getKey(), entry.getValue().get());
+        }
+
+        List<ShedSnapshot> snapshots;
+        snapshots = new ArrayList<>(counts.size());
+
+        for (Map.Entry<String, Long> entry : counts.entrySet())
+        {
+            int separator;
+            separator = entry.getKey().indexOf('\n');
+
+            ShedSnapshot snapshot;
+            snapshot = new ShedSnapshot();
+            snapshot.project = entry.getKey().substring(0, separator);
+            snapshot.type = entry.getKey().substring(separator + 1);
+            snapshot.shed = entry.getValue();
+
+            snapshots.add(snapshot);
+        }
+
+        return snapshots;
+    }
+
+    private static class Skipped
+    {
+        private final ProjectConfig config;
+        private int count;
+
+        Skipped(ProjectConfig config)
+        {
+            this.config = config;
+        }
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.admin.GetDelivery;
+import com.cisco.gerrit.plugins.slack.admin.PostDelivery;
+import com.cisco.gerrit.plugins.slack.client.ChangeThreads;
+import com.cisco.gerrit.plugins.slack.client.ConnectionWarmer;
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.stats.GetStats;
+import com.google.gerrit.common.EventListener;
+import com.google.gerrit.extensions.registration.DynamicSet;
+import com.google.gerrit.extensions.restapi.RestApiModule;
+import com.google.gerrit.lifecycle.LifecycleModule;
+import com.google.gerrit.server.config.ConfigResource;
+
+/**
+ * The plugin's Guice module, registering the event listener, the background
+ * services it relies on and the REST endpoints.
+ */
+public class Module extends LifecycleModule
+{
+    @Override
+    protected void configure()
+    {
+        DynamicSet.bind(binder(), EventListener.class)
+                .to(PublishEventListener.class);
+
+        listener().to(NodeCoordinator.class);
+        listener().to(ConnectionWarmer.class);
+        listener().to(ChangeThreads.class);
+        listener().to(MessageDispatcher.class);
+        listener().to(LoadShedder.class);
+        listener().to(StormDetector.class);
+        listener().to(ChangeDebouncer.class);
+        listener().to(ChannelDigester.class);
+
+        install(new RestApiModule()
+        {
+            @Override
+            protected void configure()
+            {
+                get(ConfigResource.CONFIG_KIND, "stats").to(GetStats.class);
+                get(ConfigResource.CONFIG_KIND, "delivery")
+                        .to(GetDelivery.class);
+                post(ConfigResource.CONFIG_KIND, "delivery")
+                        .to(PostDelivery.class);
+            }
+        });
+    }
+}
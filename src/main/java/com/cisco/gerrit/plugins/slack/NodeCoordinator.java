@@ -0,0 +1,407 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Coordinates the nodes of a multi-primary or high availability Gerrit
+ * deployment, which all receive the same events, so that each event is
+ * published by one node only. Every node renews a lease file in a shared
+ * directory with a heartbeat; the nodes whose lease is current are live.
+ * Events are partitioned among the live nodes by rendezvous hashing of the
+ * Change-Id or the project name, so every node computes the same owner for
+ * an event without further communication, and when a node stops renewing
+ * its lease the others take over its share. A node that cannot read the
+ * shared directory publishes every event, preferring duplicates to losses.
+ */
+@Singleton
+public class NodeCoordinator implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(NodeCoordinator.class);
+
+    static final String LEASE_SUFFIX = ".lease";
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_32();
+
+    /**
+     * Reads the wall clock, as leases are compared across nodes.
+     */
+    private static final Ticker WALL_CLOCK = new Ticker()
+    {
+        @Override
+        public long read()
+        {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+    };
+
+    private final GlobalConfig config;
+    private final WorkQueue workQueue;
+    private final Ticker ticker;
+
+    private final Path leaseDir;
+    private final String nodeId;
+    private final boolean byProject;
+
+    // The live nodes, sorted, including this one
+    private volatile List<String> nodes;
+
+    private WorkQueue.Executor executor;
+
+    /**
+     * Creates a new NodeCoordinator instance.
+     *
+     * @param config The GlobalConfig holding the coordination settings.
+     * @param workQueue The Gerrit WorkQueue to schedule heartbeats on.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public NodeCoordinator(GlobalConfig config, WorkQueue workQueue,
+            MetricMaker metricMaker)
+    {
+        this(config, workQueue, metricMaker, WALL_CLOCK);
+    }
+
+    NodeCoordinator(GlobalConfig config, WorkQueue workQueue,
+            MetricMaker metricMaker, Ticker ticker)
+    {
+        this.config = config;
+        this.workQueue = workQueue;
+        this.ticker = ticker;
+
+        leaseDir = config.getHaLeaseDir().isEmpty()
+                ? null
+                : Paths.get(config.getHaLeaseDir());
+        nodeId = fileName(config.getHaNodeId().isEmpty()
+                ? hostName()
+                : config.getHaNodeId());
+        byProject = "project".equals(config.getHaPartition());
+
+        nodes = Collections.singletonList(nodeId);
+
+        metricMaker.newCallbackMetric("ha/nodes",
+                Integer.class,
+                new Description("Live nodes sharing the publishing of events")
+                        .setGauge()
+                        .setUnit("nodes"),
+                new Supplier<Integer>()
+                {
+                    @Override
+                    public Integer get()
+                    {
+                        return nodes.size();
+                    }
+                });
+    }
+
+    @Override
+    public void start()
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+
+        heartbeat();
+
+        executor = workQueue.createQueue(1, "Slack-Integration-Heartbeat");
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                heartbeat();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Slack publisher heartbeat";
+            }
+        }, config.getHaHeartbeatInterval(), config.getHaHeartbeatInterval(),
+                TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor.unregisterWorkQueue();
+            executor = null;
+        }
+
+        // Let the other nodes take over without waiting for the lease to
+        // expire
+        if (isEnabled())
+        {
+            try
+            {
+                Files.deleteIfExists(leaseDir.resolve(nodeId + LEASE_SUFFIX));
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Error releasing lease: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Whether nodes are coordinated, which requires a lease directory.
+     *
+     * @return true, if events are partitioned; otherwise false
+     */
+    public boolean isEnabled()
+    {
+        return leaseDir != null;
+    }
+
+    /**
+     * Whether this node publishes the event.
+     *
+     * @param event The event.
+     * @return true, if this node owns the event; false if another live node
+     * publishes it.
+     */
+    public boolean owns(ChangeEvent event)
+    {
+        List<String> current;
+        current = nodes;
+
+        if (current.size() == 1)
+        {
+            return true;
+        }
+
+        String key;
+        key = partitionKey(event);
+
+        return key == null || nodeId.equals(owner(current, key));
+    }
+
+    /**
+     * Renews the lease of this node and determines the live nodes from the
+     * leases in the shared directory.
+     */
+    void heartbeat()
+    {
+        long now;
+        now = TimeUnit.NANOSECONDS.toMillis(ticker.read());
+
+        List<String> live;
+        live = new ArrayList<>();
+        live.add(nodeId);
+
+        try
+        {
+            Files.createDirectories(leaseDir);
+
+            Path temp;
+            temp = leaseDir.resolve(nodeId + ".tmp");
+
+            Files.write(temp, String.valueOf(now).getBytes(
+                    StandardCharsets.UTF_8));
+            Files.move(temp, leaseDir.resolve(nodeId + LEASE_SUFFIX),
+                    StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+
+            try (DirectoryStream<Path> leases = Files.newDirectoryStream(
+                    leaseDir, "*" + LEASE_SUFFIX))
+            {
+                for (Path lease : leases)
+                {
+                    String name;
+                    name = lease.getFileName().toString();
+                    name = name.substring(0,
+                            name.length() - LEASE_SUFFIX.length());
+
+                    if (name.equals(nodeId))
+                    {
+                        continue;
+                    }
+
+                    long renewed;
+                    renewed = readLease(lease);
+
+                    // A lease that cannot be read counts as expired
+                    if (renewed >= 0 &&
+                            now - renewed < config.getHaLeaseTimeout())
+                    {
+                        live.add(name);
+                    }
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Error renewing lease, publishing all events: " +
+                    e.getMessage());
+        }
+
+        Collections.sort(live);
+
+        if (!live.equals(nodes))
+        {
+            LOGGER.info("Nodes publishing to Slack: " + live);
+        }
+
+        nodes = Collections.unmodifiableList(live);
+    }
+
+    /**
+     * Gets the live nodes.
+     *
+     * @return The sorted IDs of the live nodes, including this one.
+     */
+    public List<String> getNodes()
+    {
+        return nodes;
+    }
+
+    /**
+     * Gets the ID of this node.
+     *
+     * @return The node ID.
+     */
+    public String getNodeId()
+    {
+        return nodeId;
+    }
+
+    private String partitionKey(ChangeEvent event)
+    {
+        Change.Key changeKey;
+        changeKey = byProject ? null : event.changeKey;
+
+        if (changeKey != null)
+        {
+            return changeKey.get();
+        }
+
+        Project.NameKey project;
+        project = event.getProjectNameKey();
+
+        return project == null ? null : project.get();
+    }
+
+    /**
+     * Gets the node with the highest hash of node and key.
+     */
+    static String owner(List<String> nodes, String key)
+    {
+        String owner;
+        owner = null;
+
+        int best;
+        best = 0;
+
+        for (String node : nodes)
+        {
+            int weight;
+            weight = HASH_FUNCTION.newHasher()
+                    .putUnencodedChars(node)
+                    .putChar('\n')
+                    .putUnencodedChars(key)
+                    .hash()
+                    .asInt();
+
+            if (owner == null || weight > best)
+            {
+                owner = node;
+                best = weight;
+            }
+        }
+
+        return owner;
+    }
+
+    /**
+     * Reads the time a lease was last renewed.
+     *
+     * @param lease The lease file.
+     * @return The time in milliseconds, or -1 if the lease is being
+     * replaced or is not a valid lease.
+     */
+    private static long readLease(Path lease)
+    {
+        try
+        {
+            long renewed;
+            renewed = Long.parseLong(new String(Files.readAllBytes(lease),
+                    StandardCharsets.UTF_8).trim());
+
+            return renewed < 0 ? -1 : renewed;
+        }
+        catch (IOException | NumberFormatException e)
+        {
+            return -1;
+        }
+    }
+
+    private static String hostName()
+    {
+        try
+        {
+            return InetAddress.getLocalHost().getHostName();
+        }
+        catch (UnknownHostException e)
+        {
+            return "localhost";
+        }
+    }
+
+    private static String fileName(String id)
+    {
+        return id.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+}
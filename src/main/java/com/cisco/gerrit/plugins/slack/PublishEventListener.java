@@ -17,18 +17,20 @@
 
 package com.cisco.gerrit.plugins.slack;
 
-import com.cisco.gerrit.plugins.slack.client.WebhookClient;
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.filter.EventFilters;
+import com.cisco.gerrit.plugins.slack.message.HeaderCache;
 import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
 import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.message.UnsupportedMessageGenerator;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
 import com.google.gerrit.common.EventListener;
-import com.google.gerrit.extensions.annotations.Listen;
+import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.PluginConfigFactory;
-import com.google.gerrit.server.events.ChangeMergedEvent;
-import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.ChangeEvent;
 import com.google.gerrit.server.events.Event;
-import com.google.gerrit.server.events.PatchSetCreatedEvent;
-import com.google.gerrit.server.events.ReviewerAddedEvent;
 import com.google.inject.Inject;
 import com.google.inject.Singleton;
 import org.slf4j.Logger;
@@ -37,7 +39,6 @@ import org.slf4j.LoggerFactory;
 /**
  * Listens for Gerrit change events and publishes messages to Slack.
  */
-@Listen
 @Singleton
 public class PublishEventListener implements EventListener
 {
@@ -49,75 +50,149 @@ public class PublishEventListener implements EventListener
     @Inject
     private PluginConfigFactory configFactory;
 
+    @Inject
+    private EventMetrics metrics;
+
+    @Inject
+    private DeliveryStatistics statistics;
+
+    @Inject
+    private EventSuppliers suppliers;
+
+    @Inject
+    private NodeCoordinator coordinator;
+
+    @Inject
+    private EventFilters filters;
+
+    @Inject
+    private EventDeduplicator deduplicator;
+
+    @Inject
+    private StormDetector storms;
+
+    @Inject
+    private LoadShedder loadShedder;
+
+    @Inject
+    private ChangeCards cards;
+
+    @Inject
+    private ChangeDebouncer debouncer;
+
+    @Inject
+    private ChannelDigester digester;
+
+    @Inject
+    private HeaderCache headerCache;
+
     @Override
     public void onEvent(Event event)
     {
         try
         {
+            String type;
+            type = String.valueOf(event.getType());
+
+            metrics.recordReceived(type);
+
+            // From here on each supplier of the event is materialized at
+            // most once, by the first check that needs it; cheap checks go
+            // first
+            EventMemo memo;
+            memo = suppliers.memoize(event);
+
+            // Another node of the deployment publishes this one
+            if (event instanceof ChangeEvent &&
+                    !coordinator.owns((ChangeEvent) event))
+            {
+                reject(EventMetrics.Rejection.OTHER_NODE, memo);
+                return;
+            }
+
+            DeliveryTrace trace;
+            trace = new DeliveryTrace(type);
+
+            long start;
+            start = System.nanoTime();
+
             ProjectConfig config;
             MessageGenerator messageGenerator;
 
-            if (event instanceof PatchSetCreatedEvent)
+            // Supported events are change events, configured by their
+            // project
+            if (MessageGeneratorFactory.isSupported(event))
             {
-                PatchSetCreatedEvent patchSetCreatedEvent;
-                patchSetCreatedEvent = (PatchSetCreatedEvent) event;
-
                 config = new ProjectConfig(configFactory,
-                        patchSetCreatedEvent.change.get().project);
-
-                messageGenerator = MessageGeneratorFactory.newInstance(
-                        patchSetCreatedEvent, config);
+                        project((ChangeEvent) event, memo));
             }
-            else if (event instanceof ChangeMergedEvent)
+            else
             {
-                ChangeMergedEvent changeMergedEvent;
-                changeMergedEvent = (ChangeMergedEvent) event;
-
-                config = new ProjectConfig(configFactory,
-                        changeMergedEvent.change.get().project);
+                LOGGER.debug("Event " + event + " not currently supported");
 
-                messageGenerator = MessageGeneratorFactory.newInstance(
-                        changeMergedEvent, config);
+                config = new ProjectConfig(configFactory, ALL_PROJECTS);
             }
-            else if (event instanceof CommentAddedEvent)
-            {
-                CommentAddedEvent commentAddedEvent;
-                commentAddedEvent = (CommentAddedEvent) event;
 
-                config = new ProjectConfig(configFactory,
-                        commentAddedEvent.change.get().project);
+            messageGenerator = MessageGeneratorFactory.newInstance(event,
+                    memo, config, headerCache);
 
-                messageGenerator = MessageGeneratorFactory.newInstance(
-                        commentAddedEvent, config);
-            }
-            else if (event instanceof ReviewerAddedEvent)
+            long elapsed;
+            elapsed = System.nanoTime() - start;
+
+            metrics.recordConfigLatency(elapsed);
+            trace.record(DeliveryTrace.Stage.CONFIG, elapsed);
+
+            if (!messageGenerator.isEnabled())
             {
-                ReviewerAddedEvent reviewerAddedEvent;
-                reviewerAddedEvent = (ReviewerAddedEvent) event;
+                reject(rejection(messageGenerator, config), memo);
+                return;
+            }
 
-                config = new ProjectConfig(configFactory,
-                        reviewerAddedEvent.change.get().project);
+            start = System.nanoTime();
 
-                messageGenerator = MessageGeneratorFactory.newInstance(
-                        reviewerAddedEvent, config);
+            if (!filters.accepts((ChangeEvent) event, memo, config))
+            {
+                reject(EventMetrics.Rejection.FILTERED, memo);
+                return;
             }
-            else
+
+            if (deduplicator.isDuplicate(event, memo))
             {
-                LOGGER.debug("Event " + event + " not currently supported");
+                LOGGER.debug("Event " + event + " already received");
+                reject(EventMetrics.Rejection.DUPLICATE, memo);
+                return;
+            }
 
-                config = new ProjectConfig(configFactory, ALL_PROJECTS);
+            if (!messageGenerator.shouldPublish())
+            {
+                reject(rejection(messageGenerator, config), memo);
+                return;
+            }
 
-                messageGenerator = MessageGeneratorFactory.newInstance(
-                        event, config);
+            if (storms.summarize(event, memo, config))
+            {
+                reject(EventMetrics.Rejection.STORM, memo);
+                return;
             }
 
-            if (messageGenerator.shouldPublish())
+            if (loadShedder.shed(event, messageGenerator, config))
             {
-                WebhookClient client;
-                client = new WebhookClient();
+                reject(EventMetrics.Rejection.SHED, memo);
+                return;
+            }
+
+            trace.record(DeliveryTrace.Stage.CHANGE,
+                    System.nanoTime() - start);
 
-                client.publish(messageGenerator.generate(),
-                        config.getWebhookUrl());
+            metrics.recordPublished(type);
+            statistics.recordEvent(config.getProject());
+
+            if (!cards.offer((ChangeEvent) event, memo, messageGenerator,
+                    config, trace) &&
+                    !debouncer.offer(event, memo, messageGenerator, config,
+                            trace))
+            {
+                digester.deliver(messageGenerator, config, trace);
             }
         }
         catch (Throwable e)
@@ -125,4 +200,43 @@ public class PublishEventListener implements EventListener
             LOGGER.error("Event " + event + " processing failed", e);
         }
     }
+
+    private void reject(EventMetrics.Rejection reason, EventMemo memo)
+    {
+        metrics.recordRejected(reason);
+        suppliers.recordRejected(memo);
+    }
+
+    // The project is known without loading the change, except for events
+    // created without one
+    private static String project(ChangeEvent event, EventMemo memo)
+    {
+        Project.NameKey project;
+        project = event.getProjectNameKey();
+
+        if (project != null)
+        {
+            return project.get();
+        }
+
+        return memo.get(event.change).project;
+    }
+
+    private static EventMetrics.Rejection rejection(
+            MessageGenerator messageGenerator, ProjectConfig config)
+    {
+        if (messageGenerator instanceof UnsupportedMessageGenerator)
+        {
+            return EventMetrics.Rejection.UNSUPPORTED;
+        }
+
+        if (!config.isEnabled())
+        {
+            return EventMetrics.Rejection.DISABLED;
+        }
+
+        // Publishing is turned off for the event type, or the ignore
+        // pattern matched
+        return EventMetrics.Rejection.FILTERED;
+    }
 }
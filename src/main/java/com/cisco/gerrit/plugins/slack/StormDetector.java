@@ -0,0 +1,532 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.DigestMessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Ticker;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recognizes event storms, such as mass rebases, branch imports or scripted
+ * reviewer changes, that make a single project emit far more events than
+ * anyone can read. The events of each project are counted in a sliding
+ * window; once the count reaches the storm threshold the project switches
+ * to summary mode, in which its messages are replaced by one summary per
+ * channel and window, such as "project: 312 patch sets uploaded by 4 users
+ * in the last minute". The project switches back once its count has fallen
+ * below half of the threshold, so it does not flap.
+ */
+@Singleton
+public class StormDetector implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(StormDetector.class);
+
+    // The distinct users counted per summary, beyond which more are ignored
+    private static final int MAX_USERS = 1000;
+
+    // Event type to the singular and plural of what its events did
+    private static final Map<String, String[]> ACTIONS = actions();
+
+    private final GlobalConfig globalConfig;
+    private final WorkQueue workQueue;
+    private final MessageDispatcher dispatcher;
+    private final Ticker ticker;
+
+    // Project to its event rate and summaries
+    private final Map<String, ProjectRate> rates;
+
+    private final AtomicLong summarized;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new StormDetector instance.
+     *
+     * @param globalConfig The GlobalConfig holding the storm threshold.
+     * @param workQueue The Gerrit WorkQueue to publish summaries on.
+     * @param dispatcher The dispatcher used to deliver summaries.
+     */
+    @Inject
+    public StormDetector(GlobalConfig globalConfig, WorkQueue workQueue,
+            MessageDispatcher dispatcher)
+    {
+        this(globalConfig, workQueue, dispatcher, Ticker.systemTicker());
+    }
+
+    StormDetector(GlobalConfig globalConfig, WorkQueue workQueue,
+            MessageDispatcher dispatcher, Ticker ticker)
+    {
+        this.globalConfig = globalConfig;
+        this.workQueue = workQueue;
+        this.dispatcher = dispatcher;
+        this.ticker = ticker;
+
+        rates = new HashMap<>();
+        summarized = new AtomicLong();
+    }
+
+    @Override
+    public void start()
+    {
+        if (globalConfig.getStormThreshold() > 0)
+        {
+            start(workQueue.createQueue(1, "Slack-Integration-Storm"));
+        }
+    }
+
+    void start(ScheduledExecutorService executor)
+    {
+        long window;
+        window = globalConfig.getStormWindow();
+
+        this.executor = executor;
+        this.executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                publishSummaries();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Slack event storm summaries";
+            }
+        }, window, window, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+
+            if (executor instanceof WorkQueue.Executor)
+            {
+                ((WorkQueue.Executor) executor).unregisterWorkQueue();
+            }
+
+            executor = null;
+        }
+
+        publishSummaries();
+    }
+
+    /**
+     * Counts the event towards the rate of its project and decides whether
+     * its message is replaced by the project's summary, because the project
+     * is in an event storm.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param config The ProjectConfig instance for the event's project.
+     * @return true, if the event is summarized rather than published;
+     * otherwise false
+     */
+    public boolean summarize(Event event, EventMemo memo,
+            ProjectConfig config)
+    {
+        int threshold;
+        threshold = globalConfig.getStormThreshold();
+
+        if (threshold <= 0)
+        {
+            return false;
+        }
+
+        long window;
+        window = TimeUnit.MILLISECONDS.toNanos(globalConfig.getStormWindow());
+
+        long now;
+        now = ticker.read();
+
+        String project;
+        project = config.getProject();
+
+        synchronized (this)
+        {
+            ProjectRate rate;
+            rate = rates.get(project);
+
+            if (rate == null)
+            {
+                rate = new ProjectRate(now);
+                rates.put(project, rate);
+            }
+
+            rate.add(now, window);
+
+            if (!rate.storming)
+            {
+                rate.storming = rate.estimate(now, window) >= threshold;
+
+                if (!rate.storming)
+                {
+                    return false;
+                }
+
+                LOGGER.warn("Project " + project + " is emitting " +
+                        threshold + " or more events per " + describe(
+                                globalConfig.getStormWindow()) +
+                        ", summarizing its notifications");
+            }
+        }
+
+        // The actor may have to be loaded, so outside the lock
+        AccountAttribute actor;
+        actor = MessageGeneratorFactory.getActor(event, memo);
+
+        String user;
+        user = actor == null ? null : actor.username != null
+                ? actor.username
+                : actor.email;
+
+        String channel;
+        channel = config.getWebhookUrl() + "\n" + config.getChannel() +
+                "\n" + config.getUsername();
+
+        synchronized (this)
+        {
+            ProjectRate rate;
+            rate = rates.get(project);
+
+            Summary summary;
+            summary = rate.summaries.get(channel);
+
+            if (summary == null)
+            {
+                summary = new Summary(config);
+                rate.summaries.put(channel, summary);
+            }
+
+            summary.add(String.valueOf(event.getType()), user);
+        }
+
+        summarized.incrementAndGet();
+
+        return true;
+    }
+
+    /**
+     * Publishes the summaries of the past window and switches projects
+     * whose storm has subsided back to publishing every message.
+     */
+    void publishSummaries()
+    {
+        long window;
+        window = TimeUnit.MILLISECONDS.toNanos(globalConfig.getStormWindow());
+
+        long now;
+        now = ticker.read();
+
+        List<Summary> due;
+        due = new ArrayList<>();
+
+        synchronized (this)
+        {
+            Iterator<Map.Entry<String, ProjectRate>> iterator;
+            iterator = rates.entrySet().iterator();
+
+            while (iterator.hasNext())
+            {
+                Map.Entry<String, ProjectRate> entry;
+                entry = iterator.next();
+
+                ProjectRate rate;
+                rate = entry.getValue();
+
+                due.addAll(rate.summaries.values());
+                rate.summaries.clear();
+
+                double estimate;
+                estimate = rate.estimate(now, window);
+
+                if (rate.storming &&
+                        estimate < globalConfig.getStormThreshold() / 2.0)
+                {
+                    rate.storming = false;
+
+                    LOGGER.info("Event storm of project " + entry.getKey() +
+                            " has subsided, publishing its notifications " +
+                            "again");
+                }
+
+                if (!rate.storming && estimate == 0)
+                {
+                    iterator.remove();
+                }
+            }
+        }
+
+        String period;
+        period = describe(globalConfig.getStormWindow());
+
+        for (Summary summary : due)
+        {
+            try
+            {
+                DigestMessageGenerator generator;
+                generator = MessageGeneratorFactory.newDigestInstance(
+                        summary.config);
+                generator.add(summary.describe(period));
+
+                dispatcher.dispatch(generator.generate(), summary.config,
+                        Priority.NORMAL, new DeliveryTrace("storm-summary"));
+            }
+            catch (Throwable e)
+            {
+                LOGGER.error("Publishing event storm summary of project " +
+                        summary.config.getProject() + " failed", e);
+            }
+        }
+    }
+
+    /**
+     * Whether the project is in summary mode.
+     *
+     * @param project The project name.
+     * @return true, if the project's messages are being summarized
+     */
+    public synchronized boolean isStorming(String project)
+    {
+        ProjectRate rate;
+        rate = rates.get(project);
+
+        return rate != null && rate.storming;
+    }
+
+    /**
+     * Gets the number of messages replaced by summaries.
+     *
+     * @return The number of messages summarized.
+     */
+    public long getSummarized()
+    {
+        return summarized.get();
+    }
+
+    // "minute", "5 minutes" or "90 seconds"
+    private static String describe(long window)
+    {
+        long minutes;
+        minutes = TimeUnit.MILLISECONDS.toMinutes(window);
+
+        if (window % 60000 == 0)
+        {
+            return minutes == 1 ? "minute" : minutes + " minutes";
+        }
+
+        long seconds;
+        seconds = TimeUnit.MILLISECONDS.toSeconds(window);
+
+        return seconds == 1 ? "second" : seconds + " seconds";
+    }
+
+    private static Map<String, String[]> actions()
+    {
+        Map<String, String[]> actions;
+        actions = new HashMap<>();
+
+        actions.put("patchset-created",
+                new String[] {"patch set uploaded", "patch sets uploaded"});
+        actions.put("draft-published",
+                new String[] {"draft published", "drafts published"});
+        actions.put("change-merged",
+                new String[] {"change merged", "changes merged"});
+        actions.put("change-abandoned",
+                new String[] {"change abandoned", "changes abandoned"});
+        actions.put("change-restored",
+                new String[] {"change restored", "changes restored"});
+        actions.put("comment-added",
+                new String[] {"comment added", "comments added"});
+        actions.put("reviewer-added",
+                new String[] {"reviewer added", "reviewers added"});
+        actions.put("reviewer-deleted",
+                new String[] {"reviewer removed", "reviewers removed"});
+
+        return actions;
+    }
+
+    /**
+     * Counts events in a sliding window, estimated from the counts of the
+     * current and the previous fixed window, the latter weighted by how
+     * much of it the sliding window still covers.
+     */
+    private static class ProjectRate
+    {
+        private final Map<String, Summary> summaries;
+        private long windowStart;
+        private int current;
+        private int previous;
+        private boolean storming;
+
+        ProjectRate(long now)
+        {
+            windowStart = now;
+            summaries = new LinkedHashMap<>();
+        }
+
+        void add(long now, long window)
+        {
+            roll(now, window);
+            current++;
+        }
+
+        double estimate(long now, long window)
+        {
+            roll(now, window);
+
+            double covered;
+            covered = 1 - (double) (now - windowStart) / window;
+
+            return previous * covered + current;
+        }
+
+        private void roll(long now, long window)
+        {
+            long elapsed;
+            elapsed = now - windowStart;
+
+            if (elapsed >= 2 * window)
+            {
+                previous = 0;
+                current = 0;
+                windowStart = now;
+            }
+            else if (elapsed >= window)
+            {
+                previous = current;
+                current = 0;
+                windowStart += window;
+            }
+        }
+    }
+
+    private static class Summary
+    {
+        private final ProjectConfig config;
+
+        // Event type to the number of events, in order of first occurrence
+        private final Map<String, Integer> counts;
+        private final Set<String> users;
+
+        Summary(ProjectConfig config)
+        {
+            this.config = config;
+
+            counts = new LinkedHashMap<>();
+            users = new HashSet<>();
+        }
+
+        void add(String type, String user)
+        {
+            Integer count;
+            count = counts.get(type);
+
+            counts.put(type, count == null ? 1 : count + 1);
+
+            if (user != null && users.size() < MAX_USERS)
+            {
+                users.add(user);
+            }
+        }
+
+        // "project: 312 patch sets uploaded, 2 comments added by 4 users
+        // in the last minute"
+        String describe(String period)
+        {
+            StringBuilder text;
+            text = new StringBuilder();
+
+            text.append(config.getProject());
+            text.append(": ");
+
+            String separator;
+            separator = "";
+
+            for (Map.Entry<String, Integer> entry : counts.entrySet())
+            {
+                int count;
+                count = entry.getValue();
+
+                String[] action;
+                action = ACTIONS.get(entry.getKey());
+
+                text.append(separator);
+                text.append(count);
+                text.append(" ");
+
+                if (action == null)
+                {
+                    text.append(entry.getKey());
+                    text.append(count == 1 ? " event" : " events");
+                }
+                else
+                {
+                    text.append(action[count == 1 ? 0 : 1]);
+                }
+
+                separator = ", ";
+            }
+
+            if (!users.isEmpty())
+            {
+                text.append(" by ");
+                text.append(users.size());
+                text.append(users.size() == 1 ? " user" : " users");
+            }
+
+            text.append(" in the last ");
+            text.append(period);
+
+            return text.toString();
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+import org.kohsuke.args4j.Option;
+import org.kohsuke.args4j.spi.ExplicitBooleanOptionHandler;
+
+import java.util.Map;
+
+/**
+ * Changes the delivery settings while the plugin is running and prints the
+ * settings in effect. Without options, only prints them.
+ */
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+@CommandMetaData(name = "delivery",
+        description = "Show or change Slack delivery settings at runtime")
+public class DeliveryCommand extends SshCommand
+{
+    @Option(name = "--threads", metaVar = "N",
+            usage = "number of delivery worker threads")
+    private Integer threads;
+
+    @Option(name = "--queue-size", metaVar = "N",
+            usage = "maximum number of queued messages, 0 for the default")
+    private Integer queueSize;
+
+    @Option(name = "--weight-high", metaVar = "N",
+            usage = "high priority messages delivered per round")
+    private Integer weightHigh;
+
+    @Option(name = "--weight-normal", metaVar = "N",
+            usage = "normal priority messages delivered per round")
+    private Integer weightNormal;
+
+    @Option(name = "--weight-low", metaVar = "N",
+            usage = "low priority messages delivered per round")
+    private Integer weightLow;
+
+    @Option(name = "--pause", metaVar = "WEBHOOK",
+            usage = "park messages for the webhook, given by its " +
+                    "redacted URL, until resumed")
+    private String pause;
+
+    @Option(name = "--resume", metaVar = "WEBHOOK",
+            usage = "deliver the parked messages of the webhook, given " +
+                    "by its redacted URL as listed")
+    private String resume;
+
+    @Option(name = "--shed-queue-depth", metaVar = "N",
+            usage = "queued messages at which to shed, 0 to not shed")
+    private Integer shedQueueDepth;
+
+    @Option(name = "--shed-lag", metaVar = "MS",
+            usage = "delivery lag at which to shed, 0 to not shed")
+    private Long shedLag;
+
+    @Option(name = "--circuit-breaker",
+            handler = ExplicitBooleanOptionHandler.class,
+            metaVar = "true|false", usage = "turn circuit breakers on or off")
+    private Boolean circuitBreakerEnabled;
+
+    @Option(name = "--circuit-breaker-failure-rate", metaVar = "PERCENT",
+            usage = "failure percentage at which circuits open")
+    private Integer circuitBreakerFailureRate;
+
+    @Option(name = "--circuit-breaker-slow-call-threshold", metaVar = "MS",
+            usage = "duration after which a call counts as failed")
+    private Long circuitBreakerSlowCallThreshold;
+
+    @Option(name = "--circuit-breaker-open-duration", metaVar = "MS",
+            usage = "time circuits stay open before a trial call")
+    private Long circuitBreakerOpenDuration;
+
+    @Option(name = "--concurrency-limit",
+            handler = ExplicitBooleanOptionHandler.class,
+            metaVar = "true|false", usage = "turn concurrency limits on or off")
+    private Boolean concurrencyLimitEnabled;
+
+    @Option(name = "--concurrency-limit-max", metaVar = "N",
+            usage = "highest number of requests in flight per host")
+    private Integer concurrencyLimitMax;
+
+    @Inject
+    private PostDelivery postDelivery;
+
+    @Override
+    protected void run() throws UnloggedFailure
+    {
+        PostDelivery.Input input;
+        input = new PostDelivery.Input();
+        input.threads = threads;
+        input.queueSize = queueSize;
+        input.weightHigh = weightHigh;
+        input.weightNormal = weightNormal;
+        input.weightLow = weightLow;
+        input.pause = pause;
+        input.resume = resume;
+        input.shedQueueDepth = shedQueueDepth;
+        input.shedLag = shedLag;
+        input.circuitBreakerEnabled = circuitBreakerEnabled;
+        input.circuitBreakerFailureRate = circuitBreakerFailureRate;
+        input.circuitBreakerSlowCallThreshold =
+                circuitBreakerSlowCallThreshold;
+        input.circuitBreakerOpenDuration = circuitBreakerOpenDuration;
+        input.concurrencyLimitEnabled = concurrencyLimitEnabled;
+        input.concurrencyLimitMax = concurrencyLimitMax;
+
+        DeliveryInfo info;
+        try
+        {
+            info = postDelivery.apply(null, input);
+        }
+        catch (BadRequestException e)
+        {
+            throw die(e.getMessage());
+        }
+
+        stdout.print(String.format("%-17s %d\n", "threads", info.threads));
+        stdout.print(String.format("%-17s %d (%d queued)\n", "queue-size",
+                info.queueSize, info.queued));
+
+        for (Priority priority : Priority.values())
+        {
+            stdout.print(String.format("%-17s %d\n",
+                    "weight-" + priority.name().toLowerCase(),
+                    info.weights.get(priority)));
+        }
+
+        stdout.print(String.format("%-17s %d\n", "shed-queue-depth",
+                info.shedQueueDepth));
+        stdout.print(String.format("%-17s %d ms\n", "shed-lag",
+                info.shedLag));
+        stdout.print(String.format("%-17s %s (failure rate %d%%, " +
+                        "slow call %d ms, open %d ms)\n",
+                "circuit-breaker", info.circuitBreakerEnabled,
+                info.circuitBreakerFailureRate,
+                info.circuitBreakerSlowCallThreshold,
+                info.circuitBreakerOpenDuration));
+        stdout.print(String.format("%-17s %s (max %d)\n",
+                "concurrency-limit", info.concurrencyLimitEnabled,
+                info.concurrencyLimitMax));
+
+        for (Map.Entry<String, Integer> entry : info.paused.entrySet())
+        {
+            stdout.print(String.format("%-17s %s (%d parked)\n", "paused",
+                    entry.getKey(), entry.getValue()));
+        }
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.CircuitBreakerRegistry;
+import com.cisco.gerrit.plugins.slack.client.ConcurrencyLimiter;
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+
+import java.util.Map;
+
+/**
+ * The delivery settings in effect, with the secret token of each paused
+ * webhook URL redacted.
+ */
+public class DeliveryInfo
+{
+    public int threads;
+    public int queueSize;
+    public int queued;
+    public Map<Priority, Integer> weights;
+    public Map<String, Integer> paused;
+    public int shedQueueDepth;
+    public long shedLag;
+    public boolean circuitBreakerEnabled;
+    public int circuitBreakerFailureRate;
+    public long circuitBreakerSlowCallThreshold;
+    public long circuitBreakerOpenDuration;
+    public boolean concurrencyLimitEnabled;
+    public int concurrencyLimitMax;
+
+    /**
+     * Captures the current delivery settings.
+     *
+     * @param dispatcher The MessageDispatcher.
+     * @param loadShedder The LoadShedder.
+     * @param circuitBreakers The CircuitBreakerRegistry.
+     * @param concurrencyLimiter The ConcurrencyLimiter.
+     * @return The settings in effect.
+     */
+    public static DeliveryInfo of(MessageDispatcher dispatcher,
+            LoadShedder loadShedder, CircuitBreakerRegistry circuitBreakers,
+            ConcurrencyLimiter concurrencyLimiter)
+    {
+        DeliveryInfo info;
+        info = new DeliveryInfo();
+        info.threads = dispatcher.getThreads();
+        info.queueSize = dispatcher.getQueueSize();
+        info.queued = dispatcher.getQueued();
+        info.weights = dispatcher.getWeights();
+        info.paused = dispatcher.getPaused();
+        info.shedQueueDepth = loadShedder.getQueueDepth();
+        info.shedLag = loadShedder.getLag();
+        info.circuitBreakerEnabled = circuitBreakers.isEnabled();
+        info.circuitBreakerFailureRate = circuitBreakers.getFailureRate();
+        info.circuitBreakerSlowCallThreshold =
+                circuitBreakers.getSlowCallThreshold();
+        info.circuitBreakerOpenDuration = circuitBreakers.getOpenDuration();
+        info.concurrencyLimitEnabled = concurrencyLimiter.isEnabled();
+        info.concurrencyLimitMax = concurrencyLimiter.getMaxLimit();
+
+        return info;
+    }
+}
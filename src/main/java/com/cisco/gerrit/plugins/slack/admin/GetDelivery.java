@@ -0,0 +1,61 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.CircuitBreakerRegistry;
+import com.cisco.gerrit.plugins.slack.client.ConcurrencyLimiter;
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * REST endpoint returning the delivery settings in effect, served at
+ * /config/server/slack-integration~delivery.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.VIEW_QUEUE)
+public class GetDelivery implements RestReadView<ConfigResource>
+{
+    private final MessageDispatcher dispatcher;
+    private final LoadShedder loadShedder;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    @Inject
+    GetDelivery(MessageDispatcher dispatcher, LoadShedder loadShedder,
+            CircuitBreakerRegistry circuitBreakers,
+            ConcurrencyLimiter concurrencyLimiter)
+    {
+        this.dispatcher = dispatcher;
+        this.loadShedder = loadShedder;
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public DeliveryInfo apply(ConfigResource resource)
+    {
+        return DeliveryInfo.of(dispatcher, loadShedder, circuitBreakers,
+                concurrencyLimiter);
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.admin;
+
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.client.CircuitBreakerRegistry;
+import com.cisco.gerrit.plugins.slack.client.ConcurrencyLimiter;
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.BadRequestException;
+import com.google.gerrit.extensions.restapi.RestModifyView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * REST endpoint changing the delivery settings while the plugin is running,
+ * served at /config/server/slack-integration~delivery. Changes last until
+ * the plugin is reloaded, after which the configured settings apply again.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.ADMINISTRATE_SERVER)
+public class PostDelivery implements RestModifyView<ConfigResource,
+        PostDelivery.Input>
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(PostDelivery.class);
+
+    private final MessageDispatcher dispatcher;
+    private final LoadShedder loadShedder;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+
+    @Inject
+    PostDelivery(MessageDispatcher dispatcher, LoadShedder loadShedder,
+            CircuitBreakerRegistry circuitBreakers,
+            ConcurrencyLimiter concurrencyLimiter)
+    {
+        this.dispatcher = dispatcher;
+        this.loadShedder = loadShedder;
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimiter = concurrencyLimiter;
+    }
+
+    @Override
+    public DeliveryInfo apply(ConfigResource resource, Input input)
+            throws BadRequestException
+    {
+        if (input == null)
+        {
+            input = new Input();
+        }
+
+        // Validate everything before changing anything
+        check("threads", input.threads, 1);
+        check("queue_size", input.queueSize, 0);
+        check("weight_high", input.weightHigh, 1);
+        check("weight_normal", input.weightNormal, 1);
+        check("weight_low", input.weightLow, 1);
+        check("shed_queue_depth", input.shedQueueDepth, 0);
+        check("shed_lag", input.shedLag, 0);
+        check("circuit_breaker_failure_rate",
+                input.circuitBreakerFailureRate, 1);
+        check("circuit_breaker_slow_call_threshold",
+                input.circuitBreakerSlowCallThreshold, 1);
+        check("circuit_breaker_open_duration",
+                input.circuitBreakerOpenDuration, 0);
+        check("concurrency_limit_max", input.concurrencyLimitMax, 1);
+
+        if (input.circuitBreakerFailureRate != null &&
+                input.circuitBreakerFailureRate > 100)
+        {
+            throw new BadRequestException(
+                    "circuit_breaker_failure_rate must be at most 100");
+        }
+
+        if (input.threads != null)
+        {
+            dispatcher.setThreads(input.threads);
+        }
+
+        if (input.queueSize != null)
+        {
+            dispatcher.setQueueSize(input.queueSize);
+        }
+
+        setWeight(Priority.HIGH, input.weightHigh);
+        setWeight(Priority.NORMAL, input.weightNormal);
+        setWeight(Priority.LOW, input.weightLow);
+
+        if (input.shedQueueDepth != null)
+        {
+            loadShedder.setQueueDepth(input.shedQueueDepth);
+        }
+
+        if (input.shedLag != null)
+        {
+            loadShedder.setLag(input.shedLag);
+        }
+
+        if (input.circuitBreakerEnabled != null)
+        {
+            circuitBreakers.setEnabled(input.circuitBreakerEnabled);
+        }
+
+        if (input.circuitBreakerFailureRate != null)
+        {
+            circuitBreakers.setFailureRate(input.circuitBreakerFailureRate);
+        }
+
+        if (input.circuitBreakerSlowCallThreshold != null)
+        {
+            circuitBreakers.setSlowCallThreshold(
+                    input.circuitBreakerSlowCallThreshold);
+        }
+
+        if (input.circuitBreakerOpenDuration != null)
+        {
+            circuitBreakers.setOpenDuration(
+                    input.circuitBreakerOpenDuration);
+        }
+
+        if (input.concurrencyLimitEnabled != null)
+        {
+            concurrencyLimiter.setEnabled(input.concurrencyLimitEnabled);
+        }
+
+        if (input.concurrencyLimitMax != null)
+        {
+            concurrencyLimiter.setMaxLimit(input.concurrencyLimitMax);
+        }
+
+        if (input.pause != null && dispatcher.pause(input.pause))
+        {
+            LOGGER.info("Paused delivery to " +
+                    CircuitBreakerRegistry.redact(input.pause));
+        }
+
+        if (input.resume != null && dispatcher.resume(input.resume))
+        {
+            LOGGER.info("Resumed delivery to " +
+                    CircuitBreakerRegistry.redact(input.resume));
+        }
+
+        return DeliveryInfo.of(dispatcher, loadShedder, circuitBreakers,
+                concurrencyLimiter);
+    }
+
+    private void setWeight(Priority priority, Integer weight)
+    {
+        if (weight != null)
+        {
+            dispatcher.setWeight(priority, weight);
+        }
+    }
+
+    private static void check(String name, Number value, long minimum)
+            throws BadRequestException
+    {
+        if (value != null && value.longValue() < minimum)
+        {
+            throw new BadRequestException(
+                    name + " must be at least " + minimum);
+        }
+    }
+
+    /**
+     * The settings to change, null for those to leave as they are. Webhooks
+     * to pause or resume are named by their redacted URL, as listed among
+     * the paused webhooks.
+     */
+    public static class Input
+    {
+        public Integer threads;
+        public Integer queueSize;
+        public Integer weightHigh;
+        public Integer weightNormal;
+        public Integer weightLow;
+        public String pause;
+        public String resume;
+        public Integer shedQueueDepth;
+        public Long shedLag;
+        public Boolean circuitBreakerEnabled;
+        public Integer circuitBreakerFailureRate;
+        public Long circuitBreakerSlowCallThreshold;
+        public Long circuitBreakerOpenDuration;
+        public Boolean concurrencyLimitEnabled;
+        public Integer concurrencyLimitMax;
+    }
+}
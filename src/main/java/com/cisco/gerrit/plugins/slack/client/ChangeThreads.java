@@ -0,0 +1,410 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.util.ExpiringIndex;
+import com.google.common.base.Ticker;
+import com.google.common.hash.Hashing;
+import com.google.gerrit.extensions.annotations.PluginData;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Remembers the Slack thread of every change, so that the first message for
+ * a change starts a thread and later messages are posted as replies to it.
+ * Threads are keyed by channel and change number and identified by the
+ * timestamp of their parent message, both held as primitives in an
+ * ExpiringIndex. Threads are forgotten once unused for the thread time to
+ * live. The IDs of the channels are kept too, as messages can only be
+ * edited by channel ID. The index is saved to the plugin's data directory
+ * periodically and on stop, and loaded again on start.
+ */
+@Singleton
+public class ChangeThreads implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ChangeThreads.class);
+
+    static final String FILE_NAME = "threads.idx";
+
+    private static final int MAGIC = 0x534c5448;
+    private static final int VERSION = 2;
+
+    // Times are saved as seconds since 2017-01-01, which fit an int until
+    // well past 2080
+    private static final long EPOCH = 1483228800L;
+
+    /**
+     * Reads the wall clock, as thread times must survive restarts.
+     */
+    private static final Ticker WALL_CLOCK = new Ticker()
+    {
+        @Override
+        public long read()
+        {
+            return TimeUnit.MILLISECONDS.toNanos(System.currentTimeMillis());
+        }
+    };
+
+    private static final long SAVE_INTERVAL = TimeUnit.MINUTES.toMillis(5);
+
+    private final GlobalConfig config;
+    private final WorkQueue workQueue;
+    private final Path file;
+    private final Ticker ticker;
+
+    private final ExpiringIndex index;
+    private boolean dirty;
+
+    // Channel name to channel ID
+    private final Map<String, String> channelIds;
+
+    private WorkQueue.Executor executor;
+
+    /**
+     * Creates a new ChangeThreads instance.
+     *
+     * @param config The GlobalConfig holding the Web API settings.
+     * @param workQueue The Gerrit WorkQueue to schedule saves on.
+     * @param dataDir The plugin's data directory the index is saved in.
+     */
+    @Inject
+    public ChangeThreads(GlobalConfig config, WorkQueue workQueue,
+            @PluginData Path dataDir)
+    {
+        this(config, workQueue, dataDir.resolve(FILE_NAME), WALL_CLOCK);
+    }
+
+    ChangeThreads(GlobalConfig config, WorkQueue workQueue, Path file,
+            Ticker ticker)
+    {
+        this.config = config;
+        this.workQueue = workQueue;
+        this.file = file;
+        this.ticker = ticker;
+
+        index = new ExpiringIndex((int) Math.max(1,
+                TimeUnit.MILLISECONDS.toSeconds(config.getThreadTtl())));
+        channelIds = new HashMap<>();
+    }
+
+    @Override
+    public void start()
+    {
+        if (!isEnabled())
+        {
+            return;
+        }
+
+        load();
+
+        executor = workQueue.createQueue(1, "Slack-Integration-Threads");
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                save();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Slack thread index save";
+            }
+        }, SAVE_INTERVAL, SAVE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor.unregisterWorkQueue();
+            executor = null;
+
+            save();
+        }
+    }
+
+    /**
+     * Whether messages can be threaded, which requires a Web API token.
+     *
+     * @return true, if threads are kept; otherwise false
+     */
+    public boolean isEnabled()
+    {
+        return !config.getApiToken().isEmpty();
+    }
+
+    /**
+     * Gets the timestamp of the thread of a change in a channel.
+     *
+     * @param channel The channel.
+     * @param change The change number.
+     * @return The timestamp of the thread's parent message, or null if the
+     * change has no thread in the channel.
+     */
+    public String get(String channel, int change)
+    {
+        long ts;
+        synchronized (index)
+        {
+            ts = index.get(key(channel, change), now());
+        }
+
+        return ts == 0 ? null : formatTs(ts);
+    }
+
+    /**
+     * Records the thread of a change in a channel.
+     *
+     * @param channel The channel.
+     * @param change The change number.
+     * @param threadTs The timestamp of the thread's parent message.
+     */
+    public void put(String channel, int change, String threadTs)
+    {
+        long ts;
+        ts = parseTs(threadTs);
+
+        if (ts == 0)
+        {
+            LOGGER.warn("Ignoring unexpected thread timestamp: " + threadTs);
+            return;
+        }
+
+        synchronized (index)
+        {
+            index.put(key(channel, change), ts, now());
+            dirty = true;
+        }
+    }
+
+    /**
+     * Gets the ID of a channel threads were started in.
+     *
+     * @param channel The channel name.
+     * @return The channel ID, or null if it is not known.
+     */
+    public String getChannelId(String channel)
+    {
+        synchronized (index)
+        {
+            return channelIds.get(channel);
+        }
+    }
+
+    /**
+     * Records the ID of a channel.
+     *
+     * @param channel The channel name.
+     * @param channelId The channel ID.
+     */
+    public void putChannelId(String channel, String channelId)
+    {
+        synchronized (index)
+        {
+            if (!channelId.equals(channelIds.put(channel, channelId)))
+            {
+                dirty = true;
+            }
+        }
+    }
+
+    /**
+     * Gets the number of threads held.
+     *
+     * @return The number of threads.
+     */
+    public int size()
+    {
+        synchronized (index)
+        {
+            return index.size();
+        }
+    }
+
+    /**
+     * Loads the saved index, if there is one.
+     */
+    void load()
+    {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(file))))
+        {
+            int version;
+            version = in.readInt() == MAGIC ? in.readInt() : -1;
+
+            if (version < 1 || version > VERSION)
+            {
+                LOGGER.warn("Ignoring thread index of unknown format: " +
+                        file);
+                return;
+            }
+
+            synchronized (index)
+            {
+                index.readFrom(in, now());
+
+                // Channel IDs were added in version 2
+                int channels;
+                channels = version >= 2 ? in.readInt() : 0;
+
+                for (int i = 0; i < channels; i++)
+                {
+                    channelIds.put(in.readUTF(), in.readUTF());
+                }
+            }
+        }
+        catch (NoSuchFileException e)
+        {
+            // Nothing saved yet
+        }
+        catch (IOException e)
+        {
+            LOGGER.warn("Error loading thread index: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Saves the index if it changed, replacing the saved index atomically.
+     */
+    void save()
+    {
+        Path temp;
+        temp = file.resolveSibling(FILE_NAME + ".tmp");
+
+        synchronized (index)
+        {
+            if (!dirty)
+            {
+                return;
+            }
+
+            try
+            {
+                Files.createDirectories(file.getParent());
+
+                try (DataOutputStream out = new DataOutputStream(
+                        new BufferedOutputStream(
+                                Files.newOutputStream(temp))))
+                {
+                    out.writeInt(MAGIC);
+                    out.writeInt(VERSION);
+
+                    index.purge(now());
+                    index.writeTo(out, now());
+
+                    out.writeInt(channelIds.size());
+
+                    for (Map.Entry<String, String> channel :
+                            channelIds.entrySet())
+                    {
+                        out.writeUTF(channel.getKey());
+                        out.writeUTF(channel.getValue());
+                    }
+                }
+
+                Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+
+                dirty = false;
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Error saving thread index: " + e.getMessage());
+            }
+        }
+    }
+
+    private int now()
+    {
+        return (int) (TimeUnit.NANOSECONDS.toSeconds(ticker.read()) - EPOCH);
+    }
+
+    /**
+     * Combines the hash of the channel and the change number into a key.
+     */
+    static long key(String channel, int change)
+    {
+        int channelHash;
+        channelHash = Hashing.murmur3_32().hashString(
+                String.valueOf(channel), StandardCharsets.UTF_8).asInt();
+
+        return ((long) channelHash << 32) | (change & 0xffffffffL);
+    }
+
+    /**
+     * Parses a Slack message timestamp, such as "1503435956.000247", into
+     * microseconds.
+     *
+     * @return The timestamp in microseconds, or 0 if it is malformed.
+     */
+    static long parseTs(String ts)
+    {
+        int dot;
+        dot = ts == null ? -1 : ts.indexOf('.');
+
+        if (dot < 1 || ts.length() - dot != 7)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return Long.parseLong(ts.substring(0, dot)) * 1000000 +
+                    Integer.parseInt(ts.substring(dot + 1));
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    static String formatTs(long ts)
+    {
+        String micros;
+        micros = String.valueOf(1000000 + ts % 1000000);
+
+        return (ts / 1000000) + "." + micros.substring(1);
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.google.common.base.Ticker;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A circuit breaker guarding a single Slack webhook. The breaker tracks the
+ * outcome of the most recent calls; once the share of failed or slow calls
+ * reaches the configured rate the circuit opens and calls fail fast. After
+ * the open duration has elapsed a single trial call is let through, which
+ * either closes the circuit again or re-opens it.
+ */
+public class CircuitBreaker
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(CircuitBreaker.class);
+
+    /**
+     * The possible states of a circuit.
+     */
+    public enum State
+    {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    /**
+     * Receives notification of circuit state transitions.
+     */
+    public interface Listener
+    {
+        void onStateChange(CircuitBreaker breaker, State from, State to);
+    }
+
+    private final String name;
+    private final int minimumCalls;
+    private final Ticker ticker;
+    private final Listener listener;
+
+    // Ring buffer of recent outcomes, true for a failed or slow call
+    private final boolean[] outcomes;
+    private int position;
+    private int calls;
+    private int failures;
+
+    // Adjustable at runtime
+    private int failureRate;
+    private long slowCallThresholdNanos;
+    private long openDurationNanos;
+
+    private State state;
+    private long openedAt;
+    private boolean probeInFlight;
+    private long rejected;
+
+    /**
+     * Creates a new CircuitBreaker instance.
+     *
+     * @param name The name of the guarded resource, used for logging.
+     * @param windowSize The number of recent calls to consider.
+     * @param minimumCalls The number of calls required before the failure
+     *                     rate is evaluated.
+     * @param failureRate The failure percentage at which the circuit opens.
+     * @param slowCallThreshold The duration, in milliseconds, after which a
+     *                          successful call is counted as a failure.
+     * @param openDuration The time, in milliseconds, the circuit stays open
+     *                     before a trial call is permitted.
+     * @param ticker The time source.
+     * @param listener The listener to notify of state changes, may be null.
+     */
+    public CircuitBreaker(String name, int windowSize, int minimumCalls,
+            int failureRate, long slowCallThreshold, long openDuration,
+            Ticker ticker, Listener listener)
+    {
+        if (windowSize < 1)
+        {
+            throw new IllegalArgumentException(
+                    "windowSize must be greater than zero");
+        }
+
+        this.name = name;
+        this.minimumCalls = Math.max(1, Math.min(minimumCalls, windowSize));
+        this.failureRate = failureRate;
+        this.slowCallThresholdNanos =
+                TimeUnit.MILLISECONDS.toNanos(slowCallThreshold);
+        this.openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+        this.ticker = ticker;
+        this.listener = listener;
+
+        outcomes = new boolean[windowSize];
+        state = State.CLOSED;
+    }
+
+    /**
+     * Whether or not a call may be made right now. A caller that is granted
+     * permission must report the outcome via {@link #recordSuccess(long)} or
+     * {@link #recordFailure(long)}, or hand it back via
+     * {@link #releasePermit()} if the call was not made.
+     *
+     * @return True if the call may proceed, otherwise false
+     */
+    public boolean allowRequest()
+    {
+        State from;
+        from = null;
+
+        boolean result;
+        synchronized (this)
+        {
+            if (state == State.OPEN &&
+                    ticker.read() - openedAt >= openDurationNanos)
+            {
+                from = transition(State.HALF_OPEN);
+            }
+
+            if (state == State.CLOSED)
+            {
+                result = true;
+            }
+            else if (state == State.HALF_OPEN && !probeInFlight)
+            {
+                probeInFlight = true;
+                result = true;
+            }
+            else
+            {
+                rejected++;
+                result = false;
+            }
+        }
+
+        notifyTransition(from, State.HALF_OPEN);
+
+        return result;
+    }
+
+    /**
+     * Records a successful call. Calls slower than the slow call threshold
+     * are counted as failures.
+     *
+     * @param elapsedNanos The duration of the call in nanoseconds.
+     */
+    public void recordSuccess(long elapsedNanos)
+    {
+        record(elapsedNanos, false);
+    }
+
+    /**
+     * Records a failed call.
+     *
+     * @param elapsedNanos The duration of the call in nanoseconds.
+     */
+    public void recordFailure(long elapsedNanos)
+    {
+        record(elapsedNanos, true);
+    }
+
+    /**
+     * Hands back the permission to call without recording an outcome, for a
+     * call that was given up before it was made. A half open breaker lets
+     * the next caller probe the host instead.
+     */
+    public synchronized void releasePermit()
+    {
+        if (state == State.HALF_OPEN)
+        {
+            probeInFlight = false;
+        }
+    }
+
+    private void record(long elapsedNanos, boolean failed)
+    {
+        State from;
+        from = null;
+
+        State to;
+        to = null;
+
+        synchronized (this)
+        {
+            failed = failed || elapsedNanos >= slowCallThresholdNanos;
+
+            if (state == State.HALF_OPEN)
+            {
+                probeInFlight = false;
+                to = failed ? State.OPEN : State.CLOSED;
+            }
+            else if (state == State.CLOSED)
+            {
+                if (calls == outcomes.length)
+                {
+                    if (outcomes[position])
+                    {
+                        failures--;
+                    }
+                }
+                else
+                {
+                    calls++;
+                }
+
+                outcomes[position] = failed;
+                position = (position + 1) % outcomes.length;
+
+                if (failed)
+                {
+                    failures++;
+                }
+
+                if (calls >= minimumCalls &&
+                        failures * 100 >= failureRate * calls)
+                {
+                    to = State.OPEN;
+                }
+            }
+
+            if (to != null)
+            {
+                from = transition(to);
+            }
+        }
+
+        notifyTransition(from, to);
+    }
+
+    private State transition(State to)
+    {
+        State from;
+        from = state;
+
+        state = to;
+
+        if (to == State.OPEN)
+        {
+            openedAt = ticker.read();
+        }
+        else if (to == State.CLOSED)
+        {
+            position = 0;
+            calls = 0;
+            failures = 0;
+        }
+
+        return from;
+    }
+
+    private void notifyTransition(State from, State to)
+    {
+        if (from == null)
+        {
+            return;
+        }
+
+        if (to == State.OPEN)
+        {
+            LOGGER.warn("Circuit for " + name + " changed from " + from +
+                    " to " + to);
+        }
+        else
+        {
+            LOGGER.info("Circuit for " + name + " changed from " + from +
+                    " to " + to);
+        }
+
+        if (listener != null)
+        {
+            listener.onStateChange(this, from, to);
+        }
+    }
+
+    /**
+     * Changes the failure percentage at which the circuit opens. A closed
+     * circuit is checked against it on the next call.
+     *
+     * @param failureRate The failure percentage.
+     */
+    public synchronized void setFailureRate(int failureRate)
+    {
+        this.failureRate = failureRate;
+    }
+
+    /**
+     * Changes the duration after which a successful call counts as failed.
+     *
+     * @param slowCallThreshold The threshold in milliseconds.
+     */
+    public synchronized void setSlowCallThreshold(long slowCallThreshold)
+    {
+        slowCallThresholdNanos =
+                TimeUnit.MILLISECONDS.toNanos(slowCallThreshold);
+    }
+
+    /**
+     * Changes the time the circuit stays open before a trial call. An open
+     * circuit uses it from now on.
+     *
+     * @param openDuration The duration in milliseconds.
+     */
+    public synchronized void setOpenDuration(long openDuration)
+    {
+        openDurationNanos = TimeUnit.MILLISECONDS.toNanos(openDuration);
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public synchronized State getState()
+    {
+        return state;
+    }
+
+    public synchronized long getRejected()
+    {
+        return rejected;
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds one CircuitBreaker per Slack webhook URL and exposes their state
+ * through the Gerrit metrics system. The breakers can be turned off and
+ * their thresholds changed while the plugin is running; such changes last
+ * until the plugin is reloaded.
+ */
+@Singleton
+public class CircuitBreakerRegistry implements CircuitBreaker.Listener
+{
+    private final GlobalConfig config;
+    private final ConcurrentMap<String, CircuitBreaker> breakers;
+    private final Counter1<CircuitBreaker.State> transitions;
+
+    private boolean enabled;
+    private int failureRate;
+    private long slowCallThreshold;
+    private long openDuration;
+
+    /**
+     * Creates a new CircuitBreakerRegistry instance.
+     *
+     * @param config The GlobalConfig holding the circuit breaker settings.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public CircuitBreakerRegistry(GlobalConfig config, MetricMaker metricMaker)
+    {
+        this.config = config;
+
+        breakers = new ConcurrentHashMap<>();
+
+        enabled = config.isCircuitBreakerEnabled();
+        failureRate = config.getCircuitBreakerFailureRate();
+        slowCallThreshold = config.getCircuitBreakerSlowCallThreshold();
+        openDuration = config.getCircuitBreakerOpenDuration();
+
+        transitions = metricMaker.newCounter("circuit_breaker/transitions",
+                new Description("Circuit breaker state transitions")
+                        .setRate()
+                        .setUnit("transitions"),
+                Field.ofEnum(CircuitBreaker.State.class, "state"));
+
+        metricMaker.newCallbackMetric("circuit_breaker/open",
+                Integer.class,
+                new Description("Webhooks with an open circuit")
+                        .setGauge()
+                        .setUnit("webhooks"),
+                new Supplier<Integer>()
+                {
+                    @Override
+                    public Integer get()
+                    {
+                        return countNotClosed();
+                    }
+                });
+
+        metricMaker.newCallbackMetric("circuit_breaker/rejected",
+                Long.class,
+                new Description("Calls rejected by an open circuit")
+                        .setCumulative()
+                        .setUnit("calls"),
+                new Supplier<Long>()
+                {
+                    @Override
+                    public Long get()
+                    {
+                        return sumRejected();
+                    }
+                });
+    }
+
+    /**
+     * Gets the circuit breaker for the given webhook URL, creating it on
+     * first use.
+     *
+     * @param webhookUrl The webhook URL.
+     * @return The CircuitBreaker instance for the webhook.
+     */
+    public CircuitBreaker get(String webhookUrl)
+    {
+        CircuitBreaker breaker;
+        breaker = breakers.get(webhookUrl);
+
+        if (breaker == null)
+        {
+            // Created under the lock, so that no breaker misses a change
+            // of the thresholds
+            synchronized (this)
+            {
+                breaker = breakers.get(webhookUrl);
+
+                if (breaker == null)
+                {
+                    breaker = new CircuitBreaker(redact(webhookUrl),
+                            config.getCircuitBreakerWindowSize(),
+                            config.getCircuitBreakerMinimumCalls(),
+                            failureRate, slowCallThreshold, openDuration,
+                            Ticker.systemTicker(), this);
+
+                    breakers.put(webhookUrl, breaker);
+                }
+            }
+        }
+
+        return breaker;
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns the circuit breakers on or off.
+     *
+     * @param enabled Whether calls go through the circuit breakers.
+     */
+    public synchronized void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public synchronized int getFailureRate()
+    {
+        return failureRate;
+    }
+
+    /**
+     * Changes the failure percentage at which circuits open.
+     *
+     * @param failureRate The failure percentage.
+     */
+    public synchronized void setFailureRate(int failureRate)
+    {
+        this.failureRate = failureRate;
+
+        for (CircuitBreaker breaker : breakers.values())
+        {
+            breaker.setFailureRate(failureRate);
+        }
+    }
+
+    public synchronized long getSlowCallThreshold()
+    {
+        return slowCallThreshold;
+    }
+
+    /**
+     * Changes the duration after which a successful call counts as failed.
+     *
+     * @param slowCallThreshold The threshold in milliseconds.
+     */
+    public synchronized void setSlowCallThreshold(long slowCallThreshold)
+    {
+        this.slowCallThreshold = slowCallThreshold;
+
+        for (CircuitBreaker breaker : breakers.values())
+        {
+            breaker.setSlowCallThreshold(slowCallThreshold);
+        }
+    }
+
+    public synchronized long getOpenDuration()
+    {
+        return openDuration;
+    }
+
+    /**
+     * Changes the time circuits stay open before a trial call.
+     *
+     * @param openDuration The duration in milliseconds.
+     */
+    public synchronized void setOpenDuration(long openDuration)
+    {
+        this.openDuration = openDuration;
+
+        for (CircuitBreaker breaker : breakers.values())
+        {
+            breaker.setOpenDuration(openDuration);
+        }
+    }
+
+    @Override
+    public void onStateChange(CircuitBreaker breaker,
+            CircuitBreaker.State from, CircuitBreaker.State to)
+    {
+        transitions.increment(to);
+    }
+
+    private int countNotClosed()
+    {
+        int count;
+        count = 0;
+
+        for (CircuitBreaker breaker : breakers.values())
+        {
+            if (breaker.getState() != CircuitBreaker.State.CLOSED)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    private long sumRejected()
+    {
+        long sum;
+        sum = 0;
+
+        for (CircuitBreaker breaker : breakers.values())
+        {
+            sum += breaker.getRejected();
+        }
+
+        return sum;
+    }
+
+    /**
+     * Strips the secret token from a webhook URL so it can safely be logged.
+     *
+     * @param webhookUrl The webhook URL.
+     * @return The webhook URL without its final path segment.
+     */
+    public static String redact(String webhookUrl)
+    {
+        int index;
+        index = webhookUrl.lastIndexOf('/');
+
+        if (index < webhookUrl.indexOf("://") + 3)
+        {
+            return webhookUrl;
+        }
+
+        return webhookUrl.substring(0, index + 1) + "***";
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+/**
+ * Limits the number of concurrent requests to one Slack host, adapting the
+ * limit by additive increase, multiplicative decrease. Each request that
+ * completes normally while the limit is in use raises the limit by one over
+ * the course of a full limit's worth of requests. A request that is
+ * throttled, fails on the server side or gets no response halves the limit,
+ * as does a request completing while the recent round trip time is more
+ * than twice the long term one, a sign of requests queueing at the host.
+ * The limit is halved at most once per round trip: requests started before
+ * the last decrease do not decrease it again.
+ */
+public class ConcurrencyLimit
+{
+    // Recent round trips above this multiple of the long term average
+    // signal queueing
+    private static final double RTT_TOLERANCE = 2;
+
+    // The number of samples the recent and long term averages span
+    private static final int SHORT_WINDOW = 8;
+    private static final int LONG_WINDOW = 256;
+
+    private final String name;
+
+    private int maxLimit;
+    private double limit;
+    private int inFlight;
+    private double shortRtt;
+    private double longRtt;
+    private long sequence;
+    private long decreasedAt;
+
+    /**
+     * Creates a new ConcurrencyLimit instance.
+     *
+     * @param name The name of the host, used in toString.
+     * @param initialLimit The limit to start at.
+     * @param maxLimit The highest the limit may rise to.
+     */
+    public ConcurrencyLimit(String name, int initialLimit, int maxLimit)
+    {
+        if (maxLimit < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxLimit must be greater than zero");
+        }
+
+        this.name = name;
+        this.maxLimit = maxLimit;
+
+        limit = Math.max(1, Math.min(initialLimit, maxLimit));
+    }
+
+    /**
+     * Waits until a request may be made within the limit. Every acquired
+     * permit must be released via one of the release methods.
+     *
+     * @return The permit, identifying when the request started.
+     * @throws InterruptedException If interrupted while waiting.
+     */
+    public synchronized long acquire() throws InterruptedException
+    {
+        while (inFlight >= (int) limit)
+        {
+            wait();
+        }
+
+        inFlight++;
+
+        // An idle host gives no signal to grow by, so mark the permits of
+        // requests that used at least half of the limit
+        boolean saturated;
+        saturated = inFlight * 2 >= limit;
+
+        return ++sequence << 1 | (saturated ? 1 : 0);
+    }
+
+    /**
+     * Releases a permit without adapting the limit, for a request whose
+     * outcome says nothing about the load of the host, such as one rejected
+     * for a revoked webhook.
+     *
+     * @param permit The permit returned by {@link #acquire()}.
+     */
+    public synchronized void release(long permit)
+    {
+        inFlight--;
+
+        notifyAll();
+    }
+
+    /**
+     * Releases a permit, adapting the limit to the outcome of the request.
+     *
+     * @param permit The permit returned by {@link #acquire()}.
+     * @param rtt The round trip time of the request, in nanoseconds.
+     * @param congested Whether the host signalled overload, by throttling,
+     *                  a server error or not responding.
+     */
+    public synchronized void release(long permit, long rtt,
+            boolean congested)
+    {
+        inFlight--;
+
+        // Rejections are quick, only completed requests tell the round trip
+        if (!congested)
+        {
+            if (longRtt == 0)
+            {
+                shortRtt = rtt;
+                longRtt = rtt;
+            }
+            else
+            {
+                shortRtt += (rtt - shortRtt) / SHORT_WINDOW;
+                longRtt += (rtt - longRtt) / LONG_WINDOW;
+            }
+        }
+
+        if (congested || shortRtt > longRtt * RTT_TOLERANCE)
+        {
+            if (permit >>> 1 > decreasedAt)
+            {
+                limit = Math.max(1, limit / 2);
+                decreasedAt = sequence;
+            }
+        }
+        else if ((permit & 1) != 0)
+        {
+            limit = Math.min(maxLimit, limit + 1 / limit);
+        }
+
+        notifyAll();
+    }
+
+    /**
+     * Changes the highest the limit may rise to, lowering the limit if it
+     * is above the new maximum.
+     *
+     * @param maxLimit The highest limit, at least 1.
+     */
+    public synchronized void setMaxLimit(int maxLimit)
+    {
+        if (maxLimit < 1)
+        {
+            throw new IllegalArgumentException(
+                    "maxLimit must be greater than zero");
+        }
+
+        this.maxLimit = maxLimit;
+
+        limit = Math.min(limit, maxLimit);
+
+        notifyAll();
+    }
+
+    /**
+     * Gets the current limit.
+     *
+     * @return The number of requests allowed in flight.
+     */
+    public synchronized int getLimit()
+    {
+        return (int) limit;
+    }
+
+    /**
+     * Gets the number of requests in flight.
+     *
+     * @return The number of requests in flight.
+     */
+    public synchronized int getInFlight()
+    {
+        return inFlight;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "concurrency limit of " + name;
+    }
+}
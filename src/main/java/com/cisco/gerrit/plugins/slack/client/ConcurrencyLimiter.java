@@ -0,0 +1,206 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.metrics.CallbackMetric1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.net.URI;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds one ConcurrencyLimit per Slack host and exposes the current limits
+ * through the Gerrit metrics system. The limits can be turned off and their
+ * maximum changed while the plugin is running; such changes last until the
+ * plugin is reloaded.
+ */
+@Singleton
+public class ConcurrencyLimiter
+{
+    // The host the limit of URLs without one is kept under, so that the
+    // URL, which may hold a secret, is not exposed as a metric field
+    private static final String UNKNOWN_HOST = "unknown";
+
+    private final GlobalConfig config;
+    private final ConcurrentMap<String, ConcurrencyLimit> limits;
+
+    // URL to the limit of its host, so a URL is not parsed again for every
+    // message
+    private final Cache<String, ConcurrencyLimit> limitsByUrl;
+
+    private boolean enabled;
+    private int maxLimit;
+
+    /**
+     * Creates a new ConcurrencyLimiter instance.
+     *
+     * @param config The GlobalConfig holding the concurrency limit settings.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public ConcurrencyLimiter(GlobalConfig config, MetricMaker metricMaker)
+    {
+        this.config = config;
+
+        limits = new ConcurrentHashMap<>();
+        limitsByUrl = CacheBuilder.newBuilder().maximumSize(256).build();
+
+        enabled = config.isConcurrencyLimitEnabled();
+        maxLimit = config.getConcurrencyLimitMax();
+
+        final CallbackMetric1<String, Integer> limitMetric;
+        limitMetric = metricMaker.newCallbackMetric("http/concurrency_limit",
+                Integer.class,
+                new Description("Requests allowed in flight to a Slack host")
+                        .setGauge()
+                        .setUnit("requests"),
+                Field.ofString("host"));
+
+        metricMaker.newTrigger(limitMetric, new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                for (Map.Entry<String, ConcurrencyLimit> entry :
+                        limits.entrySet())
+                {
+                    limitMetric.set(entry.getKey(),
+                            entry.getValue().getLimit());
+                }
+
+                limitMetric.prune();
+            }
+        });
+    }
+
+    /**
+     * Gets the concurrency limit for the host of the given URL, creating it
+     * on first use.
+     *
+     * @param url The webhook or Web API URL.
+     * @return The ConcurrencyLimit instance for the host.
+     */
+    public ConcurrencyLimit get(String url)
+    {
+        ConcurrencyLimit limit;
+        limit = limitsByUrl.getIfPresent(url);
+
+        if (limit != null)
+        {
+            return limit;
+        }
+
+        String host;
+        host = host(url);
+
+        limit = limits.get(host);
+
+        if (limit == null)
+        {
+            // Created under the lock, so that no limit misses a change of
+            // the maximum
+            synchronized (this)
+            {
+                limit = limits.get(host);
+
+                if (limit == null)
+                {
+                    limit = new ConcurrencyLimit(host,
+                            config.getConcurrencyLimitInitial(), maxLimit);
+
+                    limits.put(host, limit);
+                }
+            }
+        }
+
+        limitsByUrl.put(url, limit);
+
+        return limit;
+    }
+
+    public synchronized boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    /**
+     * Turns the concurrency limits on or off.
+     *
+     * @param enabled Whether requests are limited.
+     */
+    public synchronized void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public synchronized int getMaxLimit()
+    {
+        return maxLimit;
+    }
+
+    /**
+     * Changes the highest the limit of each host may rise to.
+     *
+     * @param maxLimit The highest limit, at least 1.
+     */
+    public synchronized void setMaxLimit(int maxLimit)
+    {
+        this.maxLimit = maxLimit;
+
+        for (ConcurrencyLimit limit : limits.values())
+        {
+            limit.setMaxLimit(maxLimit);
+        }
+    }
+
+    /**
+     * Whether a response status signals that the host is overloaded: it
+     * throttled the request, failed on the server side or did not respond.
+     *
+     * @param status The HTTP status, 0 if there was no response.
+     * @return true, if the host is overloaded
+     */
+    public static boolean isCongested(int status)
+    {
+        return status == 0 || status == 429 || status >= 500;
+    }
+
+    private static String host(String url)
+    {
+        String host;
+        try
+        {
+            host = URI.create(url).getHost();
+        }
+        catch (IllegalArgumentException e)
+        {
+            host = null;
+        }
+
+        return host == null ? UNKNOWN_HOST : host;
+    }
+}
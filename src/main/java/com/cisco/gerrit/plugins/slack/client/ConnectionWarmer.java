@@ -0,0 +1,221 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Ticker;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the connections to Slack hosts warm. At plugin start, and whenever a
+ * host has been idle for longer than the warm up interval, the host name is
+ * resolved again and a connection is opened so that DNS, TCP and TLS set up
+ * is not paid by the next message.
+ */
+@Singleton
+public class ConnectionWarmer implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ConnectionWarmer.class);
+
+    private final GlobalConfig config;
+    private final WorkQueue workQueue;
+    private final Ticker ticker;
+
+    // Host origin (scheme://host:port/) to the time it was last used
+    private final ConcurrentMap<String, Long> lastUsed;
+
+    // Webhook URL to its origin, empty for an invalid URL, so a URL is not
+    // parsed again for every message
+    private final Cache<String, String> origins;
+
+    private WorkQueue.Executor executor;
+
+    /**
+     * Creates a new ConnectionWarmer instance.
+     *
+     * @param config The GlobalConfig holding the warm up settings.
+     * @param workQueue The Gerrit WorkQueue to schedule warm ups on.
+     */
+    @Inject
+    public ConnectionWarmer(GlobalConfig config, WorkQueue workQueue)
+    {
+        this(config, workQueue, Ticker.systemTicker());
+    }
+
+    ConnectionWarmer(GlobalConfig config, WorkQueue workQueue, Ticker ticker)
+    {
+        this.config = config;
+        this.workQueue = workQueue;
+        this.ticker = ticker;
+
+        lastUsed = new ConcurrentHashMap<>();
+        origins = CacheBuilder.newBuilder().maximumSize(256).build();
+    }
+
+    @Override
+    public void start()
+    {
+        if (!config.isWarmUpEnabled())
+        {
+            return;
+        }
+
+        for (String url : config.getWarmUpUrls())
+        {
+            String origin;
+            origin = origin(url);
+
+            if (origin != null)
+            {
+                lastUsed.putIfAbsent(origin, Long.MIN_VALUE);
+            }
+        }
+
+        executor = workQueue.createQueue(1, "Slack-Integration-Warm-Up");
+        executor.scheduleWithFixedDelay(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                warmIdleHosts();
+            }
+
+            @Override
+            public String toString()
+            {
+                return "Slack connection warm up";
+            }
+        }, 0, config.getWarmUpInterval(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop()
+    {
+        if (executor != null)
+        {
+            executor.shutdownNow();
+            executor.unregisterWorkQueue();
+            executor = null;
+        }
+    }
+
+    /**
+     * Records that a message was just sent to the given webhook, so its host
+     * need not be warmed up until it has been idle again.
+     *
+     * @param webhookUrl The webhook URL that was used.
+     */
+    public void markUsed(String webhookUrl)
+    {
+        if (!config.isWarmUpEnabled())
+        {
+            return;
+        }
+
+        String origin;
+        origin = origins.getIfPresent(webhookUrl);
+
+        if (origin == null)
+        {
+            origin = origin(webhookUrl);
+
+            if (origin == null)
+            {
+                origin = "";
+            }
+
+            origins.put(webhookUrl, origin);
+        }
+
+        if (!origin.isEmpty())
+        {
+            lastUsed.put(origin, ticker.read());
+        }
+    }
+
+    /**
+     * Warms up every known host that has been idle for at least the warm up
+     * interval.
+     */
+    void warmIdleHosts()
+    {
+        long idle;
+        idle = TimeUnit.MILLISECONDS.toNanos(config.getWarmUpInterval());
+
+        WebhookClient client;
+        client = new WebhookClient();
+
+        for (Map.Entry<String, Long> entry : lastUsed.entrySet())
+        {
+            long now;
+            now = ticker.read();
+
+            if (entry.getValue() != Long.MIN_VALUE &&
+                    now - entry.getValue() < idle)
+            {
+                continue;
+            }
+
+            if (client.warmUp(entry.getKey()))
+            {
+                lastUsed.replace(entry.getKey(), entry.getValue(), now);
+            }
+            else
+            {
+                LOGGER.debug("Unable to warm up connection to " +
+                        entry.getKey());
+            }
+        }
+    }
+
+    private static String origin(String url)
+    {
+        try
+        {
+            URL parsed;
+            parsed = new URL(url);
+
+            return parsed.getProtocol() + "://" + parsed.getAuthority() + "/";
+        }
+        catch (MalformedURLException e)
+        {
+            LOGGER.warn("Invalid webhook URL, not warming up: " +
+                    e.getMessage());
+
+            return null;
+        }
+    }
+}
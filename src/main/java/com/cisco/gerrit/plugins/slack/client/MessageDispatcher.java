@@ -0,0 +1,1005 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTracer;
+import com.google.common.base.Supplier;
+import com.google.common.base.Ticker;
+import com.google.gerrit.extensions.events.LifecycleListener;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Queues messages for delivery by a small pool of worker threads, so event
+ * processing never waits on Slack. Messages are queued in one lane per
+ * priority and the workers serve the lanes by weighted round robin: every
+ * round delivers up to the configured weight of messages from each lane,
+ * most urgent lane first. High priority messages thereby overtake a backlog
+ * of low priority ones, while low priority messages still make progress.
+ * The number of workers, the queue size and the lane weights can be changed
+ * while running, and delivery to a single webhook can be paused, in which
+ * case its messages are parked until it is resumed. Webhooks are paused by
+ * their redacted URL, so that their secret token need not be given.
+ */
+@Singleton
+public class MessageDispatcher implements LifecycleListener
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(MessageDispatcher.class);
+
+    private final GlobalConfig config;
+    private final WorkQueue workQueue;
+    private final MessagePublisher publisher;
+    private final DeliveryStatistics statistics;
+    private final DeliveryTracer tracer;
+    private final Ticker ticker;
+
+    // One lane per priority, indexed by ordinal, most urgent first
+    private final List<Deque<Delivery>> lanes;
+    private final int[] weights;
+    private final int[] credits;
+    private int size;
+
+    // Redacted webhook URL to the messages parked while delivery to it is
+    // paused
+    private final Map<String, Deque<Delivery>> paused;
+    private int parked;
+
+    private int threads;
+    private int workers;
+    private int queueSize;
+
+    private final AtomicInteger inFlight;
+    private final AtomicLong dispatched;
+    private final AtomicLong dropped;
+
+    private ScheduledExecutorService executor;
+
+    /**
+     * Creates a new MessageDispatcher instance.
+     *
+     * @param config The GlobalConfig holding the delivery settings.
+     * @param workQueue The Gerrit WorkQueue to run the workers on.
+     * @param publisher The publisher used to deliver messages.
+     * @param statistics The statistics to record deliveries in.
+     * @param tracer The tracer to complete delivery traces with.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public MessageDispatcher(GlobalConfig config, WorkQueue workQueue,
+            MessagePublisher publisher, DeliveryStatistics statistics,
+            DeliveryTracer tracer, MetricMaker metricMaker)
+    {
+        this(config, workQueue, publisher, statistics, tracer, metricMaker,
+                Ticker.systemTicker());
+    }
+
+    MessageDispatcher(GlobalConfig config, WorkQueue workQueue,
+            MessagePublisher publisher, DeliveryStatistics statistics,
+            DeliveryTracer tracer, MetricMaker metricMaker, Ticker ticker)
+    {
+        this.config = config;
+        this.workQueue = workQueue;
+        this.publisher = publisher;
+        this.statistics = statistics;
+        this.tracer = tracer;
+        this.ticker = ticker;
+
+        lanes = new ArrayList<>();
+        for (int i = 0; i < Priority.values().length; i++)
+        {
+            lanes.add(new ArrayDeque<Delivery>());
+        }
+
+        weights = new int[] {
+                Math.max(1, config.getPriorityWeightHigh()),
+                Math.max(1, config.getPriorityWeightNormal()),
+                Math.max(1, config.getPriorityWeightLow())};
+        credits = weights.clone();
+
+        paused = new LinkedHashMap<>();
+
+        inFlight = new AtomicInteger();
+        dispatched = new AtomicLong();
+        dropped = new AtomicLong();
+
+        metricMaker.newCallbackMetric("delivery/queue_depth",
+                Integer.class,
+                new Description("Messages waiting for delivery")
+                        .setGauge()
+                        .setUnit("messages"),
+                new Supplier<Integer>()
+                {
+                    @Override
+                    public Integer get()
+                    {
+                        return getQueued();
+                    }
+                });
+
+        metricMaker.newCallbackMetric("delivery/in_flight",
+                Integer.class,
+                new Description("Messages being published to Slack")
+                        .setGauge()
+                        .setUnit("messages"),
+                new Supplier<Integer>()
+                {
+                    @Override
+                    public Integer get()
+                    {
+                        return inFlight.get();
+                    }
+                });
+
+        metricMaker.newCallbackMetric("delivery/dropped",
+                Long.class,
+                new Description("Messages dropped because the delivery " +
+                        "queue was full or they were left on stop")
+                        .setCumulative()
+                        .setUnit("messages"),
+                new Supplier<Long>()
+                {
+                    @Override
+                    public Long get()
+                    {
+                        return dropped.get();
+                    }
+                });
+    }
+
+    @Override
+    public void start()
+    {
+        start(workQueue.createQueue(Math.max(1, config.getDeliveryThreads()),
+                "Slack-Integration-Delivery"));
+    }
+
+    void start(ScheduledExecutorService executor)
+    {
+        int count;
+
+        synchronized (this)
+        {
+            this.executor = executor;
+
+            threads = Math.max(1, config.getDeliveryThreads());
+            workers = threads;
+            count = threads;
+        }
+
+        for (int i = 0; i < count; i++)
+        {
+            executor.execute(new Worker());
+        }
+    }
+
+    /**
+     * Changes the number of worker threads. Surplus workers finish the
+     * message they are delivering and then exit.
+     *
+     * @param count The number of worker threads, at least 1.
+     */
+    public void setThreads(int count)
+    {
+        if (count < 1)
+        {
+            throw new IllegalArgumentException(
+                    "threads must be greater than zero");
+        }
+
+        ScheduledExecutorService current;
+        int added;
+
+        synchronized (this)
+        {
+            threads = count;
+            current = executor;
+
+            if (current == null)
+            {
+                return;
+            }
+
+            added = Math.max(0, count - workers);
+            workers += added;
+
+            notifyAll();
+        }
+
+        if (current instanceof ThreadPoolExecutor)
+        {
+            ThreadPoolExecutor pool;
+            pool = (ThreadPoolExecutor) current;
+
+            // Raise the maximum first, it may never be below the core size
+            if (count > pool.getMaximumPoolSize())
+            {
+                pool.setMaximumPoolSize(count);
+            }
+
+            pool.setCorePoolSize(count);
+        }
+
+        for (int i = 0; i < added; i++)
+        {
+            current.execute(new Worker());
+        }
+    }
+
+    /**
+     * Gets the number of worker threads.
+     *
+     * @return The number of worker threads.
+     */
+    public synchronized int getThreads()
+    {
+        return executor == null
+                ? Math.max(1, config.getDeliveryThreads())
+                : threads;
+    }
+
+    /**
+     * Changes the maximum number of queued messages. Messages already
+     * queued beyond the new size are kept.
+     *
+     * @param count The maximum number of queued messages, 0 to revert to
+     *              the configured delivery-queue-size.
+     */
+    public synchronized void setQueueSize(int count)
+    {
+        if (count < 0)
+        {
+            throw new IllegalArgumentException(
+                    "queue size must not be negative");
+        }
+
+        queueSize = count;
+    }
+
+    /**
+     * Gets the maximum number of queued messages.
+     *
+     * @return The maximum number of queued messages.
+     */
+    public synchronized int getQueueSize()
+    {
+        return queueSize > 0 ? queueSize : config.getDeliveryQueueSize();
+    }
+
+    /**
+     * Changes the weight of a priority lane, the number of its messages
+     * delivered per round.
+     *
+     * @param priority The priority of the lane.
+     * @param weight The weight, at least 1.
+     */
+    public synchronized void setWeight(Priority priority, int weight)
+    {
+        if (weight < 1)
+        {
+            throw new IllegalArgumentException(
+                    "weight must be greater than zero");
+        }
+
+        int lane;
+        lane = priority.ordinal();
+
+        // The current round already reflects the new weight
+        credits[lane] = Math.max(0, credits[lane] + weight - weights[lane]);
+        weights[lane] = weight;
+    }
+
+    /**
+     * Gets the weights of the priority lanes.
+     *
+     * @return The weight per priority.
+     */
+    public synchronized Map<Priority, Integer> getWeights()
+    {
+        Map<Priority, Integer> result;
+        result = new EnumMap<>(Priority.class);
+
+        for (Priority priority : Priority.values())
+        {
+            result.put(priority, weights[priority.ordinal()]);
+        }
+
+        return result;
+    }
+
+    /**
+     * Pauses delivery to a webhook. Its queued messages, and those
+     * dispatched to it later, are parked until it is resumed. Parked
+     * messages still count against the queue size.
+     *
+     * @param webhook The webhook URL, redacted as by
+     *                {@link CircuitBreakerRegistry#redact(String)} or not.
+     * @return true, if the webhook was not already paused
+     */
+    public synchronized boolean pause(String webhook)
+    {
+        String name;
+        name = CircuitBreakerRegistry.redact(webhook);
+
+        if (paused.containsKey(name))
+        {
+            return false;
+        }
+
+        Deque<Delivery> parkedDeliveries;
+        parkedDeliveries = new ArrayDeque<>();
+
+        // Lanes are ordered by priority rather than time, so keep the
+        // parked messages in the order they are to be delivered in
+        for (Deque<Delivery> lane : lanes)
+        {
+            Iterator<Delivery> iterator;
+            iterator = lane.iterator();
+
+            while (iterator.hasNext())
+            {
+                Delivery delivery;
+                delivery = iterator.next();
+
+                if (CircuitBreakerRegistry.redact(delivery.webhookUrl)
+                        .equals(name))
+                {
+                    iterator.remove();
+                    parkedDeliveries.add(delivery);
+
+                    size--;
+                    parked++;
+                }
+            }
+        }
+
+        paused.put(name, parkedDeliveries);
+
+        return true;
+    }
+
+    /**
+     * Resumes delivery to a paused webhook. Its parked messages are
+     * delivered ahead of the messages queued while it was paused.
+     *
+     * @param webhook The webhook URL, redacted as by
+     *                {@link CircuitBreakerRegistry#redact(String)} or not.
+     * @return true, if the webhook was paused
+     */
+    public synchronized boolean resume(String webhook)
+    {
+        Deque<Delivery> parkedDeliveries;
+        parkedDeliveries = paused.remove(
+                CircuitBreakerRegistry.redact(webhook));
+
+        if (parkedDeliveries == null)
+        {
+            return false;
+        }
+
+        Iterator<Delivery> iterator;
+        iterator = parkedDeliveries.descendingIterator();
+
+        while (iterator.hasNext())
+        {
+            Delivery delivery;
+            delivery = iterator.next();
+
+            lanes.get(delivery.priority.ordinal()).addFirst(delivery);
+        }
+
+        size += parkedDeliveries.size();
+        parked -= parkedDeliveries.size();
+
+        notifyAll();
+
+        return true;
+    }
+
+    /**
+     * Gets the webhooks delivery is paused for.
+     *
+     * @return The redacted webhook URLs and the number of messages parked
+     * for each.
+     */
+    public synchronized Map<String, Integer> getPaused()
+    {
+        Map<String, Integer> result;
+        result = new LinkedHashMap<>();
+
+        for (Map.Entry<String, Deque<Delivery>> entry : paused.entrySet())
+        {
+            result.put(entry.getKey(), entry.getValue().size());
+        }
+
+        return result;
+    }
+
+    @Override
+    public void stop()
+    {
+        ScheduledExecutorService stopped;
+        List<Delivery> remaining;
+        Map<String, Deque<Delivery>> parkedByWebhook;
+
+        synchronized (this)
+        {
+            stopped = executor;
+            executor = null;
+
+            remaining = new ArrayList<>(size);
+
+            Delivery delivery;
+            while ((delivery = poll()) != null)
+            {
+                remaining.add(delivery);
+            }
+
+            // The messages of paused webhooks are not sent on stop, as the
+            // webhooks were paused on purpose
+            parkedByWebhook = new LinkedHashMap<>(paused);
+
+            paused.clear();
+            parked = 0;
+
+            notifyAll();
+        }
+
+        if (stopped != null)
+        {
+            stopped.shutdownNow();
+
+            if (stopped instanceof WorkQueue.Executor)
+            {
+                ((WorkQueue.Executor) stopped).unregisterWorkQueue();
+            }
+        }
+
+        for (Map.Entry<String, Deque<Delivery>> entry :
+                parkedByWebhook.entrySet())
+        {
+            LOGGER.warn("Dropped " + entry.getValue().size() + " messages " +
+                    "parked for paused webhook " + entry.getKey());
+
+            for (Delivery delivery : entry.getValue())
+            {
+                discard(delivery, "Dropped, webhook paused");
+            }
+        }
+
+        // Deliver whatever is still queued rather than losing it, for as
+        // long as the drain timeout allows
+        long deadline;
+        deadline = ticker.read() + TimeUnit.MILLISECONDS.toNanos(
+                config.getDeliveryDrainTimeout());
+
+        int abandoned;
+        abandoned = 0;
+
+        for (Delivery delivery : remaining)
+        {
+            if (ticker.read() - deadline < 0)
+            {
+                publish(delivery);
+            }
+            else
+            {
+                discard(delivery, "Dropped, drain timed out");
+                abandoned++;
+            }
+        }
+
+        if (abandoned > 0)
+        {
+            LOGGER.warn("Dropped " + abandoned + " queued messages left " +
+                    "after the drain timeout");
+        }
+    }
+
+    /**
+     * Queues the message for delivery. Before the dispatcher has started, or
+     * after it has stopped, the message is published on the calling thread.
+     * When the queue is full the oldest message of the least urgent lane
+     * below the message's priority is dropped to make room; if there is no
+     * such message, the new message is dropped.
+     *
+     * @param message The message to publish.
+     * @param projectConfig The ProjectConfig of the message's project,
+     *                      providing the webhook URL to publish to.
+     * @param priority The delivery priority, NORMAL if null.
+     * @param trace The trace of the message, completed once the message
+     *              has been delivered or dropped.
+     */
+    public void dispatch(String message, ProjectConfig projectConfig,
+            Priority priority, DeliveryTrace trace)
+    {
+        dispatch(message, projectConfig, priority, 0, trace);
+    }
+
+    /**
+     * Queues the message about a change for delivery. For projects with
+     * threaded replies the message is posted in the thread of the change.
+     *
+     * @param message The message to publish.
+     * @param projectConfig The ProjectConfig of the message's project,
+     *                      providing the webhook URL to publish to.
+     * @param priority The delivery priority, NORMAL if null.
+     * @param change The number of the change the message is about, 0 if it
+     *               is not about a single change.
+     * @param trace The trace of the message, completed once the message
+     *              has been delivered or dropped.
+     * @see #dispatch(String, ProjectConfig, Priority, DeliveryTrace)
+     */
+    public void dispatch(String message, ProjectConfig projectConfig,
+            Priority priority, int change, DeliveryTrace trace)
+    {
+        Delivery delivery;
+        delivery = newDelivery(message, projectConfig, priority, trace);
+
+        if (change > 0 && projectConfig.isThreadReplies())
+        {
+            delivery.channel = projectConfig.getChannel();
+            delivery.change = change;
+        }
+
+        dispatch(delivery);
+    }
+
+    /**
+     * Queues the status card of a change for delivery. Cards are queued,
+     * paused and dropped like the other messages of their project's
+     * webhook, though they are published with the Web API.
+     *
+     * @param message The card to publish.
+     * @param projectConfig The ProjectConfig of the card's project,
+     *                      providing the channel to publish to.
+     * @param priority The delivery priority, NORMAL if null.
+     * @param change The number of the change the card is about.
+     * @param replace Whether the card replaces the card previously
+     *                published for the change, rather than being posted.
+     * @param trace The trace of the card, completed once the card has been
+     *              delivered or dropped.
+     * @param callback The callback told whether the card was published,
+     *                 called once the card has been delivered or dropped.
+     */
+    public void dispatchCard(String message, ProjectConfig projectConfig,
+            Priority priority, int change, boolean replace,
+            DeliveryTrace trace, Callback callback)
+    {
+        Delivery delivery;
+        delivery = newDelivery(message, projectConfig, priority, trace);
+        delivery.channel = projectConfig.getChannel();
+        delivery.change = change;
+        delivery.card = true;
+        delivery.replace = replace;
+        delivery.callback = callback;
+
+        dispatch(delivery);
+    }
+
+    private Delivery newDelivery(String message, ProjectConfig projectConfig,
+            Priority priority, DeliveryTrace trace)
+    {
+        return new Delivery(message, projectConfig.getWebhookUrl(),
+                projectConfig.getProject(),
+                priority == null ? Priority.NORMAL : priority, trace,
+                ticker.read());
+    }
+
+    private void dispatch(Delivery delivery)
+    {
+        statistics.recordQueued(delivery.project, delivery.webhookUrl);
+
+        boolean direct;
+        Delivery victim;
+        victim = null;
+
+        synchronized (this)
+        {
+            direct = executor == null;
+
+            if (!direct)
+            {
+                if (size + parked >= getQueueSize())
+                {
+                    victim = pollLessUrgentThan(delivery.priority);
+
+                    if (victim == null)
+                    {
+                        victim = delivery;
+                    }
+                }
+
+                if (victim != delivery)
+                {
+                    enqueue(delivery);
+                }
+            }
+        }
+
+        // Dropped outside the lock, as a callback may dispatch again
+        if (victim != null)
+        {
+            drop(victim);
+        }
+
+        if (direct)
+        {
+            publish(delivery);
+        }
+    }
+
+    private void enqueue(Delivery delivery)
+    {
+        Deque<Delivery> parkedDeliveries;
+        parkedDeliveries = paused.isEmpty() ? null : paused.get(
+                CircuitBreakerRegistry.redact(delivery.webhookUrl));
+
+        if (parkedDeliveries != null)
+        {
+            parkedDeliveries.add(delivery);
+            parked++;
+        }
+        else
+        {
+            lanes.get(delivery.priority.ordinal()).add(delivery);
+            size++;
+
+            notify();
+        }
+    }
+
+    private Delivery pollLessUrgentThan(Priority priority)
+    {
+        for (int lane = lanes.size() - 1; lane > priority.ordinal(); lane--)
+        {
+            Delivery victim;
+            victim = lanes.get(lane).poll();
+
+            if (victim != null)
+            {
+                size--;
+
+                return victim;
+            }
+        }
+
+        return null;
+    }
+
+    private void drop(Delivery delivery)
+    {
+        LOGGER.warn("Delivery queue is full, dropping " + delivery.priority +
+                " priority message");
+
+        discard(delivery, "Dropped, delivery queue full");
+    }
+
+    private void discard(Delivery delivery, String error)
+    {
+        dropped.incrementAndGet();
+
+        statistics.recordError(delivery.webhookUrl, error);
+        long queued;
+        queued = ticker.read() - delivery.enqueuedAt;
+
+        statistics.recordDelivered(delivery.project, delivery.webhookUrl,
+                queued, false);
+
+        delivery.trace.record(DeliveryTrace.Stage.QUEUE, queued);
+        tracer.finish(delivery.trace, delivery.project, delivery.webhookUrl,
+                false);
+
+        complete(delivery, false);
+    }
+
+    private static void complete(Delivery delivery, boolean published)
+    {
+        if (delivery.callback == null)
+        {
+            return;
+        }
+
+        try
+        {
+            delivery.callback.delivered(published);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("Completing delivery failed", e);
+        }
+    }
+
+    /**
+     * Removes the next message to deliver according to the lane weights.
+     *
+     * @return The next message, or null if the queue is empty.
+     */
+    synchronized Delivery poll()
+    {
+        if (size == 0)
+        {
+            return null;
+        }
+
+        while (true)
+        {
+            for (int lane = 0; lane < lanes.size(); lane++)
+            {
+                if (credits[lane] > 0 && !lanes.get(lane).isEmpty())
+                {
+                    credits[lane]--;
+                    size--;
+
+                    return lanes.get(lane).poll();
+                }
+            }
+
+            // Every lane holding messages has used up its share of the
+            // round, so start the next one
+            System.arraycopy(weights, 0, credits, 0, weights.length);
+        }
+    }
+
+    private void publish(Delivery delivery)
+    {
+        boolean published;
+        published = false;
+
+        long start;
+        start = ticker.read();
+
+        inFlight.incrementAndGet();
+        try
+        {
+            dispatched.incrementAndGet();
+
+            if (delivery.card)
+            {
+                published = publisher.publishCard(delivery.message,
+                        delivery.channel, delivery.change, delivery.replace);
+            }
+            else
+            {
+                published = delivery.change > 0
+                        ? publisher.publish(delivery.message,
+                                delivery.webhookUrl, delivery.channel,
+                                delivery.change)
+                        : publisher.publish(delivery.message,
+                                delivery.webhookUrl);
+            }
+        }
+        catch (Throwable e)
+        {
+            LOGGER.error("Publishing " + delivery.priority +
+                    " priority message failed", e);
+
+            statistics.recordError(delivery.webhookUrl, String.valueOf(
+                    e.getMessage()));
+        }
+        finally
+        {
+            inFlight.decrementAndGet();
+
+            long end;
+            end = ticker.read();
+
+            statistics.recordDelivered(delivery.project, delivery.webhookUrl,
+                    end - delivery.enqueuedAt, published);
+
+            delivery.trace.record(DeliveryTrace.Stage.QUEUE,
+                    start - delivery.enqueuedAt);
+            delivery.trace.record(DeliveryTrace.Stage.SLACK, end - start);
+            tracer.finish(delivery.trace, delivery.project,
+                    delivery.webhookUrl, published);
+
+            complete(delivery, published);
+        }
+    }
+
+    /**
+     * Gets the number of messages waiting for delivery, not counting those
+     * parked for paused webhooks.
+     *
+     * @return The number of queued messages.
+     */
+    public synchronized int getQueued()
+    {
+        return size;
+    }
+
+    /**
+     * Gets how long the oldest queued message has been waiting.
+     *
+     * @return The delivery lag in milliseconds, 0 if the queue is empty.
+     */
+    public synchronized long getLag()
+    {
+        if (size == 0)
+        {
+            return 0;
+        }
+
+        long now;
+        now = ticker.read();
+
+        long oldest;
+        oldest = now;
+
+        for (Deque<Delivery> lane : lanes)
+        {
+            Delivery head;
+            head = lane.peek();
+
+            if (head != null && head.enqueuedAt - oldest < 0)
+            {
+                oldest = head.enqueuedAt;
+            }
+        }
+
+        return TimeUnit.NANOSECONDS.toMillis(now - oldest);
+    }
+
+    /**
+     * Gets the number of messages handed to the publisher.
+     *
+     * @return The number of messages dispatched.
+     */
+    public long getDispatched()
+    {
+        return dispatched.get();
+    }
+
+    /**
+     * Gets the number of messages dropped because the queue was full, or
+     * because they were parked or not drained in time on stop.
+     *
+     * @return The number of messages dropped.
+     */
+    public long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * Is told the outcome of a delivery.
+     */
+    public interface Callback
+    {
+        /**
+         * Called once the message has been delivered or dropped.
+         *
+         * @param published true, if the message was published
+         */
+        void delivered(boolean published);
+    }
+
+    static class Delivery
+    {
+        final String message;
+        final String webhookUrl;
+        final String project;
+        final Priority priority;
+        final DeliveryTrace trace;
+        final long enqueuedAt;
+
+        // The channel and change of a threaded reply or status card
+        String channel;
+        int change;
+
+        // Whether this is a status card, and whether it replaces the
+        // previous card of the change
+        boolean card;
+        boolean replace;
+
+        Callback callback;
+
+        Delivery(String message, String webhookUrl, String project,
+                Priority priority, DeliveryTrace trace, long enqueuedAt)
+        {
+            this.message = message;
+            this.webhookUrl = webhookUrl;
+            this.project = project;
+            this.priority = priority;
+            this.trace = trace;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (true)
+                {
+                    Delivery delivery;
+
+                    synchronized (MessageDispatcher.this)
+                    {
+                        while (true)
+                        {
+                            if (workers > threads)
+                            {
+                                workers--;
+
+                                // Pass on a wakeup this worker may have
+                                // taken from one that stays
+                                MessageDispatcher.this.notify();
+                                return;
+                            }
+
+                            if ((delivery = poll()) != null)
+                            {
+                                break;
+                            }
+
+                            if (executor == null)
+                            {
+                                return;
+                            }
+
+                            MessageDispatcher.this.wait();
+                        }
+                    }
+
+                    publish(delivery);
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return "Slack message delivery";
+        }
+    }
+}
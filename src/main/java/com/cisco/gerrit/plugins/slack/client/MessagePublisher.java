@@ -0,0 +1,367 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.google.common.util.concurrent.Striped;
+import com.google.gerrit.metrics.Counter1;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.Field;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.metrics.Timer0;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * Publishes generated messages to Slack, guarding each webhook with its
+ * circuit breaker, keeping the requests to each host within its adaptive
+ * concurrency limit, keeping the connection warmer informed and recording the
+ * latency and status of every request. Messages for changes of projects
+ * with threaded replies are posted with the Web API instead, into the
+ * thread of their change, and the status cards of changes are posted and
+ * then edited in place.
+ */
+@Singleton
+public class MessagePublisher
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(MessagePublisher.class);
+
+    // Stands in for the response of a message that was never sent
+    private static final WebhookClient.Response NOT_SENT =
+            new WebhookClient.Response(0, "", false);
+
+    private final GlobalConfig config;
+    private final CircuitBreakerRegistry circuitBreakers;
+    private final ConcurrencyLimiter concurrencyLimiter;
+    private final ConnectionWarmer connectionWarmer;
+    private final ChangeThreads threads;
+    private final DeliveryStatistics statistics;
+    private final Timer0 httpLatency;
+    private final Counter1<Integer> responses;
+
+    // Serializes the messages of a change, so its first messages do not each
+    // start a thread
+    private final Striped<Lock> threadLocks;
+
+    /**
+     * Creates a new MessagePublisher instance.
+     *
+     * @param config The GlobalConfig holding the Web API settings.
+     * @param circuitBreakers The registry of per webhook circuit breakers.
+     * @param concurrencyLimiter The per host limits of concurrent requests.
+     * @param connectionWarmer The connection warmer to notify of usage.
+     * @param threads The threads of changes messages are replies to.
+     * @param statistics The statistics to record failures in.
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public MessagePublisher(GlobalConfig config,
+            CircuitBreakerRegistry circuitBreakers,
+            ConcurrencyLimiter concurrencyLimiter,
+            ConnectionWarmer connectionWarmer, ChangeThreads threads,
+            DeliveryStatistics statistics, MetricMaker metricMaker)
+    {
+        this.config = config;
+        this.circuitBreakers = circuitBreakers;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.connectionWarmer = connectionWarmer;
+        this.threads = threads;
+        this.statistics = statistics;
+
+        httpLatency = metricMaker.newTimer("latency/http",
+                new Description("Round trip time of requests to Slack")
+                        .setCumulative()
+                        .setUnit(Description.Units.MILLISECONDS));
+
+        responses = metricMaker.newCounter("http/responses",
+                new Description("Responses from Slack, by HTTP status, 0 " +
+                        "when no response was received")
+                        .setRate()
+                        .setUnit("responses"),
+                Field.ofInteger("status"));
+
+        threadLocks = Striped.lock(64);
+    }
+
+    /**
+     * Publishes the message to the webhook, unless the circuit for that
+     * webhook is open, in which case the message is dropped immediately.
+     *
+     * @param message The message to publish.
+     * @param webhookUrl The webhook URL to publish to.
+     * @return true, if the message was published; otherwise false
+     */
+    public boolean publish(String message, String webhookUrl)
+    {
+        return publish(new WebhookClient(config.getHttpConnectTimeout(),
+                config.getHttpReadTimeout()), message, webhookUrl)
+                .isPublished();
+    }
+
+    /**
+     * Publishes the message as a reply in the thread of the change, or, if
+     * the change has no thread in the channel yet, as the message starting
+     * it. Without a Web API token the message is published to the webhook.
+     *
+     * @param message The message to publish.
+     * @param webhookUrl The webhook URL to publish to without a token.
+     * @param channel The channel the message is published in.
+     * @param change The number of the change the message is about.
+     * @return true, if the message was published; otherwise false
+     */
+    public boolean publish(String message, String webhookUrl, String channel,
+            int change)
+    {
+        if (!threads.isEnabled())
+        {
+            return publish(message, webhookUrl);
+        }
+
+        Lock lock;
+        lock = threadLocks.get(change);
+
+        lock.lock();
+        try
+        {
+            String threadTs;
+            threadTs = threads.get(channel, change);
+
+            SlackApiClient client;
+            client = new SlackApiClient(config.getApiToken(), threadTs,
+                    config.getHttpConnectTimeout(),
+                    config.getHttpReadTimeout());
+
+            WebhookClient.Response response;
+            response = publish(client, message, config.getApiUrl());
+
+            if (response.isPublished() && threadTs == null)
+            {
+                recordThread(response, channel, change);
+            }
+
+            return response.isPublished();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Publishes the status card of a change, either posting it or replacing
+     * the card previously published for the change in the channel. A card
+     * to replace is posted if there is no previous card. Requires a Web API
+     * token.
+     *
+     * @param message The card to publish.
+     * @param channel The channel the card is published in.
+     * @param change The number of the change the card is about.
+     * @param replace Whether to replace the previous card of the change.
+     * @return true, if the card was published; otherwise false
+     */
+    public boolean publishCard(String message, String channel, int change,
+            boolean replace)
+    {
+        Lock lock;
+        lock = threadLocks.get(change);
+
+        lock.lock();
+        try
+        {
+            String ts;
+            ts = replace ? threads.get(channel, change) : null;
+
+            String channelId;
+            channelId = threads.getChannelId(channel);
+
+            if (ts != null && channelId != null)
+            {
+                return publish(SlackApiClient.forUpdate(config.getApiToken(),
+                        channelId, ts, config.getHttpConnectTimeout(),
+                        config.getHttpReadTimeout()), message,
+                        getUpdateUrl()).isPublished();
+            }
+
+            SlackApiClient client;
+            client = new SlackApiClient(config.getApiToken(), null,
+                    config.getHttpConnectTimeout(),
+                    config.getHttpReadTimeout());
+
+            WebhookClient.Response response;
+            response = publish(client, message, config.getApiUrl());
+
+            if (response.isPublished())
+            {
+                recordThread(response, channel, change);
+            }
+
+            return response.isPublished();
+        }
+        finally
+        {
+            lock.unlock();
+        }
+    }
+
+    private void recordThread(WebhookClient.Response response,
+            String channel, int change)
+    {
+        String ts;
+        ts = SlackApiClient.getTs(response);
+
+        if (ts != null)
+        {
+            threads.put(channel, change, ts);
+        }
+
+        String channelId;
+        channelId = SlackApiClient.getChannel(response);
+
+        if (channelId != null)
+        {
+            threads.putChannelId(channel, channelId);
+        }
+    }
+
+    // chat.update lives next to the configured chat.postMessage
+    private String getUpdateUrl()
+    {
+        String apiUrl;
+        apiUrl = config.getApiUrl();
+
+        return apiUrl.substring(0, apiUrl.lastIndexOf('/') + 1) +
+                "chat.update";
+    }
+
+    private static void release(ConcurrencyLimit limit, long permit,
+            long elapsed, boolean published, int status)
+    {
+        if (published)
+        {
+            limit.release(permit, elapsed, false);
+        }
+        else if (ConcurrencyLimiter.isCongested(status))
+        {
+            limit.release(permit, elapsed, true);
+        }
+        else
+        {
+            limit.release(permit);
+        }
+    }
+
+    private WebhookClient.Response publish(WebhookClient client,
+            String message, String webhookUrl)
+    {
+        WebhookClient.Response response;
+        response = NOT_SENT;
+
+        CircuitBreaker circuitBreaker;
+        circuitBreaker = null;
+
+        if (circuitBreakers.isEnabled())
+        {
+            circuitBreaker = circuitBreakers.get(webhookUrl);
+
+            if (!circuitBreaker.allowRequest())
+            {
+                LOGGER.debug("Circuit for " + circuitBreaker.getName() +
+                        " is open, dropping message");
+                statistics.recordError(webhookUrl, "Dropped, circuit open");
+                return NOT_SENT;
+            }
+        }
+
+        ConcurrencyLimit limit;
+        limit = null;
+
+        long permit;
+        permit = 0;
+
+        if (concurrencyLimiter.isEnabled())
+        {
+            limit = concurrencyLimiter.get(webhookUrl);
+
+            try
+            {
+                permit = limit.acquire();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+
+                if (circuitBreaker != null)
+                {
+                    circuitBreaker.releasePermit();
+                }
+
+                statistics.recordError(webhookUrl, "Interrupted");
+                return NOT_SENT;
+            }
+        }
+
+        long start;
+        start = System.nanoTime();
+        try
+        {
+            response = client.send(message, webhookUrl);
+            connectionWarmer.markUsed(webhookUrl);
+
+            if (!response.isPublished())
+            {
+                statistics.recordError(webhookUrl, "Slack responded with " +
+                        "HTTP " + response.getStatus());
+            }
+        }
+        finally
+        {
+            long elapsed;
+            elapsed = System.nanoTime() - start;
+
+            httpLatency.record(elapsed, TimeUnit.NANOSECONDS);
+            responses.increment(response.getStatus());
+
+            if (limit != null)
+            {
+                release(limit, permit, elapsed, response.isPublished(),
+                        response.getStatus());
+            }
+
+            if (circuitBreaker != null && response.isPublished())
+            {
+                circuitBreaker.recordSuccess(elapsed);
+            }
+            else if (circuitBreaker != null)
+            {
+                circuitBreaker.recordFailure(elapsed);
+            }
+        }
+
+        return response;
+    }
+}
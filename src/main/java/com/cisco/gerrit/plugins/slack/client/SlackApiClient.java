@@ -0,0 +1,227 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A minimal Slack Web API client for posting messages with chat.postMessage
+ * (https://api.slack.com/methods/chat.postMessage), which unlike incoming
+ * webhooks returns the timestamp of the posted message and can post replies
+ * to a thread, and for editing them with chat.update
+ * (https://api.slack.com/methods/chat.update). The payload is the same as
+ * for webhooks.
+ */
+public class SlackApiClient extends WebhookClient
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(SlackApiClient.class);
+
+    // Slack answers with ok and the channel and timestamp ahead of the
+    // echoed message, so they are found within the truncated response
+    private static final Pattern OK = Pattern.compile("\"ok\"\\s*:\\s*true");
+    private static final Pattern TS =
+            Pattern.compile("\"ts\"\\s*:\\s*\"([0-9]+\\.[0-9]+)\"");
+    private static final Pattern CHANNEL =
+            Pattern.compile("\"channel\"\\s*:\\s*\"([^\"]*)\"");
+
+    private final String token;
+    private final String threadTs;
+    private final String channelId;
+    private final String updateTs;
+
+    /**
+     * Creates a new SlackApiClient instance with the default timeouts.
+     *
+     * @param token The bot token to authorize with.
+     * @param threadTs The timestamp of the thread to reply to, or null to
+     *                 post a top level message.
+     */
+    public SlackApiClient(String token, String threadTs)
+    {
+        this(token, threadTs, DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Creates a new SlackApiClient instance.
+     *
+     * @param token The bot token to authorize with.
+     * @param threadTs The timestamp of the thread to reply to, or null to
+     *                 post a top level message.
+     * @param connectTimeout The timeout, in milliseconds, for establishing
+     *                       a connection.
+     * @param readTimeout The timeout, in milliseconds, for waiting on
+     *                    response data.
+     */
+    public SlackApiClient(String token, String threadTs, int connectTimeout,
+            int readTimeout)
+    {
+        this(token, threadTs, null, null, connectTimeout, readTimeout);
+    }
+
+    private SlackApiClient(String token, String threadTs, String channelId,
+            String updateTs, int connectTimeout, int readTimeout)
+    {
+        super(connectTimeout, readTimeout);
+
+        this.token = token;
+        this.threadTs = threadTs;
+        this.channelId = channelId;
+        this.updateTs = updateTs;
+    }
+
+    /**
+     * Creates a client that replaces a posted message using chat.update.
+     *
+     * @param token The bot token to authorize with.
+     * @param channelId The ID of the channel the message was posted in, as
+     *                  chat.update does not accept channel names.
+     * @param ts The timestamp of the message to replace.
+     * @return The SlackApiClient instance.
+     */
+    public static SlackApiClient forUpdate(String token, String channelId,
+            String ts)
+    {
+        return forUpdate(token, channelId, ts, DEFAULT_CONNECT_TIMEOUT,
+                DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Creates a client that replaces a posted message using chat.update.
+     *
+     * @param token The bot token to authorize with.
+     * @param channelId The ID of the channel the message was posted in, as
+     *                  chat.update does not accept channel names.
+     * @param ts The timestamp of the message to replace.
+     * @param connectTimeout The timeout, in milliseconds, for establishing
+     *                       a connection.
+     * @param readTimeout The timeout, in milliseconds, for waiting on
+     *                    response data.
+     * @return The SlackApiClient instance.
+     */
+    public static SlackApiClient forUpdate(String token, String channelId,
+            String ts, int connectTimeout, int readTimeout)
+    {
+        return new SlackApiClient(token, null, channelId, ts,
+                connectTimeout, readTimeout);
+    }
+
+    /**
+     * Posts a message using chat.postMessage, or replaces one using
+     * chat.update.
+     *
+     * @param message The message payload.
+     * @param apiUrl  The URL of the chat.postMessage or chat.update method.
+     * @return The response of Slack, holding the channel and timestamp of
+     * the message.
+     */
+    @Override
+    public Response send(String message, String apiUrl)
+    {
+        if (message == null || message.equals(""))
+        {
+            throw new IllegalArgumentException(
+                    "message cannot be null or empty");
+        }
+
+        String payload;
+        if (updateTs != null)
+        {
+            payload = CHANNEL.matcher(message).replaceFirst(
+                    "\"channel\": \"" + Matcher.quoteReplacement(channelId) +
+                            "\"");
+            payload = withField(payload, "ts", updateTs);
+        }
+        else
+        {
+            payload = withField(message, "thread_ts", threadTs);
+        }
+
+        Response response;
+        response = postRequest(payload, apiUrl, "Bearer " + token);
+
+        if (!OK.matcher(response.getBody()).find())
+        {
+            LOGGER.error("Unexpected response: [" + response.getBody() +
+                    "].");
+            return response;
+        }
+
+        return response.published();
+    }
+
+    /**
+     * Gets the timestamp Slack assigned to a posted message.
+     *
+     * @param response The response to posting the message.
+     * @return The message timestamp, or null if it is not known.
+     */
+    public static String getTs(Response response)
+    {
+        return find(TS, response);
+    }
+
+    /**
+     * Gets the ID of the channel Slack posted a message in.
+     *
+     * @param response The response to posting the message.
+     * @return The channel ID, or null if it is not known.
+     */
+    public static String getChannel(Response response)
+    {
+        return find(CHANNEL, response);
+    }
+
+    private static String find(Pattern pattern, Response response)
+    {
+        if (!response.isPublished())
+        {
+            return null;
+        }
+
+        Matcher matcher;
+        matcher = pattern.matcher(response.getBody());
+
+        return matcher.find() ? matcher.group(1) : null;
+    }
+
+    /**
+     * Adds a string field to the payload object, unless the value is null.
+     */
+    private static String withField(String message, String name,
+            String value)
+    {
+        int end;
+        end = message.lastIndexOf('}');
+
+        if (value == null || end < 0)
+        {
+            return message;
+        }
+
+        return message.substring(0, end) + ", \"" + name + "\": \"" + value +
+                "\"" + message.substring(end);
+    }
+}
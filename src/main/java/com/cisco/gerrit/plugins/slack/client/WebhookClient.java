@@ -17,14 +17,16 @@
 
 package com.cisco.gerrit.plugins.slack.client;
 
-import java.io.DataOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
-import java.util.Scanner;
+import java.nio.charset.StandardCharsets;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +44,80 @@ public class WebhookClient
     private static final Logger LOGGER =
             LoggerFactory.getLogger(WebhookClient.class);
 
+    /**
+     * The maximum number of response bytes kept. Slack answers "ok" or a
+     * short error code, anything beyond this is discarded.
+     */
+    static final int MAX_RESPONSE_SIZE = 512;
+
+    /**
+     * The default timeout, in milliseconds, for establishing a connection.
+     */
+    public static final int DEFAULT_CONNECT_TIMEOUT = 10000;
+
+    /**
+     * The default timeout, in milliseconds, for waiting on response data.
+     */
+    public static final int DEFAULT_READ_TIMEOUT = 30000;
+
+    /**
+     * The maximum number of response bytes drained beyond those kept, so
+     * the connection can be reused. A longer response is abandoned and its
+     * connection closed instead.
+     */
+    static final int MAX_DRAIN_SIZE = 64 * 1024;
+
+    /**
+     * Parsed webhook URLs, so a URL is not parsed again for every message.
+     */
+    private static final Cache<String, URL> URLS =
+            CacheBuilder.newBuilder().maximumSize(256).build();
+
+    private static final ThreadLocal<byte[]> RESPONSE_BUFFER =
+            new ThreadLocal<byte[]>()
+            {
+                @Override
+                protected byte[] initialValue()
+                {
+                    return new byte[MAX_RESPONSE_SIZE];
+                }
+            };
+
+    private static final ThreadLocal<byte[]> DISCARD_BUFFER =
+            new ThreadLocal<byte[]>()
+            {
+                @Override
+                protected byte[] initialValue()
+                {
+                    return new byte[1024];
+                }
+            };
+
+    private final int connectTimeout;
+    private final int readTimeout;
+
+    /**
+     * Creates a new WebhookClient instance with the default timeouts.
+     */
+    public WebhookClient()
+    {
+        this(DEFAULT_CONNECT_TIMEOUT, DEFAULT_READ_TIMEOUT);
+    }
+
+    /**
+     * Creates a new WebhookClient instance.
+     *
+     * @param connectTimeout The timeout, in milliseconds, for establishing
+     *                       a connection.
+     * @param readTimeout The timeout, in milliseconds, for waiting on
+     *                    response data.
+     */
+    public WebhookClient(int connectTimeout, int readTimeout)
+    {
+        this.connectTimeout = connectTimeout;
+        this.readTimeout = readTimeout;
+    }
+
     /**
      * Publish a message to the provided Slack webhook URL.
      *
@@ -50,6 +126,18 @@ public class WebhookClient
      * @return true, if successful; otherwise false
      */
     public boolean publish(String message, String webhookUrl)
+    {
+        return send(message, webhookUrl).isPublished();
+    }
+
+    /**
+     * Publish a message to the provided Slack webhook URL.
+     *
+     * @param message    The message to publish.
+     * @param webhookUrl The web hook URL to publish to.
+     * @return The response of Slack.
+     */
+    public Response send(String message, String webhookUrl)
     {
         if (message == null || message.equals(""))
         {
@@ -63,56 +151,116 @@ public class WebhookClient
                     "webhookUrl cannot be null or empty");
         }
 
-        boolean result;
-        result = false;
+        Response response;
+        response = postRequest(message, webhookUrl, null);
 
-        String response;
-        response = postRequest(message, webhookUrl);
-
-        if ("ok".equals(response))
+        if ("ok".equals(response.getBody()))
         {
-            result = true;
+            return response.published();
         }
-        else
+
+        LOGGER.error("Unexpected response: [" + response.getBody() + "].");
+
+        return response;
+    }
+
+    /**
+     * Opens, and completes a request on, a connection to the host of the
+     * provided URL. This resolves the host name and performs the TCP and TLS
+     * handshakes ahead of time, leaving the resolved address, the TLS session
+     * and the idle connection cached for the next message to the host.
+     *
+     * @param url The URL of the host to warm up.
+     * @return true, if the host answered; otherwise false
+     */
+    public boolean warmUp(String url)
+    {
+        HttpURLConnection connection;
+        connection = null;
+        try
         {
-            LOGGER.error("Unexpected response: [" + response + "].");
+            connection = openConnection(url);
+            connection.setRequestMethod("HEAD");
+
+            int status;
+            status = connection.getResponseCode();
+
+            InputStream responseStream;
+            responseStream = status < HttpURLConnection.HTTP_BAD_REQUEST
+                    ? connection.getInputStream()
+                    : connection.getErrorStream();
+
+            if (responseStream != null)
+            {
+                readResponse(responseStream, connection);
+                responseStream.close();
+            }
+
+            return true;
         }
+        catch (Exception e)
+        {
+            LOGGER.debug("Error warming up connection: " + e.getMessage());
 
-        return result;
+            if (connection != null)
+            {
+                connection.disconnect();
+            }
+
+            return false;
+        }
     }
 
     /**
      * Initiates an HTTP POST to the provided Webhook URL.
      *
-     * @param message    The message payload.
-     * @param webhookUrl The URL to post to.
-     * @return The response payload from Slack.
+     * @param message       The message payload.
+     * @param webhookUrl    The URL to post to.
+     * @param authorization The Authorization header to send, or null.
+     * @return The response from Slack.
      */
-    private String postRequest(String message, String webhookUrl)
+    protected Response postRequest(String message, String webhookUrl,
+            String authorization)
     {
-        String response;
+        byte[] body;
+        body = message.getBytes(StandardCharsets.UTF_8);
 
         HttpURLConnection connection;
-        connection = null;
+        connection = openConnection(webhookUrl);
+
+        boolean completed;
+        completed = false;
         try
         {
-            connection = openConnection(webhookUrl);
             try
             {
                 connection.setRequestMethod("POST");
                 connection.setRequestProperty("Content-Type",
-                        "application/json");
-                connection.setRequestProperty("charset", "utf-8");
+                        "application/json; charset=utf-8");
+
+                if (authorization != null)
+                {
+                    connection.setRequestProperty("Authorization",
+                            authorization);
+                }
 
                 connection.setDoInput(true);
                 connection.setDoOutput(true);
 
-                DataOutputStream request;
-                request = new DataOutputStream(connection.getOutputStream());
+                // The body is already encoded, so let the connection stream
+                // it straight out rather than buffering it a second time
+                connection.setFixedLengthStreamingMode(body.length);
 
-                request.write(message.getBytes("UTF-8"));
-                request.flush();
-                request.close();
+                OutputStream request;
+                request = connection.getOutputStream();
+                try
+                {
+                    request.write(body);
+                }
+                finally
+                {
+                    request.close();
+                }
             }
             catch (IOException e)
             {
@@ -121,17 +269,22 @@ public class WebhookClient
                                 "].", e);
             }
 
+            Response response;
             response = getResponse(connection);
+
+            completed = true;
+
+            return response;
         }
         finally
         {
-            if (connection != null)
+            // A connection whose response was fully read goes back to the
+            // keep-alive cache, anything else is torn down
+            if (!completed)
             {
                 connection.disconnect();
             }
         }
-
-        return response;
     }
 
     /**
@@ -144,7 +297,23 @@ public class WebhookClient
     {
         try
         {
-            return (HttpURLConnection) new URL(webhookUrl).openConnection();
+            URL url;
+            url = URLS.getIfPresent(webhookUrl);
+
+            if (url == null)
+            {
+                url = new URL(webhookUrl);
+                URLS.put(webhookUrl, url);
+            }
+
+            HttpURLConnection connection;
+            connection = (HttpURLConnection) url.openConnection();
+
+            // A hung host must never block the caller indefinitely
+            connection.setConnectTimeout(connectTimeout);
+            connection.setReadTimeout(readTimeout);
+
+            return connection;
         }
         catch (MalformedURLException e)
         {
@@ -160,66 +329,163 @@ public class WebhookClient
     }
 
     /**
-     * Gets the response payload.
+     * Gets the response.
      *
      * @param connection The connection.
-     * @return The string representation of the response.
+     * @return The status and payload of the response.
      */
-    private String getResponse(HttpURLConnection connection)
+    private Response getResponse(HttpURLConnection connection)
     {
-        String response;
+        int status;
+        status = 0;
 
         InputStream responseStream;
-        responseStream = null;
         try
         {
+            status = connection.getResponseCode();
             responseStream = connection.getInputStream();
-            response = readResponse(responseStream);
         }
         catch (IOException e)
         {
             responseStream = connection.getErrorStream();
-            response = readResponse(responseStream);
+        }
+
+        if (responseStream == null)
+        {
+            throw new RuntimeException("Error reading response: [no body].");
+        }
+
+        try
+        {
+            return new Response(status,
+                    readResponse(responseStream, connection), false);
         }
         finally
         {
-            if (responseStream != null)
+            try
             {
-                try
-                {
-                    responseStream.close();
-                }
-                catch (IOException e)
-                {
-                    LOGGER.debug("Error closing response stream: " +
-                            e.getMessage());
-                }
+                responseStream.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Error closing response stream: " +
+                        e.getMessage());
             }
         }
-
-        return response;
     }
 
     /**
-     * Reads the response from the response InputStream.
+     * Reads the response from the response InputStream. At most
+     * MAX_RESPONSE_SIZE bytes are kept, up to MAX_DRAIN_SIZE more are read
+     * and discarded so the underlying connection can be reused. A connection
+     * with more to read is closed instead.
      *
      * @param responseStream The response stream from the connection.
+     * @param connection The connection the response is read from.
      * @return The string representation of the response.
      */
-    private String readResponse(InputStream responseStream)
+    private String readResponse(InputStream responseStream,
+            HttpURLConnection connection)
     {
         try
         {
-            Scanner scanner;
-            scanner = new Scanner(responseStream, "UTF-8");
-            scanner.useDelimiter("\\A");
+            byte[] buffer;
+            buffer = RESPONSE_BUFFER.get();
+
+            int length;
+            length = 0;
+
+            for (int n; (n = responseStream.read(buffer, length,
+                    buffer.length - length)) > 0; )
+            {
+                length += n;
+            }
+
+            // Drain whatever did not fit in the buffer, within bounds
+            int drained;
+            drained = 0;
+
+            for (int n; (n = responseStream.read(DISCARD_BUFFER.get())) != -1; )
+            {
+                drained += n;
+
+                if (drained > MAX_DRAIN_SIZE)
+                {
+                    connection.disconnect();
+                    break;
+                }
+            }
 
-            return scanner.next();
+            return new String(buffer, 0, length, StandardCharsets.UTF_8);
         }
-        catch (Exception e)
+        catch (IOException e)
         {
             throw new RuntimeException(
                     "Error reading response: [" + e.getMessage() + "].", e);
         }
     }
+
+    /**
+     * The response of Slack to a published message.
+     */
+    public static class Response
+    {
+        private final int status;
+        private final String body;
+        private final boolean published;
+
+        /**
+         * Creates a new Response instance.
+         *
+         * @param status The HTTP status, 0 if there was no response.
+         * @param body The response payload, truncated.
+         * @param published Whether the message was published.
+         */
+        public Response(int status, String body, boolean published)
+        {
+            this.status = status;
+            this.body = body;
+            this.published = published;
+        }
+
+        /**
+         * Gets the HTTP status of the response.
+         *
+         * @return The HTTP status code, or 0 if no response was received.
+         */
+        public int getStatus()
+        {
+            return status;
+        }
+
+        /**
+         * Gets the response payload, truncated to MAX_RESPONSE_SIZE bytes.
+         *
+         * @return The response payload.
+         */
+        public String getBody()
+        {
+            return body;
+        }
+
+        /**
+         * Whether the message was published.
+         *
+         * @return true, if Slack accepted the message; otherwise false
+         */
+        public boolean isPublished()
+        {
+            return published;
+        }
+
+        /**
+         * Gets this response marked as published.
+         *
+         * @return The published response.
+         */
+        Response published()
+        {
+            return new Response(status, body, true);
+        }
+    }
 }
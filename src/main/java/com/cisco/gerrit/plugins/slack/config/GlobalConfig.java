@@ -0,0 +1,368 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+/**
+ * A simple configuration class to access the server wide plugin config
+ * values, as set in the plugin section of the gerrit.config file. These
+ * settings govern delivery to Slack and so cannot vary per project.
+ */
+@Singleton
+public class GlobalConfig
+{
+    private int httpConnectTimeout;
+    private int httpReadTimeout;
+    private boolean circuitBreakerEnabled;
+    private int circuitBreakerWindowSize;
+    private int circuitBreakerMinimumCalls;
+    private int circuitBreakerFailureRate;
+    private long circuitBreakerSlowCallThreshold;
+    private long circuitBreakerOpenDuration;
+    private boolean concurrencyLimitEnabled;
+    private int concurrencyLimitInitial;
+    private int concurrencyLimitMax;
+    private boolean warmUpEnabled;
+    private String[] warmUpUrls;
+    private long warmUpInterval;
+    private int debounceMaxPending;
+    private int digestMaxMessageSize;
+    private long dedupWindow;
+    private int dedupMaxEvents;
+    private int deliveryThreads;
+    private int deliveryQueueSize;
+    private long deliveryDrainTimeout;
+    private int priorityWeightHigh;
+    private int priorityWeightNormal;
+    private int priorityWeightLow;
+    private int shedQueueDepth;
+    private long shedLag;
+    private boolean shedSummaryEnabled;
+    private int stormThreshold;
+    private long stormWindow;
+    private long traceThreshold;
+    private int traceSampleRate;
+    private String apiUrl;
+    private String apiToken;
+    private long threadTtl;
+    private String haLeaseDir;
+    private String haNodeId;
+    private String haPartition;
+    private long haHeartbeatInterval;
+    private long haLeaseTimeout;
+
+    /**
+     * Creates a new instance of the GlobalConfig class.
+     *
+     * @param configFactory The Gerrit PluginConfigFactory instance to use.
+     */
+    @Inject
+    public GlobalConfig(PluginConfigFactory configFactory)
+    {
+        PluginConfig config;
+        config = configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME);
+
+        httpConnectTimeout = config.getInt("http-connect-timeout", 10000);
+
+        httpReadTimeout = config.getInt("http-read-timeout", 30000);
+
+        circuitBreakerEnabled = config.getBoolean(
+                "circuit-breaker-enabled", true);
+
+        circuitBreakerWindowSize = config.getInt(
+                "circuit-breaker-window-size", 20);
+
+        circuitBreakerMinimumCalls = config.getInt(
+                "circuit-breaker-minimum-calls", 10);
+
+        circuitBreakerFailureRate = config.getInt(
+                "circuit-breaker-failure-rate", 50);
+
+        circuitBreakerSlowCallThreshold = config.getLong(
+                "circuit-breaker-slow-call-threshold", 10000L);
+
+        circuitBreakerOpenDuration = config.getLong(
+                "circuit-breaker-open-duration", 60000L);
+
+        concurrencyLimitEnabled = config.getBoolean(
+                "concurrency-limit-enabled", true);
+
+        concurrencyLimitInitial = config.getInt(
+                "concurrency-limit-initial", 4);
+
+        concurrencyLimitMax = config.getInt("concurrency-limit-max", 64);
+
+        warmUpEnabled = config.getBoolean("warm-up-enabled", false);
+
+        warmUpUrls = config.getStringList("warm-up-url");
+
+        warmUpInterval = config.getLong("warm-up-interval", 30000L);
+
+        debounceMaxPending = config.getInt("debounce-max-pending", 1000);
+
+        digestMaxMessageSize = config.getInt("digest-max-message-size",
+                40000);
+
+        dedupWindow = config.getLong("dedup-window", 600000L);
+
+        dedupMaxEvents = config.getInt("dedup-max-events", 10000);
+
+        deliveryThreads = config.getInt("delivery-threads", 2);
+
+        deliveryQueueSize = config.getInt("delivery-queue-size", 10000);
+
+        deliveryDrainTimeout = config.getLong("delivery-drain-timeout",
+                10000L);
+
+        priorityWeightHigh = config.getInt("priority-weight-high", 8);
+
+        priorityWeightNormal = config.getInt("priority-weight-normal", 3);
+
+        priorityWeightLow = config.getInt("priority-weight-low", 1);
+
+        shedQueueDepth = config.getInt("shed-queue-depth", 0);
+
+        shedLag = config.getLong("shed-lag", 0L);
+
+        shedSummaryEnabled = config.getBoolean("shed-summary-enabled", false);
+
+        stormThreshold = config.getInt("storm-threshold", 0);
+
+        stormWindow = config.getLong("storm-window", 60000L);
+
+        traceThreshold = config.getLong("trace-threshold", 5000L);
+
+        traceSampleRate = config.getInt("trace-sample-rate", 1000);
+
+        apiUrl = config.getString("api-url",
+                "https://slack.com/api/chat.postMessage");
+
+        apiToken = config.getString("api-token", "");
+
+        threadTtl = config.getLong("thread-ttl", 2592000000L);
+
+        haLeaseDir = config.getString("ha-lease-dir", "");
+
+        haNodeId = config.getString("ha-node-id", "");
+
+        haPartition = config.getString("ha-partition", "change");
+
+        haHeartbeatInterval = config.getLong("ha-heartbeat-interval", 5000L);
+
+        haLeaseTimeout = config.getLong("ha-lease-timeout", 30000L);
+    }
+
+    public int getHttpConnectTimeout()
+    {
+        return httpConnectTimeout;
+    }
+
+    public int getHttpReadTimeout()
+    {
+        return httpReadTimeout;
+    }
+
+    public boolean isCircuitBreakerEnabled()
+    {
+        return circuitBreakerEnabled;
+    }
+
+    public int getCircuitBreakerWindowSize()
+    {
+        return circuitBreakerWindowSize;
+    }
+
+    public int getCircuitBreakerMinimumCalls()
+    {
+        return circuitBreakerMinimumCalls;
+    }
+
+    public int getCircuitBreakerFailureRate()
+    {
+        return circuitBreakerFailureRate;
+    }
+
+    public long getCircuitBreakerSlowCallThreshold()
+    {
+        return circuitBreakerSlowCallThreshold;
+    }
+
+    public long getCircuitBreakerOpenDuration()
+    {
+        return circuitBreakerOpenDuration;
+    }
+
+    public boolean isConcurrencyLimitEnabled()
+    {
+        return concurrencyLimitEnabled;
+    }
+
+    public int getConcurrencyLimitInitial()
+    {
+        return concurrencyLimitInitial;
+    }
+
+    public int getConcurrencyLimitMax()
+    {
+        return concurrencyLimitMax;
+    }
+
+    public boolean isWarmUpEnabled()
+    {
+        return warmUpEnabled;
+    }
+
+    public String[] getWarmUpUrls()
+    {
+        return warmUpUrls;
+    }
+
+    public long getWarmUpInterval()
+    {
+        return warmUpInterval;
+    }
+
+    public int getDebounceMaxPending()
+    {
+        return debounceMaxPending;
+    }
+
+    public int getDigestMaxMessageSize()
+    {
+        return digestMaxMessageSize;
+    }
+
+    public long getDedupWindow()
+    {
+        return dedupWindow;
+    }
+
+    public int getDedupMaxEvents()
+    {
+        return dedupMaxEvents;
+    }
+
+    public int getDeliveryThreads()
+    {
+        return deliveryThreads;
+    }
+
+    public int getDeliveryQueueSize()
+    {
+        return deliveryQueueSize;
+    }
+
+    public long getDeliveryDrainTimeout()
+    {
+        return deliveryDrainTimeout;
+    }
+
+    public int getPriorityWeightHigh()
+    {
+        return priorityWeightHigh;
+    }
+
+    public int getPriorityWeightNormal()
+    {
+        return priorityWeightNormal;
+    }
+
+    public int getPriorityWeightLow()
+    {
+        return priorityWeightLow;
+    }
+
+    public int getShedQueueDepth()
+    {
+        return shedQueueDepth;
+    }
+
+    public long getShedLag()
+    {
+        return shedLag;
+    }
+
+    public boolean isShedSummaryEnabled()
+    {
+        return shedSummaryEnabled;
+    }
+
+    public int getStormThreshold()
+    {
+        return stormThreshold;
+    }
+
+    public long getStormWindow()
+    {
+        return stormWindow;
+    }
+
+    public long getTraceThreshold()
+    {
+        return traceThreshold;
+    }
+
+    public int getTraceSampleRate()
+    {
+        return traceSampleRate;
+    }
+
+    public String getApiUrl()
+    {
+        return apiUrl;
+    }
+
+    public String getApiToken()
+    {
+        return apiToken == null ? "" : apiToken;
+    }
+
+    public long getThreadTtl()
+    {
+        return threadTtl;
+    }
+
+    public String getHaLeaseDir()
+    {
+        return haLeaseDir == null ? "" : haLeaseDir;
+    }
+
+    public String getHaNodeId()
+    {
+        return haNodeId == null ? "" : haNodeId;
+    }
+
+    public String getHaPartition()
+    {
+        return haPartition;
+    }
+
+    public long getHaHeartbeatInterval()
+    {
+        return haHeartbeatInterval;
+    }
+
+    public long getHaLeaseTimeout()
+    {
+        return haLeaseTimeout;
+    }
+}
@@ -17,7 +17,9 @@
 
 package com.cisco.gerrit.plugins.slack.config;
 
+import com.cisco.gerrit.plugins.slack.message.Priority;
 import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.project.NoSuchProjectException;
 import org.slf4j.Logger;
@@ -42,15 +44,32 @@ public class ProjectConfig
      */
     public static final String CONFIG_NAME = "slack-integration";
 
+    private String project;
     private boolean enabled;
     private String webhookUrl;
     private String channel;
     private String username;
     private String ignore;
+    private String[] filters;
     private boolean publishOnPatchSetCreated;
     private boolean publishOnChangeMerged;
     private boolean publishOnCommentAdded;
     private boolean publishOnReviewerAdded;
+    private String[] commentAddedLabels;
+    private boolean commentAddedNegativeOnly;
+    private boolean commentAddedVoteSummary;
+    private long debounceWindow;
+    private long digestInterval;
+    private int digestMaxEvents;
+    private boolean threadReplies;
+    private boolean statusCard;
+    private Priority patchSetCreatedPriority;
+    private Priority changeMergedPriority;
+    private Priority commentAddedPriority;
+    private Priority reviewerAddedPriority;
+
+    // Options of other event types are read when asked for
+    private PluginConfig pluginConfig;
 
     /**
      * Creates a new instance of the ProjectConfig class for the given project.
@@ -60,6 +79,8 @@ public class ProjectConfig
      */
     public ProjectConfig(PluginConfigFactory configFactory, String project)
     {
+        this.project = project;
+
         enabled = false;
 
         Project.NameKey projectNameKey;
@@ -67,45 +88,63 @@ public class ProjectConfig
 
         try
         {
-            enabled = configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getBoolean(
-                    "enabled", false);
+            pluginConfig = configFactory.getFromProjectConfigWithInheritance(
+                    projectNameKey, CONFIG_NAME);
+
+            enabled = pluginConfig.getBoolean("enabled", false);
 
-            webhookUrl = configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getString(
-                    "webhookurl", "");
+            webhookUrl = pluginConfig.getString("webhookurl", "");
 
-            channel = configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getString(
-                    "channel", "general");
+            channel = pluginConfig.getString("channel", "general");
 
-            username = configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getString(
-                    "username", "gerrit");
+            username = pluginConfig.getString("username", "gerrit");
 
-            ignore = configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getString(
-                    "ignore", "");
+            ignore = pluginConfig.getString("ignore", "");
 
-            publishOnPatchSetCreated =
-                configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getBoolean(
+            filters = pluginConfig.getStringList("filter");
+
+            publishOnPatchSetCreated = pluginConfig.getBoolean(
                     "publish-on-patch-set-created", true);
 
-            publishOnChangeMerged =
-                configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getBoolean(
+            publishOnChangeMerged = pluginConfig.getBoolean(
                     "publish-on-change-merged", true);
 
-            publishOnCommentAdded =
-                configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getBoolean(
+            publishOnCommentAdded = pluginConfig.getBoolean(
                     "publish-on-comment-added", true);
 
-            publishOnReviewerAdded =
-                configFactory.getFromProjectConfigWithInheritance(
-                    projectNameKey, CONFIG_NAME).getBoolean(
+            publishOnReviewerAdded = pluginConfig.getBoolean(
                     "publish-on-reviewer-added", true);
+
+            commentAddedLabels = pluginConfig.getStringList(
+                    "comment-added-label");
+
+            commentAddedNegativeOnly = pluginConfig.getBoolean(
+                    "comment-added-negative-only", false);
+
+            commentAddedVoteSummary = pluginConfig.getBoolean(
+                    "comment-added-vote-summary", false);
+
+            debounceWindow = pluginConfig.getLong("debounce-window", 0L);
+
+            digestInterval = pluginConfig.getLong("digest-interval", 0L);
+
+            digestMaxEvents = pluginConfig.getInt("digest-max-events", 50);
+
+            threadReplies = pluginConfig.getBoolean("thread-replies", false);
+
+            statusCard = pluginConfig.getBoolean("status-card", false);
+
+            patchSetCreatedPriority = pluginConfig.getEnum(
+                    "priority-patch-set-created", Priority.NORMAL);
+
+            changeMergedPriority = pluginConfig.getEnum(
+                    "priority-change-merged", Priority.HIGH);
+
+            commentAddedPriority = pluginConfig.getEnum(
+                    "priority-comment-added", Priority.LOW);
+
+            reviewerAddedPriority = pluginConfig.getEnum(
+                    "priority-reviewer-added", Priority.HIGH);
         }
         catch (NoSuchProjectException e)
         {
@@ -114,6 +153,11 @@ public class ProjectConfig
         }
     }
 
+    public String getProject()
+    {
+        return project;
+    }
+
     public boolean isEnabled()
     {
         return enabled;
@@ -139,6 +183,16 @@ public class ProjectConfig
         return ignore;
     }
 
+    /**
+     * Gets the filter rules of the project.
+     *
+     * @return The rules, as configured.
+     */
+    public String[] getFilters()
+    {
+        return filters == null ? new String[0] : filters;
+    }
+
     public boolean shouldPublishOnPatchSetCreated()
     {
         return publishOnPatchSetCreated;
@@ -158,4 +212,115 @@ public class ProjectConfig
     {
         return publishOnReviewerAdded;
     }
+
+    /**
+     * Gets the labels whose votes a comment must change to be published.
+     *
+     * @return The labels; when empty, comments are published regardless of
+     * their votes.
+     */
+    public String[] getCommentAddedLabels()
+    {
+        return commentAddedLabels == null
+                ? new String[0]
+                : commentAddedLabels;
+    }
+
+    public boolean isCommentAddedNegativeOnly()
+    {
+        return commentAddedNegativeOnly;
+    }
+
+    public boolean isCommentAddedVoteSummary()
+    {
+        return commentAddedVoteSummary;
+    }
+
+    public long getDebounceWindow()
+    {
+        return debounceWindow;
+    }
+
+    public long getDigestInterval()
+    {
+        return digestInterval;
+    }
+
+    public boolean isThreadReplies()
+    {
+        return threadReplies;
+    }
+
+    public boolean isStatusCard()
+    {
+        return statusCard;
+    }
+
+    public int getDigestMaxEvents()
+    {
+        return digestMaxEvents;
+    }
+
+    public Priority getPatchSetCreatedPriority()
+    {
+        return patchSetCreatedPriority;
+    }
+
+    public Priority getChangeMergedPriority()
+    {
+        return changeMergedPriority;
+    }
+
+    public Priority getCommentAddedPriority()
+    {
+        return commentAddedPriority;
+    }
+
+    public Priority getReviewerAddedPriority()
+    {
+        return reviewerAddedPriority;
+    }
+
+    /**
+     * Whether messages of an event type should be published, as set by the
+     * event type's publish-on option.
+     *
+     * @param eventType The name of the event type in config options, such
+     *                  as change-abandoned.
+     * @param defaultValue The value used when the option is not set.
+     * @return true, if messages of the event type should be published
+     */
+    public boolean shouldPublishOn(String eventType, boolean defaultValue)
+    {
+        if (pluginConfig == null)
+        {
+            return defaultValue;
+        }
+
+        return pluginConfig.getBoolean("publish-on-" + eventType,
+                defaultValue);
+    }
+
+    /**
+     * Gets the delivery priority of an event type, as set by the event
+     * type's priority option.
+     *
+     * @param eventType The name of the event type in config options, such
+     *                  as change-abandoned.
+     * @param defaultValue The value used when the option is not set.
+     * @return The priority.
+     */
+    public Priority getPriority(String eventType, Priority defaultValue)
+    {
+        if (pluginConfig == null)
+        {
+            return defaultValue;
+        }
+
+        Priority priority;
+        priority = pluginConfig.getEnum("priority-" + eventType,
+                defaultValue);
+
+        return priority == null ? defaultValue : priority;
+    }
 }
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.ChangeEvent;
+
+/**
+ * A compiled filter condition on an event. Conditions have no side effects
+ * other than materializing the suppliers of the event, so the branches of
+ * a combined condition may be evaluated in any order; they are ordered by
+ * cost so that an event is decided by the cheapest condition possible.
+ */
+public abstract class Condition
+{
+    /**
+     * The cost of a condition on plain fields of the event.
+     */
+    static final int COST_FIELD = 1;
+
+    /**
+     * The cost of a condition that materializes a supplier of the event.
+     */
+    static final int COST_SUPPLIER = 4;
+
+    /**
+     * Whether the event matches the condition.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @return true, if the event matches
+     */
+    public abstract boolean matches(ChangeEvent event, EventMemo memo);
+
+    /**
+     * Gets the relative cost of evaluating the condition.
+     *
+     * @return The cost.
+     */
+    public abstract int getCost();
+}
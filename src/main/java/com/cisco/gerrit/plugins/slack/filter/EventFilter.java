@@ -0,0 +1,134 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.ChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * The compiled filter rules of a project. An event is published if none of
+ * its skip rules match and all of its only rules do. Rules are evaluated
+ * cheapest first, so an event is rejected with as few supplier lookups as
+ * possible.
+ */
+public final class EventFilter
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(EventFilter.class);
+
+    private static final Comparator<FilterRule> BY_COST =
+            new Comparator<FilterRule>()
+            {
+                @Override
+                public int compare(FilterRule a, FilterRule b)
+                {
+                    return Integer.compare(a.getCost(), b.getCost());
+                }
+            };
+
+    private final String[] source;
+    private final FilterRule[] rules;
+
+    private EventFilter(String[] source, FilterRule[] rules)
+    {
+        this.source = source;
+        this.rules = rules;
+    }
+
+    /**
+     * Compiles the filter rules of a project. Invalid rules are logged and
+     * left out.
+     *
+     * @param source The rules as configured.
+     * @return The compiled filter.
+     */
+    public static EventFilter compile(String[] source)
+    {
+        List<FilterRule> rules;
+        rules = new ArrayList<>();
+
+        for (String rule : source)
+        {
+            try
+            {
+                rules.add(FilterRule.compile(rule));
+            }
+            catch (IllegalArgumentException e)
+            {
+                LOGGER.warn(e.getMessage());
+            }
+        }
+
+        Collections.sort(rules, BY_COST);
+
+        return new EventFilter(source.clone(),
+                rules.toArray(new FilterRule[rules.size()]));
+    }
+
+    /**
+     * Whether the event passes all rules.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @return true, if the event may be published
+     */
+    public boolean accepts(ChangeEvent event, EventMemo memo)
+    {
+        for (FilterRule rule : rules)
+        {
+            if (rule.rejects(event, memo))
+            {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * Whether this filter was compiled from the given rules.
+     *
+     * @param rules The rules as configured.
+     * @return true, if the rules are unchanged
+     */
+    public boolean isCompiledFrom(String[] rules)
+    {
+        return Arrays.equals(source, rules);
+    }
+
+    /**
+     * Gets the valid rules, in the order they are evaluated.
+     *
+     * @return The rules.
+     */
+    public List<FilterRule> getRules()
+    {
+        return Collections.unmodifiableList(Arrays.asList(rules));
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Applies the filter rules of each project. The rules are compiled when a
+ * project's configuration is first seen, and again only when they change,
+ * which also resets their hit counts.
+ */
+@Singleton
+public class EventFilters
+{
+    private final ConcurrentMap<String, EventFilter> filters;
+
+    /**
+     * Creates a new EventFilters instance.
+     */
+    public EventFilters()
+    {
+        filters = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Whether the event passes the filter rules of its project.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param config The ProjectConfig instance for the event's project.
+     * @return true, if the event may be published
+     */
+    public boolean accepts(ChangeEvent event, EventMemo memo,
+            ProjectConfig config)
+    {
+        String[] rules;
+        rules = config.getFilters();
+
+        if (rules.length == 0)
+        {
+            filters.remove(config.getProject());
+            return true;
+        }
+
+        EventFilter filter;
+        filter = filters.get(config.getProject());
+
+        if (filter == null || !filter.isCompiledFrom(rules))
+        {
+            filter = EventFilter.compile(rules);
+            filters.put(config.getProject(), filter);
+        }
+
+        return filter.accepts(event, memo);
+    }
+
+    /**
+     * Gets the hit counts of the filter rules of all projects.
+     *
+     * @return A snapshot per rule.
+     */
+    public List<FilterSnapshot> getSnapshots()
+    {
+        List<FilterSnapshot> snapshots;
+        snapshots = new ArrayList<>();
+
+        for (Map.Entry<String, EventFilter> entry : filters.entrySet())
+        {
+            for (FilterRule rule : entry.getValue().getRules())
+            {
+                FilterSnapshot snapshot;
+                snapshot = new FilterSnapshot();
+                snapshot.project = entry.getKey();
+                snapshot.rule = rule.getText();
+                snapshot.hits = rule.getHits();
+
+                snapshots.add(snapshot);
+            }
+        }
+
+        return snapshots;
+    }
+}
@@ -0,0 +1,689 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ReviewerDeletedEvent;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Compiles filter expressions into trees of conditions. An expression is
+ * made of terms combined with and, or, not and parentheses; terms next to
+ * each other must all match.
+ *
+ * <pre>
+ * type:comment-added|reviewer-added   the event type is one of these
+ * branch:main|release/*               the branch matches one of the names
+ *                                     or globs; * does not match /, **
+ *                                     does
+ * author:jenkins|bot@example.com      the account that caused the event
+ *                                     has one of these user names or
+ *                                     emails
+ * label:Code-Review                   the event carries a vote on the label
+ * label:Code-Review=-2|Verified=-1    ... or one of these votes
+ * files&gt;20                            the patch set changes more than 20
+ *                                     files; also &gt;=, &lt;, &lt;= and =
+ * size&gt;1000                           the patch set changes more than 1000
+ *                                     lines
+ * </pre>
+ *
+ * Names, globs and votes are compiled into hash sets and patterns, so an
+ * event is evaluated without parsing anything.
+ */
+public final class FilterExpression
+{
+    private static final Pattern COUNT_TERM =
+            Pattern.compile("(files|size)(>=|<=|>|<|=)(\\d+)");
+
+    // Orders conditions cheapest first
+    private static final Comparator<Condition> BY_COST =
+            new Comparator<Condition>()
+            {
+                @Override
+                public int compare(Condition a, Condition b)
+                {
+                    return Integer.compare(a.getCost(), b.getCost());
+                }
+            };
+
+    private final String expression;
+    private final List<String> tokens;
+    private int position;
+
+    private FilterExpression(String expression)
+    {
+        this.expression = expression;
+
+        tokens = new ArrayList<>();
+
+        for (String token : expression.replace("(", " ( ")
+                .replace(")", " ) ").trim().split("\\s+"))
+        {
+            if (!token.isEmpty())
+            {
+                tokens.add(token);
+            }
+        }
+    }
+
+    /**
+     * Compiles a filter expression.
+     *
+     * @param expression The expression.
+     * @return The compiled condition.
+     * @throws IllegalArgumentException If the expression is invalid.
+     */
+    public static Condition compile(String expression)
+    {
+        FilterExpression parser;
+        parser = new FilterExpression(expression);
+
+        if (parser.tokens.isEmpty())
+        {
+            throw parser.error("empty expression");
+        }
+
+        Condition condition;
+        condition = parser.parseOr();
+
+        if (parser.position < parser.tokens.size())
+        {
+            throw parser.error("unexpected " + parser.peek());
+        }
+
+        return condition;
+    }
+
+    private Condition parseOr()
+    {
+        List<Condition> conditions;
+        conditions = new ArrayList<>();
+        conditions.add(parseAnd());
+
+        while ("or".equalsIgnoreCase(peek()))
+        {
+            position++;
+            conditions.add(parseAnd());
+        }
+
+        return conditions.size() == 1
+                ? conditions.get(0)
+                : new Or(conditions);
+    }
+
+    private Condition parseAnd()
+    {
+        List<Condition> conditions;
+        conditions = new ArrayList<>();
+        conditions.add(parseUnary());
+
+        while (peek() != null && !"or".equalsIgnoreCase(peek()) &&
+                !")".equals(peek()))
+        {
+            if ("and".equalsIgnoreCase(peek()))
+            {
+                position++;
+            }
+
+            conditions.add(parseUnary());
+        }
+
+        return conditions.size() == 1
+                ? conditions.get(0)
+                : new And(conditions);
+    }
+
+    private Condition parseUnary()
+    {
+        String token;
+        token = peek();
+
+        if (token == null)
+        {
+            throw error("unexpected end");
+        }
+
+        position++;
+
+        if ("not".equalsIgnoreCase(token))
+        {
+            return new Not(parseUnary());
+        }
+
+        if ("(".equals(token))
+        {
+            Condition condition;
+            condition = parseOr();
+
+            if (!")".equals(peek()))
+            {
+                throw error("missing )");
+            }
+
+            position++;
+            return condition;
+        }
+
+        return parseTerm(token);
+    }
+
+    private Condition parseTerm(String token)
+    {
+        Matcher count;
+        count = COUNT_TERM.matcher(token);
+
+        if (count.matches())
+        {
+            return new Count("files".equals(count.group(1)), count.group(2),
+                    Long.parseLong(count.group(3)));
+        }
+
+        int colon;
+        colon = token.indexOf(':');
+
+        if (colon <= 0 || colon == token.length() - 1)
+        {
+            throw error("unknown term " + token);
+        }
+
+        String key;
+        key = token.substring(0, colon).toLowerCase(Locale.US);
+
+        List<String> values;
+        values = Arrays.asList(token.substring(colon + 1).split("\\|"));
+
+        switch (key)
+        {
+            case "type":
+                return new Type(values);
+            case "branch":
+                return new Branch(values);
+            case "author":
+                return new Author(values);
+            case "label":
+                return new Label(values);
+            default:
+                throw error("unknown term " + token);
+        }
+    }
+
+    private String peek()
+    {
+        return position < tokens.size() ? tokens.get(position) : null;
+    }
+
+    private IllegalArgumentException error(String message)
+    {
+        return new IllegalArgumentException("Invalid filter expression \"" +
+                expression + "\": " + message);
+    }
+
+    private static Condition[] sortByCost(List<Condition> conditions)
+    {
+        List<Condition> sorted;
+        sorted = new ArrayList<>(conditions);
+
+        Collections.sort(sorted, BY_COST);
+
+        return sorted.toArray(new Condition[sorted.size()]);
+    }
+
+    private static int sumOfCosts(Condition[] conditions)
+    {
+        int cost;
+        cost = 0;
+
+        for (Condition condition : conditions)
+        {
+            cost += condition.getCost();
+        }
+
+        return cost;
+    }
+
+    private static final class And extends Condition
+    {
+        private final Condition[] conditions;
+        private final int cost;
+
+        And(List<Condition> conditions)
+        {
+            this.conditions = sortByCost(conditions);
+
+            cost = sumOfCosts(this.conditions);
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            for (Condition condition : conditions)
+            {
+                if (!condition.matches(event, memo))
+                {
+                    return false;
+                }
+            }
+
+            return true;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return cost;
+        }
+    }
+
+    private static final class Or extends Condition
+    {
+        private final Condition[] conditions;
+        private final int cost;
+
+        Or(List<Condition> conditions)
+        {
+            this.conditions = sortByCost(conditions);
+
+            cost = sumOfCosts(this.conditions);
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            for (Condition condition : conditions)
+            {
+                if (condition.matches(event, memo))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return cost;
+        }
+    }
+
+    private static final class Not extends Condition
+    {
+        private final Condition condition;
+
+        Not(Condition condition)
+        {
+            this.condition = condition;
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            return !condition.matches(event, memo);
+        }
+
+        @Override
+        public int getCost()
+        {
+            return condition.getCost();
+        }
+    }
+
+    private static final class Type extends Condition
+    {
+        private final Set<String> types;
+
+        Type(List<String> types)
+        {
+            this.types = new HashSet<>(types);
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            return types.contains(event.getType());
+        }
+
+        @Override
+        public int getCost()
+        {
+            return COST_FIELD;
+        }
+    }
+
+    private static final class Branch extends Condition
+    {
+        private static final String HEADS = "refs/heads/";
+
+        private final Set<String> names;
+        private final Pattern globs;
+
+        Branch(List<String> branches)
+        {
+            names = new HashSet<>();
+
+            StringBuilder regex;
+            regex = new StringBuilder();
+
+            for (String branch : branches)
+            {
+                if (branch.indexOf('*') < 0 && branch.indexOf('?') < 0)
+                {
+                    names.add(branch);
+                    continue;
+                }
+
+                if (regex.length() > 0)
+                {
+                    regex.append('|');
+                }
+
+                appendGlob(regex, branch);
+            }
+
+            globs = regex.length() == 0
+                    ? null
+                    : Pattern.compile(regex.toString());
+        }
+
+        private static void appendGlob(StringBuilder regex, String glob)
+        {
+            int literalStart;
+            literalStart = 0;
+
+            for (int i = 0; i < glob.length(); i++)
+            {
+                char c;
+                c = glob.charAt(i);
+
+                if (c != '*' && c != '?')
+                {
+                    continue;
+                }
+
+                if (i > literalStart)
+                {
+                    regex.append(Pattern.quote(
+                            glob.substring(literalStart, i)));
+                }
+
+                if (c == '?')
+                {
+                    regex.append("[^/]");
+                }
+                else if (i + 1 < glob.length() && glob.charAt(i + 1) == '*')
+                {
+                    regex.append(".*");
+                    i++;
+                }
+                else
+                {
+                    regex.append("[^/]*");
+                }
+
+                literalStart = i + 1;
+            }
+
+            if (literalStart < glob.length())
+            {
+                regex.append(Pattern.quote(glob.substring(literalStart)));
+            }
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            String branch;
+            branch = event.getRefName();
+
+            if (branch == null)
+            {
+                branch = memo.get(event.change).branch;
+            }
+            else if (branch.startsWith(HEADS))
+            {
+                branch = branch.substring(HEADS.length());
+            }
+
+            if (names.contains(branch))
+            {
+                return true;
+            }
+
+            return globs != null && globs.matcher(branch).matches();
+        }
+
+        @Override
+        public int getCost()
+        {
+            return COST_FIELD;
+        }
+    }
+
+    private static final class Author extends Condition
+    {
+        private final Set<String> accounts;
+
+        Author(List<String> accounts)
+        {
+            this.accounts = new HashSet<>(accounts);
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            AccountAttribute account;
+            account = MessageGeneratorFactory.getActor(event, memo);
+
+            return account != null &&
+                    ((account.username != null &&
+                            accounts.contains(account.username)) ||
+                    (account.email != null &&
+                            accounts.contains(account.email)));
+        }
+
+        @Override
+        public int getCost()
+        {
+            return COST_SUPPLIER;
+        }
+    }
+
+    private static final class Label extends Condition
+    {
+        // Labels voted on, and labels with the value voted, as
+        // Code-Review=-2
+        private final Set<String> labels;
+        private final Set<String> votes;
+
+        Label(List<String> values)
+        {
+            labels = new HashSet<>();
+            votes = new HashSet<>();
+
+            for (String value : values)
+            {
+                int equals;
+                equals = value.indexOf('=');
+
+                if (equals < 0)
+                {
+                    labels.add(value);
+                    continue;
+                }
+
+                int vote;
+                try
+                {
+                    vote = Integer.parseInt(value.substring(equals + 1)
+                            .replace("+", ""));
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Invalid vote " +
+                            value);
+                }
+
+                votes.add(value.substring(0, equals) + "=" + vote);
+            }
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            ApprovalAttribute[] approvals;
+
+            if (event instanceof CommentAddedEvent)
+            {
+                approvals = memo.get(((CommentAddedEvent) event).approvals);
+            }
+            else if (event instanceof ReviewerDeletedEvent)
+            {
+                approvals = memo.get(((ReviewerDeletedEvent) event).approvals);
+            }
+            else
+            {
+                approvals = null;
+            }
+
+            if (approvals == null)
+            {
+                return false;
+            }
+
+            for (ApprovalAttribute approval : approvals)
+            {
+                // As for sheddable comments, an unchanged zero is no vote
+                boolean voted;
+                voted = approval.oldValue != null ||
+                        (approval.value != null && !"0".equals(approval.value));
+
+                if (!voted)
+                {
+                    continue;
+                }
+
+                if (labels.contains(approval.type))
+                {
+                    return true;
+                }
+
+                if (!votes.isEmpty() && approval.value != null &&
+                        votes.contains(approval.type + "=" +
+                                approval.value.replace("+", "")))
+                {
+                    return true;
+                }
+            }
+
+            return false;
+        }
+
+        @Override
+        public int getCost()
+        {
+            return COST_SUPPLIER;
+        }
+    }
+
+    private static final class Count extends Condition
+    {
+        private final boolean files;
+        private final String operator;
+        private final long limit;
+
+        Count(boolean files, String operator, long limit)
+        {
+            this.files = files;
+            this.operator = operator;
+            this.limit = limit;
+        }
+
+        @Override
+        public boolean matches(ChangeEvent event, EventMemo memo)
+        {
+            if (!(event instanceof PatchSetEvent))
+            {
+                return false;
+            }
+
+            PatchSetAttribute patchSet;
+            patchSet = memo.get(((PatchSetEvent) event).patchSet);
+
+            if (patchSet == null)
+            {
+                return false;
+            }
+
+            long count;
+
+            if (files)
+            {
+                // Files are only listed when Gerrit was asked to
+                if (patchSet.files == null)
+                {
+                    return false;
+                }
+
+                count = patchSet.files.size();
+            }
+            else
+            {
+                count = patchSet.sizeInsertions +
+                        Math.abs(patchSet.sizeDeletions);
+            }
+
+            switch (operator)
+            {
+                case ">":
+                    return count > limit;
+                case ">=":
+                    return count >= limit;
+                case "<":
+                    return count < limit;
+                case "<=":
+                    return count <= limit;
+                default:
+                    return count == limit;
+            }
+        }
+
+        @Override
+        public int getCost()
+        {
+            return COST_SUPPLIER;
+        }
+    }
+}
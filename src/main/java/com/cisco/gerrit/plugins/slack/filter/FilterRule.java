@@ -0,0 +1,141 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.ChangeEvent;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A filter rule of a project: either skip the events that match an
+ * expression, or publish only those that do. Each rule counts the events it
+ * rejected.
+ */
+public final class FilterRule
+{
+    /**
+     * What a rule does with the events matching its expression.
+     */
+    public enum Action
+    {
+        SKIP,
+        ONLY
+    }
+
+    private final String text;
+    private final Action action;
+    private final Condition condition;
+    private final AtomicLong hits;
+
+    private FilterRule(String text, Action action, Condition condition)
+    {
+        this.text = text;
+        this.action = action;
+        this.condition = condition;
+
+        hits = new AtomicLong();
+    }
+
+    /**
+     * Compiles a rule, written as <code>skip &lt;expression&gt;</code> or
+     * <code>only &lt;expression&gt;</code>.
+     *
+     * @param text The rule.
+     * @return The compiled rule.
+     * @throws IllegalArgumentException If the rule is invalid.
+     * @see FilterExpression
+     */
+    public static FilterRule compile(String text)
+    {
+        String trimmed;
+        trimmed = text.trim();
+
+        int space;
+        space = trimmed.indexOf(' ');
+
+        Action action;
+        try
+        {
+            action = Action.valueOf(
+                    (space < 0 ? trimmed : trimmed.substring(0, space))
+                            .toUpperCase(Locale.US));
+        }
+        catch (IllegalArgumentException e)
+        {
+            throw new IllegalArgumentException("Invalid filter rule \"" +
+                    text + "\": must start with skip or only");
+        }
+
+        return new FilterRule(trimmed, action,
+                FilterExpression.compile(space < 0
+                        ? ""
+                        : trimmed.substring(space + 1)));
+    }
+
+    /**
+     * Whether the rule rejects the event, counting a hit if it does.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @return true, if the event is not published
+     */
+    public boolean rejects(ChangeEvent event, EventMemo memo)
+    {
+        boolean rejects;
+        rejects = condition.matches(event, memo) == (action == Action.SKIP);
+
+        if (rejects)
+        {
+            hits.incrementAndGet();
+        }
+
+        return rejects;
+    }
+
+    /**
+     * Gets the rule as written.
+     *
+     * @return The rule.
+     */
+    public String getText()
+    {
+        return text;
+    }
+
+    /**
+     * Gets the relative cost of evaluating the rule.
+     *
+     * @return The cost.
+     */
+    public int getCost()
+    {
+        return condition.getCost();
+    }
+
+    /**
+     * Gets the number of events the rule rejected.
+     *
+     * @return The number of hits.
+     */
+    public long getHits()
+    {
+        return hits.get();
+    }
+}
@@ -0,0 +1,300 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Ascii;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.ReviewerDeletedEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * A specific MessageGenerator implementation that renders the state of a
+ * change as a status card: its status, latest patch set, reviewers and
+ * votes. The events of the change are applied to the card as they arrive,
+ * so one message can be edited to show the current state.
+ */
+public class ChangeCard extends MessageGenerator
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(ChangeCard.class);
+
+    private ProjectConfig config;
+
+    private ChangeAttribute change;
+    private int patchSet;
+    private Set<String> reviewers;
+
+    // Label to the votes on it by reviewer name, on the latest patch set
+    private Map<String, Map<String, Integer>> votes;
+
+    /**
+     * Creates a new, empty, ChangeCard instance.
+     *
+     * @param config The ProjectConfig instance of the change's project.
+     */
+    protected ChangeCard(ProjectConfig config)
+    {
+        this.config = config;
+
+        reviewers = new LinkedHashSet<>();
+        votes = new TreeMap<>();
+    }
+
+    /**
+     * Applies an event of the change to the card.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     */
+    public void apply(ChangeEvent event, EventMemo memo)
+    {
+        change = memo.get(event.change);
+
+        if (event instanceof PatchSetEvent)
+        {
+            PatchSetAttribute eventPatchSet;
+            eventPatchSet = memo.get(((PatchSetEvent) event).patchSet);
+
+            if (eventPatchSet != null && eventPatchSet.number > patchSet)
+            {
+                // Votes are cast on a patch set, so a new one starts afresh
+                if (event instanceof PatchSetCreatedEvent)
+                {
+                    votes.clear();
+                }
+
+                patchSet = eventPatchSet.number;
+            }
+        }
+
+        if (event instanceof ReviewerAddedEvent)
+        {
+            reviewers.add(name(memo.get(
+                    ((ReviewerAddedEvent) event).reviewer)));
+        }
+        else if (event instanceof ReviewerDeletedEvent)
+        {
+            String reviewer;
+            reviewer = name(memo.get(
+                    ((ReviewerDeletedEvent) event).reviewer));
+
+            reviewers.remove(reviewer);
+
+            for (Map<String, Integer> labelVotes : votes.values())
+            {
+                labelVotes.remove(reviewer);
+            }
+        }
+        else if (event instanceof CommentAddedEvent)
+        {
+            applyVotes((CommentAddedEvent) event, memo);
+        }
+    }
+
+    private void applyVotes(CommentAddedEvent event, EventMemo memo)
+    {
+        ApprovalAttribute[] approvals;
+        approvals = memo.get(event.approvals);
+
+        if (approvals == null)
+        {
+            return;
+        }
+
+        String author;
+        author = name(memo.get(event.author));
+
+        for (ApprovalAttribute approval : approvals)
+        {
+            int vote;
+            vote = CommentAddedMessageGenerator.vote(approval.value);
+
+            Map<String, Integer> labelVotes;
+            labelVotes = votes.get(approval.type);
+
+            if (vote == 0)
+            {
+                if (labelVotes != null)
+                {
+                    labelVotes.remove(author);
+                }
+
+                continue;
+            }
+
+            if (labelVotes == null)
+            {
+                labelVotes = new LinkedHashMap<>();
+                votes.put(approval.type, labelVotes);
+            }
+
+            labelVotes.put(author, vote);
+            reviewers.add(author);
+        }
+    }
+
+    @Override
+    public boolean shouldPublish()
+    {
+        return change != null;
+    }
+
+    @Override
+    public int getChangeNumber()
+    {
+        return change == null ? 0 : change.number;
+    }
+
+    @Override
+    public String generate()
+    {
+        String message;
+        message = "";
+
+        try
+        {
+            message = format(generateText(), config);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Error generating message: " + e.getMessage(), e);
+        }
+
+        return message;
+    }
+
+    @Override
+    public String generateText()
+    {
+        StringBuilder text;
+        text = new StringBuilder();
+
+        text.append("@");
+        text.append(escape(change.owner.username));
+        text.append("'s change is ");
+        text.append(status(change.status));
+
+        if (patchSet > 0)
+        {
+            text.append(", patch set ");
+            text.append(patchSet);
+        }
+
+        text.append("\\n>>>");
+        text.append(header(change));
+
+        if (!reviewers.isEmpty())
+        {
+            text.append("\\nReviewers: ");
+            appendJoined(text, reviewers);
+        }
+
+        for (Map.Entry<String, Map<String, Integer>> label :
+                votes.entrySet())
+        {
+            if (label.getValue().isEmpty())
+            {
+                continue;
+            }
+
+            text.append("\\n");
+            text.append(escape(label.getKey()));
+            text.append(": ");
+
+            boolean first;
+            first = true;
+
+            for (Map.Entry<String, Integer> vote :
+                    label.getValue().entrySet())
+            {
+                if (!first)
+                {
+                    text.append(", ");
+                }
+
+                first = false;
+
+                text.append(CommentAddedMessageGenerator.formatVote(
+                        vote.getValue()));
+                text.append(' ');
+                text.append(escape(vote.getKey()));
+            }
+        }
+
+        return text.toString();
+    }
+
+    private void appendJoined(StringBuilder text, Set<String> names)
+    {
+        boolean first;
+        first = true;
+
+        for (String name : names)
+        {
+            if (!first)
+            {
+                text.append(", ");
+            }
+
+            first = false;
+
+            text.append(escape(name));
+        }
+    }
+
+    private static String status(Change.Status status)
+    {
+        if (status == null || status == Change.Status.NEW)
+        {
+            return "open";
+        }
+
+        return Ascii.toLowerCase(status.name());
+    }
+
+    private static String name(AccountAttribute account)
+    {
+        if (account == null)
+        {
+            return "someone";
+        }
+
+        return account.name != null ? account.name : account.username;
+    }
+}
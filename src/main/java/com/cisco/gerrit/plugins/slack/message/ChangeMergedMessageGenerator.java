@@ -18,7 +18,8 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
-import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.ChangeMergedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -39,15 +40,17 @@ public class ChangeMergedMessageGenerator extends MessageGenerator
 
     private ProjectConfig config;
     private ChangeMergedEvent event;
+    private EventMemo memo;
 
     /**
      * Creates a new ChangeMergedMessageGenerator instance using the provided
      * ChangeMergedEvent instance.
      *
      * @param event The ChangeMergedEvent instance to generate a message for.
+     * @param memo The memo the suppliers of the event are read through.
      */
     protected ChangeMergedMessageGenerator(ChangeMergedEvent event,
-            ProjectConfig config)
+            EventMemo memo, ProjectConfig config)
     {
         if (event == null)
         {
@@ -55,15 +58,34 @@ public class ChangeMergedMessageGenerator extends MessageGenerator
         }
 
         this.event = event;
+        this.memo = memo;
         this.config = config;
     }
 
     @Override
     public boolean shouldPublish()
+    {
+        return isEnabled();
+    }
+
+    @Override
+    public boolean isEnabled()
     {
         return config.isEnabled() && config.shouldPublishOnChangeMerged();
     }
 
+    @Override
+    public int getChangeNumber()
+    {
+        return memo.get(event.change).number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return config.getChangeMergedPriority();
+    }
+
     @Override
     public String generate()
     {
@@ -72,26 +94,7 @@ public class ChangeMergedMessageGenerator extends MessageGenerator
 
         try
         {
-            String template;
-            template = ResourceHelper.loadNamedResourceAsString(
-                    "basic-message-template.json");
-
-            StringBuilder text;
-            text = new StringBuilder();
-
-            text.append(escape(event.submitter.get().name));
-            text.append(" merged\\n>>>");
-            text.append(escape(event.change.get().project));
-            text.append(" (");
-            text.append(escape(event.change.get().branch));
-            text.append("): ");
-            text.append(escape(event.change.get().commitMessage.split("\n")[0]));
-            text.append(" (");
-            text.append(escape(event.change.get().url));
-            text.append(")");
-
-            message = String.format(template, text, config.getChannel(),
-                    config.getUsername());
+            message = format(generateText(), config);
         }
         catch (Exception e)
         {
@@ -100,4 +103,20 @@ public class ChangeMergedMessageGenerator extends MessageGenerator
 
         return message;
     }
+
+    @Override
+    public String generateText()
+    {
+        ChangeAttribute change;
+        change = memo.get(event.change);
+
+        StringBuilder text;
+        text = new StringBuilder();
+
+        text.append(escape(memo.get(event.submitter).name));
+        text.append(" merged\\n>>>");
+        text.append(header(change));
+
+        return text.toString();
+    }
 }
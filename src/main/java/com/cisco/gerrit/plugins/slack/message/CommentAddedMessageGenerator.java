@@ -18,12 +18,18 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
-import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
 import com.google.common.base.Ascii;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.CommentAddedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 /**
  * A specific MessageGenerator implementation that can generate a message for
  * a comment added event.
@@ -40,15 +46,17 @@ public class CommentAddedMessageGenerator extends MessageGenerator
 
     private ProjectConfig config;
     private CommentAddedEvent event;
+    private EventMemo memo;
 
     /**
      * Creates a new CommentAddedMessageGenerator instance using the provided
      * CommentAddedEvent instance.
      *
      * @param event The CommentAddedEvent instance to generate a message for.
+     * @param memo The memo the suppliers of the event are read through.
      */
     protected CommentAddedMessageGenerator(CommentAddedEvent event,
-                                           ProjectConfig config)
+            EventMemo memo, ProjectConfig config)
     {
         if (event == null)
         {
@@ -56,15 +64,146 @@ public class CommentAddedMessageGenerator extends MessageGenerator
         }
 
         this.event = event;
+        this.memo = memo;
         this.config = config;
     }
 
     @Override
     public boolean shouldPublish()
+    {
+        if (!isEnabled())
+        {
+            return false;
+        }
+
+        List<String> labels;
+        labels = Arrays.asList(config.getCommentAddedLabels());
+
+        // Without vote rules the approvals need not be looked up
+        if (labels.isEmpty() && !config.isCommentAddedNegativeOnly())
+        {
+            return true;
+        }
+
+        for (ApprovalAttribute approval : changedVotes())
+        {
+            if (!labels.isEmpty() && !labels.contains(approval.type))
+            {
+                continue;
+            }
+
+            if (config.isCommentAddedNegativeOnly() &&
+                    vote(approval.value) >= 0)
+            {
+                continue;
+            }
+
+            return true;
+        }
+
+        return false;
+    }
+
+    @Override
+    public boolean isEnabled()
     {
         return config.isEnabled() && config.shouldPublishOnCommentAdded();
     }
 
+    @Override
+    public int getChangeNumber()
+    {
+        return memo.get(event.change).number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return config.getCommentAddedPriority();
+    }
+
+    @Override
+    public boolean isSheddable()
+    {
+        // A vote is worth delivering even when plain comments are skipped
+        return super.isSheddable() && !hasVotes();
+    }
+
+    private boolean hasVotes()
+    {
+        ApprovalAttribute[] approvals;
+        approvals = memo.get(event.approvals);
+
+        if (approvals == null)
+        {
+            return false;
+        }
+
+        for (ApprovalAttribute approval : approvals)
+        {
+            if (approval.oldValue != null ||
+                    (approval.value != null && !"0".equals(approval.value)))
+            {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Gets the votes the comment changed.
+     */
+    private List<ApprovalAttribute> changedVotes()
+    {
+        ApprovalAttribute[] approvals;
+        approvals = memo.get(event.approvals);
+
+        List<ApprovalAttribute> changed;
+        changed = new ArrayList<>();
+
+        if (approvals == null)
+        {
+            return changed;
+        }
+
+        for (ApprovalAttribute approval : approvals)
+        {
+            // Gerrit only sets the old value of labels the comment voted on
+            if (approval.oldValue != null &&
+                    vote(approval.oldValue) != vote(approval.value))
+            {
+                changed.add(approval);
+            }
+        }
+
+        return changed;
+    }
+
+    static int vote(String value)
+    {
+        if (value == null)
+        {
+            return 0;
+        }
+
+        try
+        {
+            return Integer.parseInt(value.startsWith("+")
+                    ? value.substring(1)
+                    : value);
+        }
+        catch (NumberFormatException e)
+        {
+            return 0;
+        }
+    }
+
+    static String formatVote(int vote)
+    {
+        return vote > 0 ? "+" + vote : String.valueOf(vote);
+    }
+
     @Override
     public String generate()
     {
@@ -73,28 +212,7 @@ public class CommentAddedMessageGenerator extends MessageGenerator
 
         try
         {
-            String template;
-            template = ResourceHelper.loadNamedResourceAsString(
-                    "basic-message-template.json");
-
-            StringBuilder text;
-            text = new StringBuilder();
-
-            text.append(escape(event.author.get().name));
-            text.append(" commented to @");
-            text.append(escape(event.change.get().owner.username));
-            text.append("\\n>>>");
-            text.append(escape(event.change.get().project));
-            text.append(" (");
-            text.append(escape(event.change.get().branch));
-            text.append("): ");
-            text.append(escape(Ascii.truncate(event.comment, 200, "...")));
-            text.append(" (");
-            text.append(escape(event.change.get().url));
-            text.append(")");
-
-            message = String.format(template, text, config.getChannel(),
-                    config.getUsername());
+            message = format(generateText(), config);
         }
         catch (Exception e)
         {
@@ -103,4 +221,82 @@ public class CommentAddedMessageGenerator extends MessageGenerator
 
         return message;
     }
+
+    @Override
+    public String generateText()
+    {
+        ChangeAttribute change;
+        change = memo.get(event.change);
+
+        StringBuilder text;
+        text = new StringBuilder();
+
+        if (config.isCommentAddedVoteSummary())
+        {
+            List<ApprovalAttribute> votes;
+            votes = changedVotes();
+
+            if (!votes.isEmpty())
+            {
+                appendVoteSummary(text, change, votes);
+                return text.toString();
+            }
+        }
+
+        text.append(escape(memo.get(event.author).name));
+        text.append(" commented to @");
+        text.append(escape(change.owner.username));
+        text.append("\\n>>>");
+        text.append(escape(change.project));
+        text.append(" (");
+        text.append(escape(change.branch));
+        text.append("): ");
+        text.append(escape(Ascii.truncate(event.comment, 200, "...")));
+        text.append(" (");
+        text.append(escape(change.url));
+        text.append(")");
+
+        return text.toString();
+    }
+
+    /**
+     * Appends the votes instead of the comment, as "Code-Review +1\u2192-2,
+     * Verified +1".
+     */
+    private void appendVoteSummary(StringBuilder text, ChangeAttribute change,
+            List<ApprovalAttribute> votes)
+    {
+        text.append(escape(memo.get(event.author).name));
+        text.append(" voted ");
+
+        for (int i = 0; i < votes.size(); i++)
+        {
+            ApprovalAttribute vote;
+            vote = votes.get(i);
+
+            if (i > 0)
+            {
+                text.append(", ");
+            }
+
+            text.append(escape(vote.type));
+            text.append(' ');
+
+            int oldVote;
+            oldVote = vote(vote.oldValue);
+
+            if (oldVote != 0)
+            {
+                text.append(formatVote(oldVote));
+                text.append("\u2192");
+            }
+
+            text.append(formatVote(vote(vote.value)));
+        }
+
+        text.append(" on @");
+        text.append(escape(change.owner.username));
+        text.append("\\n>>>");
+        text.append(header(change));
+    }
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A specific MessageGenerator implementation that collapses the patch set
+ * created and comment added events of a single change, received within a
+ * short window, into one message. A single event is rendered exactly as its
+ * own generator would render it.
+ */
+public class DebouncedMessageGenerator extends MessageGenerator
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(DebouncedMessageGenerator.class);
+
+    /**
+     * The maximum number of names listed before the rest are counted.
+     */
+    private static final int MAX_NAMES = 3;
+
+    private ProjectConfig config;
+
+    private MessageGenerator first;
+    private Priority priority;
+    private int events;
+    private int firstPatchSet;
+    private int lastPatchSet;
+    private int patchSets;
+    private int comments;
+    private Set<String> names;
+    private ChangeAttribute change;
+
+    /**
+     * Creates a new, empty, DebouncedMessageGenerator instance.
+     *
+     * @param config The ProjectConfig instance of the change's project.
+     */
+    protected DebouncedMessageGenerator(ProjectConfig config)
+    {
+        this.config = config;
+
+        names = new LinkedHashSet<>();
+    }
+
+    /**
+     * Adds a patch set created event.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param generator The generator that would render the event alone.
+     */
+    public void add(PatchSetCreatedEvent event, EventMemo memo,
+            MessageGenerator generator)
+    {
+        add((PatchSetEvent) event, memo, generator);
+
+        int number;
+        number = patchSetNumber(event, memo);
+
+        if (patchSets == 0 || number < firstPatchSet)
+        {
+            firstPatchSet = number;
+        }
+
+        if (number > lastPatchSet)
+        {
+            lastPatchSet = number;
+        }
+
+        patchSets++;
+
+        addName(memo.get(event.uploader));
+    }
+
+    /**
+     * Adds a comment added event.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param generator The generator that would render the event alone.
+     */
+    public void add(CommentAddedEvent event, EventMemo memo,
+            MessageGenerator generator)
+    {
+        add((PatchSetEvent) event, memo, generator);
+
+        comments++;
+
+        addName(memo.get(event.author));
+    }
+
+    private void add(PatchSetEvent event, EventMemo memo,
+            MessageGenerator generator)
+    {
+        if (first == null)
+        {
+            first = generator;
+        }
+
+        events++;
+        change = memo.get(event.change);
+
+        // The collapsed message is as urgent as its most urgent event
+        Priority eventPriority;
+        eventPriority = generator.getPriority();
+
+        if (eventPriority != null)
+        {
+            priority = eventPriority.max(priority);
+        }
+    }
+
+    private void addName(AccountAttribute account)
+    {
+        if (account == null || account.name == null)
+        {
+            return;
+        }
+
+        names.add(account.name);
+    }
+
+    private static int patchSetNumber(PatchSetEvent event, EventMemo memo)
+    {
+        PatchSetAttribute patchSet;
+        patchSet = memo.get(event.patchSet);
+
+        return patchSet == null ? 0 : patchSet.number;
+    }
+
+    /**
+     * Gets the number of events collapsed into this message.
+     *
+     * @return The number of events.
+     */
+    public int getEventCount()
+    {
+        return events;
+    }
+
+    @Override
+    public boolean shouldPublish()
+    {
+        return events > 0;
+    }
+
+    @Override
+    public int getChangeNumber()
+    {
+        return change == null ? 0 : change.number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return priority == null ? Priority.NORMAL : priority;
+    }
+
+    @Override
+    public String generate()
+    {
+        if (events == 1)
+        {
+            return first.generate();
+        }
+
+        String message;
+        message = "";
+
+        try
+        {
+            message = format(generateText(), config);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Error generating message: " + e.getMessage(), e);
+        }
+
+        return message;
+    }
+
+    @Override
+    public String generateText()
+    {
+        if (events == 1)
+        {
+            return first.generateText();
+        }
+
+        StringBuilder text;
+        text = new StringBuilder();
+
+        appendNames(text);
+
+        if (patchSets > 0)
+        {
+            text.append(" uploaded PS ");
+            text.append(firstPatchSet);
+
+            if (lastPatchSet != firstPatchSet)
+            {
+                text.append("\u2192");
+                text.append(lastPatchSet);
+            }
+
+            if (comments > 0)
+            {
+                text.append(", ");
+            }
+        }
+        else
+        {
+            text.append(" added ");
+        }
+
+        if (comments > 0)
+        {
+            text.append(comments);
+            text.append(comments == 1 ? " comment" : " comments");
+        }
+
+        text.append("\\n>>>");
+        text.append(header(change));
+
+        return text.toString();
+    }
+
+    private void appendNames(StringBuilder text)
+    {
+        if (names.isEmpty())
+        {
+            text.append("Someone");
+            return;
+        }
+
+        int listed;
+        listed = 0;
+
+        for (String name : names)
+        {
+            if (listed == MAX_NAMES)
+            {
+                break;
+            }
+
+            if (listed > 0)
+            {
+                text.append(", ");
+            }
+
+            text.append(escape(name));
+            listed++;
+        }
+
+        int otherNames;
+        otherNames = names.size() - listed;
+
+        if (otherNames > 0)
+        {
+            text.append(" and ");
+            text.append(otherNames);
+            text.append(otherNames == 1 ? " other" : " others");
+        }
+    }
+}
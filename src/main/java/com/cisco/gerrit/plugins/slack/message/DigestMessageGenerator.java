@@ -0,0 +1,166 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A specific MessageGenerator implementation that combines the texts of
+ * several already rendered messages into a single digest message.
+ */
+public class DigestMessageGenerator extends MessageGenerator
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(DigestMessageGenerator.class);
+
+    private static final String TRUNCATED = "...";
+
+    private ProjectConfig config;
+    private StringBuilder text;
+    private int entries;
+
+    /**
+     * Creates a new, empty, DigestMessageGenerator instance.
+     *
+     * @param config The ProjectConfig instance providing the channel.
+     */
+    protected DigestMessageGenerator(ProjectConfig config)
+    {
+        this.config = config;
+
+        text = new StringBuilder();
+    }
+
+    /**
+     * Adds the text of a message to the digest. A block quote would swallow
+     * all following entries, so it is turned into a single line quote.
+     *
+     * @param entry The escaped message text, as returned by
+     *              {@link MessageGenerator#generateText()}.
+     */
+    public void add(String entry)
+    {
+        if (entries > 0)
+        {
+            text.append("\\n");
+        }
+
+        text.append(entry.replace("\\n>>>", "\\n>"));
+        entries++;
+    }
+
+    /**
+     * Gets the length of the digest text, as it would be after adding the
+     * given entry.
+     *
+     * @param entry The escaped message text.
+     * @return The length of the text including the entry.
+     */
+    public int lengthWith(String entry)
+    {
+        return text.length() + (entries > 0 ? 2 : 0) + entry.length();
+    }
+
+    /**
+     * Truncates the escaped text of a message that on its own exceeds the
+     * maximum size of a digest, without cutting an escape sequence or a
+     * surrogate pair in half.
+     *
+     * @param entry The escaped message text.
+     * @param maxLength The maximum length of the truncated text.
+     * @return The entry, if it fits; otherwise the truncated entry ending
+     * with "...".
+     */
+    public static String truncate(String entry, int maxLength)
+    {
+        if (entry.length() <= maxLength)
+        {
+            return entry;
+        }
+
+        int limit;
+        limit = Math.max(0, maxLength - TRUNCATED.length());
+
+        int end;
+        end = 0;
+
+        while (end < limit)
+        {
+            int next;
+            next = end + 1;
+
+            if (entry.charAt(end) == '\\')
+            {
+                next = end + (entry.charAt(end + 1) == 'u' ? 6 : 2);
+            }
+            else if (Character.isHighSurrogate(entry.charAt(end)))
+            {
+                next = end + 2;
+            }
+
+            if (next > limit)
+            {
+                break;
+            }
+
+            end = next;
+        }
+
+        return entry.substring(0, end) + TRUNCATED;
+    }
+
+    public int getEntryCount()
+    {
+        return entries;
+    }
+
+    @Override
+    public boolean shouldPublish()
+    {
+        return entries > 0;
+    }
+
+    @Override
+    public String generate()
+    {
+        String message;
+        message = "";
+
+        try
+        {
+            message = format(generateText(), config);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Error generating message: " + e.getMessage(), e);
+        }
+
+        return message;
+    }
+
+    @Override
+    public String generateText()
+    {
+        return text.toString();
+    }
+}
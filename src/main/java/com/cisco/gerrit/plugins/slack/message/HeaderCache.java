@@ -0,0 +1,238 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.google.common.base.Supplier;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.Weigher;
+import com.google.gerrit.metrics.Description;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the escaped "project (branch): subject (url)" header of recently
+ * seen changes, shared by all message generators, as a single change
+ * produces many events that all render the same header. Entries are keyed
+ * by change number and checked against the change before use, so a change
+ * moved to another branch or given a new subject by a later patch set
+ * renders afresh. The cache is bounded by the total length of the headers
+ * it holds, evicting the least recently used ones. Its hit ratio and size
+ * are registered with the Gerrit metrics system.
+ */
+@Singleton
+public class HeaderCache
+{
+    // About 2 MB of headers, some ten thousand changes
+    private static final int MAX_CHARS = 1 << 20;
+
+    private final Cache<Integer, Header> headers;
+
+    private final AtomicLong hits;
+    private final AtomicLong misses;
+
+    /**
+     * Creates a new HeaderCache instance.
+     *
+     * @param metricMaker The MetricMaker used to register metrics.
+     */
+    @Inject
+    public HeaderCache(MetricMaker metricMaker)
+    {
+        headers = CacheBuilder.newBuilder()
+                .maximumWeight(MAX_CHARS)
+                .weigher(new Weigher<Integer, Header>()
+                {
+                    @Override
+                    public int weigh(Integer key, Header header)
+                    {
+                        return header.text.length() +
+                                header.subject.length();
+                    }
+                })
+                .build();
+
+        hits = new AtomicLong();
+        misses = new AtomicLong();
+
+        metricMaker.newCallbackMetric("render/header_cache/hit_ratio",
+                Double.class,
+                new Description("Share of change headers reused from the " +
+                        "header cache")
+                        .setGauge(),
+                new Supplier<Double>()
+                {
+                    @Override
+                    public Double get()
+                    {
+                        return getHitRatio();
+                    }
+                });
+
+        metricMaker.newCallbackMetric("render/header_cache/size",
+                Long.class,
+                new Description("Change headers in the header cache")
+                        .setGauge()
+                        .setUnit("headers"),
+                new Supplier<Long>()
+                {
+                    @Override
+                    public Long get()
+                    {
+                        return size();
+                    }
+                });
+    }
+
+    /**
+     * Gets the escaped header of the change, rendering it on a miss.
+     *
+     * @param change The change.
+     * @return The header, without a trailing line break.
+     */
+    public String get(ChangeAttribute change)
+    {
+        Integer key;
+        key = change.number;
+
+        Header header;
+        header = headers.getIfPresent(key);
+
+        if (header != null && header.matches(change))
+        {
+            hits.incrementAndGet();
+            return header.text;
+        }
+
+        misses.incrementAndGet();
+
+        header = new Header(change);
+        headers.put(key, header);
+
+        return header.text;
+    }
+
+    /**
+     * Renders the escaped header of the change without caching it.
+     *
+     * @param change The change.
+     * @return The header, without a trailing line break.
+     */
+    static String render(ChangeAttribute change)
+    {
+        return new Header(change).text;
+    }
+
+    /**
+     * Gets the share of lookups answered from the cache.
+     *
+     * @return The hit ratio, between 0 and 1.
+     */
+    public double getHitRatio()
+    {
+        long hitCount;
+        hitCount = hits.get();
+
+        long total;
+        total = hitCount + misses.get();
+
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * Gets the number of cached headers.
+     *
+     * @return The number of headers.
+     */
+    public long size()
+    {
+        return headers.size();
+    }
+
+    private static String escape(String text)
+    {
+        return text == null ? null : text.replace("\"", "\\\"");
+    }
+
+    private static final class Header
+    {
+        private final String project;
+        private final String branch;
+        private final String subject;
+        private final String url;
+        private final String text;
+
+        Header(ChangeAttribute change)
+        {
+            project = change.project;
+            branch = change.branch;
+            url = change.url;
+
+            subject = subject(change);
+
+            text = escape(project) + " (" + escape(branch) + "): " +
+                    escape(subject) + " (" + escape(url) + ")";
+        }
+
+        // Compares the subject in place, the commit message is not split
+        boolean matches(ChangeAttribute change)
+        {
+            if (!Objects.equals(project, change.project) ||
+                    !Objects.equals(branch, change.branch) ||
+                    !Objects.equals(url, change.url))
+            {
+                return false;
+            }
+
+            String message;
+            message = change.commitMessage;
+
+            if (message == null)
+            {
+                return subject.equals(subject(change));
+            }
+
+            return message.startsWith(subject) &&
+                    (message.length() == subject.length() ||
+                            message.charAt(subject.length()) == '\n');
+        }
+
+        // The first line of the commit message, or the subject of a change
+        // without one
+        private static String subject(ChangeAttribute change)
+        {
+            String message;
+            message = change.commitMessage;
+
+            if (message == null)
+            {
+                return change.subject == null ? "" : change.subject;
+            }
+
+            int end;
+            end = message.indexOf('\n');
+
+            return end < 0 ? message : message.substring(0, end);
+        }
+    }
+}
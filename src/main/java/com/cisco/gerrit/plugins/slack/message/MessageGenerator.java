@@ -17,6 +17,12 @@
 
 package com.cisco.gerrit.plugins.slack.message;
 
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.google.gerrit.server.data.ChangeAttribute;
+
+import java.io.IOException;
+
 /**
  * Defines a simple base class for a message generators.
  *
@@ -24,6 +30,9 @@ package com.cisco.gerrit.plugins.slack.message;
  */
 public abstract class MessageGenerator
 {
+    // The headers shared between generators, or null to render them anew
+    private HeaderCache headerCache;
+
     /**
      * Whether or not the generated message should be published.
      *
@@ -31,6 +40,19 @@ public abstract class MessageGenerator
      */
     public abstract boolean shouldPublish();
 
+    /**
+     * Whether the configuration publishes messages of this type at all. This
+     * is checked before shouldPublish and, unlike it, never materializes the
+     * suppliers of the event, so events that are turned off cost no change
+     * lookups.
+     *
+     * @return False if the message is not published, otherwise true
+     */
+    public boolean isEnabled()
+    {
+        return true;
+    }
+
     /**
      * Generates an event specific message suitable for publishing.
      *
@@ -38,6 +60,93 @@ public abstract class MessageGenerator
      */
     public abstract String generate();
 
+    /**
+     * Generates the event specific text of the message, escaped for inclusion
+     * in a message payload, so several texts can be combined into one message.
+     *
+     * @return The generated text.
+     */
+    public abstract String generateText();
+
+    /**
+     * Gets the priority the message is delivered with when messages queue up.
+     *
+     * @return The delivery priority.
+     */
+    public Priority getPriority()
+    {
+        return Priority.NORMAL;
+    }
+
+    /**
+     * Gets the number of the change the message is about, which identifies
+     * the thread the message is posted in.
+     *
+     * @return The change number, or 0 if the message is not about a single
+     * change.
+     */
+    public int getChangeNumber()
+    {
+        return 0;
+    }
+
+    /**
+     * Whether the message is of low enough value to be skipped while
+     * delivery is falling behind.
+     *
+     * @return True if the message may be skipped under load, otherwise false
+     */
+    public boolean isSheddable()
+    {
+        return getPriority() == Priority.LOW;
+    }
+
+    /**
+     * Formats the text into a message payload for the configured channel.
+     *
+     * @param text The escaped message text.
+     * @param config The ProjectConfig instance providing channel and username.
+     *
+     * @return The message payload.
+     *
+     * @throws IOException In the event the message template cannot be loaded
+     */
+    protected String format(CharSequence text, ProjectConfig config)
+            throws IOException
+    {
+        String template;
+        template = ResourceHelper.loadNamedResourceAsString(
+                "basic-message-template.json");
+
+        return String.format(template, text, config.getChannel(),
+                config.getUsername());
+    }
+
+    /**
+     * Gets the escaped "project (branch): subject (url)" header of a change,
+     * shared between the messages about the change.
+     *
+     * @param change The change.
+     * @return The escaped header.
+     */
+    protected String header(ChangeAttribute change)
+    {
+        return headerCache == null
+                ? HeaderCache.render(change)
+                : headerCache.get(change);
+    }
+
+    /**
+     * Sets the cache the headers of changes are shared through.
+     *
+     * @param headerCache The HeaderCache instance, or null to render each
+     *                    header anew.
+     */
+    void setHeaderCache(HeaderCache headerCache)
+    {
+        this.headerCache = headerCache;
+    }
+
     /**
      * Escapes the double quote character.
      *
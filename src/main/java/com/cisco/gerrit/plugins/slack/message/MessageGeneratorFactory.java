@@ -18,11 +18,27 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageSpec.Accessor;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Ascii;
+import com.google.common.base.Joiner;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.events.AssigneeChangedEvent;
+import com.google.gerrit.server.events.ChangeAbandonedEvent;
+import com.google.gerrit.server.events.ChangeEvent;
 import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.ChangeRestoredEvent;
 import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.DraftPublishedEvent;
 import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.HashtagsChangedEvent;
 import com.google.gerrit.server.events.PatchSetCreatedEvent;
 import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.ReviewerDeletedEvent;
+import com.google.gerrit.server.events.TopicChangedEvent;
+
+import java.util.HashMap;
+import java.util.Map;
 
 /**
  * Factory used to create event specific MessageGenerator instances.
@@ -31,6 +47,39 @@ import com.google.gerrit.server.events.ReviewerAddedEvent;
  */
 public class MessageGeneratorFactory
 {
+    /**
+     * The maximum length of free text, such as a reason, in a message.
+     */
+    private static final int MAX_TEXT_LENGTH = 200;
+
+    private static final Joiner HASHTAG_JOINER = Joiner.on(", #");
+
+    // The supported event types, by event class
+    private static final Map<Class<?>, MessageSpec<?>> SPECS = specs();
+
+    // Resolves each class once, so that subclasses of a supported event
+    // class are dispatched in constant time as well
+    private static final ClassValue<MessageSpec<?>> SPEC_BY_CLASS =
+            new ClassValue<MessageSpec<?>>()
+            {
+                @Override
+                protected MessageSpec<?> computeValue(Class<?> type)
+                {
+                    for (Class<?> c = type; c != null; c = c.getSuperclass())
+                    {
+                        MessageSpec<?> spec;
+                        spec = SPECS.get(c);
+
+                        if (spec != null)
+                        {
+                            return spec;
+                        }
+                    }
+
+                    return null;
+                }
+            };
+
     // Made private to prevent instantiation
     private MessageGeneratorFactory() {}
 
@@ -47,7 +96,8 @@ public class MessageGeneratorFactory
             ProjectConfig config)
     {
         PatchSetCreatedMessageGenerator messageGenerator;
-        messageGenerator = new PatchSetCreatedMessageGenerator(event, config);
+        messageGenerator = new PatchSetCreatedMessageGenerator(event,
+                new EventMemo(event), config);
 
         return messageGenerator;
     }
@@ -65,7 +115,8 @@ public class MessageGeneratorFactory
             ProjectConfig config)
     {
         ChangeMergedMessageGenerator messageGenerator;
-        messageGenerator = new ChangeMergedMessageGenerator(event, config);
+        messageGenerator = new ChangeMergedMessageGenerator(event,
+                new EventMemo(event), config);
 
         return messageGenerator;
     }
@@ -83,7 +134,8 @@ public class MessageGeneratorFactory
                                                ProjectConfig config)
     {
         CommentAddedMessageGenerator messageGenerator;
-        messageGenerator = new CommentAddedMessageGenerator(event, config);
+        messageGenerator = new CommentAddedMessageGenerator(event,
+                new EventMemo(event), config);
 
         return messageGenerator;
     }
@@ -101,26 +153,483 @@ public class MessageGeneratorFactory
                                                ProjectConfig config)
     {
         ReviewerAddedMessageGenerator messageGenerator;
-        messageGenerator = new ReviewerAddedMessageGenerator(event, config);
+        messageGenerator = new ReviewerAddedMessageGenerator(event,
+                new EventMemo(event), config);
 
         return messageGenerator;
     }
 
     /**
-     * Creates a new MessageGenerator for unsupported events.
+     * Creates a new MessageGenerator for any event, looking up the event's
+     * MessageSpec by its class.
      *
      * @param event An Event instance
      * @param config A ProjectConfig instance for the given event
      *
-     * @return A MessageGenerator instance capable of generating a message for
-     * an unsupported Event.
+     * @return A MessageGenerator instance for the event's type, or an
+     * UnsupportedMessageGenerator if the type is not supported.
      */
     public static MessageGenerator newInstance(Event event,
             ProjectConfig config)
     {
-        UnsupportedMessageGenerator messageGenerator;
-        messageGenerator = new UnsupportedMessageGenerator(event, config);
+        return newInstance(event, new EventMemo(event), config);
+    }
+
+    /**
+     * Creates a new MessageGenerator for any event, looking up the event's
+     * MessageSpec by its class. The generator reads the suppliers of the
+     * event through the given memo.
+     *
+     * @param event An Event instance
+     * @param memo The memo the suppliers of the event are read through
+     * @param config A ProjectConfig instance for the given event
+     *
+     * @return A MessageGenerator instance for the event's type, or an
+     * UnsupportedMessageGenerator if the type is not supported.
+     */
+    public static MessageGenerator newInstance(Event event, EventMemo memo,
+            ProjectConfig config)
+    {
+        return newInstance(event, memo, config, null);
+    }
+
+    /**
+     * Creates a new MessageGenerator for any event, looking up the event's
+     * MessageSpec by its class. The generator reads the suppliers of the
+     * event through the given memo and the header of the change through the
+     * given cache.
+     *
+     * @param event An Event instance
+     * @param memo The memo the suppliers of the event are read through
+     * @param config A ProjectConfig instance for the given event
+     * @param headerCache The HeaderCache instance the header of the change is
+     *                    read through, or null to render it anew
+     *
+     * @return A MessageGenerator instance for the event's type, or an
+     * UnsupportedMessageGenerator if the type is not supported.
+     */
+    public static MessageGenerator newInstance(Event event, EventMemo memo,
+            ProjectConfig config, HeaderCache headerCache)
+    {
+        MessageSpec<?> spec;
+        spec = SPEC_BY_CLASS.get(event.getClass());
+
+        if (spec == null)
+        {
+            UnsupportedMessageGenerator messageGenerator;
+            messageGenerator = new UnsupportedMessageGenerator(event, config);
+
+            return messageGenerator;
+        }
+
+        MessageGenerator messageGenerator;
+        messageGenerator = newInstance(spec, event, memo, config);
+        messageGenerator.setHeaderCache(headerCache);
 
         return messageGenerator;
     }
+
+    private static <E extends ChangeEvent> MessageGenerator newInstance(
+            MessageSpec<E> spec, Event event, EventMemo memo,
+            ProjectConfig config)
+    {
+        return spec.newGenerator(spec.getEventClass().cast(event), memo,
+                config);
+    }
+
+    /**
+     * Whether messages can be generated for the type of the event. Events of
+     * supported types are always change events.
+     *
+     * @param event An Event instance
+     *
+     * @return true, if the event's type is supported
+     */
+    public static boolean isSupported(Event event)
+    {
+        return SPEC_BY_CLASS.get(event.getClass()) != null;
+    }
+
+    /**
+     * Gets the account that caused an event, such as the uploader of a patch
+     * set or the author of a comment.
+     *
+     * @param event An Event instance
+     * @param memo The memo the suppliers of the event are read through
+     *
+     * @return The account, or null for unsupported events.
+     */
+    public static AccountAttribute getActor(Event event, EventMemo memo)
+    {
+        MessageSpec<?> spec;
+        spec = SPEC_BY_CLASS.get(event.getClass());
+
+        return spec == null ? null : getActor(spec, event, memo);
+    }
+
+    private static <E extends ChangeEvent> AccountAttribute getActor(
+            MessageSpec<E> spec, Event event, EventMemo memo)
+    {
+        return spec.getActor(spec.getEventClass().cast(event), memo);
+    }
+
+    /**
+     * Creates a new, empty, status card for a change, to apply the events of
+     * the change to.
+     *
+     * @param config A ProjectConfig instance for the change's project
+     * @param headerCache The HeaderCache instance the header of the change is
+     *                    read through
+     *
+     * @return A ChangeCard instance to apply events to.
+     */
+    public static ChangeCard newCardInstance(ProjectConfig config,
+            HeaderCache headerCache)
+    {
+        ChangeCard card;
+        card = new ChangeCard(config);
+        card.setHeaderCache(headerCache);
+
+        return card;
+    }
+
+    /**
+     * Creates a new, empty, MessageGenerator that collapses several events of
+     * one change into a single message.
+     *
+     * @param config A ProjectConfig instance for the change's project
+     * @param headerCache The HeaderCache instance the header of the change is
+     *                    read through
+     *
+     * @return A DebouncedMessageGenerator instance to add events to.
+     */
+    public static DebouncedMessageGenerator newDebouncedInstance(
+            ProjectConfig config, HeaderCache headerCache)
+    {
+        DebouncedMessageGenerator messageGenerator;
+        messageGenerator = new DebouncedMessageGenerator(config);
+        messageGenerator.setHeaderCache(headerCache);
+
+        return messageGenerator;
+    }
+
+    /**
+     * Creates a new, empty, MessageGenerator that combines the texts of
+     * several messages into a single digest message.
+     *
+     * @param config A ProjectConfig instance for the digest's channel
+     *
+     * @return A DigestMessageGenerator instance to add texts to.
+     */
+    public static DigestMessageGenerator newDigestInstance(
+            ProjectConfig config)
+    {
+        DigestMessageGenerator messageGenerator;
+        messageGenerator = new DigestMessageGenerator(config);
+
+        return messageGenerator;
+    }
+
+    private static Map<Class<?>, MessageSpec<?>> specs()
+    {
+        Map<Class<?>, MessageSpec<?>> specs;
+        specs = new HashMap<>();
+
+        // Event types with hand written generators
+        register(specs, new MessageSpec<PatchSetCreatedEvent>(
+                PatchSetCreatedEvent.class, "patch-set-created")
+        {
+            @Override
+            protected MessageGenerator newGenerator(PatchSetCreatedEvent event,
+                    EventMemo memo, ProjectConfig config)
+            {
+                return new PatchSetCreatedMessageGenerator(event, memo,
+                        config);
+            }
+        }.actor("uploader",
+                new Accessor<PatchSetCreatedEvent, AccountAttribute>()
+        {
+            @Override
+            public AccountAttribute get(PatchSetCreatedEvent event,
+                    EventMemo memo)
+            {
+                return memo.get(event.uploader);
+            }
+        }));
+
+        register(specs, new MessageSpec<ChangeMergedEvent>(
+                ChangeMergedEvent.class, "change-merged")
+        {
+            @Override
+            protected MessageGenerator newGenerator(ChangeMergedEvent event,
+                    EventMemo memo, ProjectConfig config)
+            {
+                return new ChangeMergedMessageGenerator(event, memo, config);
+            }
+        }.defaultPriority(Priority.HIGH).actor("submitter",
+                new Accessor<ChangeMergedEvent, AccountAttribute>()
+        {
+            @Override
+            public AccountAttribute get(ChangeMergedEvent event,
+                    EventMemo memo)
+            {
+                return memo.get(event.submitter);
+            }
+        }));
+
+        register(specs, new MessageSpec<CommentAddedEvent>(
+                CommentAddedEvent.class, "comment-added")
+        {
+            @Override
+            protected MessageGenerator newGenerator(CommentAddedEvent event,
+                    EventMemo memo, ProjectConfig config)
+            {
+                return new CommentAddedMessageGenerator(event, memo, config);
+            }
+        }.defaultPriority(Priority.LOW).actor("author",
+                new Accessor<CommentAddedEvent, AccountAttribute>()
+        {
+            @Override
+            public AccountAttribute get(CommentAddedEvent event,
+                    EventMemo memo)
+            {
+                return memo.get(event.author);
+            }
+        }));
+
+        register(specs, new MessageSpec<ReviewerAddedEvent>(
+                ReviewerAddedEvent.class, "reviewer-added")
+        {
+            @Override
+            protected MessageGenerator newGenerator(ReviewerAddedEvent event,
+                    EventMemo memo, ProjectConfig config)
+            {
+                return new ReviewerAddedMessageGenerator(event, memo, config);
+            }
+        }.defaultPriority(Priority.HIGH).actor("reviewer",
+                new Accessor<ReviewerAddedEvent, AccountAttribute>()
+        {
+            @Override
+            public AccountAttribute get(ReviewerAddedEvent event,
+                    EventMemo memo)
+            {
+                return memo.get(event.reviewer);
+            }
+        }));
+
+        // Event types rendered from their text template. These are not
+        // published unless turned on, so upgrading adds no messages.
+        register(specs, new MessageSpec<>(ChangeAbandonedEvent.class,
+                "change-abandoned")
+                .publishByDefault(false)
+                .actor("abandoner",
+                        new Accessor<ChangeAbandonedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(ChangeAbandonedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.abandoner);
+                    }
+                })
+                .field("reason", new Accessor<ChangeAbandonedEvent, String>()
+                {
+                    @Override
+                    public String get(ChangeAbandonedEvent event,
+                            EventMemo memo)
+                    {
+                        return truncate(event.reason);
+                    }
+                })
+                .text("{abandoner} abandoned" + MessageSpec.CHANGE_TEXT +
+                        "[\\n{reason}]"));
+
+        register(specs, new MessageSpec<>(ChangeRestoredEvent.class,
+                "change-restored")
+                .publishByDefault(false)
+                .actor("restorer",
+                        new Accessor<ChangeRestoredEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(ChangeRestoredEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.restorer);
+                    }
+                })
+                .field("reason", new Accessor<ChangeRestoredEvent, String>()
+                {
+                    @Override
+                    public String get(ChangeRestoredEvent event,
+                            EventMemo memo)
+                    {
+                        return truncate(event.reason);
+                    }
+                })
+                .text("{restorer} restored" + MessageSpec.CHANGE_TEXT +
+                        "[\\n{reason}]"));
+
+        register(specs, new MessageSpec<>(DraftPublishedEvent.class,
+                "draft-published")
+                .publishByDefault(false)
+                .actor("uploader",
+                        new Accessor<DraftPublishedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(DraftPublishedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.uploader);
+                    }
+                })
+                .text("{uploader} proposed" + MessageSpec.CHANGE_TEXT));
+
+        register(specs, new MessageSpec<>(ReviewerDeletedEvent.class,
+                "reviewer-deleted")
+                .publishByDefault(false)
+                .actor("reviewer",
+                        new Accessor<ReviewerDeletedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(ReviewerDeletedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.reviewer);
+                    }
+                })
+                .text("{reviewer} was removed from review" +
+                        MessageSpec.CHANGE_TEXT));
+
+        register(specs, new MessageSpec<>(AssigneeChangedEvent.class,
+                "assignee-changed")
+                .publishByDefault(false)
+                .defaultPriority(Priority.HIGH)
+                .actor("changer",
+                        new Accessor<AssigneeChangedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(AssigneeChangedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.changer);
+                    }
+                })
+                .field("old-assignee",
+                        new Accessor<AssigneeChangedEvent, String>()
+                {
+                    @Override
+                    public String get(AssigneeChangedEvent event,
+                            EventMemo memo)
+                    {
+                        AccountAttribute assignee;
+                        assignee = memo.get(event.oldAssignee);
+
+                        return assignee == null ? null : assignee.username;
+                    }
+                })
+                .field("assignee", new Accessor<AssigneeChangedEvent, String>()
+                {
+                    @Override
+                    public String get(AssigneeChangedEvent event,
+                            EventMemo memo)
+                    {
+                        AccountAttribute assignee;
+                        assignee = memo.get(event.change).assignee;
+
+                        return assignee == null ? null : assignee.username;
+                    }
+                })
+                .text("{changer} changed the assignee[ from @{old-assignee}]" +
+                        "[ to @{assignee}]" + MessageSpec.CHANGE_TEXT));
+
+        register(specs, new MessageSpec<>(TopicChangedEvent.class,
+                "topic-changed")
+                .publishByDefault(false)
+                .defaultPriority(Priority.LOW)
+                .actor("changer",
+                        new Accessor<TopicChangedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(TopicChangedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.changer);
+                    }
+                })
+                .field("old-topic", new Accessor<TopicChangedEvent, String>()
+                {
+                    @Override
+                    public String get(TopicChangedEvent event, EventMemo memo)
+                    {
+                        return event.oldTopic;
+                    }
+                })
+                .field("topic", new Accessor<TopicChangedEvent, String>()
+                {
+                    @Override
+                    public String get(TopicChangedEvent event, EventMemo memo)
+                    {
+                        return memo.get(event.change).topic;
+                    }
+                })
+                .text("{changer} changed the topic[ from {old-topic}]" +
+                        "[ to {topic}]" + MessageSpec.CHANGE_TEXT));
+
+        register(specs, new MessageSpec<>(HashtagsChangedEvent.class,
+                "hashtags-changed")
+                .publishByDefault(false)
+                .defaultPriority(Priority.LOW)
+                .actor("editor",
+                        new Accessor<HashtagsChangedEvent, AccountAttribute>()
+                {
+                    @Override
+                    public AccountAttribute get(HashtagsChangedEvent event,
+                            EventMemo memo)
+                    {
+                        return memo.get(event.editor);
+                    }
+                })
+                .field("added", new Accessor<HashtagsChangedEvent, String>()
+                {
+                    @Override
+                    public String get(HashtagsChangedEvent event,
+                            EventMemo memo)
+                    {
+                        return hashtags(event.added);
+                    }
+                })
+                .field("removed", new Accessor<HashtagsChangedEvent, String>()
+                {
+                    @Override
+                    public String get(HashtagsChangedEvent event,
+                            EventMemo memo)
+                    {
+                        return hashtags(event.removed);
+                    }
+                })
+                .text("{editor} changed hashtags[, added {added}]" +
+                        "[, removed {removed}]" + MessageSpec.CHANGE_TEXT));
+
+        return specs;
+    }
+
+    private static void register(Map<Class<?>, MessageSpec<?>> specs,
+            MessageSpec<?> spec)
+    {
+        specs.put(spec.getEventClass(), spec);
+    }
+
+    private static String truncate(String text)
+    {
+        return text == null
+                ? null
+                : Ascii.truncate(text, MAX_TEXT_LENGTH, "...");
+    }
+
+    private static String hashtags(String[] hashtags)
+    {
+        return hashtags == null || hashtags.length == 0
+                ? null
+                : "#" + HASHTAG_JOINER.join(hashtags);
+    }
 }
@@ -0,0 +1,481 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Describes the message published for one type of change event: the config
+ * option that turns it on, its default priority, the account that caused
+ * the event and a text template.
+ *
+ * <p>Templates refer to fields of the event by name, as in
+ * <code>{abandoner} abandoned</code>. Text in square brackets is left out
+ * when a field inside it is empty, as in <code>[ from {old-topic}]</code>.
+ * The fields project, branch, subject, url and owner are known to every
+ * spec, as is header, the "project (branch): subject (url)" header shared
+ * with the other messages about the change. Templates are compiled once, when the spec is created, so rendering
+ * a message only walks the compiled segments.
+ *
+ * @param <E> The type of event described.
+ */
+public class MessageSpec<E extends ChangeEvent>
+{
+    /**
+     * The text every change message ends with.
+     */
+    public static final String CHANGE_TEXT = "\\n>>>{header}";
+
+    // The field rendered through the header of the change
+    private static final String HEADER_FIELD = "header";
+
+    private static final Map<String, Accessor<ChangeEvent, String>>
+            CHANGE_FIELDS = changeFields();
+
+    private final Class<E> eventClass;
+    private final String option;
+    private final Map<String, Accessor<? super E, String>> fields;
+
+    private boolean publishByDefault;
+    private Priority defaultPriority;
+    private Accessor<? super E, AccountAttribute> actor;
+    private List<Segment<E>> segments;
+
+    /**
+     * Creates a new MessageSpec instance.
+     *
+     * @param eventClass The class of the events described.
+     * @param option The name the event type goes by in the publish-on and
+     *               priority config options.
+     */
+    public MessageSpec(Class<E> eventClass, String option)
+    {
+        this.eventClass = eventClass;
+        this.option = option;
+
+        fields = new HashMap<>();
+        fields.putAll(CHANGE_FIELDS);
+
+        publishByDefault = true;
+        defaultPriority = Priority.NORMAL;
+        segments = Collections.emptyList();
+    }
+
+    /**
+     * Sets whether the message is published when its publish-on option is
+     * not set.
+     *
+     * @param publish true, to publish by default
+     * @return This spec.
+     */
+    public MessageSpec<E> publishByDefault(boolean publish)
+    {
+        publishByDefault = publish;
+        return this;
+    }
+
+    /**
+     * Sets the priority used when the priority option is not set.
+     *
+     * @param priority The default priority.
+     * @return This spec.
+     */
+    public MessageSpec<E> defaultPriority(Priority priority)
+    {
+        defaultPriority = priority;
+        return this;
+    }
+
+    /**
+     * Sets the account that caused the event. It is available to the
+     * template as a field of the given name.
+     *
+     * @param name The name of the field.
+     * @param accessor Extracts the account from an event.
+     * @return This spec.
+     */
+    public MessageSpec<E> actor(String name,
+            final Accessor<? super E, AccountAttribute> accessor)
+    {
+        actor = accessor;
+
+        return field(name, new Accessor<E, String>()
+        {
+            @Override
+            public String get(E event, EventMemo memo)
+            {
+                AccountAttribute account;
+                account = accessor.get(event, memo);
+
+                return account == null ? null : account.name;
+            }
+        });
+    }
+
+    /**
+     * Adds a field the template can refer to.
+     *
+     * @param name The name of the field.
+     * @param accessor Extracts the field from an event; null or empty
+     *                 values count as missing.
+     * @return This spec.
+     */
+    public MessageSpec<E> field(String name,
+            Accessor<? super E, String> accessor)
+    {
+        fields.put(name, accessor);
+        return this;
+    }
+
+    /**
+     * Sets the text template, compiling it against the fields added so far.
+     * Texts are escaped for a message payload, so a line break is written
+     * as <code>\\n</code>.
+     *
+     * @param template The template.
+     * @return This spec.
+     * @throws IllegalArgumentException If the template refers to an unknown
+     *         field or its brackets do not match.
+     */
+    public MessageSpec<E> text(String template)
+    {
+        segments = compile(template);
+        return this;
+    }
+
+    /**
+     * Gets the class of the events described.
+     *
+     * @return The event class.
+     */
+    public Class<E> getEventClass()
+    {
+        return eventClass;
+    }
+
+    /**
+     * Gets the name the event type goes by in config options.
+     *
+     * @return The option name.
+     */
+    public String getOption()
+    {
+        return option;
+    }
+
+    /**
+     * Gets the account that caused an event.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @return The account, or null if unknown.
+     */
+    public AccountAttribute getActor(E event, EventMemo memo)
+    {
+        return actor == null ? null : actor.get(event, memo);
+    }
+
+    /**
+     * Whether the message of an event should be published by a project.
+     *
+     * @param config The ProjectConfig instance of the event's project.
+     * @return true, if the message should be published
+     */
+    public boolean shouldPublish(ProjectConfig config)
+    {
+        return config.shouldPublishOn(option, publishByDefault);
+    }
+
+    /**
+     * Gets the priority of the message in a project.
+     *
+     * @param config The ProjectConfig instance of the event's project.
+     * @return The priority.
+     */
+    public Priority getPriority(ProjectConfig config)
+    {
+        return config.getPriority(option, defaultPriority);
+    }
+
+    /**
+     * Creates the generator of the message of an event. The generator
+     * renders the text template; specs of event types with a hand written
+     * generator override this.
+     *
+     * @param event The event.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param config The ProjectConfig instance of the event's project.
+     * @return The MessageGenerator instance.
+     */
+    protected MessageGenerator newGenerator(E event, EventMemo memo,
+            ProjectConfig config)
+    {
+        return new SpecMessageGenerator<>(this, event, memo, config);
+    }
+
+    List<Segment<E>> getSegments()
+    {
+        return segments;
+    }
+
+    private List<Segment<E>> compile(String template)
+    {
+        List<Segment<E>> compiled;
+        compiled = new ArrayList<>();
+
+        List<Segment<E>> target;
+        target = compiled;
+
+        int literalStart;
+        literalStart = 0;
+
+        int i;
+        i = 0;
+
+        while (i < template.length())
+        {
+            char c;
+            c = template.charAt(i);
+
+            if (c != '{' && c != '[' && c != ']')
+            {
+                i++;
+                continue;
+            }
+
+            if (i > literalStart)
+            {
+                target.add(new Segment<E>(
+                        template.substring(literalStart, i)));
+            }
+
+            if (c == '{')
+            {
+                int end;
+                end = template.indexOf('}', i);
+
+                if (end < 0)
+                {
+                    throw new IllegalArgumentException(
+                            "Unclosed field in template: " + template);
+                }
+
+                String name;
+                name = template.substring(i + 1, end);
+
+                if (HEADER_FIELD.equals(name))
+                {
+                    target.add(Segment.<E>header());
+                    i = end + 1;
+                    literalStart = i;
+                    continue;
+                }
+
+                Accessor<? super E, String> field;
+                field = fields.get(name);
+
+                if (field == null)
+                {
+                    throw new IllegalArgumentException("Unknown field " +
+                            name + " in template: " + template);
+                }
+
+                target.add(new Segment<E>(field));
+                i = end + 1;
+            }
+            else if (c == '[')
+            {
+                if (target != compiled)
+                {
+                    throw new IllegalArgumentException(
+                            "Nested brackets in template: " + template);
+                }
+
+                target = new ArrayList<>();
+                compiled.add(new Segment<E>(target));
+                i++;
+            }
+            else
+            {
+                if (target == compiled)
+                {
+                    throw new IllegalArgumentException(
+                            "Unopened bracket in template: " + template);
+                }
+
+                target = compiled;
+                i++;
+            }
+
+            literalStart = i;
+        }
+
+        if (target != compiled)
+        {
+            throw new IllegalArgumentException(
+                    "Unclosed bracket in template: " + template);
+        }
+
+        if (literalStart < template.length())
+        {
+            compiled.add(new Segment<E>(template.substring(literalStart)));
+        }
+
+        return compiled;
+    }
+
+    private static Map<String, Accessor<ChangeEvent, String>> changeFields()
+    {
+        Map<String, Accessor<ChangeEvent, String>> changeFields;
+        changeFields = new HashMap<>();
+
+        changeFields.put("project", new Accessor<ChangeEvent, String>()
+        {
+            @Override
+            public String get(ChangeEvent event, EventMemo memo)
+            {
+                return memo.get(event.change).project;
+            }
+        });
+
+        changeFields.put("branch", new Accessor<ChangeEvent, String>()
+        {
+            @Override
+            public String get(ChangeEvent event, EventMemo memo)
+            {
+                return memo.get(event.change).branch;
+            }
+        });
+
+        changeFields.put("subject", new Accessor<ChangeEvent, String>()
+        {
+            @Override
+            public String get(ChangeEvent event, EventMemo memo)
+            {
+                ChangeAttribute change;
+                change = memo.get(event.change);
+
+                if (change.commitMessage == null)
+                {
+                    return change.subject;
+                }
+
+                int end;
+                end = change.commitMessage.indexOf('\n');
+
+                return end < 0
+                        ? change.commitMessage
+                        : change.commitMessage.substring(0, end);
+            }
+        });
+
+        changeFields.put("url", new Accessor<ChangeEvent, String>()
+        {
+            @Override
+            public String get(ChangeEvent event, EventMemo memo)
+            {
+                return memo.get(event.change).url;
+            }
+        });
+
+        changeFields.put("owner", new Accessor<ChangeEvent, String>()
+        {
+            @Override
+            public String get(ChangeEvent event, EventMemo memo)
+            {
+                AccountAttribute owner;
+                owner = memo.get(event.change).owner;
+
+                return owner == null ? null : owner.username;
+            }
+        });
+
+        return changeFields;
+    }
+
+    /**
+     * Extracts a value from an event, reading the suppliers of the event
+     * through its memo.
+     *
+     * @param <E> The type of event.
+     * @param <T> The type of value.
+     */
+    public interface Accessor<E, T>
+    {
+        /**
+         * Extracts the value from an event.
+         *
+         * @param event The event.
+         * @param memo The memo the suppliers of the event are read through.
+         * @return The value, or null if the event has none.
+         */
+        T get(E event, EventMemo memo);
+    }
+
+    /**
+     * A compiled piece of a template: literal text, a field, the header of
+     * the change or a group that is left out when one of its fields is
+     * missing.
+     */
+    static final class Segment<E>
+    {
+        final String literal;
+        final Accessor<? super E, String> field;
+        final List<Segment<E>> group;
+        final boolean header;
+
+        Segment(String literal)
+        {
+            this(literal, null, null, false);
+        }
+
+        Segment(Accessor<? super E, String> field)
+        {
+            this(null, field, null, false);
+        }
+
+        Segment(List<Segment<E>> group)
+        {
+            this(null, null, group, false);
+        }
+
+        private Segment(String literal, Accessor<? super E, String> field,
+                List<Segment<E>> group, boolean header)
+        {
+            this.literal = literal;
+            this.field = field;
+            this.group = group;
+            this.header = header;
+        }
+
+        static <E> Segment<E> header()
+        {
+            return new Segment<E>(null, null, null, true);
+        }
+    }
+}
@@ -18,7 +18,9 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
-import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Strings;
+import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.PatchSetCreatedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -38,6 +40,7 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
             LoggerFactory.getLogger(PatchSetCreatedMessageGenerator.class);
 
     private PatchSetCreatedEvent event;
+    private EventMemo memo;
     private ProjectConfig config;
 
     /**
@@ -46,9 +49,10 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
      *
      * @param event The PatchSetCreatedEvent instance to generate a
      *              message for.
+     * @param memo The memo the suppliers of the event are read through.
      */
     protected PatchSetCreatedMessageGenerator(PatchSetCreatedEvent event,
-            ProjectConfig config)
+            EventMemo memo, ProjectConfig config)
     {
         if (event == null)
         {
@@ -56,17 +60,24 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
         }
 
         this.event = event;
+        this.memo = memo;
         this.config = config;
     }
 
     @Override
     public boolean shouldPublish()
     {
-        if (!config.isEnabled() || !config.shouldPublishOnPatchSetCreated())
+        if (!isEnabled())
         {
             return false;
         }
 
+        // Without an ignore pattern the change need not be looked up
+        if (Strings.isNullOrEmpty(config.getIgnore()))
+        {
+            return true;
+        }
+
         boolean result;
         result = true;
 
@@ -76,7 +87,7 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
             pattern = Pattern.compile(config.getIgnore(), Pattern.DOTALL);
 
             Matcher matcher;
-            matcher = pattern.matcher(event.change.get().commitMessage);
+            matcher = pattern.matcher(memo.get(event.change).commitMessage);
 
             // If the ignore pattern matches, publishing should not happen
             result = !matcher.matches();
@@ -89,6 +100,24 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
         return result;
     }
 
+    @Override
+    public boolean isEnabled()
+    {
+        return config.isEnabled() && config.shouldPublishOnPatchSetCreated();
+    }
+
+    @Override
+    public int getChangeNumber()
+    {
+        return memo.get(event.change).number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return config.getPatchSetCreatedPriority();
+    }
+
     @Override
     public String generate()
     {
@@ -97,26 +126,7 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
 
         try
         {
-            String template;
-            template = ResourceHelper.loadNamedResourceAsString(
-                    "basic-message-template.json");
-
-            StringBuilder text;
-            text = new StringBuilder();
-
-            text.append(escape(event.uploader.get().name));
-            text.append(" proposed\\n>>>");
-            text.append(escape(event.change.get().project));
-            text.append(" (");
-            text.append(escape(event.change.get().branch));
-            text.append("): ");
-            text.append(escape(event.change.get().commitMessage.split("\n")[0]));
-            text.append(" (");
-            text.append(escape(event.change.get().url));
-            text.append(")");
-
-            message = String.format(template, text, config.getChannel(),
-                    config.getUsername());
+            message = format(generateText(), config);
         }
         catch (Exception e)
         {
@@ -125,4 +135,20 @@ public class PatchSetCreatedMessageGenerator extends MessageGenerator
 
         return message;
     }
+
+    @Override
+    public String generateText()
+    {
+        ChangeAttribute change;
+        change = memo.get(event.change);
+
+        StringBuilder text;
+        text = new StringBuilder();
+
+        text.append(escape(memo.get(event.uploader).name));
+        text.append(" proposed\\n>>>");
+        text.append(header(change));
+
+        return text.toString();
+    }
 }
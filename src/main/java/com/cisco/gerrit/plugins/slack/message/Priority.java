@@ -0,0 +1,41 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+/**
+ * The delivery priority of a message. When messages queue up, higher
+ * priority messages are delivered more often than lower priority ones, but
+ * every priority keeps making progress.
+ */
+public enum Priority
+{
+    HIGH,
+    NORMAL,
+    LOW;
+
+    /**
+     * Gets the more urgent of two priorities.
+     *
+     * @param other The other priority, may be null.
+     * @return The higher of both priorities.
+     */
+    public Priority max(Priority other)
+    {
+        return other == null || compareTo(other) <= 0 ? this : other;
+    }
+}
@@ -18,8 +18,9 @@
 package com.cisco.gerrit.plugins.slack.message;
 
 import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
-import com.cisco.gerrit.plugins.slack.util.ResourceHelper;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
 import com.google.common.base.Ascii;
+import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.ReviewerAddedEvent;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -40,15 +41,17 @@ public class ReviewerAddedMessageGenerator extends MessageGenerator
 
     private ProjectConfig config;
     private ReviewerAddedEvent event;
+    private EventMemo memo;
 
     /**
      * Creates a new ReviewerAddedMessageGenerator instance using the provided
      * ReviewerAddedEvent instance.
      *
      * @param event The ReviewerAddedEvent instance to generate a message for.
+     * @param memo The memo the suppliers of the event are read through.
      */
     protected ReviewerAddedMessageGenerator(ReviewerAddedEvent event,
-                                            ProjectConfig config)
+            EventMemo memo, ProjectConfig config)
     {
         if (event == null)
         {
@@ -56,15 +59,34 @@ public class ReviewerAddedMessageGenerator extends MessageGenerator
         }
 
         this.event = event;
+        this.memo = memo;
         this.config = config;
     }
 
     @Override
     public boolean shouldPublish()
+    {
+        return isEnabled();
+    }
+
+    @Override
+    public boolean isEnabled()
     {
         return config.isEnabled() && config.shouldPublishOnReviewerAdded();
     }
 
+    @Override
+    public int getChangeNumber()
+    {
+        return memo.get(event.change).number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return config.getReviewerAddedPriority();
+    }
+
     @Override
     public String generate()
     {
@@ -73,26 +95,7 @@ public class ReviewerAddedMessageGenerator extends MessageGenerator
 
         try
         {
-            String template;
-            template = ResourceHelper.loadNamedResourceAsString(
-                    "basic-message-template.json");
-
-            StringBuilder text;
-            text = new StringBuilder();
-
-            text.append(escape(event.reviewer.get().name));
-            text.append(" was added to review\\n>>>");
-            text.append(escape(event.change.get().project));
-            text.append(" (");
-            text.append(escape(event.change.get().branch));
-            text.append("): ");
-            text.append(escape(event.change.get().commitMessage.split("\n")[0]));
-            text.append(" (");
-            text.append(escape(event.change.get().url));
-            text.append(")");
-
-            message = String.format(template, text, config.getChannel(),
-                    config.getUsername());
+            message = format(generateText(), config);
         }
         catch (Exception e)
         {
@@ -101,4 +104,20 @@ public class ReviewerAddedMessageGenerator extends MessageGenerator
 
         return message;
     }
+
+    @Override
+    public String generateText()
+    {
+        ChangeAttribute change;
+        change = memo.get(event.change);
+
+        StringBuilder text;
+        text = new StringBuilder();
+
+        text.append(escape(memo.get(event.reviewer).name));
+        text.append(" was added to review\\n>>>");
+        text.append(header(change));
+
+        return text.toString();
+    }
 }
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.gerrit.server.events.ChangeEvent;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+
+/**
+ * A MessageGenerator implementation that renders the message of an event
+ * from the text template of its MessageSpec.
+ *
+ * @param <E> The type of event.
+ */
+public class SpecMessageGenerator<E extends ChangeEvent>
+        extends MessageGenerator
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(SpecMessageGenerator.class);
+
+    private MessageSpec<E> spec;
+    private E event;
+    private EventMemo memo;
+    private ProjectConfig config;
+
+    /**
+     * Creates a new SpecMessageGenerator instance.
+     *
+     * @param spec The MessageSpec of the event's type.
+     * @param event The event to generate a message for.
+     * @param memo The memo the suppliers of the event are read through.
+     * @param config The ProjectConfig instance of the event's project.
+     */
+    protected SpecMessageGenerator(MessageSpec<E> spec, E event,
+            EventMemo memo, ProjectConfig config)
+    {
+        if (event == null)
+        {
+            throw new NullPointerException("event cannot be null");
+        }
+
+        this.spec = spec;
+        this.event = event;
+        this.memo = memo;
+        this.config = config;
+    }
+
+    @Override
+    public boolean shouldPublish()
+    {
+        return isEnabled();
+    }
+
+    @Override
+    public boolean isEnabled()
+    {
+        return config.isEnabled() && spec.shouldPublish(config);
+    }
+
+    @Override
+    public int getChangeNumber()
+    {
+        return memo.get(event.change).number;
+    }
+
+    @Override
+    public Priority getPriority()
+    {
+        return spec.getPriority(config);
+    }
+
+    @Override
+    public String generate()
+    {
+        String message;
+        message = "";
+
+        try
+        {
+            message = format(generateText(), config);
+        }
+        catch (Exception e)
+        {
+            LOGGER.error("Error generating message: " + e.getMessage(), e);
+        }
+
+        return message;
+    }
+
+    @Override
+    public String generateText()
+    {
+        StringBuilder text;
+        text = new StringBuilder();
+
+        append(text, spec.getSegments(), false);
+
+        return text.toString();
+    }
+
+    /**
+     * Appends the segments to the text. In an optional group a missing
+     * field stops the group; the caller then removes what was appended.
+     *
+     * @return false, if a field of an optional group was missing
+     */
+    private boolean append(StringBuilder text,
+            List<MessageSpec.Segment<E>> segments, boolean optional)
+    {
+        for (MessageSpec.Segment<E> segment : segments)
+        {
+            if (segment.literal != null)
+            {
+                text.append(segment.literal);
+            }
+            else if (segment.header)
+            {
+                text.append(header(memo.get(event.change)));
+            }
+            else if (segment.field != null)
+            {
+                String value;
+                value = segment.field.get(event, memo);
+
+                if (value == null || value.isEmpty())
+                {
+                    if (optional)
+                    {
+                        return false;
+                    }
+
+                    continue;
+                }
+
+                text.append(escape(value));
+            }
+            else
+            {
+                int length;
+                length = text.length();
+
+                if (!append(text, segment.group, true))
+                {
+                    text.setLength(length);
+                }
+            }
+        }
+
+        return true;
+    }
+}
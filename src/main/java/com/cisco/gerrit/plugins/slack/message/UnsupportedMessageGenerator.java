@@ -50,6 +50,12 @@ public class UnsupportedMessageGenerator extends MessageGenerator
         return false;
     }
 
+    @Override
+    public boolean isEnabled()
+    {
+        return false;
+    }
+
     @Override
     public String generate()
     {
@@ -61,4 +67,10 @@ public class UnsupportedMessageGenerator extends MessageGenerator
 
         return message.toString();
     }
+
+    @Override
+    public String generateText()
+    {
+        return escape(generate());
+    }
 }
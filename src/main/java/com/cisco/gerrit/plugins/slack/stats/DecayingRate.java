@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exponentially decaying event rates over 1, 5 and 15 minutes, computed the
+ * way Unix load averages are: events are counted and folded into the moving
+ * averages at a fixed tick interval. Memory use is constant.
+ */
+public class DecayingRate
+{
+    /**
+     * The interval at which counted events are folded into the averages.
+     */
+    static final long TICK_INTERVAL = TimeUnit.SECONDS.toNanos(5);
+
+    // Beyond this many idle ticks every average is treated as decayed to
+    // nothing
+    private static final int MAX_TICKS = 1000;
+
+    private static final double[] ALPHAS = {
+            alpha(1),
+            alpha(5),
+            alpha(15)};
+
+    private final double[] rates;
+    private boolean initialized;
+    private long count;
+    private long lastTick;
+
+    /**
+     * Creates a new DecayingRate instance.
+     *
+     * @param now The current time, in nanoseconds.
+     */
+    public DecayingRate(long now)
+    {
+        rates = new double[ALPHAS.length];
+        lastTick = now;
+    }
+
+    private static double alpha(int minutes)
+    {
+        return 1 - Math.exp(-(double) TICK_INTERVAL /
+                TimeUnit.MINUTES.toNanos(minutes));
+    }
+
+    /**
+     * Counts one event.
+     *
+     * @param now The current time, in nanoseconds.
+     */
+    public synchronized void mark(long now)
+    {
+        tick(now);
+        count++;
+    }
+
+    /**
+     * Gets the rates over 1, 5 and 15 minutes.
+     *
+     * @param now The current time, in nanoseconds.
+     * @return The three rates, in events per second.
+     */
+    public synchronized double[] getRates(long now)
+    {
+        tick(now);
+
+        double[] perSecond;
+        perSecond = new double[rates.length];
+
+        for (int i = 0; i < rates.length; i++)
+        {
+            perSecond[i] = rates[i] * TimeUnit.SECONDS.toNanos(1);
+        }
+
+        return perSecond;
+    }
+
+    private void tick(long now)
+    {
+        long ticks;
+        ticks = (now - lastTick) / TICK_INTERVAL;
+
+        if (ticks <= 0)
+        {
+            return;
+        }
+
+        lastTick += ticks * TICK_INTERVAL;
+
+        if (ticks > MAX_TICKS)
+        {
+            Arrays.fill(rates, 0);
+            count = 0;
+            initialized = true;
+            return;
+        }
+
+        for (long i = 0; i < ticks; i++)
+        {
+            // Events per nanosecond during the tick
+            double instant;
+            instant = (double) count / TICK_INTERVAL;
+            count = 0;
+
+            for (int r = 0; r < rates.length; r++)
+            {
+                // The first tick seeds the averages rather than decaying
+                // from zero
+                rates[r] = initialized
+                        ? rates[r] + ALPHAS[r] * (instant - rates[r])
+                        : instant;
+            }
+
+            initialized = true;
+        }
+    }
+}
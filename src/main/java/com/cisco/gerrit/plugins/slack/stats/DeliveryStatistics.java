@@ -0,0 +1,190 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.cisco.gerrit.plugins.slack.client.CircuitBreakerRegistry;
+import com.google.common.base.Ticker;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Collects live delivery statistics per project and per webhook: event
+ * rates, delivery latency percentiles, error rate, backlog and the last
+ * error. Every project and webhook takes a fixed amount of memory, however
+ * many messages are delivered.
+ */
+@Singleton
+public class DeliveryStatistics
+{
+    private final Ticker ticker;
+
+    private final ConcurrentMap<String, DeliveryStats> projects;
+
+    // Keyed by the redacted webhook URL, so the token is never shown
+    private final ConcurrentMap<String, DeliveryStats> webhooks;
+
+    /**
+     * Creates a new DeliveryStatistics instance.
+     */
+    @Inject
+    public DeliveryStatistics()
+    {
+        this(Ticker.systemTicker());
+    }
+
+    DeliveryStatistics(Ticker ticker)
+    {
+        this.ticker = ticker;
+
+        projects = new ConcurrentHashMap<>();
+        webhooks = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Records an event received for a project.
+     *
+     * @param project The project name.
+     */
+    public void recordEvent(String project)
+    {
+        get(projects, project).mark(ticker.read());
+    }
+
+    /**
+     * Records a message queued for delivery.
+     *
+     * @param project The project name.
+     * @param webhookUrl The webhook URL the message is delivered to.
+     */
+    public void recordQueued(String project, String webhookUrl)
+    {
+        get(projects, project).queued();
+
+        DeliveryStats webhook;
+        webhook = getWebhook(webhookUrl);
+        webhook.queued();
+        webhook.mark(ticker.read());
+    }
+
+    /**
+     * Records the outcome of a message delivery.
+     *
+     * @param project The project name.
+     * @param webhookUrl The webhook URL the message was delivered to.
+     * @param latency The time, in nanoseconds, from queueing the message to
+     *                the end of its delivery.
+     * @param success Whether Slack accepted the message.
+     */
+    public void recordDelivered(String project, String webhookUrl,
+            long latency, boolean success)
+    {
+        long now;
+        now = ticker.read();
+
+        DeliveryStats webhook;
+        webhook = getWebhook(webhookUrl);
+        webhook.delivered(latency, success, now);
+
+        DeliveryStats projectStats;
+        projectStats = get(projects, project);
+        projectStats.delivered(latency, success, now);
+
+        if (!success)
+        {
+            projectStats.error(webhook);
+        }
+    }
+
+    /**
+     * Records why a delivery to a webhook failed.
+     *
+     * @param webhookUrl The webhook URL.
+     * @param error A description of the error.
+     */
+    public void recordError(String webhookUrl, String error)
+    {
+        getWebhook(webhookUrl).error(error, System.currentTimeMillis());
+    }
+
+    /**
+     * Gets the statistics of every project, ordered by name.
+     *
+     * @return The project statistics.
+     */
+    public List<StatsSnapshot> getProjectStats()
+    {
+        return snapshot(projects);
+    }
+
+    /**
+     * Gets the statistics of every webhook, ordered by redacted URL.
+     *
+     * @return The webhook statistics.
+     */
+    public List<StatsSnapshot> getWebhookStats()
+    {
+        return snapshot(webhooks);
+    }
+
+    private List<StatsSnapshot> snapshot(Map<String, DeliveryStats> stats)
+    {
+        long now;
+        now = ticker.read();
+
+        List<StatsSnapshot> snapshots;
+        snapshots = new ArrayList<>();
+
+        for (DeliveryStats entry : new TreeMap<>(stats).values())
+        {
+            snapshots.add(entry.snapshot(now));
+        }
+
+        return snapshots;
+    }
+
+    private DeliveryStats getWebhook(String webhookUrl)
+    {
+        return get(webhooks,
+                CircuitBreakerRegistry.redact(String.valueOf(webhookUrl)));
+    }
+
+    private DeliveryStats get(ConcurrentMap<String, DeliveryStats> stats,
+            String name)
+    {
+        String key;
+        key = String.valueOf(name);
+
+        DeliveryStats entry;
+        entry = stats.get(key);
+
+        if (entry == null)
+        {
+            stats.putIfAbsent(key, new DeliveryStats(key, ticker.read()));
+            entry = stats.get(key);
+        }
+
+        return entry;
+    }
+}
@@ -0,0 +1,117 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The rolling delivery statistics of a single project or webhook.
+ */
+class DeliveryStats
+{
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    private final String name;
+    private final DecayingRate rate;
+    private final RollingHistogram histogram;
+    private final AtomicInteger backlog;
+
+    private volatile LastError lastError;
+
+    DeliveryStats(String name, long now)
+    {
+        this.name = name;
+
+        rate = new DecayingRate(now);
+        histogram = new RollingHistogram();
+        backlog = new AtomicInteger();
+    }
+
+    void mark(long now)
+    {
+        rate.mark(now);
+    }
+
+    void queued()
+    {
+        backlog.incrementAndGet();
+    }
+
+    void delivered(long latency, boolean success, long now)
+    {
+        backlog.decrementAndGet();
+        histogram.record(latency, success, now);
+    }
+
+    void error(String message, long at)
+    {
+        lastError = new LastError(message, at);
+    }
+
+    void error(DeliveryStats other)
+    {
+        if (other.lastError != null)
+        {
+            lastError = other.lastError;
+        }
+    }
+
+    StatsSnapshot snapshot(long now)
+    {
+        double[] rates;
+        rates = rate.getRates(now);
+
+        double[] latencies;
+        latencies = histogram.getSnapshot(QUANTILES, now);
+
+        StatsSnapshot snapshot;
+        snapshot = new StatsSnapshot();
+        snapshot.name = name;
+        snapshot.rate1m = rates[0];
+        snapshot.rate5m = rates[1];
+        snapshot.rate15m = rates[2];
+        snapshot.p50 = latencies[0];
+        snapshot.p95 = latencies[1];
+        snapshot.p99 = latencies[2];
+        snapshot.errorRate = latencies[3];
+        snapshot.backlog = backlog.get();
+
+        LastError error;
+        error = lastError;
+
+        if (error != null)
+        {
+            snapshot.lastError = error.message;
+            snapshot.lastErrorAt = error.at;
+        }
+
+        return snapshot;
+    }
+
+    private static class LastError
+    {
+        private final String message;
+        private final long at;
+
+        LastError(String message, long at)
+        {
+            this.message = message;
+            this.at = at;
+        }
+    }
+}
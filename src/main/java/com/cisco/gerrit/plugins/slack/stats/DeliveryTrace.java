@@ -0,0 +1,127 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+/**
+ * The time one message spent in each stage of its way from a Gerrit event
+ * to Slack. A trace is a single small object of primitive timings so that
+ * it can accompany every message; nothing else is allocated unless the
+ * trace is logged.
+ */
+public class DeliveryTrace
+{
+    /**
+     * The stages of a delivery.
+     */
+    public enum Stage
+    {
+        /**
+         * Resolving the change, and the other data the event carries, to
+         * decide whether to publish it.
+         */
+        CHANGE,
+
+        /**
+         * Looking up the project configuration.
+         */
+        CONFIG,
+
+        /**
+         * Rendering the message.
+         */
+        RENDER,
+
+        /**
+         * Waiting in the delivery queue.
+         */
+        QUEUE,
+
+        /**
+         * Publishing the message to Slack.
+         */
+        SLACK
+    }
+
+    // Stage.values() clones its array on every call
+    static final Stage[] STAGES = Stage.values();
+
+    private final String type;
+    private final long[] nanos;
+
+    /**
+     * Creates a new DeliveryTrace instance.
+     *
+     * @param type The type of the event, or kind of message, traced.
+     */
+    public DeliveryTrace(String type)
+    {
+        this.type = type;
+
+        nanos = new long[STAGES.length];
+    }
+
+    /**
+     * Adds time spent in a stage.
+     *
+     * @param stage The stage.
+     * @param elapsed The time spent, in nanoseconds.
+     */
+    public void record(Stage stage, long elapsed)
+    {
+        nanos[stage.ordinal()] += elapsed;
+    }
+
+    /**
+     * Gets the time spent in a stage.
+     *
+     * @param stage The stage.
+     * @return The time spent, in nanoseconds.
+     */
+    public long getNanos(Stage stage)
+    {
+        return nanos[stage.ordinal()];
+    }
+
+    /**
+     * Gets the time spent in all stages together.
+     *
+     * @return The total time spent, in nanoseconds.
+     */
+    public long getTotalNanos()
+    {
+        long total;
+        total = 0;
+
+        for (long elapsed : nanos)
+        {
+            total += elapsed;
+        }
+
+        return total;
+    }
+
+    /**
+     * Gets the type of the event, or kind of message, traced.
+     *
+     * @return The type.
+     */
+    public String getType()
+    {
+        return type;
+    }
+}
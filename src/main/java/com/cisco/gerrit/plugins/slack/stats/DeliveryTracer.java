@@ -0,0 +1,139 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs the stage timings of slow deliveries, and of a sample of all
+ * deliveries, as one line of key=value pairs each. The decision whether to
+ * log takes a sum and a counter increment; the line is only built for the
+ * deliveries that are logged.
+ */
+@Singleton
+public class DeliveryTracer
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(DeliveryTracer.class);
+
+    private final long threshold;
+    private final int sampleRate;
+    private final AtomicLong deliveries;
+
+    /**
+     * Creates a new DeliveryTracer instance.
+     *
+     * @param config The GlobalConfig holding the trace settings.
+     */
+    @Inject
+    public DeliveryTracer(GlobalConfig config)
+    {
+        threshold = TimeUnit.MILLISECONDS.toNanos(config.getTraceThreshold());
+        sampleRate = config.getTraceSampleRate();
+
+        deliveries = new AtomicLong();
+    }
+
+    /**
+     * Completes a trace, logging it if the delivery was slow or is sampled.
+     *
+     * @param trace The trace of the delivery.
+     * @param project The project of the message.
+     * @param webhookUrl The webhook URL the message was published to.
+     * @param published Whether the message was published.
+     * @return true, if the trace is to be logged; otherwise false
+     */
+    public boolean finish(DeliveryTrace trace, String project,
+            String webhookUrl, boolean published)
+    {
+        long total;
+        total = trace.getTotalNanos();
+
+        boolean slow;
+        slow = threshold > 0 && total >= threshold;
+
+        boolean sampled;
+        sampled = sampleRate > 0 &&
+                deliveries.incrementAndGet() % sampleRate == 0;
+
+        if (!slow && !sampled)
+        {
+            return false;
+        }
+
+        if (LOGGER.isInfoEnabled())
+        {
+            LOGGER.info(format(trace, slow ? "slow" : "sampled", project,
+                    webhookUrl, published, total));
+        }
+
+        return true;
+    }
+
+    static String format(DeliveryTrace trace, String reason, String project,
+            String webhookUrl, boolean published, long total)
+    {
+        StringBuilder line;
+        line = new StringBuilder(256);
+
+        line.append("Slack delivery trace reason=").append(reason)
+                .append(" project=").append(project)
+                .append(" type=").append(trace.getType())
+                .append(" webhook=").append(host(webhookUrl))
+                .append(" published=").append(published)
+                .append(" total_ns=").append(total);
+
+        for (DeliveryTrace.Stage stage : DeliveryTrace.STAGES)
+        {
+            line.append(' ').append(stage.name().toLowerCase())
+                    .append("_ns=").append(trace.getNanos(stage));
+        }
+
+        return line.toString();
+    }
+
+    // The host alone, as the path of a webhook URL holds its secret token
+    static String host(String webhookUrl)
+    {
+        if (webhookUrl == null)
+        {
+            return null;
+        }
+
+        int start;
+        start = webhookUrl.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+
+        int end;
+        end = webhookUrl.indexOf('/', start);
+
+        return end < 0
+                ? webhookUrl.substring(start)
+                : webhookUrl.substring(start, end);
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.ShedSnapshot;
+import com.cisco.gerrit.plugins.slack.filter.EventFilters;
+import com.cisco.gerrit.plugins.slack.filter.FilterSnapshot;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.extensions.restapi.RestReadView;
+import com.google.gerrit.server.config.ConfigResource;
+import com.google.inject.Inject;
+import com.google.inject.Singleton;
+
+import java.util.List;
+
+/**
+ * REST endpoint returning the live delivery statistics per project and per
+ * webhook, served at /config/server/slack-integration~stats.
+ */
+@Singleton
+@RequiresCapability(GlobalCapability.VIEW_QUEUE)
+public class GetStats implements RestReadView<ConfigResource>
+{
+    private final DeliveryStatistics statistics;
+    private final EventFilters filters;
+    private final LoadShedder loadShedder;
+
+    @Inject
+    GetStats(DeliveryStatistics statistics, EventFilters filters,
+            LoadShedder loadShedder)
+    {
+        this.statistics = statistics;
+        this.filters = filters;
+        this.loadShedder = loadShedder;
+    }
+
+    @Override
+    public StatsInfo apply(ConfigResource resource)
+    {
+        StatsInfo info;
+        info = new StatsInfo();
+        info.projects = statistics.getProjectStats();
+        info.webhooks = statistics.getWebhookStats();
+        info.filters = filters.getSnapshots();
+        info.shed = loadShedder.getSnapshots();
+
+        return info;
+    }
+
+    /**
+     * The statistics returned by the endpoint.
+     */
+    public static class StatsInfo
+    {
+        public List<StatsSnapshot> projects;
+        public List<StatsSnapshot> webhooks;
+        public List<FilterSnapshot> filters;
+        public List<ShedSnapshot> shed;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.google.common.math.LongMath;
+
+import java.math.RoundingMode;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A fixed memory histogram of delivery latencies and outcomes over a rolling
+ * window. The window is divided into slices, each holding the counts of one
+ * minute; a slice is reused once it has fallen out of the window. Latencies
+ * are counted in logarithmic buckets with four sub-buckets per power of two,
+ * so reported percentiles are within 25% of the actual value.
+ */
+public class RollingHistogram
+{
+    /**
+     * The length of each slice of the window.
+     */
+    static final long SLICE_LENGTH = TimeUnit.MINUTES.toNanos(1);
+
+    /**
+     * The number of slices making up the window.
+     */
+    static final int SLICES = 5;
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Latencies of 2^26 ms, over 18 hours, and up share the last bucket
+    private static final int MAX_EXPONENT = 26;
+    private static final int BUCKETS =
+            SUB_BUCKETS + (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long[][] counts;
+    private final long[] attempts;
+    private final long[] errors;
+    private final long[] sliceIds;
+
+    /**
+     * Creates a new, empty, RollingHistogram instance.
+     */
+    public RollingHistogram()
+    {
+        counts = new long[SLICES][BUCKETS];
+        attempts = new long[SLICES];
+        errors = new long[SLICES];
+        sliceIds = new long[SLICES];
+
+        for (int i = 0; i < SLICES; i++)
+        {
+            sliceIds[i] = Long.MIN_VALUE;
+        }
+    }
+
+    /**
+     * Records the outcome of a delivery.
+     *
+     * @param latency The delivery latency, in nanoseconds.
+     * @param success Whether the delivery succeeded.
+     * @param now The current time, in nanoseconds.
+     */
+    public synchronized void record(long latency, boolean success, long now)
+    {
+        int slice;
+        slice = slice(now);
+
+        counts[slice][bucket(TimeUnit.NANOSECONDS.toMillis(latency))]++;
+        attempts[slice]++;
+
+        if (!success)
+        {
+            errors[slice]++;
+        }
+    }
+
+    /**
+     * Gets the latencies at the given quantiles, and the error rate, over
+     * the window.
+     *
+     * @param quantiles The quantiles, in ascending order, between 0 and 1.
+     * @param now The current time, in nanoseconds.
+     * @return The latency in milliseconds at each quantile, followed by the
+     * error rate between 0 and 1; all 0 if nothing was recorded.
+     */
+    public synchronized double[] getSnapshot(double[] quantiles, long now)
+    {
+        long current;
+        current = sliceId(now);
+
+        long[] merged;
+        merged = new long[BUCKETS];
+
+        long totalAttempts;
+        totalAttempts = 0;
+
+        long totalErrors;
+        totalErrors = 0;
+
+        for (int i = 0; i < SLICES; i++)
+        {
+            if (current - sliceIds[i] >= SLICES || sliceIds[i] > current)
+            {
+                continue;
+            }
+
+            for (int b = 0; b < BUCKETS; b++)
+            {
+                merged[b] += counts[i][b];
+            }
+
+            totalAttempts += attempts[i];
+            totalErrors += errors[i];
+        }
+
+        double[] snapshot;
+        snapshot = new double[quantiles.length + 1];
+
+        if (totalAttempts == 0)
+        {
+            return snapshot;
+        }
+
+        int q;
+        q = 0;
+
+        long seen;
+        seen = 0;
+
+        for (int b = 0; b < BUCKETS && q < quantiles.length; b++)
+        {
+            seen += merged[b];
+
+            while (q < quantiles.length &&
+                    seen >= Math.ceil(quantiles[q] * totalAttempts))
+            {
+                snapshot[q++] = upperBound(b);
+            }
+        }
+
+        snapshot[quantiles.length] = (double) totalErrors / totalAttempts;
+
+        return snapshot;
+    }
+
+    private int slice(long now)
+    {
+        long id;
+        id = sliceId(now);
+
+        int slice;
+        slice = LongMath.mod(id, SLICES);
+
+        if (sliceIds[slice] != id)
+        {
+            // The slice last held counts of a minute that has left the window
+            Arrays.fill(counts[slice], 0);
+            attempts[slice] = 0;
+            errors[slice] = 0;
+            sliceIds[slice] = id;
+        }
+
+        return slice;
+    }
+
+    private static long sliceId(long now)
+    {
+        return LongMath.divide(now, SLICE_LENGTH, RoundingMode.FLOOR);
+    }
+
+    /**
+     * Gets the bucket of a latency.
+     *
+     * @param millis The latency, in milliseconds.
+     * @return The bucket index.
+     */
+    static int bucket(long millis)
+    {
+        if (millis < SUB_BUCKETS)
+        {
+            return (int) Math.max(0, millis);
+        }
+
+        int exponent;
+        exponent = 63 - Long.numberOfLeadingZeros(millis);
+
+        if (exponent >= MAX_EXPONENT)
+        {
+            return BUCKETS - 1;
+        }
+
+        int subBucket;
+        subBucket = (int) (millis >>> (exponent - SUB_BUCKET_BITS)) &
+                (SUB_BUCKETS - 1);
+
+        return SUB_BUCKETS + (exponent - SUB_BUCKET_BITS) * SUB_BUCKETS +
+                subBucket;
+    }
+
+    /**
+     * Gets the largest latency counted in a bucket.
+     *
+     * @param bucket The bucket index.
+     * @return The latency, in milliseconds.
+     */
+    static long upperBound(int bucket)
+    {
+        if (bucket < SUB_BUCKETS)
+        {
+            return bucket;
+        }
+
+        int exponent;
+        exponent = (bucket - SUB_BUCKETS) / SUB_BUCKETS + SUB_BUCKET_BITS;
+
+        int subBucket;
+        subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+
+        return ((long) (SUB_BUCKETS + subBucket + 1) <<
+                (exponent - SUB_BUCKET_BITS)) - 1;
+    }
+}
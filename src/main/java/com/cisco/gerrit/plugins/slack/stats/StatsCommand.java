@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.cisco.gerrit.plugins.slack.LoadShedder;
+import com.cisco.gerrit.plugins.slack.ShedSnapshot;
+import com.cisco.gerrit.plugins.slack.filter.EventFilters;
+import com.cisco.gerrit.plugins.slack.filter.FilterSnapshot;
+import com.google.gerrit.common.data.GlobalCapability;
+import com.google.gerrit.extensions.annotations.RequiresCapability;
+import com.google.gerrit.sshd.CommandMetaData;
+import com.google.gerrit.sshd.SshCommand;
+import com.google.inject.Inject;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Prints the live delivery statistics per project and per webhook.
+ */
+@RequiresCapability(GlobalCapability.VIEW_QUEUE)
+@CommandMetaData(name = "stats",
+        description = "Show Slack delivery statistics per project and webhook")
+public class StatsCommand extends SshCommand
+{
+    @Inject
+    private DeliveryStatistics statistics;
+
+    @Inject
+    private EventFilters filters;
+
+    @Inject
+    private LoadShedder loadShedder;
+
+    @Override
+    protected void run()
+    {
+        print("Project", statistics.getProjectStats());
+        stdout.print('\n');
+        print("Webhook", statistics.getWebhookStats());
+
+        List<FilterSnapshot> snapshots;
+        snapshots = filters.getSnapshots();
+
+        if (!snapshots.isEmpty())
+        {
+            stdout.print('\n');
+            printFilters(snapshots);
+        }
+
+        List<ShedSnapshot> shed;
+        shed = loadShedder.getSnapshots();
+
+        if (!shed.isEmpty())
+        {
+            stdout.print('\n');
+            printShed(shed);
+        }
+    }
+
+    private void printShed(List<ShedSnapshot> snapshots)
+    {
+        int width;
+        width = "Project".length();
+
+        for (ShedSnapshot snapshot : snapshots)
+        {
+            width = Math.max(width, snapshot.project.length());
+        }
+
+        String format;
+        format = "%-" + width + "s %10s  %s\n";
+
+        stdout.print(String.format(format, "Project", "shed", "type"));
+
+        for (ShedSnapshot snapshot : snapshots)
+        {
+            stdout.print(String.format(format, snapshot.project,
+                    snapshot.shed, snapshot.type));
+        }
+    }
+
+    private void printFilters(List<FilterSnapshot> snapshots)
+    {
+        int width;
+        width = "Project".length();
+
+        for (FilterSnapshot snapshot : snapshots)
+        {
+            width = Math.max(width, snapshot.project.length());
+        }
+
+        String format;
+        format = "%-" + width + "s %10s  %s\n";
+
+        stdout.print(String.format(format, "Project", "hits", "filter"));
+
+        for (FilterSnapshot snapshot : snapshots)
+        {
+            stdout.print(String.format(format, snapshot.project,
+                    snapshot.hits, snapshot.rule));
+        }
+    }
+
+    private void print(String title, List<StatsSnapshot> snapshots)
+    {
+        int width;
+        width = title.length();
+
+        for (StatsSnapshot snapshot : snapshots)
+        {
+            width = Math.max(width, snapshot.name.length());
+        }
+
+        String format;
+        format = "%-" + width + "s %7s %7s %7s %7s %7s %7s %6s %7s  %s\n";
+
+        stdout.print(String.format(format, title, "1m/s", "5m/s", "15m/s",
+                "p50 ms", "p95 ms", "p99 ms", "errors", "backlog",
+                "last error"));
+
+        SimpleDateFormat dateFormat;
+        dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss");
+
+        for (StatsSnapshot snapshot : snapshots)
+        {
+            String lastError;
+            lastError = snapshot.lastError == null
+                    ? ""
+                    : dateFormat.format(new Date(snapshot.lastErrorAt)) +
+                            " " + snapshot.lastError;
+
+            stdout.print(String.format(format, snapshot.name,
+                    String.format("%.2f", snapshot.rate1m),
+                    String.format("%.2f", snapshot.rate5m),
+                    String.format("%.2f", snapshot.rate15m),
+                    String.format("%.0f", snapshot.p50),
+                    String.format("%.0f", snapshot.p95),
+                    String.format("%.0f", snapshot.p99),
+                    String.format("%.0f%%", snapshot.errorRate * 100),
+                    snapshot.backlog,
+                    lastError));
+        }
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+/**
+ * The delivery statistics of a single project or webhook at a point in time.
+ * The fields are public so the snapshot can be serialized as is.
+ */
+public class StatsSnapshot
+{
+    public String name;
+    public double rate1m;
+    public double rate5m;
+    public double rate15m;
+    public double p50;
+    public double p95;
+    public double p99;
+    public double errorRate;
+    public int backlog;
+    public String lastError;
+    public Long lastErrorAt;
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import com.google.common.base.Supplier;
+import com.google.gerrit.server.events.Event;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The suppliers of one event, memoized for the time the plugin works on the
+ * event. Gerrit hands the same event to every listener, so the event itself
+ * is never changed; instead its suppliers are read through the memo, which
+ * calls each of them at most once and only when it is first read. A memo is
+ * passed along with its event and may be read from any thread.
+ */
+public class EventMemo
+{
+    /**
+     * The class logger instance.
+     */
+    private static final Logger LOGGER =
+            LoggerFactory.getLogger(EventMemo.class);
+
+    private final Slot[] slots;
+
+    /**
+     * Creates a new EventMemo instance for the suppliers of the event.
+     *
+     * @param event The event.
+     */
+    public EventMemo(Event event)
+    {
+        this(event, supplierFields(event.getClass()));
+    }
+
+    /**
+     * Creates a new EventMemo instance for the suppliers of the event held
+     * by the given fields.
+     *
+     * @param event The event.
+     * @param fields The supplier fields of the event's class, as returned by
+     *               {@link #supplierFields(Class)}.
+     */
+    public EventMemo(Event event, Field[] fields)
+    {
+        List<Slot> found;
+        found = new ArrayList<>(fields.length);
+
+        for (Field field : fields)
+        {
+            try
+            {
+                Supplier<?> supplier;
+                supplier = (Supplier<?>) field.get(event);
+
+                if (supplier != null)
+                {
+                    found.add(new Slot(supplier));
+                }
+            }
+            catch (IllegalAccessException e)
+            {
+                LOGGER.warn("Supplier " + field + " cannot be memoized", e);
+            }
+        }
+
+        slots = found.toArray(new Slot[found.size()]);
+    }
+
+    /**
+     * Finds the public supplier fields of an event class.
+     *
+     * @param type The event class.
+     * @return The supplier fields.
+     */
+    public static Field[] supplierFields(Class<?> type)
+    {
+        List<Field> fields;
+        fields = new ArrayList<>();
+
+        for (Field field : type.getFields())
+        {
+            int modifiers;
+            modifiers = field.getModifiers();
+
+            if (field.getType() == Supplier.class &&
+                    !Modifier.isStatic(modifiers))
+            {
+                fields.add(field);
+            }
+        }
+
+        return fields.toArray(new Field[fields.size()]);
+    }
+
+    /**
+     * Gets the value of a supplier of the event, calling the supplier only
+     * the first time. Suppliers that are not the event's, such as those set
+     * on the event after the memo was created, are called every time.
+     *
+     * @param supplier A supplier of the event, may be null.
+     * @param <T> The type of value supplied.
+     * @return The supplied value, or null if there is no supplier.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> T get(Supplier<T> supplier)
+    {
+        if (supplier == null)
+        {
+            return null;
+        }
+
+        for (Slot slot : slots)
+        {
+            if (slot.supplier == supplier)
+            {
+                return (T) slot.get();
+            }
+        }
+
+        return supplier.get();
+    }
+
+    /**
+     * Gets the number of suppliers of the event that have not been called.
+     *
+     * @return The number of suppliers not materialized.
+     */
+    public int getUnmaterialized()
+    {
+        int count;
+        count = 0;
+
+        for (Slot slot : slots)
+        {
+            if (!slot.materialized)
+            {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Called when a supplier is called for the first time.
+     */
+    protected void onMaterialized()
+    {
+    }
+
+    /**
+     * Called when the value of a supplier is served from the memo.
+     */
+    protected void onReused()
+    {
+    }
+
+    private final class Slot
+    {
+        private final Supplier<?> supplier;
+
+        private volatile boolean materialized;
+        private Object value;
+
+        Slot(Supplier<?> supplier)
+        {
+            this.supplier = supplier;
+        }
+
+        Object get()
+        {
+            if (!materialized)
+            {
+                synchronized (this)
+                {
+                    if (!materialized)
+                    {
+                        value = supplier.get();
+                        materialized = true;
+
+                        onMaterialized();
+
+                        return value;
+                    }
+                }
+            }
+
+            onReused();
+
+            return value;
+        }
+    }
+}
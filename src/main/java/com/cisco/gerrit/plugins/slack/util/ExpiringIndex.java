@@ -0,0 +1,360 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A compact index from 64 bit keys to 64 bit values, whose entries expire a
+ * time to live after they were last used. Entries are held in primitive
+ * arrays forming an open addressing hash table, about 30 bytes per entry, so
+ * millions of entries cost tens rather than hundreds of megabytes and every
+ * lookup is a short probe. Expired entries are dropped when they are looked
+ * up, when the table grows and when the index is purged. Times are in
+ * seconds. This class is not thread safe.
+ */
+public class ExpiringIndex
+{
+    private static final int MIN_CAPACITY = 16;
+
+    private final int ttl;
+
+    private long[] keys;
+    private long[] values;
+    private int[] usedAt;
+    private int mask;
+    private int size;
+
+    /**
+     * Creates a new ExpiringIndex instance.
+     *
+     * @param ttl The time, in seconds, entries are kept after their last use.
+     */
+    public ExpiringIndex(int ttl)
+    {
+        if (ttl < 1)
+        {
+            throw new IllegalArgumentException(
+                    "ttl must be greater than zero");
+        }
+
+        this.ttl = ttl;
+
+        allocate(MIN_CAPACITY);
+    }
+
+    /**
+     * Gets the value of a key, marking the entry as used.
+     *
+     * @param key The key.
+     * @param now The current time, in seconds.
+     * @return The value, or 0 if the key is absent or has expired.
+     */
+    public long get(long key, int now)
+    {
+        int slot;
+        slot = indexOf(key);
+
+        if (slot < 0)
+        {
+            return 0;
+        }
+
+        if (isExpired(slot, now))
+        {
+            removeAt(slot);
+            return 0;
+        }
+
+        usedAt[slot] = now;
+
+        return values[slot];
+    }
+
+    /**
+     * Sets the value of a key, marking the entry as used.
+     *
+     * @param key The key, which must not be 0.
+     * @param value The value, which must not be 0.
+     * @param now The current time, in seconds.
+     */
+    public void put(long key, long value, int now)
+    {
+        if (key == 0 || value == 0)
+        {
+            throw new IllegalArgumentException(
+                    "key and value must not be zero");
+        }
+
+        int slot;
+        slot = indexOf(key);
+
+        if (slot >= 0)
+        {
+            values[slot] = value;
+            usedAt[slot] = now;
+            return;
+        }
+
+        // Keep the table at most three quarters full
+        if ((size + 1) * 4 > keys.length * 3)
+        {
+            rehash(now, true);
+        }
+
+        insert(key, value, now);
+        size++;
+    }
+
+    /**
+     * Removes all expired entries.
+     *
+     * @param now The current time, in seconds.
+     * @return The number of entries removed.
+     */
+    public int purge(int now)
+    {
+        int before;
+        before = size;
+
+        rehash(now, false);
+
+        return before - size;
+    }
+
+    /**
+     * Gets the number of entries held, including expired ones that have not
+     * been removed yet.
+     *
+     * @return The number of entries.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Writes the entries that have not expired.
+     *
+     * @param out The output to write to.
+     * @param now The current time, in seconds.
+     * @throws IOException If writing fails.
+     */
+    public void writeTo(DataOutput out, int now) throws IOException
+    {
+        int live;
+        live = 0;
+
+        for (int slot = 0; slot < keys.length; slot++)
+        {
+            if (keys[slot] != 0 && !isExpired(slot, now))
+            {
+                live++;
+            }
+        }
+
+        out.writeInt(live);
+
+        for (int slot = 0; slot < keys.length; slot++)
+        {
+            if (keys[slot] != 0 && !isExpired(slot, now))
+            {
+                out.writeLong(keys[slot]);
+                out.writeLong(values[slot]);
+                out.writeInt(usedAt[slot]);
+            }
+        }
+    }
+
+    /**
+     * Reads entries written by {@link #writeTo(DataOutput, int)}, skipping
+     * those that have expired since.
+     *
+     * @param in The input to read from.
+     * @param now The current time, in seconds.
+     * @throws IOException If reading fails.
+     */
+    public void readFrom(DataInput in, int now) throws IOException
+    {
+        int count;
+        count = in.readInt();
+
+        for (int i = 0; i < count; i++)
+        {
+            long key;
+            key = in.readLong();
+
+            long value;
+            value = in.readLong();
+
+            int used;
+            used = in.readInt();
+
+            if (key != 0 && value != 0 && now - used < ttl)
+            {
+                put(key, value, used);
+            }
+        }
+    }
+
+    private boolean isExpired(int slot, int now)
+    {
+        return now - usedAt[slot] >= ttl;
+    }
+
+    private void allocate(int capacity)
+    {
+        keys = new long[capacity];
+        values = new long[capacity];
+        usedAt = new int[capacity];
+        mask = capacity - 1;
+        size = 0;
+    }
+
+    /**
+     * Rebuilds the table without its expired entries, doubling its capacity
+     * if requested and the live entries would still fill more than half.
+     */
+    private void rehash(int now, boolean grow)
+    {
+        long[] oldKeys;
+        oldKeys = keys;
+
+        long[] oldValues;
+        oldValues = values;
+
+        int[] oldUsedAt;
+        oldUsedAt = usedAt;
+
+        int live;
+        live = 0;
+
+        for (int slot = 0; slot < oldKeys.length; slot++)
+        {
+            if (oldKeys[slot] != 0 && !isExpired(slot, now))
+            {
+                live++;
+            }
+        }
+
+        int capacity;
+        capacity = oldKeys.length;
+
+        while (grow && (live + 1) * 2 > capacity)
+        {
+            capacity <<= 1;
+        }
+
+        allocate(capacity);
+
+        for (int slot = 0; slot < oldKeys.length; slot++)
+        {
+            if (oldKeys[slot] != 0 && now - oldUsedAt[slot] < ttl)
+            {
+                insert(oldKeys[slot], oldValues[slot], oldUsedAt[slot]);
+                size++;
+            }
+        }
+    }
+
+    private void insert(long key, long value, int now)
+    {
+        int slot;
+        slot = home(key);
+
+        while (keys[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        keys[slot] = key;
+        values[slot] = value;
+        usedAt[slot] = now;
+    }
+
+    private int home(long key)
+    {
+        // Keys such as change numbers are sequential, so spread their bits
+        int hash;
+        hash = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    private int indexOf(long key)
+    {
+        int slot;
+        slot = home(key);
+
+        while (keys[slot] != 0)
+        {
+            if (keys[slot] == key)
+            {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Removes the entry in the slot, shifting later entries of the probe
+     * sequence back so that no lookup is cut short.
+     */
+    private void removeAt(int hole)
+    {
+        keys[hole] = 0;
+        size--;
+
+        int slot;
+        slot = (hole + 1) & mask;
+
+        while (keys[slot] != 0)
+        {
+            int home;
+            home = home(keys[slot]);
+
+            // Move the entry into the hole unless its home lies cyclically
+            // after the hole and at or before its current slot
+            boolean movable;
+            if (hole <= slot)
+            {
+                movable = home <= hole || home > slot;
+            }
+            else
+            {
+                movable = home <= hole && home > slot;
+            }
+
+            if (movable)
+            {
+                keys[hole] = keys[slot];
+                values[hole] = values[slot];
+                usedAt[hole] = usedAt[slot];
+                keys[slot] = 0;
+                hole = slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+}
@@ -0,0 +1,212 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+/**
+ * A fixed memory index of recently seen 64 bit fingerprints. Fingerprints
+ * are kept for a time window, up to a maximum count, after which the oldest
+ * are forgotten. All storage is allocated up front as primitive arrays: an
+ * open addressing hash table for lookups and a ring buffer, in insertion
+ * order, for expiry. This class is not thread safe.
+ */
+public class RecentEventIndex
+{
+    // Stands in for fingerprint 0, as 0 marks an empty table slot
+    private static final long ZERO = 0x9E3779B97F4A7C15L;
+
+    private final long window;
+
+    private final long[] table;
+    private final int mask;
+
+    private final long[] ring;
+    private final long[] seenAt;
+    private int head;
+    private int size;
+
+    /**
+     * Creates a new RecentEventIndex instance.
+     *
+     * @param capacity The maximum number of fingerprints to keep.
+     * @param window The time fingerprints are kept for, in the unit of the
+     *               timestamps passed to {@link #add(long, long)}.
+     */
+    public RecentEventIndex(int capacity, long window)
+    {
+        if (capacity < 1)
+        {
+            throw new IllegalArgumentException(
+                    "capacity must be greater than zero");
+        }
+
+        this.window = window;
+
+        // Keep the table at most half full so probe sequences stay short
+        int tableSize;
+        tableSize = Integer.highestOneBit(capacity) << 2;
+
+        table = new long[tableSize];
+        mask = tableSize - 1;
+
+        ring = new long[capacity];
+        seenAt = new long[capacity];
+    }
+
+    /**
+     * Adds a fingerprint to the index, unless it is already present.
+     *
+     * @param fingerprint The fingerprint.
+     * @param now The current time.
+     * @return true, if the fingerprint was added; false if it was seen
+     * within the window.
+     */
+    public boolean add(long fingerprint, long now)
+    {
+        if (fingerprint == 0)
+        {
+            fingerprint = ZERO;
+        }
+
+        expire(now);
+
+        if (indexOf(fingerprint) >= 0)
+        {
+            return false;
+        }
+
+        if (size == ring.length)
+        {
+            removeOldest();
+        }
+
+        int tail;
+        tail = (head + size) % ring.length;
+
+        ring[tail] = fingerprint;
+        seenAt[tail] = now;
+        size++;
+
+        int slot;
+        slot = home(fingerprint);
+
+        while (table[slot] != 0)
+        {
+            slot = (slot + 1) & mask;
+        }
+
+        table[slot] = fingerprint;
+
+        return true;
+    }
+
+    /**
+     * Gets the number of fingerprints currently held.
+     *
+     * @return The number of fingerprints.
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    private void expire(long now)
+    {
+        while (size > 0 && now - seenAt[head] >= window)
+        {
+            removeOldest();
+        }
+    }
+
+    private void removeOldest()
+    {
+        remove(ring[head]);
+
+        head = (head + 1) % ring.length;
+        size--;
+    }
+
+    private int home(long fingerprint)
+    {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    private int indexOf(long fingerprint)
+    {
+        int slot;
+        slot = home(fingerprint);
+
+        while (table[slot] != 0)
+        {
+            if (table[slot] == fingerprint)
+            {
+                return slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+
+        return -1;
+    }
+
+    /**
+     * Removes a fingerprint from the hash table, shifting later entries of
+     * the probe sequence back so that no lookup is cut short.
+     */
+    private void remove(long fingerprint)
+    {
+        int hole;
+        hole = indexOf(fingerprint);
+
+        if (hole < 0)
+        {
+            return;
+        }
+
+        table[hole] = 0;
+
+        int slot;
+        slot = (hole + 1) & mask;
+
+        while (table[slot] != 0)
+        {
+            int home;
+            home = home(table[slot]);
+
+            // Move the entry into the hole unless its home lies cyclically
+            // after the hole and at or before its current slot
+            boolean movable;
+            if (hole <= slot)
+            {
+                movable = home <= hole || home > slot;
+            }
+            else
+            {
+                movable = home <= hole && home > slot;
+            }
+
+            if (movable)
+            {
+                table[hole] = table[slot];
+                table[slot] = 0;
+                hole = slot;
+            }
+
+            slot = (slot + 1) & mask;
+        }
+    }
+}
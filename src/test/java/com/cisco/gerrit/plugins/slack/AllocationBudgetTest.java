@@ -0,0 +1,413 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessagePublisher;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.MessageGeneratorFactory;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.reviewdb.client.Account;
+import com.google.gerrit.reviewdb.client.Branch;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.reviewdb.client.Project;
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeAbandonedEvent;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.PatchSetEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import com.google.gwtorm.client.KeyUtil;
+import com.google.gwtorm.server.StandardKeyEncoder;
+import com.google.inject.AbstractModule;
+import com.google.inject.Guice;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.Parameterized;
+
+import java.io.InputStream;
+import java.lang.management.ManagementFactory;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Properties;
+
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+import static org.mockito.Mockito.withSettings;
+
+/**
+ * Guards the garbage created per event. The bytes allocated by the test
+ * thread for message generation, and for a full pass of an event through
+ * the listener, are averaged over many events after a warm up and compared
+ * to the budgets in allocation-budgets.properties. When a change raises the
+ * allocation on purpose, raise the budget along with it.
+ */
+@RunWith(Parameterized.class)
+public class AllocationBudgetTest
+{
+    private static final int WARM_UP = 2000;
+    private static final int ITERATIONS = 2000;
+
+    private static final String PROJECT = "test-project";
+
+    private static com.sun.management.ThreadMXBean threads;
+    private static Properties budgets;
+
+    private final String type;
+
+    private PluginConfigFactory configFactory;
+
+    public AllocationBudgetTest(String type)
+    {
+        this.type = type;
+    }
+
+    @Parameterized.Parameters(name = "{0}")
+    public static Collection<Object[]> types()
+    {
+        return Arrays.asList(new Object[][] {
+                {"patchset-created"},
+                {"change-merged"},
+                {"comment-added"},
+                {"reviewer-added"},
+                {"change-abandoned"}});
+    }
+
+    @BeforeClass
+    public static void setupClass() throws Exception
+    {
+        Assume.assumeTrue(ManagementFactory.getThreadMXBean()
+                instanceof com.sun.management.ThreadMXBean);
+
+        threads = (com.sun.management.ThreadMXBean)
+                ManagementFactory.getThreadMXBean();
+
+        Assume.assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+
+        // Gerrit installs the key encoder used to parse project names on
+        // start up
+        KeyUtil.setEncoderImpl(new StandardKeyEncoder());
+
+        budgets = new Properties();
+
+        InputStream input;
+        input = AllocationBudgetTest.class.getClassLoader()
+                .getResourceAsStream("allocation-budgets.properties");
+        try
+        {
+            budgets.load(input);
+        }
+        finally
+        {
+            input.close();
+        }
+    }
+
+    @Before
+    public void setup() throws Exception
+    {
+        Config config;
+        config = new Config();
+        config.setBoolean("plugin", ProjectConfig.CONFIG_NAME, "enabled",
+                true);
+        config.setString("plugin", ProjectConfig.CONFIG_NAME, "webhookurl",
+                "https://hooks.slack.com/services/T0/B0/test");
+        config.setString("plugin", ProjectConfig.CONFIG_NAME, "channel",
+                "test-channel");
+        config.setString("plugin", ProjectConfig.CONFIG_NAME, "ignore",
+                "^WIP.*");
+        config.setBoolean("plugin", ProjectConfig.CONFIG_NAME,
+                "publish-on-change-abandoned", true);
+
+        // Stub only, as a mock would remember, and allocate for, every call
+        configFactory = mock(PluginConfigFactory.class,
+                withSettings().stubOnly());
+
+        when(configFactory.getFromProjectConfigWithInheritance(
+                any(Project.NameKey.class), anyString()))
+                .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME,
+                        config));
+        when(configFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME))
+                .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME,
+                        new Config()));
+    }
+
+    @Test
+    public void generateStaysWithinBudget() throws Exception
+    {
+        final ProjectConfig config;
+        config = new ProjectConfig(configFactory, PROJECT);
+
+        final MessageGenerator[] generators;
+        generators = new MessageGenerator[WARM_UP + ITERATIONS];
+
+        for (int i = 0; i < generators.length; i++)
+        {
+            generators[i] = generator(event(type, i), config);
+        }
+
+        long allocated;
+        allocated = measure(new Operation()
+        {
+            @Override
+            public void run(int iteration)
+            {
+                generators[iteration].generate();
+            }
+        });
+
+        assertWithinBudget("generate." + type, allocated);
+    }
+
+    @Test
+    public void onEventStaysWithinBudget() throws Exception
+    {
+        final MessagePublisher publisher;
+        publisher = new MessagePublisher(null, null, null, null,
+                null, null, new DisabledMetricMaker())
+        {
+            @Override
+            public boolean publish(String message, String webhookUrl)
+            {
+                return true;
+            }
+        };
+
+        final PublishEventListener listener;
+        listener = Guice.createInjector(new AbstractModule()
+        {
+            @Override
+            protected void configure()
+            {
+                bind(PluginConfigFactory.class).toInstance(configFactory);
+                bind(MetricMaker.class).to(DisabledMetricMaker.class);
+                bind(WorkQueue.class).toInstance(mock(WorkQueue.class));
+                bind(MessagePublisher.class).toInstance(publisher);
+            }
+        }).getInstance(PublishEventListener.class);
+
+        // Distinct patch sets, so no event is taken for a duplicate
+        final PatchSetEvent[] events;
+        events = new PatchSetEvent[WARM_UP + ITERATIONS];
+
+        for (int i = 0; i < events.length; i++)
+        {
+            events[i] = event(type, i);
+        }
+
+        long allocated;
+        allocated = measure(new Operation()
+        {
+            @Override
+            public void run(int iteration)
+            {
+                listener.onEvent(events[iteration]);
+            }
+        });
+
+        // Leave out the stubbed config lookup, which Gerrit serves from
+        // its project cache
+        final Project.NameKey name;
+        name = new Project.NameKey(PROJECT);
+
+        long lookup;
+        lookup = measure(new Operation()
+        {
+            @Override
+            public void run(int iteration) throws Exception
+            {
+                configFactory.getFromProjectConfigWithInheritance(name,
+                        ProjectConfig.CONFIG_NAME);
+            }
+        });
+
+        assertWithinBudget("onEvent." + type, allocated - lookup);
+    }
+
+    /**
+     * Measures the average bytes the current thread allocates per run of
+     * the operation, after warming up so that class loading, lazy
+     * initialization and compilation are not counted.
+     */
+    private static long measure(Operation operation) throws Exception
+    {
+        for (int i = 0; i < WARM_UP; i++)
+        {
+            operation.run(i);
+        }
+
+        long threadId;
+        threadId = Thread.currentThread().getId();
+
+        long before;
+        before = threads.getThreadAllocatedBytes(threadId);
+
+        for (int i = WARM_UP; i < WARM_UP + ITERATIONS; i++)
+        {
+            operation.run(i);
+        }
+
+        long after;
+        after = threads.getThreadAllocatedBytes(threadId);
+
+        return (after - before) / ITERATIONS;
+    }
+
+    private static void assertWithinBudget(String key, long allocated)
+    {
+        long budget;
+        budget = Long.parseLong(budgets.getProperty(key));
+
+        assertTrue(key + " allocated " + allocated + " bytes per event, " +
+                "over its budget of " + budget, allocated <= budget);
+    }
+
+    private static MessageGenerator generator(PatchSetEvent event,
+            ProjectConfig config)
+    {
+        if (event instanceof PatchSetCreatedEvent)
+        {
+            return MessageGeneratorFactory.newInstance(
+                    (PatchSetCreatedEvent) event, config);
+        }
+        else if (event instanceof ChangeMergedEvent)
+        {
+            return MessageGeneratorFactory.newInstance(
+                    (ChangeMergedEvent) event, config);
+        }
+        else if (event instanceof CommentAddedEvent)
+        {
+            return MessageGeneratorFactory.newInstance(
+                    (CommentAddedEvent) event, config);
+        }
+
+        else if (event instanceof ReviewerAddedEvent)
+        {
+            return MessageGeneratorFactory.newInstance(
+                    (ReviewerAddedEvent) event, config);
+        }
+
+        // Event types without a hand written generator are table driven
+        return MessageGeneratorFactory.newInstance((Event) event, config);
+    }
+
+    private static PatchSetEvent event(String type, int patchSetNumber)
+    {
+        Change change;
+        change = new Change(new Change.Key("I0123456789abcdef"),
+                new Change.Id(1), new Account.Id(1),
+                new Branch.NameKey(PROJECT, "refs/heads/master"),
+                new Timestamp(0));
+
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.name = "Jane Doe";
+        account.username = "jdoe";
+        account.email = "jdoe@example.com";
+
+        ChangeAttribute changeAttribute;
+        changeAttribute = new ChangeAttribute();
+        changeAttribute.project = PROJECT;
+        changeAttribute.branch = "master";
+        changeAttribute.number = 1;
+        changeAttribute.owner = account;
+        changeAttribute.url = "https://gerrit.example.com/1";
+        changeAttribute.commitMessage = "Fix the \"race\" in the listener" +
+                "\n\nThe body of the commit message.";
+
+        PatchSetAttribute patchSet;
+        patchSet = new PatchSetAttribute();
+        patchSet.number = patchSetNumber;
+
+        PatchSetEvent event;
+
+        switch (type)
+        {
+            case "patchset-created":
+                PatchSetCreatedEvent patchSetCreatedEvent;
+                patchSetCreatedEvent = new PatchSetCreatedEvent(change);
+                patchSetCreatedEvent.uploader = Suppliers.ofInstance(account);
+                event = patchSetCreatedEvent;
+                break;
+            case "change-merged":
+                ChangeMergedEvent changeMergedEvent;
+                changeMergedEvent = new ChangeMergedEvent(change);
+                changeMergedEvent.submitter = Suppliers.ofInstance(account);
+                event = changeMergedEvent;
+                break;
+            case "comment-added":
+                ApprovalAttribute approval;
+                approval = new ApprovalAttribute();
+                approval.type = "Code-Review";
+                approval.value = "1";
+                approval.oldValue = "0";
+
+                CommentAddedEvent commentAddedEvent;
+                commentAddedEvent = new CommentAddedEvent(change);
+                commentAddedEvent.author = Suppliers.ofInstance(account);
+                commentAddedEvent.comment = "Patch Set 1: Code-Review+1";
+                commentAddedEvent.approvals = Suppliers.ofInstance(
+                        new ApprovalAttribute[] {approval});
+                event = commentAddedEvent;
+                break;
+            case "change-abandoned":
+                ChangeAbandonedEvent changeAbandonedEvent;
+                changeAbandonedEvent = new ChangeAbandonedEvent(change);
+                changeAbandonedEvent.abandoner =
+                        Suppliers.ofInstance(account);
+                changeAbandonedEvent.reason = "Replaced by another change";
+                event = changeAbandonedEvent;
+                break;
+            default:
+                ReviewerAddedEvent reviewerAddedEvent;
+                reviewerAddedEvent = new ReviewerAddedEvent(change);
+                reviewerAddedEvent.reviewer = Suppliers.ofInstance(account);
+                event = reviewerAddedEvent;
+                break;
+        }
+
+        event.change = Suppliers.ofInstance(changeAttribute);
+        event.patchSet = Suppliers.ofInstance(patchSet);
+
+        return event;
+    }
+
+    private interface Operation
+    {
+        void run(int iteration) throws Exception;
+    }
+}
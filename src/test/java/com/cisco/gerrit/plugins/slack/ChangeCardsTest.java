@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.HeaderCache;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyBoolean;
+import static org.mockito.Matchers.anyInt;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ChangeCards class.
+ */
+public class ChangeCardsTest
+{
+    private GlobalConfig mockGlobalConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private MessageDispatcher mockDispatcher = mock(MessageDispatcher.class);
+    private MessageGenerator mockGenerator = mock(MessageGenerator.class);
+    private DeliveryTrace trace = new DeliveryTrace("test");
+
+    private ChangeCards cards;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockGlobalConfig.getApiToken()).thenReturn("xoxb-test");
+        when(mockGlobalConfig.getThreadTtl()).thenReturn(
+                TimeUnit.DAYS.toMillis(1));
+        when(mockConfig.isStatusCard()).thenReturn(true);
+        when(mockConfig.getChannel()).thenReturn("general");
+        when(mockConfig.getUsername()).thenReturn("testuser");
+        when(mockGenerator.getPriority()).thenReturn(Priority.HIGH);
+
+        cards = new ChangeCards(mockGlobalConfig, mockDispatcher,
+                new HeaderCache(new DisabledMetricMaker()));
+    }
+
+    @Test
+    public void leavesEventsOfOtherProjects() throws Exception
+    {
+        when(mockConfig.isStatusCard()).thenReturn(false);
+
+        assertThat(offer(patchSetCreated(1)), is(false));
+    }
+
+    @Test
+    public void leavesEventsWithoutToken() throws Exception
+    {
+        when(mockGlobalConfig.getApiToken()).thenReturn("");
+
+        assertThat(offer(patchSetCreated(1)), is(false));
+    }
+
+    @Test
+    public void coalescesUpdatesWhilePublishing() throws Exception
+    {
+        assertThat(offer(patchSetCreated(1)), is(true));
+
+        for (int i = 2; i <= 5; i++)
+        {
+            offer(patchSetCreated(i));
+        }
+
+        ArgumentCaptor<String> messages;
+        messages = ArgumentCaptor.forClass(String.class);
+
+        ArgumentCaptor<MessageDispatcher.Callback> callbacks;
+        callbacks = ArgumentCaptor.forClass(MessageDispatcher.Callback.class);
+
+        verify(mockDispatcher).dispatchCard(messages.capture(),
+                eq(mockConfig), eq(Priority.HIGH), eq(42), eq(false),
+                eq(trace), callbacks.capture());
+
+        callbacks.getValue().delivered(true);
+
+        verify(mockDispatcher).dispatchCard(messages.capture(),
+                eq(mockConfig), eq(Priority.HIGH), eq(42), eq(true),
+                eq(trace), any(MessageDispatcher.Callback.class));
+
+        assertThat(messages.getAllValues().get(0).contains("patch set 1"),
+                is(true));
+        assertThat(messages.getAllValues().get(1).contains("patch set 5"),
+                is(true));
+        assertThat(cards.getReceived(), is(5L));
+        assertThat(cards.getCoalesced(), is(4L));
+    }
+
+    @Test
+    public void postsCardAgainUntilPublished() throws Exception
+    {
+        offer(patchSetCreated(1));
+
+        ArgumentCaptor<MessageDispatcher.Callback> callbacks;
+        callbacks = ArgumentCaptor.forClass(MessageDispatcher.Callback.class);
+
+        verify(mockDispatcher).dispatchCard(anyString(), eq(mockConfig),
+                eq(Priority.HIGH), eq(42), eq(false), eq(trace),
+                callbacks.capture());
+
+        callbacks.getValue().delivered(false);
+        offer(patchSetCreated(2));
+
+        verify(mockDispatcher, times(2)).dispatchCard(anyString(),
+                eq(mockConfig), eq(Priority.HIGH), eq(42), eq(false),
+                eq(trace), any(MessageDispatcher.Callback.class));
+    }
+
+    @Test
+    public void postsNewCardAfterReload() throws Exception
+    {
+        offer(patchSetCreated(1));
+
+        ArgumentCaptor<MessageDispatcher.Callback> callbacks;
+        callbacks = ArgumentCaptor.forClass(MessageDispatcher.Callback.class);
+
+        verify(mockDispatcher).dispatchCard(anyString(), eq(mockConfig),
+                eq(Priority.HIGH), eq(42), eq(false), eq(trace),
+                callbacks.capture());
+
+        callbacks.getValue().delivered(true);
+
+        // A reloaded plugin knows only the events that follow, so its card
+        // must not replace the complete one
+        cards = new ChangeCards(mockGlobalConfig, mockDispatcher,
+                new HeaderCache(new DisabledMetricMaker()));
+        offer(patchSetCreated(2));
+
+        verify(mockDispatcher, times(2)).dispatchCard(anyString(),
+                eq(mockConfig), eq(Priority.HIGH), eq(42), eq(false),
+                eq(trace), any(MessageDispatcher.Callback.class));
+        verify(mockDispatcher, times(2)).dispatchCard(anyString(),
+                any(ProjectConfig.class), any(Priority.class), anyInt(),
+                anyBoolean(), any(DeliveryTrace.class),
+                any(MessageDispatcher.Callback.class));
+    }
+
+    @Test
+    public void releasesCardWhileDispatching() throws Exception
+    {
+        final AtomicBoolean blocked;
+        blocked = new AtomicBoolean();
+
+        // A full dispatcher drops the queued update of a card on the
+        // dispatching thread, while another thread may hold that card
+        doAnswer(new Answer<Void>()
+        {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Exception
+            {
+                final MessageDispatcher.Callback callback;
+                callback = (MessageDispatcher.Callback)
+                        invocation.getArguments()[6];
+
+                Thread dropper;
+                dropper = new Thread(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        callback.delivered(false);
+                    }
+                });
+
+                dropper.start();
+                dropper.join(TimeUnit.SECONDS.toMillis(10));
+
+                blocked.set(dropper.isAlive());
+                return null;
+            }
+        }).when(mockDispatcher).dispatchCard(anyString(),
+                any(ProjectConfig.class), any(Priority.class), anyInt(),
+                anyBoolean(), any(DeliveryTrace.class),
+                any(MessageDispatcher.Callback.class));
+
+        offer(patchSetCreated(1));
+
+        assertThat(blocked.get(), is(false));
+    }
+
+    private static PatchSetCreatedEvent patchSetCreated(int number)
+    {
+        AccountAttribute owner;
+        owner = new AccountAttribute();
+        owner.username = "owner";
+
+        ChangeAttribute change;
+        change = new ChangeAttribute();
+        change.number = 42;
+        change.project = "testproject";
+        change.branch = "master";
+        change.url = "https://change/";
+        change.commitMessage = "Add cards";
+        change.owner = owner;
+
+        PatchSetAttribute patchSet;
+        patchSet = new PatchSetAttribute();
+        patchSet.number = number;
+
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.patchSet = Suppliers.ofInstance(patchSet);
+
+        return event;
+    }
+
+    private boolean offer(ChangeEvent event)
+    {
+        return cards.offer(event, new EventMemo(event), mockGenerator,
+                mockConfig, trace);
+    }
+}
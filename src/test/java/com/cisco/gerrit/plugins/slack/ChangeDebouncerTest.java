@@ -0,0 +1,256 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.client.MessagePublisher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.HeaderCache;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTracer;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ChangeDebouncer class.
+ */
+public class ChangeDebouncerTest
+{
+    private static final String WEBHOOK_URL = "https://webhook/";
+
+    private GlobalConfig mockGlobalConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private MessagePublisher mockPublisher = mock(MessagePublisher.class);
+    private MessageGenerator mockGenerator = mock(MessageGenerator.class);
+    private DeliveryTrace trace = new DeliveryTrace("test");
+
+    private ScheduledThreadPoolExecutor executor;
+    private ChangeDebouncer debouncer;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockGlobalConfig.getDebounceMaxPending()).thenReturn(2);
+        when(mockConfig.getDebounceWindow()).thenReturn(60000L);
+        when(mockConfig.getWebhookUrl()).thenReturn(WEBHOOK_URL);
+        when(mockGenerator.generate()).thenReturn("single");
+
+        executor = new ScheduledThreadPoolExecutor(1);
+
+        MetricMaker metricMaker;
+        metricMaker = new DisabledMetricMaker();
+
+        ChannelDigester digester;
+        digester = new ChannelDigester(mockGlobalConfig,
+                mock(WorkQueue.class), new MessageDispatcher(mockGlobalConfig,
+                        mock(WorkQueue.class), mockPublisher,
+                        new DeliveryStatistics(),
+                        new DeliveryTracer(mockGlobalConfig), metricMaker),
+                metricMaker);
+
+        debouncer = new ChangeDebouncer(mockGlobalConfig,
+                mock(WorkQueue.class), digester, new HeaderCache(metricMaker));
+        debouncer.start(executor);
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void collapsesEventsForSameChange() throws Exception
+    {
+        assertThat(offer(patchSetCreated(1, 3, "Alice"),
+                mockGenerator, mockConfig, trace), is(true));
+        assertThat(offer(patchSetCreated(1, 4, "Alice"),
+                mockGenerator, mockConfig, trace), is(true));
+        assertThat(offer(commentAdded(1, "CI Bot"),
+                mockGenerator, mockConfig, trace), is(true));
+
+        verify(mockPublisher, never()).publish(anyString(), anyString());
+
+        debouncer.flush(1);
+
+        verify(mockPublisher).publish(
+                contains("Alice, CI Bot uploaded PS 3\u21924, 1 comment"),
+                eq(WEBHOOK_URL));
+        assertThat(debouncer.getReceived(), is(3L));
+        assertThat(debouncer.getDelivered(), is(1L));
+    }
+
+    @Test
+    public void publishesSingleEventUnchanged() throws Exception
+    {
+        offer(patchSetCreated(1, 1, "Alice"), mockGenerator,
+                mockConfig, trace);
+
+        debouncer.flush(1);
+
+        verify(mockPublisher).publish("single", WEBHOOK_URL);
+    }
+
+    @Test
+    public void flushesBeforeOtherEventsOfChange() throws Exception
+    {
+        offer(commentAdded(1, "CI Bot"), mockGenerator, mockConfig,
+                trace);
+
+        ChangeMergedEvent merged;
+        merged = mock(ChangeMergedEvent.class);
+        merged.change = Suppliers.ofInstance(change(1));
+
+        assertThat(offer(merged, mockGenerator, mockConfig,
+                trace), is(false));
+
+        verify(mockPublisher).publish("single", WEBHOOK_URL);
+    }
+
+    @Test
+    public void doesNotHoldWithoutWindow() throws Exception
+    {
+        when(mockConfig.getDebounceWindow()).thenReturn(0L);
+
+        CommentAddedEvent event;
+        event = commentAdded(1, "CI Bot");
+
+        @SuppressWarnings("unchecked")
+        Supplier<ChangeAttribute> change = mock(Supplier.class);
+        event.change = change;
+
+        assertThat(offer(event, mockGenerator, mockConfig, trace),
+                is(false));
+
+        // The change is not even looked at
+        verify(change, never()).get();
+    }
+
+    @Test
+    public void boundsPendingChanges() throws Exception
+    {
+        offer(commentAdded(1, "CI Bot"), mockGenerator, mockConfig,
+                trace);
+        offer(commentAdded(2, "CI Bot"), mockGenerator, mockConfig,
+                trace);
+
+        verify(mockPublisher, never()).publish(anyString(), anyString());
+
+        offer(commentAdded(3, "CI Bot"), mockGenerator, mockConfig,
+                trace);
+
+        verify(mockPublisher, times(1)).publish("single", WEBHOOK_URL);
+    }
+
+    @Test
+    public void publishesPendingOnStop() throws Exception
+    {
+        offer(commentAdded(1, "CI Bot"), mockGenerator, mockConfig,
+                trace);
+
+        debouncer.stop();
+
+        verify(mockPublisher).publish("single", WEBHOOK_URL);
+    }
+
+    private static ChangeAttribute change(int number)
+    {
+        ChangeAttribute change;
+        change = new ChangeAttribute();
+        change.number = number;
+        change.project = "testproject";
+        change.branch = "master";
+        change.url = "https://change/";
+        change.commitMessage = "This is a title\nAnd a the body.";
+
+        return change;
+    }
+
+    private static AccountAttribute account(String name)
+    {
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.name = name;
+
+        return account;
+    }
+
+    private static PatchSetCreatedEvent patchSetCreated(int change,
+            int patchSet, String uploader)
+    {
+        PatchSetAttribute patchSetAttribute;
+        patchSetAttribute = new PatchSetAttribute();
+        patchSetAttribute.number = patchSet;
+
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(change(change));
+        event.patchSet = Suppliers.ofInstance(patchSetAttribute);
+        event.uploader = Suppliers.ofInstance(account(uploader));
+
+        return event;
+    }
+
+    private static CommentAddedEvent commentAdded(int change, String author)
+    {
+        CommentAddedEvent event;
+        event = mock(CommentAddedEvent.class);
+        event.change = Suppliers.ofInstance(change(change));
+        event.author = Suppliers.ofInstance(account(author));
+        event.comment = "Build Successful";
+
+        return event;
+    }
+
+    private boolean offer(Event event, MessageGenerator generator,
+            ProjectConfig config, DeliveryTrace trace)
+    {
+        return debouncer.offer(event, new EventMemo(event), generator,
+                config, trace);
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.client.MessagePublisher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTracer;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.metrics.MetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.List;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ChannelDigester class.
+ */
+public class ChannelDigesterTest
+{
+    private static final String WEBHOOK_URL = "https://webhook/";
+
+    private GlobalConfig mockGlobalConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private MessagePublisher mockPublisher = mock(MessagePublisher.class);
+
+    private ScheduledThreadPoolExecutor executor;
+    private ChannelDigester digester;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockGlobalConfig.getDigestMaxMessageSize()).thenReturn(40000);
+        when(mockConfig.getDigestInterval()).thenReturn(60000L);
+        when(mockConfig.getDigestMaxEvents()).thenReturn(3);
+        when(mockConfig.getWebhookUrl()).thenReturn(WEBHOOK_URL);
+        when(mockConfig.getChannel()).thenReturn("testchannel");
+        when(mockConfig.getUsername()).thenReturn("testuser");
+
+        executor = new ScheduledThreadPoolExecutor(1);
+
+        // An idle dispatcher publishes on the calling thread
+        MetricMaker metricMaker;
+        metricMaker = new DisabledMetricMaker();
+
+        digester = new ChannelDigester(mockGlobalConfig,
+                mock(WorkQueue.class), new MessageDispatcher(mockGlobalConfig,
+                        mock(WorkQueue.class), mockPublisher,
+                        new DeliveryStatistics(),
+                        new DeliveryTracer(mockGlobalConfig), metricMaker),
+                metricMaker);
+        digester.start(executor);
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void publishesDirectlyWithoutInterval() throws Exception
+    {
+        when(mockConfig.getDigestInterval()).thenReturn(0L);
+
+        digester.deliver(generator("one"), mockConfig,
+                new DeliveryTrace("test"));
+
+        verify(mockPublisher).publish("payload of one", WEBHOOK_URL);
+    }
+
+    @Test
+    public void combinesMessagesUpToMaxEvents() throws Exception
+    {
+        digester.deliver(generator("A proposed\\n>>>one"), mockConfig,
+                new DeliveryTrace("test"));
+        digester.deliver(generator("B merged\\n>>>two"), mockConfig,
+                new DeliveryTrace("test"));
+
+        verify(mockPublisher, never()).publish(anyString(), anyString());
+
+        digester.deliver(generator("C merged\\n>>>three"), mockConfig,
+                new DeliveryTrace("test"));
+
+        verify(mockPublisher).publish(
+                "{\"text\": \"A proposed\\n>one\\nB merged\\n>two\\n" +
+                        "C merged\\n>three\",\"channel\": \"#testchannel\"," +
+                        "\"username\": \"testuser\", \"link_names\": 1}\n",
+                WEBHOOK_URL);
+        assertThat(digester.getReceived(), is(3L));
+        assertThat(digester.getPublished(), is(1L));
+    }
+
+    @Test
+    public void splitsDigestsAtMaxMessageSize() throws Exception
+    {
+        when(mockGlobalConfig.getDigestMaxMessageSize()).thenReturn(10);
+
+        digester.deliver(generator("12345"), mockConfig,
+                new DeliveryTrace("test"));
+        digester.deliver(generator("67890"), mockConfig,
+                new DeliveryTrace("test"));
+        digester.deliver(generator("abc"), mockConfig,
+                new DeliveryTrace("test"));
+
+        ArgumentCaptor<String> messages;
+        messages = ArgumentCaptor.forClass(String.class);
+
+        verify(mockPublisher, times(2)).publish(messages.capture(),
+                eq(WEBHOOK_URL));
+
+        List<String> published;
+        published = messages.getAllValues();
+
+        assertThat(published.get(0).startsWith("{\"text\": \"12345\","),
+                is(true));
+        assertThat(published.get(1).startsWith(
+                "{\"text\": \"67890\\nabc\","), is(true));
+    }
+
+    @Test
+    public void truncatesEntryOverMaxMessageSize() throws Exception
+    {
+        when(mockGlobalConfig.getDigestMaxMessageSize()).thenReturn(10);
+
+        digester.deliver(generator("abc"), mockConfig,
+                new DeliveryTrace("test"));
+        digester.deliver(generator("12\\n3\\u00e94567890"), mockConfig,
+                new DeliveryTrace("test"));
+        digester.deliver(generator("def"), mockConfig,
+                new DeliveryTrace("test"));
+
+        ArgumentCaptor<String> messages;
+        messages = ArgumentCaptor.forClass(String.class);
+
+        verify(mockPublisher, times(3)).publish(messages.capture(),
+                eq(WEBHOOK_URL));
+
+        List<String> published;
+        published = messages.getAllValues();
+
+        // The escape sequence is dropped as a whole rather than cut
+        assertThat(published.get(1).startsWith(
+                "{\"text\": \"12\\n3...\","), is(true));
+        assertThat(published.get(2).startsWith("{\"text\": \"def\","),
+                is(true));
+    }
+
+    @Test
+    public void publishesBufferedMessagesOnStop() throws Exception
+    {
+        digester.deliver(generator("one"), mockConfig,
+                new DeliveryTrace("test"));
+
+        digester.stop();
+
+        ArgumentCaptor<String> message;
+        message = ArgumentCaptor.forClass(String.class);
+
+        verify(mockPublisher).publish(message.capture(), eq(WEBHOOK_URL));
+        assertThat(message.getValue().startsWith("{\"text\": \"one\","),
+                is(equalTo(true)));
+    }
+
+    private static MessageGenerator generator(String text)
+    {
+        MessageGenerator generator;
+        generator = mock(MessageGenerator.class);
+
+        when(generator.generate()).thenReturn("payload of " + text);
+        when(generator.generateText()).thenReturn(text);
+
+        return generator;
+    }
+}
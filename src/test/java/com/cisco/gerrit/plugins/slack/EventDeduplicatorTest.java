@@ -0,0 +1,143 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the EventDeduplicator class.
+ */
+public class EventDeduplicatorTest
+{
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+
+    private long nanos;
+    private EventDeduplicator deduplicator;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockConfig.getDedupWindow()).thenReturn(60000L);
+        when(mockConfig.getDedupMaxEvents()).thenReturn(100);
+
+        deduplicator = new EventDeduplicator(mockConfig, new Ticker()
+        {
+            @Override
+            public long read()
+            {
+                return nanos;
+            }
+        });
+    }
+
+    @Test
+    public void recognizesRedeliveredEvent() throws Exception
+    {
+        assertThat(isDuplicate(event(1, 2, "alice", 1000L)),
+                is(false));
+        assertThat(isDuplicate(event(1, 2, "alice", 1000L)),
+                is(true));
+        assertThat(deduplicator.getDuplicates(), is(1L));
+    }
+
+    @Test
+    public void distinguishesDifferentEvents() throws Exception
+    {
+        isDuplicate(event(1, 2, "alice", 1000L));
+
+        assertThat(isDuplicate(event(1, 3, "alice", 1000L)),
+                is(false));
+        assertThat(isDuplicate(event(2, 2, "alice", 1000L)),
+                is(false));
+        assertThat(isDuplicate(event(1, 2, "bob", 1000L)),
+                is(false));
+        assertThat(isDuplicate(event(1, 2, "alice", 1001L)),
+                is(false));
+    }
+
+    @Test
+    public void acceptsRepeatAfterWindow() throws Exception
+    {
+        isDuplicate(event(1, 2, "alice", 1000L));
+
+        nanos += TimeUnit.SECONDS.toNanos(60);
+
+        assertThat(isDuplicate(event(1, 2, "alice", 1000L)),
+                is(false));
+    }
+
+    @Test
+    public void isDisabledWithoutWindow() throws Exception
+    {
+        when(mockConfig.getDedupWindow()).thenReturn(0L);
+
+        deduplicator = new EventDeduplicator(mockConfig);
+
+        isDuplicate(event(1, 2, "alice", 1000L));
+
+        assertThat(isDuplicate(event(1, 2, "alice", 1000L)),
+                is(false));
+    }
+
+    private static PatchSetCreatedEvent event(int change, int patchSet,
+            String uploader, long createdOn)
+    {
+        ChangeAttribute changeAttribute;
+        changeAttribute = new ChangeAttribute();
+        changeAttribute.number = change;
+
+        PatchSetAttribute patchSetAttribute;
+        patchSetAttribute = new PatchSetAttribute();
+        patchSetAttribute.number = patchSet;
+
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.username = uploader;
+
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(changeAttribute);
+        event.patchSet = Suppliers.ofInstance(patchSetAttribute);
+        event.uploader = Suppliers.ofInstance(account);
+        event.eventCreatedOn = createdOn;
+
+        return event;
+    }
+
+    private boolean isDuplicate(Event event)
+    {
+        return deduplicator.isDuplicate(event, new EventMemo(event));
+    }
+}
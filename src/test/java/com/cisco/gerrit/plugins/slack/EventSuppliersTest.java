@@ -0,0 +1,137 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Supplier;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.hamcrest.core.IsSame.sameInstance;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the EventSuppliers class.
+ */
+public class EventSuppliersTest
+{
+    private ChangeAttribute change = new ChangeAttribute();
+    private AtomicInteger changeLoads = new AtomicInteger();
+    private AtomicInteger authorLoads = new AtomicInteger();
+
+    private CommentAddedEvent event;
+    private EventSuppliers suppliers;
+
+    @Before
+    public void setup() throws Exception
+    {
+        event = mock(CommentAddedEvent.class);
+        event.change = counting(change, changeLoads);
+        event.author = counting(new AccountAttribute(), authorLoads);
+
+        suppliers = new EventSuppliers(
+                new EventMetrics(new DisabledMetricMaker()));
+    }
+
+    @Test
+    public void materializesEachSupplierOnce() throws Exception
+    {
+        EventMemo memo;
+        memo = suppliers.memoize(event);
+
+        assertThat(memo.get(event.change), is(sameInstance(change)));
+        assertThat(memo.get(event.change), is(sameInstance(change)));
+        assertThat(memo.get(event.change), is(sameInstance(change)));
+
+        assertThat(changeLoads.get(), is(equalTo(1)));
+        assertThat(suppliers.getMaterialized(), is(equalTo(1L)));
+        assertThat(suppliers.getReused(), is(equalTo(2L)));
+    }
+
+    @Test
+    public void materializesNothingUntilNeeded() throws Exception
+    {
+        EventMemo memo;
+        memo = suppliers.memoize(event);
+
+        assertThat(changeLoads.get(), is(equalTo(0)));
+        assertThat(authorLoads.get(), is(equalTo(0)));
+        assertThat(memo.get(event.approvals), is(nullValue()));
+    }
+
+    @Test
+    public void countsSuppliersSkippedByRejectedEvents() throws Exception
+    {
+        EventMemo memo;
+        memo = suppliers.memoize(event);
+
+        memo.get(event.change);
+        suppliers.recordRejected(memo);
+
+        assertThat(authorLoads.get(), is(equalTo(0)));
+        assertThat(suppliers.getSkipped(), is(equalTo(1L)));
+    }
+
+    @Test
+    public void leavesEventUnchanged() throws Exception
+    {
+        Supplier<ChangeAttribute> original;
+        original = event.change;
+
+        EventMemo memo;
+        memo = suppliers.memoize(event);
+        memo.get(event.change);
+
+        assertThat(event.change, is(sameInstance(original)));
+        assertThat(changeLoads.get(), is(equalTo(1)));
+    }
+
+    @Test
+    public void keepsMemosOfEventsApart() throws Exception
+    {
+        suppliers.memoize(event).get(event.change);
+        suppliers.memoize(event).get(event.change);
+
+        assertThat(changeLoads.get(), is(equalTo(2)));
+        assertThat(suppliers.getMaterialized(), is(equalTo(2L)));
+    }
+
+    private static <T> Supplier<T> counting(final T value,
+            final AtomicInteger loads)
+    {
+        return new Supplier<T>()
+        {
+            @Override
+            public T get()
+            {
+                loads.incrementAndGet();
+                return value;
+            }
+        };
+    }
+}
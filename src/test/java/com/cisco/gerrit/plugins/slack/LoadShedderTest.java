@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageGenerator;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.contains;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the LoadShedder class.
+ */
+public class LoadShedderTest
+{
+    private static final String WEBHOOK_URL = "https://webhook/";
+
+    private GlobalConfig mockGlobalConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private MessageDispatcher mockDispatcher = mock(MessageDispatcher.class);
+    private MessageGenerator mockGenerator = mock(MessageGenerator.class);
+
+    private CommentAddedEvent event;
+    private LoadShedder shedder;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockGlobalConfig.getShedQueueDepth()).thenReturn(100);
+        when(mockGlobalConfig.getShedLag()).thenReturn(60000L);
+        when(mockGlobalConfig.isShedSummaryEnabled()).thenReturn(true);
+        when(mockConfig.getProject()).thenReturn("testproject");
+        when(mockConfig.getWebhookUrl()).thenReturn(WEBHOOK_URL);
+        when(mockConfig.getChannel()).thenReturn("testchannel");
+        when(mockConfig.getUsername()).thenReturn("testuser");
+        when(mockGenerator.isSheddable()).thenReturn(true);
+
+        ChangeAttribute change;
+        change = new ChangeAttribute();
+        change.project = "testproject";
+
+        event = mock(CommentAddedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        when(event.getType()).thenReturn("comment-added");
+
+        shedder = new LoadShedder(mockGlobalConfig, mock(WorkQueue.class),
+                mockDispatcher);
+    }
+
+    @Test
+    public void keepsMessagesWhileDeliveryKeepsUp() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(99);
+        when(mockDispatcher.getLag()).thenReturn(59999L);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(false));
+        assertThat(shedder.getShed(), is(0L));
+    }
+
+    @Test
+    public void shedsLowValueMessagesUnderLoad() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(100);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(true));
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(true));
+
+        List<ShedSnapshot> snapshots;
+        snapshots = shedder.getSnapshots();
+
+        assertThat(snapshots.size(), is(1));
+        assertThat(snapshots.get(0).project, is("testproject"));
+        assertThat(snapshots.get(0).type, is("comment-added"));
+        assertThat(snapshots.get(0).shed, is(2L));
+    }
+
+    @Test
+    public void shedsWhenLagging() throws Exception
+    {
+        when(mockDispatcher.getLag()).thenReturn(60000L);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(true));
+    }
+
+    @Test
+    public void keepsMessagesWithoutThresholds() throws Exception
+    {
+        when(mockGlobalConfig.getShedQueueDepth()).thenReturn(0);
+        when(mockGlobalConfig.getShedLag()).thenReturn(0L);
+        when(mockDispatcher.getQueued()).thenReturn(100000);
+        when(mockDispatcher.getLag()).thenReturn(3600000L);
+
+        shedder = new LoadShedder(mockGlobalConfig, mock(WorkQueue.class),
+                mockDispatcher);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(false));
+    }
+
+    @Test
+    public void appliesChangedThresholds() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(100);
+
+        shedder.setQueueDepth(200);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(false));
+
+        shedder.setQueueDepth(0);
+        shedder.setLag(1000L);
+        when(mockDispatcher.getLag()).thenReturn(1000L);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(true));
+        assertThat(shedder.getQueueDepth(), is(0));
+        assertThat(shedder.getLag(), is(1000L));
+    }
+
+    @Test
+    public void keepsValuableMessagesUnderLoad() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(100);
+        when(mockGenerator.isSheddable()).thenReturn(false);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(false));
+    }
+
+    @Test
+    public void recoversBelowHalfOfThreshold() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(100);
+        shedder.shed(event, mockGenerator, mockConfig);
+
+        when(mockDispatcher.getQueued()).thenReturn(50);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(true));
+        verify(mockDispatcher, never()).dispatch(anyString(),
+                any(ProjectConfig.class), any(Priority.class),
+                any(DeliveryTrace.class));
+
+        when(mockDispatcher.getQueued()).thenReturn(49);
+
+        assertThat(shedder.shed(event, mockGenerator, mockConfig), is(false));
+        verify(mockDispatcher).dispatch(
+                contains("2 notifications skipped due to load"),
+                eq(mockConfig), eq(Priority.NORMAL),
+                any(DeliveryTrace.class));
+    }
+
+    @Test
+    public void summarizesSkippedMessagesOnStop() throws Exception
+    {
+        when(mockDispatcher.getQueued()).thenReturn(100);
+        shedder.shed(event, mockGenerator, mockConfig);
+
+        shedder.stop();
+
+        verify(mockDispatcher).dispatch(
+                contains("1 notification skipped due to load"),
+                eq(mockConfig), eq(Priority.NORMAL),
+                any(DeliveryTrace.class));
+    }
+}
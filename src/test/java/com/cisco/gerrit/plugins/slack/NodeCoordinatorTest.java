@@ -0,0 +1,209 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Ticker;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the NodeCoordinator class, with a temporary directory standing
+ * in for shared storage.
+ */
+public class NodeCoordinatorTest
+{
+    private Path dir;
+    private FakeTicker ticker;
+
+    private NodeCoordinator nodeA;
+    private NodeCoordinator nodeB;
+
+    @Before
+    public void setup() throws Exception
+    {
+        dir = Files.createTempDirectory("leases");
+
+        ticker = new FakeTicker();
+        ticker.advance(TimeUnit.DAYS.toNanos(1));
+
+        nodeA = newNode("node-a");
+        nodeB = newNode("node-b");
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(dir))
+        {
+            for (Path file : files)
+            {
+                Files.delete(file);
+            }
+        }
+
+        Files.delete(dir);
+    }
+
+    @Test
+    public void publishesEverythingAlone() throws Exception
+    {
+        nodeA.heartbeat();
+
+        assertThat(nodeA.getNodes(), is(equalTo(Arrays.asList("node-a"))));
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertThat(nodeA.owns(event(i)), is(true));
+        }
+    }
+
+    @Test
+    public void partitionsEventsAmongLiveNodes() throws Exception
+    {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+
+        assertThat(nodeA.getNodes(), is(equalTo(
+                Arrays.asList("node-a", "node-b"))));
+        assertThat(nodeB.getNodes(), is(equalTo(nodeA.getNodes())));
+
+        int ownedByA;
+        ownedByA = 0;
+
+        for (int i = 0; i < 1000; i++)
+        {
+            ChangeEvent event;
+            event = event(i);
+
+            // Exactly one node publishes each event
+            assertThat(nodeA.owns(event) != nodeB.owns(event), is(true));
+
+            if (nodeA.owns(event))
+            {
+                ownedByA++;
+            }
+        }
+
+        assertThat(ownedByA > 400 && ownedByA < 600, is(true));
+    }
+
+    @Test
+    public void takesOverWhenLeaseExpires() throws Exception
+    {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+        nodeA.heartbeat();
+
+        ticker.advance(TimeUnit.SECONDS.toNanos(30));
+        nodeA.heartbeat();
+
+        assertThat(nodeA.getNodes(), is(equalTo(Arrays.asList("node-a"))));
+
+        for (int i = 0; i < 100; i++)
+        {
+            assertThat(nodeA.owns(event(i)), is(true));
+        }
+    }
+
+    @Test
+    public void releasesLeaseOnStop() throws Exception
+    {
+        nodeA.heartbeat();
+        nodeB.heartbeat();
+
+        nodeB.stop();
+        nodeA.heartbeat();
+
+        assertThat(nodeA.getNodes(), is(equalTo(Arrays.asList("node-a"))));
+    }
+
+    @Test
+    public void ignoresCorruptLeases() throws Exception
+    {
+        Files.write(dir.resolve("node-b.lease"),
+                "garbage".getBytes(StandardCharsets.UTF_8));
+        Files.write(dir.resolve("node-c.lease"),
+                String.valueOf(Long.MIN_VALUE).getBytes(
+                        StandardCharsets.UTF_8));
+
+        nodeA.heartbeat();
+
+        assertThat(nodeA.getNodes(), is(equalTo(Arrays.asList("node-a"))));
+    }
+
+    private NodeCoordinator newNode(String id)
+    {
+        GlobalConfig config;
+        config = mock(GlobalConfig.class);
+
+        when(config.getHaLeaseDir()).thenReturn(dir.toString());
+        when(config.getHaNodeId()).thenReturn(id);
+        when(config.getHaPartition()).thenReturn("change");
+        when(config.getHaHeartbeatInterval()).thenReturn(5000L);
+        when(config.getHaLeaseTimeout()).thenReturn(30000L);
+
+        return new NodeCoordinator(config, mock(WorkQueue.class),
+                new DisabledMetricMaker(), ticker);
+    }
+
+    private static ChangeEvent event(int i)
+    {
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.changeKey = new Change.Key("I" + Integer.toHexString(i));
+
+        return event;
+    }
+
+    private static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration)
+        {
+            nanos += duration;
+        }
+    }
+}
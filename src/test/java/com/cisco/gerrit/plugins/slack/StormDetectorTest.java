@@ -0,0 +1,200 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack;
+
+import com.cisco.gerrit.plugins.slack.client.MessageDispatcher;
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.common.base.Ticker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the StormDetector class.
+ */
+public class StormDetectorTest
+{
+    private static final String WEBHOOK_URL = "https://webhook/";
+
+    private static final long WINDOW = TimeUnit.MINUTES.toNanos(1);
+
+    private GlobalConfig mockGlobalConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private MessageDispatcher mockDispatcher = mock(MessageDispatcher.class);
+
+    private FakeTicker ticker;
+    private StormDetector detector;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockGlobalConfig.getStormThreshold()).thenReturn(10);
+        when(mockGlobalConfig.getStormWindow()).thenReturn(60000L);
+        when(mockConfig.getProject()).thenReturn("testproject");
+        when(mockConfig.getWebhookUrl()).thenReturn(WEBHOOK_URL);
+        when(mockConfig.getChannel()).thenReturn("testchannel");
+        when(mockConfig.getUsername()).thenReturn("testuser");
+
+        ticker = new FakeTicker();
+        detector = new StormDetector(mockGlobalConfig, mock(WorkQueue.class),
+                mockDispatcher, ticker);
+    }
+
+    @Test
+    public void publishesBelowThreshold() throws Exception
+    {
+        for (int i = 0; i < 9; i++)
+        {
+            assertThat(summarize(event("alice"), mockConfig),
+                    is(false));
+        }
+
+        assertThat(detector.isStorming("testproject"), is(false));
+    }
+
+    @Test
+    public void summarizesStormPerInterval() throws Exception
+    {
+        for (int i = 0; i < 9; i++)
+        {
+            summarize(event("alice"), mockConfig);
+        }
+
+        assertThat(summarize(event("bob"), mockConfig), is(true));
+        assertThat(summarize(event("carol"), mockConfig), is(true));
+        assertThat(summarize(event("bob"), mockConfig), is(true));
+        assertThat(detector.getSummarized(), is(3L));
+
+        ticker.advance(WINDOW / 2);
+        detector.publishSummaries();
+
+        ArgumentCaptor<String> message;
+        message = ArgumentCaptor.forClass(String.class);
+
+        verify(mockDispatcher).dispatch(message.capture(), eq(mockConfig),
+                eq(Priority.NORMAL), any(DeliveryTrace.class));
+        assertThat(message.getValue().startsWith("{\"text\": " +
+                "\"testproject: 3 patch sets uploaded by 2 users in the " +
+                "last minute\","), is(true));
+        assertThat(detector.isStorming("testproject"), is(true));
+    }
+
+    @Test
+    public void switchesBackOnceStormSubsides() throws Exception
+    {
+        for (int i = 0; i < 10; i++)
+        {
+            summarize(event("alice"), mockConfig);
+        }
+
+        assertThat(detector.isStorming("testproject"), is(true));
+
+        // Half way into the next window the previous one still counts half
+        ticker.advance(WINDOW + WINDOW / 2);
+        detector.publishSummaries();
+
+        assertThat(detector.isStorming("testproject"), is(true));
+
+        ticker.advance(WINDOW / 4);
+        detector.publishSummaries();
+
+        assertThat(detector.isStorming("testproject"), is(false));
+        assertThat(summarize(event("alice"), mockConfig),
+                is(false));
+    }
+
+    @Test
+    public void isDisabledWithoutThreshold() throws Exception
+    {
+        when(mockGlobalConfig.getStormThreshold()).thenReturn(0);
+
+        for (int i = 0; i < 20; i++)
+        {
+            assertThat(summarize(event("alice"), mockConfig),
+                    is(false));
+        }
+
+        detector.publishSummaries();
+
+        verify(mockDispatcher, never()).dispatch(anyString(),
+                any(ProjectConfig.class), any(Priority.class),
+                any(DeliveryTrace.class));
+    }
+
+    private static PatchSetCreatedEvent event(String username)
+    {
+        ChangeAttribute change;
+        change = new ChangeAttribute();
+        change.project = "testproject";
+
+        AccountAttribute uploader;
+        uploader = new AccountAttribute();
+        uploader.username = username;
+
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.uploader = Suppliers.ofInstance(uploader);
+        when(event.getType()).thenReturn("patchset-created");
+
+        return event;
+    }
+
+    private static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration)
+        {
+            nanos += duration;
+        }
+    }
+
+    private boolean summarize(Event event, ProjectConfig config)
+    {
+        return detector.summarize(event, new EventMemo(event), config);
+    }
+}
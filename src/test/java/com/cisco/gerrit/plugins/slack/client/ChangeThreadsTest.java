@@ -0,0 +1,148 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Ticker;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ChangeThreads class.
+ */
+public class ChangeThreadsTest
+{
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+
+    private Path dir;
+    private FakeTicker ticker;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockConfig.getApiToken()).thenReturn("xoxb-test");
+        when(mockConfig.getThreadTtl()).thenReturn(
+                TimeUnit.DAYS.toMillis(1));
+
+        dir = Files.createTempDirectory("threads");
+
+        ticker = new FakeTicker();
+        ticker.advance(TimeUnit.MILLISECONDS.toNanos(
+                System.currentTimeMillis()));
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        Files.deleteIfExists(dir.resolve(ChangeThreads.FILE_NAME));
+        Files.deleteIfExists(dir);
+    }
+
+    @Test
+    public void keepsThreadsPerChannelAndChange() throws Exception
+    {
+        ChangeThreads threads;
+        threads = newThreads();
+
+        threads.put("general", 42, "1503435956.000247");
+
+        assertThat(threads.get("general", 42),
+                is(equalTo("1503435956.000247")));
+        assertThat(threads.get("general", 43), is(nullValue()));
+        assertThat(threads.get("other", 42), is(nullValue()));
+    }
+
+    @Test
+    public void forgetsThreadsAfterTtl() throws Exception
+    {
+        ChangeThreads threads;
+        threads = newThreads();
+
+        threads.put("general", 42, "1503435956.000247");
+        ticker.advance(TimeUnit.DAYS.toNanos(1));
+
+        assertThat(threads.get("general", 42), is(nullValue()));
+    }
+
+    @Test
+    public void ignoresMalformedTimestamps() throws Exception
+    {
+        ChangeThreads threads;
+        threads = newThreads();
+
+        threads.put("general", 42, "not a timestamp");
+
+        assertThat(threads.size(), is(0));
+    }
+
+    @Test
+    public void keepsThreadsAcrossRestarts() throws Exception
+    {
+        ChangeThreads threads;
+        threads = newThreads();
+
+        threads.put("general", 42, "1503435956.000001");
+        threads.putChannelId("general", "C1");
+        threads.save();
+
+        ticker.advance(TimeUnit.HOURS.toNanos(1));
+
+        ChangeThreads restarted;
+        restarted = newThreads();
+        restarted.load();
+
+        assertThat(restarted.get("general", 42),
+                is(equalTo("1503435956.000001")));
+        assertThat(restarted.getChannelId("general"), is(equalTo("C1")));
+    }
+
+    private ChangeThreads newThreads()
+    {
+        return new ChangeThreads(mockConfig, mock(WorkQueue.class),
+                dir.resolve(ChangeThreads.FILE_NAME), ticker);
+    }
+
+    private static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration)
+        {
+            nanos += duration;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the CircuitBreaker class.
+ */
+public class CircuitBreakerTest
+{
+    private static final long FAST = TimeUnit.MILLISECONDS.toNanos(10);
+    private static final long SLOW = TimeUnit.MILLISECONDS.toNanos(2000);
+
+    private FakeTicker ticker;
+    private CircuitBreaker breaker;
+
+    @Before
+    public void setup() throws Exception
+    {
+        ticker = new FakeTicker();
+        breaker = new CircuitBreaker("test", 10, 4, 50, 1000L, 30000L,
+                ticker, null);
+    }
+
+    @Test
+    public void staysClosedBelowMinimumCalls() throws Exception
+    {
+        breaker.recordFailure(FAST);
+        breaker.recordFailure(FAST);
+        breaker.recordFailure(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), is(true));
+    }
+
+    @Test
+    public void opensWhenFailureRateReached() throws Exception
+    {
+        breaker.recordSuccess(FAST);
+        breaker.recordSuccess(FAST);
+        breaker.recordFailure(FAST);
+        breaker.recordFailure(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+        assertThat(breaker.getRejected(), is(1L));
+    }
+
+    @Test
+    public void countsSlowCallsAsFailures() throws Exception
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            breaker.recordSuccess(SLOW);
+        }
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+    }
+
+    @Test
+    public void permitsSingleTrialAfterOpenDuration() throws Exception
+    {
+        open();
+
+        ticker.advance(30, TimeUnit.SECONDS);
+
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void closesAfterSuccessfulTrial() throws Exception
+    {
+        open();
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        breaker.allowRequest();
+        breaker.recordSuccess(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+        assertThat(breaker.allowRequest(), is(true));
+    }
+
+    @Test
+    public void reopensAfterFailedTrial() throws Exception
+    {
+        open();
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        breaker.allowRequest();
+        breaker.recordFailure(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+        assertThat(breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void releasesTrialWithoutRecordingOutcome() throws Exception
+    {
+        open();
+
+        ticker.advance(30, TimeUnit.SECONDS);
+        breaker.allowRequest();
+        breaker.releasePermit();
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.HALF_OPEN));
+        assertThat(breaker.allowRequest(), is(true));
+        assertThat(breaker.allowRequest(), is(false));
+    }
+
+    @Test
+    public void appliesChangedThresholds() throws Exception
+    {
+        breaker.setFailureRate(100);
+        breaker.setSlowCallThreshold(5000L);
+
+        for (int i = 0; i < 4; i++)
+        {
+            breaker.recordSuccess(SLOW);
+        }
+        breaker.recordFailure(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.CLOSED));
+
+        breaker.setOpenDuration(1000L);
+        breaker.setFailureRate(20);
+        breaker.recordFailure(FAST);
+
+        assertThat(breaker.getState(), is(CircuitBreaker.State.OPEN));
+
+        ticker.advance(1, TimeUnit.SECONDS);
+
+        assertThat(breaker.allowRequest(), is(true));
+    }
+
+    private void open()
+    {
+        for (int i = 0; i < 4; i++)
+        {
+            breaker.recordFailure(FAST);
+        }
+    }
+
+    private static class FakeTicker extends Ticker
+    {
+        private long nanos;
+
+        @Override
+        public long read()
+        {
+            return nanos;
+        }
+
+        void advance(long duration, TimeUnit unit)
+        {
+            nanos += unit.toNanos(duration);
+        }
+    }
+}
@@ -0,0 +1,358 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the ConcurrencyLimit class.
+ */
+public class ConcurrencyLimitTest
+{
+    private static final long RTT = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private static final int WORKERS = 16;
+    private static final int REQUESTS = 20;
+
+    @Test
+    public void growsByOnePerLimitOfFastRequests() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 2, 10);
+
+        for (int i = 0; i < 2; i++)
+        {
+            long first;
+            first = limit.acquire();
+
+            long second;
+            second = limit.acquire();
+
+            limit.release(first, RTT, false);
+            limit.release(second, RTT, false);
+        }
+
+        assertThat(limit.getLimit(), is(3));
+        assertThat(limit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void doesNotGrowWhileIdle() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 4, 10);
+
+        for (int i = 0; i < 20; i++)
+        {
+            limit.release(limit.acquire(), RTT, false);
+        }
+
+        assertThat(limit.getLimit(), is(4));
+    }
+
+    @Test
+    public void halvesOncePerRoundTripWhenCongested() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 8, 10);
+
+        long[] permits;
+        permits = new long[8];
+
+        for (int i = 0; i < permits.length; i++)
+        {
+            permits[i] = limit.acquire();
+        }
+
+        // Requests started together fail together, that is one signal
+        for (long permit : permits)
+        {
+            limit.release(permit, RTT, true);
+        }
+
+        assertThat(limit.getLimit(), is(4));
+
+        limit.release(limit.acquire(), RTT, true);
+
+        assertThat(limit.getLimit(), is(2));
+    }
+
+    @Test
+    public void treatsRisingRoundTripAsCongestion() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 4, 10);
+
+        for (int i = 0; i < 100; i++)
+        {
+            limit.release(limit.acquire(), RTT, false);
+        }
+
+        // A single outlier is no trend
+        limit.release(limit.acquire(), RTT * 3, false);
+
+        assertThat(limit.getLimit(), is(4));
+
+        while (limit.getLimit() == 4)
+        {
+            limit.release(limit.acquire(), RTT * 20, false);
+        }
+
+        assertThat(limit.getLimit(), is(2));
+    }
+
+    @Test
+    public void lowersLimitToChangedMaximum() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 8, 10);
+
+        limit.setMaxLimit(4);
+
+        assertThat(limit.getLimit(), is(4));
+
+        limit.setMaxLimit(16);
+
+        assertThat(limit.getLimit(), is(4));
+    }
+
+    @Test
+    public void ignoresOutcomesWithoutLoadSignal() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 1, 10);
+
+        limit.release(limit.acquire());
+
+        assertThat(limit.getLimit(), is(1));
+        assertThat(limit.getInFlight(), is(0));
+    }
+
+    @Test
+    public void blocksAtLimit() throws Exception
+    {
+        final ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("test", 1, 1);
+
+        final long permit;
+        permit = limit.acquire();
+
+        Thread releaser;
+        releaser = new Thread()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    Thread.sleep(50);
+                }
+                catch (InterruptedException e)
+                {
+                    return;
+                }
+
+                limit.release(permit, RTT, false);
+            }
+        };
+        releaser.start();
+
+        long start;
+        start = System.nanoTime();
+
+        limit.release(limit.acquire(), RTT, false);
+
+        assertThat(System.nanoTime() - start >=
+                TimeUnit.MILLISECONDS.toNanos(40), is(true));
+        releaser.join();
+    }
+
+    @Test
+    public void growsAgainstHealthyStub() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("stub", 1, 64);
+
+        assertThat(drive(limit, Integer.MAX_VALUE), is(0));
+        assertThat(limit.getLimit() > 4, is(true));
+    }
+
+    @Test
+    public void backsOffFromDegradedStub() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = new ConcurrencyLimit("stub", 16, 64);
+
+        int throttled;
+        throttled = drive(limit, 4);
+
+        // The limit oscillates around the capacity of the stub, so only a
+        // small share of the requests is throttled
+        assertThat(limit.getLimit() < 16, is(true));
+        assertThat(throttled < WORKERS * REQUESTS / 4, is(true));
+    }
+
+    /**
+     * Publishes from many threads within the limit to a local stub that
+     * throttles requests beyond its capacity.
+     *
+     * @return The number of requests throttled.
+     */
+    private static int drive(final ConcurrencyLimit limit,
+            final int capacity) throws Exception
+    {
+        final AtomicInteger active;
+        active = new AtomicInteger();
+
+        final AtomicInteger throttled;
+        throttled = new AtomicInteger();
+
+        HttpServer server;
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.setExecutor(Executors.newFixedThreadPool(2 * WORKERS));
+        server.createContext("/services/hook", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                try
+                {
+                    if (active.incrementAndGet() > capacity)
+                    {
+                        throttled.incrementAndGet();
+                        exchange.sendResponseHeaders(429, -1);
+                        return;
+                    }
+
+                    Thread.sleep(5);
+
+                    exchange.sendResponseHeaders(200, 2);
+                    exchange.getResponseBody().write("ok".getBytes("UTF-8"));
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+                finally
+                {
+                    active.decrementAndGet();
+                    exchange.close();
+                }
+            }
+        });
+        server.start();
+
+        final String webhookUrl;
+        webhookUrl = "http://127.0.0.1:" + server.getAddress().getPort() +
+                "/services/hook";
+
+        ExecutorService workers;
+        workers = Executors.newFixedThreadPool(WORKERS);
+
+        final List<Throwable> errors;
+        errors = new ArrayList<>();
+
+        try
+        {
+            for (int i = 0; i < WORKERS; i++)
+            {
+                workers.execute(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            for (int j = 0; j < REQUESTS; j++)
+                            {
+                                publish(limit, webhookUrl);
+                            }
+                        }
+                        catch (Throwable e)
+                        {
+                            synchronized (errors)
+                            {
+                                errors.add(e);
+                            }
+                        }
+                    }
+                });
+            }
+
+            workers.shutdown();
+            assertThat(workers.awaitTermination(60, TimeUnit.SECONDS),
+                    is(true));
+        }
+        finally
+        {
+            workers.shutdownNow();
+            server.stop(0);
+            ((ExecutorService) server.getExecutor()).shutdownNow();
+        }
+
+        assertThat(errors.isEmpty(), is(true));
+
+        return throttled.get();
+    }
+
+    private static void publish(ConcurrencyLimit limit, String webhookUrl)
+            throws InterruptedException
+    {
+        long permit;
+        permit = limit.acquire();
+
+        WebhookClient client;
+        client = new WebhookClient();
+
+        long start;
+        start = System.nanoTime();
+
+        WebhookClient.Response response;
+        response = null;
+        try
+        {
+            response = client.send("{\"text\": \"load\"}", webhookUrl);
+        }
+        catch (RuntimeException e)
+        {
+            // Counted as congestion below
+        }
+        finally
+        {
+            limit.release(permit, System.nanoTime() - start,
+                    response == null || !response.isPublished() &&
+                            ConcurrencyLimiter.isCongested(
+                                    response.getStatus()));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ConcurrencyLimiter class.
+ */
+public class ConcurrencyLimiterTest
+{
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+
+    private ConcurrencyLimiter limiter;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockConfig.isConcurrencyLimitEnabled()).thenReturn(true);
+        when(mockConfig.getConcurrencyLimitInitial()).thenReturn(4);
+        when(mockConfig.getConcurrencyLimitMax()).thenReturn(64);
+
+        limiter = new ConcurrencyLimiter(mockConfig,
+                new DisabledMetricMaker());
+    }
+
+    @Test
+    public void sharesLimitBetweenUrlsOfHost() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = limiter.get("https://hooks.slack.com/services/T0/B0/a");
+
+        assertThat(limiter.get("https://hooks.slack.com/services/T0/B0/a") ==
+                limit, is(true));
+        assertThat(limiter.get("https://hooks.slack.com/services/T0/B0/b") ==
+                limit, is(true));
+        assertThat(limiter.get("https://slack.com/api/chat.postMessage") ==
+                limit, is(false));
+    }
+
+    @Test
+    public void keepsUrlsWithoutHostUnderUnknown() throws Exception
+    {
+        ConcurrencyLimit limit;
+        limit = limiter.get("secret token");
+
+        assertThat(limit.toString().contains("secret"), is(false));
+        assertThat(limiter.get("other secret") == limit, is(true));
+    }
+}
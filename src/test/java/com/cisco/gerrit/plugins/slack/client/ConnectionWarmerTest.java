@@ -0,0 +1,146 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.google.common.base.Ticker;
+import com.google.gerrit.server.git.WorkQueue;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ConnectionWarmer class against a local stub webhook.
+ */
+public class ConnectionWarmerTest
+{
+    private HttpServer server;
+    private String webhookUrl;
+    private AtomicInteger warmUps;
+
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+    private WorkQueue mockWorkQueue = mock(WorkQueue.class);
+
+    private long nanos;
+    private ConnectionWarmer warmer;
+
+    @Before
+    public void setup() throws Exception
+    {
+        warmUps = new AtomicInteger();
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                if ("HEAD".equals(exchange.getRequestMethod()))
+                {
+                    warmUps.incrementAndGet();
+                }
+
+                exchange.sendResponseHeaders(200, -1);
+                exchange.close();
+            }
+        });
+        server.start();
+
+        webhookUrl = "http://127.0.0.1:" + server.getAddress().getPort() +
+                "/services/hook";
+
+        when(mockConfig.isWarmUpEnabled()).thenReturn(true);
+        when(mockConfig.getWarmUpInterval()).thenReturn(30000L);
+
+        warmer = new ConnectionWarmer(mockConfig, mockWorkQueue, new Ticker()
+        {
+            @Override
+            public long read()
+            {
+                return nanos;
+            }
+        });
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void doesNotWarmRecentlyUsedHosts() throws Exception
+    {
+        warmer.markUsed(webhookUrl);
+
+        nanos += TimeUnit.SECONDS.toNanos(10);
+        warmer.warmIdleHosts();
+
+        assertThat(warmUps.get(), is(0));
+    }
+
+    @Test
+    public void warmsIdleHostsOnce() throws Exception
+    {
+        warmer.markUsed(webhookUrl);
+
+        nanos += TimeUnit.SECONDS.toNanos(30);
+        warmer.warmIdleHosts();
+        warmer.warmIdleHosts();
+
+        assertThat(warmUps.get(), is(1));
+    }
+
+    @Test
+    public void ignoresInvalidUrls() throws Exception
+    {
+        warmer.markUsed("not a url");
+        warmer.markUsed("not a url");
+
+        nanos += TimeUnit.SECONDS.toNanos(30);
+        warmer.warmIdleHosts();
+
+        assertThat(warmUps.get(), is(0));
+    }
+
+    @Test
+    public void ignoresUsageWhenDisabled() throws Exception
+    {
+        when(mockConfig.isWarmUpEnabled()).thenReturn(false);
+
+        warmer.markUsed(webhookUrl);
+
+        nanos += TimeUnit.SECONDS.toNanos(30);
+        warmer.warmIdleHosts();
+
+        assertThat(warmUps.get(), is(0));
+    }
+}
@@ -0,0 +1,473 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.Priority;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryStatistics;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTrace;
+import com.cisco.gerrit.plugins.slack.stats.DeliveryTracer;
+import com.cisco.gerrit.plugins.slack.stats.StatsSnapshot;
+import com.google.common.base.Ticker;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.git.WorkQueue;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the MessageDispatcher class.
+ */
+public class MessageDispatcherTest
+{
+    private static final String WEBHOOK_URL = "https://webhook/secret";
+    private static final String WEBHOOK_NAME = "https://webhook/***";
+
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+    private ProjectConfig mockProjectConfig = mock(ProjectConfig.class);
+    private MessagePublisher mockPublisher = mock(MessagePublisher.class);
+    private DeliveryStatistics statistics = new DeliveryStatistics();
+    private DeliveryTrace trace = new DeliveryTrace("test");
+
+    private long nanos;
+    private MessageDispatcher dispatcher;
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockConfig.getDeliveryThreads()).thenReturn(1);
+        when(mockConfig.getDeliveryQueueSize()).thenReturn(100);
+        when(mockConfig.getDeliveryDrainTimeout()).thenReturn(10000L);
+        when(mockConfig.getPriorityWeightHigh()).thenReturn(2);
+        when(mockConfig.getPriorityWeightNormal()).thenReturn(1);
+        when(mockConfig.getPriorityWeightLow()).thenReturn(1);
+        when(mockProjectConfig.getProject()).thenReturn("testproject");
+        when(mockProjectConfig.getWebhookUrl()).thenReturn(WEBHOOK_URL);
+
+        dispatcher = new MessageDispatcher(mockConfig, mock(WorkQueue.class),
+                mockPublisher, statistics, new DeliveryTracer(mockConfig),
+                new DisabledMetricMaker(),
+                new Ticker()
+        {
+            @Override
+            public long read()
+            {
+                return nanos;
+            }
+        });
+    }
+
+    @Test
+    public void publishesDirectlyWhenNotStarted() throws Exception
+    {
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW,
+                trace);
+
+        verify(mockPublisher).publish("message", WEBHOOK_URL);
+        assertThat(dispatcher.getDispatched(), is(1L));
+    }
+
+    @Test
+    public void publishesIntoThreadOfChange() throws Exception
+    {
+        when(mockProjectConfig.getChannel()).thenReturn("general");
+
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW, 42,
+                trace);
+
+        verify(mockPublisher).publish("message", WEBHOOK_URL);
+
+        when(mockProjectConfig.isThreadReplies()).thenReturn(true);
+
+        dispatcher.dispatch("reply", mockProjectConfig, Priority.LOW, 42,
+                trace);
+
+        verify(mockPublisher).publish("reply", WEBHOOK_URL, "general", 42);
+    }
+
+    @Test
+    public void publishesCardsAndReportsOutcome() throws Exception
+    {
+        when(mockProjectConfig.getChannel()).thenReturn("general");
+        when(mockPublisher.publishCard("card", "general", 42, true))
+                .thenReturn(true);
+
+        MessageDispatcher.Callback callback;
+        callback = mock(MessageDispatcher.Callback.class);
+
+        dispatcher.dispatchCard("card", mockProjectConfig, Priority.LOW, 42,
+                true, trace, callback);
+
+        verify(mockPublisher).publishCard("card", "general", 42, true);
+        verify(callback).delivered(true);
+    }
+
+    @Test
+    public void reportsDroppedCards() throws Exception
+    {
+        when(mockConfig.getDeliveryQueueSize()).thenReturn(1);
+
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        MessageDispatcher.Callback callback;
+        callback = mock(MessageDispatcher.Callback.class);
+
+        dispatcher.dispatchCard("card", mockProjectConfig, Priority.LOW, 42,
+                false, trace, callback);
+        dispatcher.dispatch("high", mockProjectConfig, Priority.HIGH,
+                trace);
+
+        verify(callback).delivered(false);
+        assertThat(dispatcher.getDropped(), is(1L));
+    }
+
+    @Test
+    public void servesLanesByWeight() throws Exception
+    {
+        // Workers never run, so the queue can be inspected
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        for (int i = 0; i < 4; i++)
+        {
+            dispatcher.dispatch("low", mockProjectConfig, Priority.LOW,
+                    trace);
+            dispatcher.dispatch("high", mockProjectConfig, Priority.HIGH,
+                    trace);
+        }
+        dispatcher.dispatch("normal", mockProjectConfig, Priority.NORMAL,
+                trace);
+
+        assertThat(dispatcher.getQueued(), is(9));
+        assertThat(nextPriorities(9), is(
+                "HIGH HIGH NORMAL LOW HIGH HIGH LOW LOW LOW "));
+        assertThat(dispatcher.poll(), is(nullValue()));
+    }
+
+    @Test
+    public void treatsMissingPriorityAsNormal() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("message", mockProjectConfig, null, trace);
+
+        assertThat(dispatcher.poll().priority, is(Priority.NORMAL));
+    }
+
+    @Test
+    public void makesRoomByDroppingLessUrgentMessages() throws Exception
+    {
+        when(mockConfig.getDeliveryQueueSize()).thenReturn(2);
+
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("low", mockProjectConfig, Priority.LOW,
+                trace);
+        dispatcher.dispatch("normal", mockProjectConfig, Priority.NORMAL,
+                trace);
+        dispatcher.dispatch("high", mockProjectConfig, Priority.HIGH,
+                trace);
+        dispatcher.dispatch("low", mockProjectConfig, Priority.LOW,
+                trace);
+
+        assertThat(dispatcher.getDropped(), is(2L));
+        assertThat(nextPriorities(2), is("HIGH NORMAL "));
+    }
+
+    @Test
+    public void measuresLagOfOldestMessage() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        assertThat(dispatcher.getLag(), is(0L));
+
+        dispatcher.dispatch("low", mockProjectConfig, Priority.LOW,
+                trace);
+        nanos += TimeUnit.SECONDS.toNanos(3);
+        dispatcher.dispatch("high", mockProjectConfig, Priority.HIGH,
+                trace);
+        nanos += TimeUnit.SECONDS.toNanos(2);
+
+        assertThat(dispatcher.getLag(), is(5000L));
+
+        dispatcher.poll();
+
+        assertThat(dispatcher.getLag(), is(5000L));
+
+        dispatcher.poll();
+
+        assertThat(dispatcher.getLag(), is(0L));
+    }
+
+    @Test
+    public void recordsDeliveryStatistics() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW,
+                trace);
+
+        StatsSnapshot project;
+        project = statistics.getProjectStats().get(0);
+
+        assertThat(project.name, is("testproject"));
+        assertThat(project.backlog, is(1));
+
+        when(mockPublisher.publish("message", WEBHOOK_URL)).thenThrow(
+                new RuntimeException("Connection reset"));
+
+        dispatcher.stop();
+
+        project = statistics.getProjectStats().get(0);
+
+        assertThat(project.backlog, is(0));
+        assertThat(project.errorRate, is(1.0));
+        assertThat(project.lastError, is("Connection reset"));
+    }
+
+    @Test
+    public void tracesQueueAndSlackTime() throws Exception
+    {
+        when(mockPublisher.publish("message", WEBHOOK_URL)).thenAnswer(
+                new Answer<Boolean>()
+                {
+                    @Override
+                    public Boolean answer(InvocationOnMock invocation)
+                    {
+                        nanos += TimeUnit.SECONDS.toNanos(1);
+                        return true;
+                    }
+                });
+
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW,
+                trace);
+        nanos += TimeUnit.SECONDS.toNanos(3);
+
+        dispatcher.stop();
+
+        assertThat(trace.getNanos(DeliveryTrace.Stage.QUEUE),
+                is(TimeUnit.SECONDS.toNanos(3)));
+        assertThat(trace.getNanos(DeliveryTrace.Stage.SLACK),
+                is(TimeUnit.SECONDS.toNanos(1)));
+    }
+
+    @Test
+    public void deliversQueuedMessagesOnStop() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW,
+                trace);
+
+        verify(mockPublisher, never()).publish(anyString(), anyString());
+
+        dispatcher.stop();
+
+        verify(mockPublisher).publish("message", WEBHOOK_URL);
+        assertThat(dispatcher.getQueued(), is(0));
+    }
+
+    @Test
+    public void dropsMessagesLeftAfterDrainTimeout() throws Exception
+    {
+        when(mockPublisher.publish("slow", WEBHOOK_URL)).thenAnswer(
+                new Answer<Boolean>()
+                {
+                    @Override
+                    public Boolean answer(InvocationOnMock invocation)
+                    {
+                        nanos += TimeUnit.SECONDS.toNanos(10);
+                        return true;
+                    }
+                });
+
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("slow", mockProjectConfig, Priority.HIGH,
+                trace);
+        dispatcher.dispatch("late", mockProjectConfig, Priority.LOW,
+                new DeliveryTrace("test"));
+
+        dispatcher.stop();
+
+        verify(mockPublisher).publish("slow", WEBHOOK_URL);
+        verify(mockPublisher, never()).publish("late", WEBHOOK_URL);
+        assertThat(dispatcher.getDropped(), is(1L));
+    }
+
+    @Test
+    public void workersDeliverQueuedMessages() throws Exception
+    {
+        ScheduledThreadPoolExecutor executor;
+        executor = new ScheduledThreadPoolExecutor(1);
+
+        try
+        {
+            dispatcher.start(executor);
+
+            dispatcher.dispatch("message", mockProjectConfig,
+                    Priority.HIGH, trace);
+
+            verify(mockPublisher, timeout(5000)).publish("message",
+                    WEBHOOK_URL);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void parksMessagesOfPausedWebhookUntilResumed() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+
+        dispatcher.dispatch("queued", mockProjectConfig, Priority.LOW,
+                trace);
+
+        // Webhooks are named without their secret token
+        assertThat(dispatcher.pause(WEBHOOK_NAME), is(true));
+        assertThat(dispatcher.pause(WEBHOOK_URL), is(false));
+
+        dispatcher.dispatch("later", mockProjectConfig, Priority.HIGH,
+                trace);
+
+        assertThat(dispatcher.getQueued(), is(0));
+        assertThat(dispatcher.poll(), is(nullValue()));
+        assertThat(dispatcher.getPaused().get(WEBHOOK_NAME), is(2));
+
+        assertThat(dispatcher.resume(WEBHOOK_NAME), is(true));
+        assertThat(dispatcher.resume(WEBHOOK_NAME), is(false));
+
+        assertThat(dispatcher.getQueued(), is(2));
+        assertThat(dispatcher.poll().message, is("later"));
+        assertThat(dispatcher.poll().message, is("queued"));
+        assertThat(dispatcher.getPaused().isEmpty(), is(true));
+    }
+
+    @Test
+    public void parkedMessagesCountAgainstQueueSize() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+        dispatcher.setQueueSize(1);
+        dispatcher.pause(WEBHOOK_URL);
+
+        dispatcher.dispatch("parked", mockProjectConfig, Priority.LOW,
+                trace);
+        dispatcher.dispatch("dropped", mockProjectConfig, Priority.LOW,
+                trace);
+
+        assertThat(dispatcher.getDropped(), is(1L));
+        assertThat(dispatcher.getPaused().get(WEBHOOK_NAME), is(1));
+    }
+
+    @Test
+    public void dropsParkedMessagesOnStop() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+        dispatcher.pause(WEBHOOK_URL);
+
+        dispatcher.dispatch("message", mockProjectConfig, Priority.LOW,
+                trace);
+        dispatcher.stop();
+
+        verify(mockPublisher, never()).publish("message", WEBHOOK_URL);
+        assertThat(dispatcher.getDropped(), is(1L));
+        assertThat(dispatcher.getPaused().isEmpty(), is(true));
+    }
+
+    @Test
+    public void appliesChangedWeights() throws Exception
+    {
+        dispatcher.start(mock(ScheduledExecutorService.class));
+        dispatcher.setWeight(Priority.LOW, 3);
+
+        for (int i = 0; i < 4; i++)
+        {
+            dispatcher.dispatch("low", mockProjectConfig, Priority.LOW,
+                    trace);
+            dispatcher.dispatch("high", mockProjectConfig, Priority.HIGH,
+                    trace);
+        }
+
+        assertThat(nextPriorities(8), is(
+                "HIGH HIGH LOW LOW LOW HIGH HIGH LOW "));
+        assertThat(dispatcher.getWeights().get(Priority.LOW), is(3));
+    }
+
+    @Test
+    public void changesNumberOfWorkers() throws Exception
+    {
+        ScheduledThreadPoolExecutor executor;
+        executor = new ScheduledThreadPoolExecutor(1);
+
+        try
+        {
+            dispatcher.start(executor);
+            dispatcher.setThreads(3);
+
+            assertThat(dispatcher.getThreads(), is(3));
+            assertThat(executor.getCorePoolSize(), is(3));
+
+            dispatcher.setThreads(1);
+
+            assertThat(executor.getCorePoolSize(), is(1));
+
+            dispatcher.dispatch("message", mockProjectConfig,
+                    Priority.HIGH, trace);
+
+            verify(mockPublisher, timeout(5000)).publish("message",
+                    WEBHOOK_URL);
+        }
+        finally
+        {
+            executor.shutdownNow();
+        }
+    }
+
+    private String nextPriorities(int count)
+    {
+        StringBuilder priorities;
+        priorities = new StringBuilder();
+
+        for (int i = 0; i < count; i++)
+        {
+            priorities.append(dispatcher.poll().priority);
+            priorities.append(" ");
+        }
+
+        return priorities.toString();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.hamcrest.core.IsNull.nullValue;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the SlackApiClient class against a local stub of
+ * chat.postMessage.
+ */
+public class SlackApiClientTest
+{
+    private HttpServer server;
+    private String apiUrl;
+
+    private volatile String response;
+    private volatile String receivedBody;
+    private volatile String receivedAuthorization;
+
+    @Before
+    public void setup() throws Exception
+    {
+        response = "{\"ok\":true,\"channel\":\"C1\",\"ts\":" +
+                "\"1503435956.000247\",\"message\":{\"text\":\"test\"}}";
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/chat.postMessage", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                receivedAuthorization =
+                        exchange.getRequestHeaders().getFirst(
+                                "Authorization");
+                receivedBody = read(exchange.getRequestBody());
+
+                byte[] bytes;
+                bytes = response.getBytes(StandardCharsets.UTF_8);
+
+                exchange.sendResponseHeaders(200, bytes.length);
+
+                OutputStream body;
+                body = exchange.getResponseBody();
+                body.write(bytes);
+                body.close();
+            }
+        });
+        server.start();
+
+        apiUrl = "http://127.0.0.1:" + server.getAddress().getPort() +
+                "/api/chat.postMessage";
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        server.stop(0);
+    }
+
+    @Test
+    public void postsParentMessage() throws Exception
+    {
+        SlackApiClient client;
+        client = new SlackApiClient("xoxb-test", null);
+
+        String message;
+        message = "{\"text\": \"test\",\"channel\": \"#general\"}\n";
+
+        WebhookClient.Response response;
+        response = client.send(message, apiUrl);
+
+        assertThat(response.isPublished(), is(true));
+        assertThat(SlackApiClient.getTs(response),
+                is(equalTo("1503435956.000247")));
+        assertThat(receivedBody, is(equalTo(message)));
+        assertThat(receivedAuthorization, is(equalTo("Bearer xoxb-test")));
+    }
+
+    @Test
+    public void postsReplyIntoThread() throws Exception
+    {
+        SlackApiClient client;
+        client = new SlackApiClient("xoxb-test", "1503435956.000247");
+
+        assertThat(client.publish("{\"text\": \"test\"}\n", apiUrl),
+                is(true));
+        assertThat(receivedBody, is(equalTo("{\"text\": \"test\", " +
+                "\"thread_ts\": \"1503435956.000247\"}\n")));
+    }
+
+    @Test
+    public void updatesMessageByChannelId() throws Exception
+    {
+        SlackApiClient client;
+        client = SlackApiClient.forUpdate("xoxb-test", "C1",
+                "1503435956.000247");
+
+        WebhookClient.Response response;
+        response = client.send("{\"text\": \"test\",\"channel\": " +
+                "\"#general\"}\n", apiUrl);
+
+        assertThat(response.isPublished(), is(true));
+        assertThat(SlackApiClient.getChannel(response), is(equalTo("C1")));
+        assertThat(receivedBody, is(equalTo("{\"text\": \"test\"," +
+                "\"channel\": \"C1\", " +
+                "\"ts\": \"1503435956.000247\"}\n")));
+    }
+
+    @Test
+    public void failsOnErrorResponse() throws Exception
+    {
+        response = "{\"ok\":false,\"error\":\"channel_not_found\"}";
+
+        SlackApiClient client;
+        client = new SlackApiClient("xoxb-test", null);
+
+        WebhookClient.Response response;
+        response = client.send("{\"text\": \"test\"}", apiUrl);
+
+        assertThat(response.isPublished(), is(false));
+        assertThat(SlackApiClient.getTs(response), is(nullValue()));
+        assertThat(response.getStatus(), is(200));
+    }
+
+    private static String read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out;
+        out = new ByteArrayOutputStream();
+
+        byte[] b;
+        b = new byte[1024];
+
+        for (int n; (n = in.read(b)) != -1; )
+        {
+            out.write(b, 0, n);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,215 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.client;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+/**
+ * Tests for the WebhookClient class against a local stub webhook.
+ */
+public class WebhookClientTest
+{
+    private HttpServer server;
+    private ExecutorService executor;
+    private String webhookUrl;
+
+    private volatile int status;
+    private volatile String response;
+    private volatile String receivedBody;
+    private volatile String receivedContentLength;
+    private volatile String receivedTransferEncoding;
+    private volatile CountDownLatch hang;
+
+    @Before
+    public void setup() throws Exception
+    {
+        status = 200;
+        response = "ok";
+        hang = new CountDownLatch(0);
+
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        executor = Executors.newCachedThreadPool();
+        server.setExecutor(executor);
+        server.createContext("/services/hook", new HttpHandler()
+        {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException
+            {
+                receivedContentLength =
+                        exchange.getRequestHeaders().getFirst(
+                                "Content-Length");
+                receivedTransferEncoding =
+                        exchange.getRequestHeaders().getFirst(
+                                "Transfer-Encoding");
+                receivedBody = read(exchange.getRequestBody());
+
+                try
+                {
+                    hang.await();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                }
+
+                byte[] bytes;
+                bytes = response.getBytes(StandardCharsets.UTF_8);
+
+                exchange.sendResponseHeaders(status, bytes.length);
+
+                OutputStream body;
+                body = exchange.getResponseBody();
+                body.write(bytes);
+                body.close();
+            }
+        });
+        server.start();
+
+        webhookUrl = "http://127.0.0.1:" + server.getAddress().getPort() +
+                "/services/hook";
+    }
+
+    @After
+    public void teardown() throws Exception
+    {
+        hang.countDown();
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void publishesWithFixedContentLength() throws Exception
+    {
+        WebhookClient client;
+        client = new WebhookClient();
+
+        String message;
+        message = "{\"text\": \"café\"}";
+
+        WebhookClient.Response response;
+        response = client.send(message, webhookUrl);
+
+        assertThat(response.isPublished(), is(true));
+        assertThat(receivedBody, is(equalTo(message)));
+        assertThat(receivedContentLength, is(equalTo(String.valueOf(
+                message.getBytes(StandardCharsets.UTF_8).length))));
+        assertThat(receivedTransferEncoding == null, is(true));
+        assertThat(response.getStatus(), is(200));
+    }
+
+    @Test
+    public void failsOnErrorResponse() throws Exception
+    {
+        status = 404;
+        response = "no_service";
+
+        WebhookClient client;
+        client = new WebhookClient();
+
+        WebhookClient.Response response;
+        response = client.send("{\"text\": \"test\"}", webhookUrl);
+
+        assertThat(response.isPublished(), is(false));
+        assertThat(response.getStatus(), is(404));
+    }
+
+    @Test
+    public void handlesOversizedResponse() throws Exception
+    {
+        StringBuilder large;
+        large = new StringBuilder();
+
+        while (large.length() < WebhookClient.MAX_RESPONSE_SIZE * 4)
+        {
+            large.append("ok");
+        }
+
+        response = large.toString();
+
+        WebhookClient client;
+        client = new WebhookClient();
+
+        assertThat(client.publish("{\"text\": \"test\"}", webhookUrl),
+                is(false));
+
+        // The connection remains usable for the next message
+        response = "ok";
+        assertThat(client.publish("{\"text\": \"test\"}", webhookUrl),
+                is(true));
+    }
+
+    @Test(timeout = 10000)
+    public void timesOutOnUnresponsiveHost() throws Exception
+    {
+        hang = new CountDownLatch(1);
+
+        WebhookClient client;
+        client = new WebhookClient(1000, 200);
+
+        try
+        {
+            client.send("{\"text\": \"test\"}", webhookUrl);
+            fail("Expected the request to time out");
+        }
+        catch (RuntimeException e)
+        {
+            // Expected, the worker is free for the next message
+        }
+
+        hang.countDown();
+
+        assertThat(client.publish("{\"text\": \"test\"}", webhookUrl),
+                is(true));
+    }
+
+    private static String read(InputStream in) throws IOException
+    {
+        ByteArrayOutputStream out;
+        out = new ByteArrayOutputStream();
+
+        byte[] b;
+        b = new byte[1024];
+
+        for (int n; (n = in.read(b)) != -1; )
+        {
+            out.write(b, 0, n);
+        }
+
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
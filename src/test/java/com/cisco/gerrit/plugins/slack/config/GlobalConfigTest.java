@@ -0,0 +1,82 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.config;
+
+import com.google.gerrit.server.config.PluginConfig;
+import com.google.gerrit.server.config.PluginConfigFactory;
+import org.eclipse.jgit.lib.Config;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the GlobalConfig class.
+ */
+public class GlobalConfigTest
+{
+    private PluginConfigFactory mockConfigFactory =
+            mock(PluginConfigFactory.class);
+
+    private Config gerritConfig;
+
+    @Before
+    public void setup() throws Exception
+    {
+        gerritConfig = new Config();
+
+        when(mockConfigFactory.getFromGerritConfig(ProjectConfig.CONFIG_NAME))
+                .thenReturn(new PluginConfig(ProjectConfig.CONFIG_NAME,
+                        gerritConfig));
+    }
+
+    @Test
+    public void usesDefaultsWhenUnset() throws Exception
+    {
+        GlobalConfig config;
+        config = new GlobalConfig(mockConfigFactory);
+
+        assertThat(config.isCircuitBreakerEnabled(), is(true));
+        assertThat(config.getCircuitBreakerWindowSize(), is(equalTo(20)));
+        assertThat(config.getCircuitBreakerMinimumCalls(), is(equalTo(10)));
+        assertThat(config.getCircuitBreakerFailureRate(), is(equalTo(50)));
+        assertThat(config.getCircuitBreakerSlowCallThreshold(),
+                is(equalTo(10000L)));
+        assertThat(config.getCircuitBreakerOpenDuration(),
+                is(equalTo(60000L)));
+    }
+
+    @Test
+    public void readsCircuitBreakerSettings() throws Exception
+    {
+        gerritConfig.setBoolean("plugin", ProjectConfig.CONFIG_NAME,
+                "circuit-breaker-enabled", false);
+        gerritConfig.setInt("plugin", ProjectConfig.CONFIG_NAME,
+                "circuit-breaker-failure-rate", 75);
+
+        GlobalConfig config;
+        config = new GlobalConfig(mockConfigFactory);
+
+        assertThat(config.isCircuitBreakerEnabled(), is(false));
+        assertThat(config.getCircuitBreakerFailureRate(), is(equalTo(75)));
+    }
+}
@@ -17,6 +17,7 @@
 
 package com.cisco.gerrit.plugins.slack.config;
 
+import com.cisco.gerrit.plugins.slack.message.Priority;
 import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
@@ -32,6 +33,8 @@ import static org.hamcrest.core.IsEqual.equalTo;
 import static org.junit.Assert.assertThat;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -86,6 +89,10 @@ public class ProjectConfigTest
                 .thenReturn(true);
         when(mockPluginConfig.getBoolean("publish-on-reviewer-added", true))
                 .thenReturn(true);
+        when(mockPluginConfig.getBoolean("publish-on-change-abandoned", false))
+                .thenReturn(true);
+        when(mockPluginConfig.getEnum("priority-change-abandoned",
+                Priority.NORMAL)).thenReturn(Priority.HIGH);
 
         config = new ProjectConfig(mockConfigFactory, PROJECT_NAME);
     }
@@ -137,4 +144,27 @@ public class ProjectConfigTest
     {
         assertThat(config.shouldPublishOnReviewerAdded(), is(equalTo(true)));
     }
+
+    @Test
+    public void testShouldPublishOnOtherEventType() throws Exception
+    {
+        assertThat(config.shouldPublishOn("change-abandoned", false),
+                is(equalTo(true)));
+    }
+
+    @Test
+    public void testGetPriorityOfOtherEventType() throws Exception
+    {
+        assertThat(config.getPriority("change-abandoned", Priority.NORMAL),
+                is(equalTo(Priority.HIGH)));
+        assertThat(config.getPriority("topic-changed", Priority.LOW),
+                is(equalTo(Priority.LOW)));
+    }
+
+    @Test
+    public void testReadsPluginConfigOnce() throws Exception
+    {
+        verify(mockConfigFactory, times(1)).getFromProjectConfigWithInheritance(
+                mockNameKey, ProjectConfig.CONFIG_NAME);
+    }
 }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the EventFilter and EventFilters classes.
+ */
+public class EventFilterTest
+{
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+
+    private ChangeAttribute change;
+    private AccountAttribute uploader;
+    private PatchSetCreatedEvent event;
+
+    @Before
+    public void setup() throws Exception
+    {
+        change = new ChangeAttribute();
+        change.branch = "main";
+
+        uploader = new AccountAttribute();
+        uploader.username = "jdoe";
+
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.uploader = Suppliers.ofInstance(uploader);
+        when(event.getType()).thenReturn("patchset-created");
+
+        when(mockConfig.getProject()).thenReturn("testproject");
+    }
+
+    @Test
+    public void appliesSkipAndOnlyRules() throws Exception
+    {
+        EventFilter filter;
+        filter = EventFilter.compile(new String[] {
+                "skip author:jenkins|zuul",
+                "only branch:main|release/*"});
+
+        assertThat(filter.accepts(event, new EventMemo(event)), is(true));
+
+        uploader.username = "jenkins";
+        assertThat(filter.accepts(event, new EventMemo(event)), is(false));
+
+        uploader.username = "jdoe";
+        change.branch = "feature";
+        assertThat(filter.accepts(event, new EventMemo(event)), is(false));
+    }
+
+    @Test
+    public void countsHitsPerRule() throws Exception
+    {
+        EventFilter filter;
+        filter = EventFilter.compile(new String[] {
+                "skip author:jenkins",
+                "only branch:main"});
+
+        filter.accepts(event, new EventMemo(event));
+        uploader.username = "jenkins";
+        filter.accepts(event, new EventMemo(event));
+        filter.accepts(event, new EventMemo(event));
+
+        List<FilterRule> rules;
+        rules = filter.getRules();
+
+        assertThat(rules.get(0).getText(), is(equalTo("only branch:main")));
+        assertThat(rules.get(0).getHits(), is(0L));
+        assertThat(rules.get(1).getText(),
+                is(equalTo("skip author:jenkins")));
+        assertThat(rules.get(1).getHits(), is(2L));
+    }
+
+    @Test
+    public void leavesOutInvalidRules() throws Exception
+    {
+        EventFilter filter;
+        filter = EventFilter.compile(new String[] {
+                "drop author:jenkins",
+                "skip owner:jdoe",
+                "skip branch:feature"});
+
+        assertThat(filter.getRules().size(), is(1));
+        assertThat(filter.accepts(event, new EventMemo(event)), is(true));
+    }
+
+    @Test
+    public void compilesRulesOncePerProject() throws Exception
+    {
+        when(mockConfig.getFilters()).thenReturn(
+                new String[] {"skip author:jdoe"});
+
+        EventFilters filters;
+        filters = new EventFilters();
+
+        assertThat(filters.accepts(event, new EventMemo(event), mockConfig),
+                is(false));
+        assertThat(filters.accepts(event, new EventMemo(event), mockConfig),
+                is(false));
+
+        List<FilterSnapshot> snapshots;
+        snapshots = filters.getSnapshots();
+
+        assertThat(snapshots.size(), is(1));
+        assertThat(snapshots.get(0).project, is(equalTo("testproject")));
+        assertThat(snapshots.get(0).hits, is(2L));
+
+        // Changed rules are compiled anew
+        when(mockConfig.getFilters()).thenReturn(
+                new String[] {"skip author:zuul"});
+
+        assertThat(filters.accepts(event, new EventMemo(event), mockConfig),
+                is(true));
+        assertThat(filters.getSnapshots().get(0).hits, is(0L));
+    }
+
+    @Test
+    public void acceptsEverythingWithoutRules() throws Exception
+    {
+        when(mockConfig.getFilters()).thenReturn(new String[0]);
+
+        EventFilters filters;
+        filters = new EventFilters();
+
+        assertThat(filters.accepts(event, new EventMemo(event), mockConfig),
+                is(true));
+        assertThat(filters.getSnapshots().isEmpty(), is(true));
+    }
+}
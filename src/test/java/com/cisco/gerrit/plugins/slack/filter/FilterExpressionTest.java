@@ -0,0 +1,179 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.filter;
+
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the FilterExpression class.
+ */
+public class FilterExpressionTest
+{
+    private CommentAddedEvent event;
+    private AccountAttribute author;
+    private ApprovalAttribute approval;
+    private PatchSetAttribute patchSet;
+
+    @Before
+    public void setup() throws Exception
+    {
+        ChangeAttribute change;
+        change = new ChangeAttribute();
+        change.branch = "release/1.0";
+
+        author = new AccountAttribute();
+        author.username = "jenkins";
+        author.email = "jenkins@example.com";
+
+        approval = new ApprovalAttribute();
+        approval.type = "Code-Review";
+        approval.value = "-2";
+        approval.oldValue = "0";
+
+        patchSet = new PatchSetAttribute();
+        patchSet.sizeInsertions = 700;
+        patchSet.sizeDeletions = -400;
+
+        event = mock(CommentAddedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.author = Suppliers.ofInstance(author);
+        event.approvals = Suppliers.ofInstance(
+                new ApprovalAttribute[] {approval});
+        event.patchSet = Suppliers.ofInstance(patchSet);
+        when(event.getType()).thenReturn("comment-added");
+    }
+
+    @Test
+    public void matchesTypes() throws Exception
+    {
+        assertThat(matches("type:comment-added"), is(true));
+        assertThat(matches("type:patchset-created|change-merged"), is(false));
+    }
+
+    @Test
+    public void matchesBranchNamesAndGlobs() throws Exception
+    {
+        assertThat(matches("branch:main|release/*"), is(true));
+        assertThat(matches("branch:release/1.0"), is(true));
+        assertThat(matches("branch:release"), is(false));
+        assertThat(matches("branch:*"), is(false));
+        assertThat(matches("branch:**"), is(true));
+        assertThat(matches("branch:release/?.?"), is(true));
+    }
+
+    @Test
+    public void matchesBranchOfRefName() throws Exception
+    {
+        when(event.getRefName()).thenReturn("refs/heads/main");
+
+        assertThat(matches("branch:main"), is(true));
+    }
+
+    @Test
+    public void matchesAuthorsByUsernameOrEmail() throws Exception
+    {
+        assertThat(matches("author:jenkins|zuul"), is(true));
+        assertThat(matches("author:jenkins@example.com"), is(true));
+        assertThat(matches("author:jdoe"), is(false));
+    }
+
+    @Test
+    public void matchesLabelsAndVotes() throws Exception
+    {
+        assertThat(matches("label:Code-Review"), is(true));
+        assertThat(matches("label:Verified"), is(false));
+        assertThat(matches("label:Code-Review=-2"), is(true));
+        assertThat(matches("label:Code-Review=+2|Verified=-1"), is(false));
+
+        // A label left at zero is no vote
+        approval.value = "0";
+        approval.oldValue = null;
+
+        assertThat(matches("label:Code-Review"), is(false));
+    }
+
+    @Test
+    public void comparesSizes() throws Exception
+    {
+        assertThat(matches("size>1000"), is(true));
+        assertThat(matches("size<=1100"), is(true));
+        assertThat(matches("size=1000"), is(false));
+
+        // Files are not listed, so no file count matches
+        assertThat(matches("files<10"), is(false));
+    }
+
+    @Test
+    public void combinesConditions() throws Exception
+    {
+        assertThat(matches("author:jenkins branch:main"), is(false));
+        assertThat(matches("author:jenkins and branch:release/*"), is(true));
+        assertThat(matches("author:zuul or branch:release/*"), is(true));
+        assertThat(matches("not author:jenkins"), is(false));
+        assertThat(matches("type:comment-added (author:zuul or " +
+                "label:Code-Review)"), is(true));
+        assertThat(matches("NOT (author:zuul OR author:jenkins)"), is(false));
+    }
+
+    @Test
+    public void evaluatesCheapestConditionsFirst() throws Exception
+    {
+        // The author is never needed when the branch decides
+        event.author = null;
+
+        assertThat(matches("author:jenkins and branch:main"), is(false));
+        assertThat(matches("author:jenkins or branch:release/*"), is(true));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownTerms() throws Exception
+    {
+        FilterExpression.compile("owner:jenkins");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnbalancedParentheses() throws Exception
+    {
+        FilterExpression.compile("(author:jenkins or branch:main");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDanglingOperators() throws Exception
+    {
+        FilterExpression.compile("author:jenkins or");
+    }
+
+    private boolean matches(String expression)
+    {
+        return FilterExpression.compile(expression).matches(event,
+                new EventMemo(event));
+    }
+}
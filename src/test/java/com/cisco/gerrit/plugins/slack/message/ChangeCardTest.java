@@ -0,0 +1,196 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.reviewdb.client.Change;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.data.PatchSetAttribute;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.ChangeMergedEvent;
+import com.google.gerrit.server.events.CommentAddedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import com.google.gerrit.server.events.ReviewerDeletedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the ChangeCard class.
+ */
+public class ChangeCardTest
+{
+    private static final String HEADER = "\\n>>>testproject (master): " +
+            "Add cards (https://change/)";
+
+    private ChangeAttribute change = new ChangeAttribute();
+    private ChangeCard card;
+
+    @Before
+    public void setup() throws Exception
+    {
+        AccountAttribute owner;
+        owner = new AccountAttribute();
+        owner.username = "owner";
+
+        change.number = 42;
+        change.project = "testproject";
+        change.branch = "master";
+        change.url = "https://change/";
+        change.commitMessage = "Add cards\n\nBody.";
+        change.owner = owner;
+        change.status = Change.Status.NEW;
+
+        card = MessageGeneratorFactory.newCardInstance(
+                mock(ProjectConfig.class),
+                new HeaderCache(new DisabledMetricMaker()));
+    }
+
+    @Test
+    public void showsLatestPatchSetAndReviewers() throws Exception
+    {
+        apply(patchSetCreated(1));
+        apply(reviewerAdded("Alice"));
+        apply(reviewerAdded("Bob"));
+        apply(patchSetCreated(2));
+
+        assertThat(card.getChangeNumber(), is(42));
+        assertThat(card.generateText(), is(equalTo(
+                "@owner's change is open, patch set 2" + HEADER +
+                        "\\nReviewers: Alice, Bob")));
+    }
+
+    @Test
+    public void showsVotesOfLatestPatchSet() throws Exception
+    {
+        apply(patchSetCreated(1));
+        apply(commentAdded("Alice", "Code-Review", "-1"));
+        apply(patchSetCreated(2));
+        apply(commentAdded("Alice", "Code-Review", "2"));
+        apply(commentAdded("Jenkins", "Verified", "1"));
+        apply(commentAdded("Bob", "Code-Review", "1"));
+        apply(commentAdded("Bob", "Code-Review", "0"));
+
+        assertThat(card.generateText(), is(equalTo(
+                "@owner's change is open, patch set 2" + HEADER +
+                        "\\nReviewers: Alice, Jenkins, Bob" +
+                        "\\nCode-Review: +2 Alice" +
+                        "\\nVerified: +1 Jenkins")));
+    }
+
+    @Test
+    public void showsStatusAndRemovedReviewers() throws Exception
+    {
+        apply(patchSetCreated(1));
+        apply(commentAdded("Alice", "Code-Review", "2"));
+        apply(reviewerDeleted("Alice"));
+
+        change.status = Change.Status.MERGED;
+
+        ChangeMergedEvent merged;
+        merged = mock(ChangeMergedEvent.class);
+        merged.change = Suppliers.ofInstance(change);
+        merged.patchSet = Suppliers.ofInstance(patchSet(1));
+
+        apply(merged);
+
+        assertThat(card.generateText(), is(equalTo(
+                "@owner's change is merged, patch set 1" + HEADER)));
+    }
+
+    private PatchSetCreatedEvent patchSetCreated(int number)
+    {
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.patchSet = Suppliers.ofInstance(patchSet(number));
+
+        return event;
+    }
+
+    private ReviewerAddedEvent reviewerAdded(String name)
+    {
+        ReviewerAddedEvent event;
+        event = mock(ReviewerAddedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.reviewer = Suppliers.ofInstance(account(name));
+
+        return event;
+    }
+
+    private ReviewerDeletedEvent reviewerDeleted(String name)
+    {
+        ReviewerDeletedEvent event;
+        event = mock(ReviewerDeletedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.reviewer = Suppliers.ofInstance(account(name));
+
+        return event;
+    }
+
+    private CommentAddedEvent commentAdded(String name, String label,
+            String value)
+    {
+        ApprovalAttribute approval;
+        approval = new ApprovalAttribute();
+        approval.type = label;
+        approval.value = value;
+
+        CommentAddedEvent event;
+        event = mock(CommentAddedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.author = Suppliers.ofInstance(account(name));
+        event.approvals = Suppliers.ofInstance(
+                new ApprovalAttribute[] {approval});
+
+        return event;
+    }
+
+    private static PatchSetAttribute patchSet(int number)
+    {
+        PatchSetAttribute patchSet;
+        patchSet = new PatchSetAttribute();
+        patchSet.number = number;
+
+        return patchSet;
+    }
+
+    private static AccountAttribute account(String name)
+    {
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.name = name;
+
+        return account;
+    }
+
+    private void apply(ChangeEvent event)
+    {
+        card.apply(event, new EventMemo(event));
+    }
+}
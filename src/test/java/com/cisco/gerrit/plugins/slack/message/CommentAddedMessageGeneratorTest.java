@@ -23,6 +23,7 @@ import com.google.gerrit.reviewdb.client.Project;
 import com.google.gerrit.server.config.PluginConfig;
 import com.google.gerrit.server.config.PluginConfigFactory;
 import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ApprovalAttribute;
 import com.google.gerrit.server.data.ChangeAttribute;
 import com.google.gerrit.server.events.CommentAddedEvent;
 import org.junit.Before;
@@ -245,4 +246,129 @@ public class CommentAddedMessageGeneratorTest
         assertThat(actualResult, is(equalTo(expectedResult)));
     }
 
+
+    @Test
+    public void isSheddableOnlyWithoutVotes() throws Exception
+    {
+        ProjectConfig config = getConfig();
+
+        when(mockPluginConfig.getEnum("priority-comment-added", Priority.LOW))
+                .thenReturn(Priority.LOW);
+        config = new ProjectConfig(mockConfigFactory, PROJECT_NAME);
+
+        ApprovalAttribute approval;
+        approval = new ApprovalAttribute();
+        approval.type = "Verified";
+        approval.value = "0";
+
+        mockEvent.approvals = Suppliers.ofInstance(
+                new ApprovalAttribute[] {approval});
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                mockEvent, config);
+
+        assertThat(messageGenerator.isSheddable(), is(true));
+
+        approval.value = "1";
+
+        assertThat(messageGenerator.isSheddable(), is(false));
+    }
+
+    @Test
+    public void publishesOnlyChangedVotesOnConfiguredLabels() throws Exception
+    {
+        when(mockPluginConfig.getStringList("comment-added-label"))
+                .thenReturn(new String[] {"Verified"});
+
+        ProjectConfig config;
+        config = getConfig();
+
+        mockEvent.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {
+                approval("Code-Review", "1", "0"),
+                approval("Verified", "1", null)});
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                mockEvent, config);
+
+        assertThat(messageGenerator.shouldPublish(), is(false));
+
+        mockEvent.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {
+                approval("Verified", "-1", "1")});
+
+        assertThat(messageGenerator.shouldPublish(), is(true));
+    }
+
+    @Test
+    public void publishesOnlyNegativeVotesWhenConfigured() throws Exception
+    {
+        when(mockPluginConfig.getBoolean("comment-added-negative-only",
+                false)).thenReturn(true);
+
+        ProjectConfig config;
+        config = getConfig();
+
+        mockEvent.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {
+                approval("Code-Review", "2", "-1")});
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                mockEvent, config);
+
+        assertThat(messageGenerator.shouldPublish(), is(false));
+
+        mockEvent.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {
+                approval("Code-Review", "-2", "1")});
+
+        assertThat(messageGenerator.shouldPublish(), is(true));
+    }
+
+    @Test
+    public void summarizesChangedVotes() throws Exception
+    {
+        when(mockPluginConfig.getBoolean("comment-added-vote-summary", false))
+                .thenReturn(true);
+
+        ProjectConfig config;
+        config = getConfig();
+
+        mockEvent.change = Suppliers.ofInstance(mockChange);
+        mockEvent.author = Suppliers.ofInstance(mockAccount);
+        mockEvent.comment = "Patch Set 1: Code-Review-2 Verified+1";
+        mockEvent.approvals = Suppliers.ofInstance(new ApprovalAttribute[] {
+                approval("Code-Review", "-2", "1"),
+                approval("Verified", "1", "0"),
+                approval("Other", "1", null)});
+
+        mockChange.project = "testproject";
+        mockChange.branch = "master";
+        mockChange.url = "https://change/";
+        mockChange.commitMessage = "This is the title\n\nAnd the body.";
+        mockChange.owner = mockOwner;
+        mockOwner.username = "owner";
+
+        mockAccount.name = "Unit Tester";
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                mockEvent, config);
+
+        assertThat(messageGenerator.generateText(), is(equalTo(
+                "Unit Tester voted Code-Review +1\u2192-2, Verified +1 on " +
+                        "@owner\\n>>>testproject (master): This is the " +
+                        "title (https://change/)")));
+    }
+
+    private static ApprovalAttribute approval(String type, String value,
+            String oldValue)
+    {
+        ApprovalAttribute approval;
+        approval = new ApprovalAttribute();
+        approval.type = type;
+        approval.value = value;
+        approval.oldValue = oldValue;
+
+        return approval;
+    }
 }
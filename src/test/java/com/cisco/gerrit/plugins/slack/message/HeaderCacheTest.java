@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.metrics.DisabledMetricMaker;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.ChangeAbandonedEvent;
+import com.google.gerrit.server.events.ChangeEvent;
+import com.google.gerrit.server.events.ReviewerAddedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+
+/**
+ * Tests for the HeaderCache class.
+ */
+public class HeaderCacheTest
+{
+    private HeaderCache headerCache;
+    private ChangeAttribute change;
+
+    @Before
+    public void setup() throws Exception
+    {
+        headerCache = new HeaderCache(new DisabledMetricMaker());
+
+        change = new ChangeAttribute();
+        change.number = 7;
+        change.project = "testproject";
+        change.branch = "master";
+        change.commitMessage = "Fix the \"race\"\n\nBody.";
+        change.url = "https://change/";
+    }
+
+    @Test
+    public void rendersEscapedHeader() throws Exception
+    {
+        assertThat(headerCache.get(change), is(
+                "testproject (master): Fix the \\\"race\\\" " +
+                        "(https://change/)"));
+    }
+
+    @Test
+    public void reusesHeaderOfSameChange() throws Exception
+    {
+        String first;
+        first = headerCache.get(change);
+
+        ChangeAttribute later;
+        later = new ChangeAttribute();
+        later.number = 7;
+        later.project = "testproject";
+        later.branch = "master";
+        later.commitMessage = "Fix the \"race\"\n\nOther body.";
+        later.url = "https://change/";
+
+        assertThat(headerCache.get(later) == first, is(true));
+        assertThat(headerCache.getHitRatio(), is(0.5));
+        assertThat(headerCache.size(), is(1L));
+    }
+
+    @Test
+    public void rendersAfreshWhenChangeDiffers() throws Exception
+    {
+        headerCache.get(change);
+
+        change.commitMessage = "Fix the \"race\" for good";
+
+        assertThat(headerCache.get(change), is(
+                "testproject (master): Fix the \\\"race\\\" for good " +
+                        "(https://change/)"));
+
+        change.branch = "stable";
+
+        assertThat(headerCache.get(change), is(
+                "testproject (stable): Fix the \\\"race\\\" for good " +
+                        "(https://change/)"));
+        assertThat(headerCache.getHitRatio(), is(0.0));
+    }
+
+    @Test
+    public void rendersSubjectOfChangeWithoutCommitMessage() throws Exception
+    {
+        change.commitMessage = null;
+        change.subject = "Fix the race";
+
+        assertThat(headerCache.get(change), is(
+                "testproject (master): Fix the race (https://change/)"));
+        assertThat(headerCache.get(change), is(
+                "testproject (master): Fix the race (https://change/)"));
+        assertThat(headerCache.getHitRatio(), is(0.5));
+    }
+
+    @Test
+    public void sharesHeaderBetweenGenerators() throws Exception
+    {
+        AccountAttribute account;
+        account = new AccountAttribute();
+        account.name = "Unit Tester";
+
+        ReviewerAddedEvent reviewerAdded;
+        reviewerAdded = mock(ReviewerAddedEvent.class);
+        reviewerAdded.reviewer = Suppliers.ofInstance(account);
+
+        ChangeAbandonedEvent abandoned;
+        abandoned = mock(ChangeAbandonedEvent.class);
+        abandoned.abandoner = Suppliers.ofInstance(account);
+
+        assertThat(generateText(reviewerAdded), is(
+                "Unit Tester was added to review\\n>>>" +
+                        "testproject (master): Fix the \\\"race\\\" " +
+                        "(https://change/)"));
+        assertThat(generateText(abandoned), is(
+                "Unit Tester abandoned\\n>>>" +
+                        "testproject (master): Fix the \\\"race\\\" " +
+                        "(https://change/)"));
+        assertThat(headerCache.getHitRatio(), is(0.5));
+        assertThat(headerCache.size(), is(1L));
+    }
+
+    private String generateText(ChangeEvent event)
+    {
+        event.change = Suppliers.ofInstance(change);
+
+        return MessageGeneratorFactory.newInstance(event, new EventMemo(event),
+                mock(ProjectConfig.class), headerCache).generateText();
+    }
+}
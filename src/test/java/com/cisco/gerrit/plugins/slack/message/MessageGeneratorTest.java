@@ -43,6 +43,12 @@ public class MessageGeneratorTest
             {
                 return null;
             }
+
+            @Override
+            public String generateText()
+            {
+                return null;
+            }
         };
 
         assertThat(messageGenerator.escape("\""), is(equalTo("\\\"")));
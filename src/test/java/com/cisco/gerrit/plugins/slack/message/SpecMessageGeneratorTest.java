@@ -0,0 +1,259 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.message;
+
+import com.cisco.gerrit.plugins.slack.config.ProjectConfig;
+import com.cisco.gerrit.plugins.slack.message.MessageSpec.Accessor;
+import com.cisco.gerrit.plugins.slack.util.EventMemo;
+import com.google.common.base.Suppliers;
+import com.google.gerrit.server.data.AccountAttribute;
+import com.google.gerrit.server.data.ChangeAttribute;
+import com.google.gerrit.server.events.ChangeAbandonedEvent;
+import com.google.gerrit.server.events.Event;
+import com.google.gerrit.server.events.HashtagsChangedEvent;
+import com.google.gerrit.server.events.PatchSetCreatedEvent;
+import com.google.gerrit.server.events.RefUpdatedEvent;
+import com.google.gerrit.server.events.TopicChangedEvent;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.core.Is.is;
+import static org.hamcrest.core.IsEqual.equalTo;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the SpecMessageGenerator class and the MessageSpec table of
+ * the MessageGeneratorFactory.
+ */
+public class SpecMessageGeneratorTest
+{
+    private ProjectConfig mockConfig = mock(ProjectConfig.class);
+    private AccountAttribute account = new AccountAttribute();
+    private ChangeAttribute change = new ChangeAttribute();
+
+    @Before
+    public void setup() throws Exception
+    {
+        when(mockConfig.isEnabled()).thenReturn(true);
+        when(mockConfig.getChannel()).thenReturn("testchannel");
+        when(mockConfig.getUsername()).thenReturn("testuser");
+        when(mockConfig.shouldPublishOn("change-abandoned", false))
+                .thenReturn(true);
+        when(mockConfig.getPriority("change-abandoned", Priority.NORMAL))
+                .thenReturn(Priority.NORMAL);
+
+        account.name = "Unit Tester";
+        account.username = "utester";
+
+        change.project = "testproject";
+        change.branch = "master";
+        change.url = "https://change/";
+        change.commitMessage = "This is a title\nAnd a the body.";
+    }
+
+    @Test
+    public void factoryCreatesExpectedType() throws Exception
+    {
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                abandoned("Obsolete"), mockConfig);
+
+        assertThat(messageGenerator instanceof SpecMessageGenerator,
+                is(true));
+    }
+
+    @Test
+    public void factoryCreatesUnsupportedForOtherEvents() throws Exception
+    {
+        RefUpdatedEvent event;
+        event = mock(RefUpdatedEvent.class);
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(event,
+                mockConfig);
+
+        assertThat(messageGenerator instanceof UnsupportedMessageGenerator,
+                is(true));
+        assertThat(MessageGeneratorFactory.isSupported(event), is(false));
+    }
+
+    @Test
+    public void factoryDispatchesHandWrittenTypes() throws Exception
+    {
+        PatchSetCreatedEvent event;
+        event = mock(PatchSetCreatedEvent.class);
+        event.uploader = Suppliers.ofInstance(account);
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                (Event) event, mockConfig);
+
+        assertThat(messageGenerator instanceof
+                PatchSetCreatedMessageGenerator, is(true));
+        assertThat(MessageGeneratorFactory.getActor(event,
+                new EventMemo(event)),
+                is(equalTo(account)));
+    }
+
+    @Test
+    public void publishesWhenTurnedOn() throws Exception
+    {
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                abandoned(null), mockConfig);
+
+        assertThat(messageGenerator.shouldPublish(), is(true));
+    }
+
+    @Test
+    public void doesNotPublishByDefault() throws Exception
+    {
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                topicChanged(null, "feature"), mockConfig);
+
+        assertThat(messageGenerator.shouldPublish(), is(false));
+    }
+
+    @Test
+    public void usesConfiguredPriority() throws Exception
+    {
+        when(mockConfig.getPriority("change-abandoned", Priority.NORMAL))
+                .thenReturn(Priority.HIGH);
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                abandoned(null), mockConfig);
+
+        assertThat(messageGenerator.getPriority(), is(Priority.HIGH));
+    }
+
+    @Test
+    public void generatesExpectedMessage() throws Exception
+    {
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                abandoned("Replaced by \"I1234\""), mockConfig);
+
+        String expectedResult;
+        expectedResult = "{\"text\": \"Unit Tester abandoned\\n>>>" +
+                "testproject (master): This is a title (https://change/)" +
+                "\\nReplaced by \\\"I1234\\\"\",\"channel\": " +
+                "\"#testchannel\",\"username\": \"testuser\", " +
+                "\"link_names\": 1}\n";
+
+        assertThat(messageGenerator.generate(), is(equalTo(expectedResult)));
+    }
+
+    @Test
+    public void leavesOutGroupsWithMissingFields() throws Exception
+    {
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                abandoned(""), mockConfig);
+
+        assertThat(messageGenerator.generateText(), is(equalTo(
+                "Unit Tester abandoned\\n>>>testproject (master): " +
+                        "This is a title (https://change/)")));
+
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                topicChanged(null, "feature"), mockConfig);
+
+        assertThat(messageGenerator.generateText(), is(equalTo(
+                "Unit Tester changed the topic to feature\\n>>>" +
+                        "testproject (master): This is a title " +
+                        "(https://change/)")));
+
+        messageGenerator = MessageGeneratorFactory.newInstance(
+                topicChanged("feature", null), mockConfig);
+
+        assertThat(messageGenerator.generateText(), is(equalTo(
+                "Unit Tester changed the topic from feature\\n>>>" +
+                        "testproject (master): This is a title " +
+                        "(https://change/)")));
+    }
+
+    @Test
+    public void listsHashtags() throws Exception
+    {
+        HashtagsChangedEvent event;
+        event = mock(HashtagsChangedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.editor = Suppliers.ofInstance(account);
+        event.added = new String[] {"release", "urgent"};
+        event.removed = new String[0];
+
+        MessageGenerator messageGenerator;
+        messageGenerator = MessageGeneratorFactory.newInstance(event,
+                mockConfig);
+
+        assertThat(messageGenerator.generateText(), is(equalTo(
+                "Unit Tester changed hashtags, added #release, #urgent" +
+                        "\\n>>>testproject (master): This is a title " +
+                        "(https://change/)")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownFields() throws Exception
+    {
+        new MessageSpec<>(ChangeAbandonedEvent.class, "change-abandoned")
+                .text("{abandoner} abandoned");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnbalancedBrackets() throws Exception
+    {
+        new MessageSpec<>(ChangeAbandonedEvent.class, "change-abandoned")
+                .field("reason", new Accessor<ChangeAbandonedEvent, String>()
+                {
+                    @Override
+                    public String get(ChangeAbandonedEvent event,
+                            EventMemo memo)
+                    {
+                        return event.reason;
+                    }
+                })
+                .text("abandoned[ {reason}");
+    }
+
+    private ChangeAbandonedEvent abandoned(String reason)
+    {
+        ChangeAbandonedEvent event;
+        event = mock(ChangeAbandonedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.abandoner = Suppliers.ofInstance(account);
+        event.reason = reason;
+
+        return event;
+    }
+
+    private TopicChangedEvent topicChanged(String oldTopic, String topic)
+    {
+        change.topic = topic;
+
+        TopicChangedEvent event;
+        event = mock(TopicChangedEvent.class);
+        event.change = Suppliers.ofInstance(change);
+        event.changer = Suppliers.ofInstance(account);
+        event.oldTopic = oldTopic;
+
+        return event;
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the DecayingRate class.
+ */
+public class DecayingRateTest
+{
+    @Test
+    public void reportsSteadyRate() throws Exception
+    {
+        DecayingRate rate;
+        rate = new DecayingRate(0);
+
+        long now;
+        now = 0;
+
+        // Two events per second for fifteen minutes
+        for (int i = 0; i < 15 * 60 * 2; i++)
+        {
+            rate.mark(now);
+            now += TimeUnit.MILLISECONDS.toNanos(500);
+        }
+
+        double[] rates;
+        rates = rate.getRates(now);
+
+        assertEquals(2.0, rates[0], 0.01);
+        assertEquals(2.0, rates[1], 0.01);
+        assertEquals(2.0, rates[2], 0.01);
+    }
+
+    @Test
+    public void decaysShortAveragesFaster() throws Exception
+    {
+        DecayingRate rate;
+        rate = new DecayingRate(0);
+
+        for (int i = 0; i < 100; i++)
+        {
+            rate.mark(0);
+        }
+
+        double[] rates;
+        rates = rate.getRates(TimeUnit.MINUTES.toNanos(5));
+
+        assertThat(rates[0] < rates[1], is(true));
+        assertThat(rates[1] < rates[2], is(true));
+    }
+
+    @Test
+    public void reportsNothingWhenIdle() throws Exception
+    {
+        DecayingRate rate;
+        rate = new DecayingRate(0);
+
+        rate.mark(0);
+
+        double[] rates;
+        rates = rate.getRates(TimeUnit.DAYS.toNanos(1));
+
+        assertEquals(0, rates[2], 0.000001);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.google.common.base.Ticker;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the DeliveryStatistics class.
+ */
+public class DeliveryStatisticsTest
+{
+    private static final String WEBHOOK_URL =
+            "https://hooks.slack.com/services/T0/B0/secret";
+
+    private long nanos;
+    private DeliveryStatistics statistics;
+
+    @Before
+    public void setup() throws Exception
+    {
+        statistics = new DeliveryStatistics(new Ticker()
+        {
+            @Override
+            public long read()
+            {
+                return nanos;
+            }
+        });
+    }
+
+    @Test
+    public void tracksBacklogPerProjectAndWebhook() throws Exception
+    {
+        statistics.recordQueued("a", WEBHOOK_URL);
+        statistics.recordQueued("b", WEBHOOK_URL);
+        statistics.recordDelivered("a", WEBHOOK_URL,
+                TimeUnit.MILLISECONDS.toNanos(20), true);
+
+        List<StatsSnapshot> projects;
+        projects = statistics.getProjectStats();
+
+        assertThat(projects.size(), is(2));
+        assertThat(projects.get(0).name, is("a"));
+        assertThat(projects.get(0).backlog, is(0));
+        assertThat(projects.get(0).p50, is(23.0));
+        assertThat(projects.get(1).backlog, is(1));
+
+        List<StatsSnapshot> webhooks;
+        webhooks = statistics.getWebhookStats();
+
+        assertThat(webhooks.size(), is(1));
+        assertThat(webhooks.get(0).name,
+                is("https://hooks.slack.com/services/T0/B0/***"));
+        assertThat(webhooks.get(0).backlog, is(1));
+    }
+
+    @Test
+    public void attributesWebhookErrorToProject() throws Exception
+    {
+        statistics.recordQueued("a", WEBHOOK_URL);
+        statistics.recordError(WEBHOOK_URL, "Slack responded with HTTP 429");
+        statistics.recordDelivered("a", WEBHOOK_URL, 0, false);
+
+        StatsSnapshot project;
+        project = statistics.getProjectStats().get(0);
+
+        assertThat(project.errorRate, is(1.0));
+        assertThat(project.lastError, is("Slack responded with HTTP 429"));
+        assertThat(project.lastErrorAt != null, is(true));
+    }
+
+    @Test
+    public void reportsEventRates() throws Exception
+    {
+        for (int i = 0; i < 60; i++)
+        {
+            statistics.recordEvent("a");
+            nanos += TimeUnit.SECONDS.toNanos(1);
+        }
+
+        StatsSnapshot project;
+        project = statistics.getProjectStats().get(0);
+
+        assertThat(project.rate1m > 0.5 && project.rate1m < 1.5, is(true));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import com.cisco.gerrit.plugins.slack.config.GlobalConfig;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the DeliveryTracer class.
+ */
+public class DeliveryTracerTest
+{
+    private static final String WEBHOOK_URL =
+            "https://hooks.slack.com/services/T0/B0/secret";
+
+    private GlobalConfig mockConfig = mock(GlobalConfig.class);
+
+    @Test
+    public void tracesSlowDeliveries() throws Exception
+    {
+        when(mockConfig.getTraceThreshold()).thenReturn(1000L);
+
+        DeliveryTracer tracer;
+        tracer = new DeliveryTracer(mockConfig);
+
+        assertThat(tracer.finish(trace(999), "project", WEBHOOK_URL, true),
+                is(false));
+        assertThat(tracer.finish(trace(1000), "project", WEBHOOK_URL, true),
+                is(true));
+    }
+
+    @Test
+    public void samplesOneInN() throws Exception
+    {
+        when(mockConfig.getTraceSampleRate()).thenReturn(3);
+
+        DeliveryTracer tracer;
+        tracer = new DeliveryTracer(mockConfig);
+
+        int traced;
+        traced = 0;
+
+        for (int i = 0; i < 9; i++)
+        {
+            if (tracer.finish(trace(1), "project", WEBHOOK_URL, true))
+            {
+                traced++;
+            }
+        }
+
+        assertThat(traced, is(3));
+    }
+
+    @Test
+    public void formatsStageTimings() throws Exception
+    {
+        DeliveryTrace trace;
+        trace = new DeliveryTrace("comment-added");
+        trace.record(DeliveryTrace.Stage.CHANGE, 10);
+        trace.record(DeliveryTrace.Stage.CONFIG, 20);
+        trace.record(DeliveryTrace.Stage.RENDER, 30);
+        trace.record(DeliveryTrace.Stage.QUEUE, 40);
+        trace.record(DeliveryTrace.Stage.SLACK, 50);
+
+        assertThat(DeliveryTracer.format(trace, "slow", "project",
+                WEBHOOK_URL, false, trace.getTotalNanos()),
+                is("Slack delivery trace reason=slow project=project " +
+                        "type=comment-added webhook=hooks.slack.com " +
+                        "published=false total_ns=150 change_ns=10 " +
+                        "config_ns=20 render_ns=30 queue_ns=40 " +
+                        "slack_ns=50"));
+    }
+
+    @Test
+    public void logsHostOnly() throws Exception
+    {
+        assertThat(DeliveryTracer.host(WEBHOOK_URL), is("hooks.slack.com"));
+        assertThat(DeliveryTracer.host("https://webhook"), is("webhook"));
+    }
+
+    private static DeliveryTrace trace(long millis)
+    {
+        DeliveryTrace trace;
+        trace = new DeliveryTrace("patchset-created");
+        trace.record(DeliveryTrace.Stage.SLACK,
+                TimeUnit.MILLISECONDS.toNanos(millis));
+
+        return trace;
+    }
+}
@@ -0,0 +1,94 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.stats;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the RollingHistogram class.
+ */
+public class RollingHistogramTest
+{
+    private static final double[] QUANTILES = {0.5, 0.95, 0.99};
+
+    @Test
+    public void bucketsBoundLatencies() throws Exception
+    {
+        for (long millis = 0; millis < 100000; millis++)
+        {
+            int bucket;
+            bucket = RollingHistogram.bucket(millis);
+
+            assertThat(RollingHistogram.upperBound(bucket) >= millis,
+                    is(true));
+            assertThat(bucket == 0 ||
+                    RollingHistogram.upperBound(bucket - 1) < millis,
+                    is(true));
+        }
+    }
+
+    @Test
+    public void reportsPercentilesAndErrorRate() throws Exception
+    {
+        RollingHistogram histogram;
+        histogram = new RollingHistogram();
+
+        for (int i = 1; i <= 100; i++)
+        {
+            histogram.record(TimeUnit.MILLISECONDS.toNanos(i), i % 10 != 0,
+                    0);
+        }
+
+        double[] snapshot;
+        snapshot = histogram.getSnapshot(QUANTILES, 0);
+
+        assertThat(snapshot[0], is(55.0));
+        assertThat(snapshot[1], is(95.0));
+        assertThat(snapshot[2], is(111.0));
+        assertThat(snapshot[3], is(0.1));
+    }
+
+    @Test
+    public void forgetsOutcomesOutsideWindow() throws Exception
+    {
+        RollingHistogram histogram;
+        histogram = new RollingHistogram();
+
+        histogram.record(TimeUnit.SECONDS.toNanos(10), false, 0);
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(3), true,
+                RollingHistogram.SLICE_LENGTH * 4);
+
+        double[] snapshot;
+        snapshot = histogram.getSnapshot(QUANTILES,
+                RollingHistogram.SLICE_LENGTH * 4);
+
+        assertThat(snapshot[2] > 9000, is(true));
+        assertThat(snapshot[3], is(0.5));
+
+        snapshot = histogram.getSnapshot(QUANTILES,
+                RollingHistogram.SLICE_LENGTH * RollingHistogram.SLICES);
+
+        assertThat(snapshot[2], is(3.0));
+        assertThat(snapshot[3], is(0.0));
+    }
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the ExpiringIndex class.
+ */
+public class ExpiringIndexTest
+{
+    @Test
+    public void returnsStoredValues() throws Exception
+    {
+        ExpiringIndex index;
+        index = new ExpiringIndex(100);
+
+        index.put(1L, 10L, 0);
+        index.put(2L, 20L, 0);
+        index.put(1L, 11L, 0);
+
+        assertThat(index.get(1L, 0), is(11L));
+        assertThat(index.get(2L, 0), is(20L));
+        assertThat(index.get(3L, 0), is(0L));
+        assertThat(index.size(), is(2));
+    }
+
+    @Test
+    public void expiresEntriesUnusedForTtl() throws Exception
+    {
+        ExpiringIndex index;
+        index = new ExpiringIndex(100);
+
+        index.put(1L, 10L, 0);
+        index.put(2L, 20L, 0);
+
+        // Using an entry keeps it alive
+        assertThat(index.get(1L, 60), is(10L));
+
+        assertThat(index.get(2L, 100), is(0L));
+        assertThat(index.get(1L, 150), is(10L));
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void purgesExpiredEntries() throws Exception
+    {
+        ExpiringIndex index;
+        index = new ExpiringIndex(100);
+
+        for (int i = 1; i <= 1000; i++)
+        {
+            index.put(i, i, i < 500 ? 0 : 50);
+        }
+
+        assertThat(index.purge(120), is(499));
+        assertThat(index.size(), is(501));
+        assertThat(index.get(500L, 120), is(500L));
+    }
+
+    @Test
+    public void survivesWriteAndRead() throws Exception
+    {
+        ExpiringIndex index;
+        index = new ExpiringIndex(100);
+
+        index.put(1L, 10L, 0);
+        index.put(2L, 20L, 50);
+
+        ByteArrayOutputStream bytes;
+        bytes = new ByteArrayOutputStream();
+
+        index.writeTo(new DataOutputStream(bytes), 60);
+
+        ExpiringIndex read;
+        read = new ExpiringIndex(100);
+        read.readFrom(new DataInputStream(
+                new ByteArrayInputStream(bytes.toByteArray())), 120);
+
+        // The first entry expired in between, the second keeps its age
+        assertThat(read.size(), is(1));
+        assertThat(read.get(1L, 120), is(0L));
+        assertThat(read.get(2L, 149), is(20L));
+    }
+
+    @Test
+    public void matchesMapSemanticsUnderChurn() throws Exception
+    {
+        // Colliding keys exercise the probe, growth and removal logic
+        ExpiringIndex index;
+        index = new ExpiringIndex(10);
+
+        Random random;
+        random = new Random(7);
+
+        Map<Long, long[]> expected;
+        expected = new HashMap<>();
+
+        for (int now = 0; now < 20000; now++)
+        {
+            long key;
+            key = (random.nextInt(512) + 1L) << 32;
+
+            long[] entry;
+            entry = expected.get(key);
+
+            boolean live;
+            live = entry != null && now - entry[1] < 10;
+
+            assertThat(index.get(key, now), is(live ? entry[0] : 0L));
+
+            if (live)
+            {
+                entry[1] = now;
+            }
+
+            if (random.nextBoolean())
+            {
+                index.put(key, now + 1, now);
+                expected.put(key, new long[] {now + 1, now});
+            }
+        }
+    }
+}
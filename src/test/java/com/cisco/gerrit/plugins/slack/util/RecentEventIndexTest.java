@@ -0,0 +1,116 @@
+/*
+ * Copyright 2016 Cisco Systems, Inc.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may
+ * not use this file except in compliance with the License. You may obtain
+ * a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package com.cisco.gerrit.plugins.slack.util;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.Assert.assertThat;
+
+/**
+ * Tests for the RecentEventIndex class.
+ */
+public class RecentEventIndexTest
+{
+    @Test
+    public void recognizesRepeatedFingerprints() throws Exception
+    {
+        RecentEventIndex index;
+        index = new RecentEventIndex(10, 100);
+
+        assertThat(index.add(42L, 0), is(true));
+        assertThat(index.add(0L, 0), is(true));
+        assertThat(index.add(42L, 10), is(false));
+        assertThat(index.add(0L, 10), is(false));
+        assertThat(index.size(), is(2));
+    }
+
+    @Test
+    public void forgetsFingerprintsAfterWindow() throws Exception
+    {
+        RecentEventIndex index;
+        index = new RecentEventIndex(10, 100);
+
+        index.add(42L, 0);
+
+        assertThat(index.add(42L, 100), is(true));
+        assertThat(index.size(), is(1));
+    }
+
+    @Test
+    public void evictsOldestWhenFull() throws Exception
+    {
+        RecentEventIndex index;
+        index = new RecentEventIndex(3, 100);
+
+        index.add(1L, 0);
+        index.add(2L, 0);
+        index.add(3L, 0);
+        index.add(4L, 0);
+
+        assertThat(index.size(), is(3));
+        assertThat(index.add(1L, 0), is(true));
+        assertThat(index.add(3L, 0), is(false));
+        assertThat(index.add(4L, 0), is(false));
+    }
+
+    @Test
+    public void matchesSetSemanticsUnderChurn() throws Exception
+    {
+        // Colliding fingerprints exercise the probe and removal logic
+        RecentEventIndex index;
+        index = new RecentEventIndex(64, Long.MAX_VALUE);
+
+        Random random;
+        random = new Random(7);
+
+        long[] recent;
+        recent = new long[64];
+
+        Set<Long> expected;
+        expected = new HashSet<>();
+
+        for (int i = 0; i < 10000; i++)
+        {
+            long fingerprint;
+            fingerprint = random.nextInt(256) << 8;
+
+            boolean added;
+            added = index.add(fingerprint, 0);
+
+            assertThat(added, is(!expected.contains(fingerprint)));
+
+            if (added)
+            {
+                if (expected.size() == recent.length)
+                {
+                    expected.remove(recent[0]);
+                    System.arraycopy(recent, 1, recent, 0,
+                            recent.length - 1);
+                }
+
+                recent[expected.size()] = fingerprint;
+                expected.add(fingerprint);
+            }
+        }
+    }
+}